@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.ltr;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.ltr.feature.Feature;
+import org.apache.solr.ltr.feature.ValueFeature;
+import org.apache.solr.ltr.model.LTRScoringModel;
+import org.apache.solr.ltr.model.MultipleAdditiveTreesModel;
+import org.apache.solr.ltr.norm.IdentityNormalizer;
+import org.apache.solr.ltr.norm.Normalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scores the documents reranked by a query with a {@link MultipleAdditiveTreesModel}, walking the
+ * tree nodes, the compiled flat arrays or with QuickScorer.
+ */
+@Fork(value = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(time = 5, iterations = 3)
+@Measurement(time = 10, iterations = 5)
+@Threads(value = 1)
+public class MultipleAdditiveTreesScoring {
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    @Param({
+      MultipleAdditiveTreesModel.EVALUATOR_NODES,
+      MultipleAdditiveTreesModel.EVALUATOR_FLAT,
+      MultipleAdditiveTreesModel.EVALUATOR_QUICK_SCORER
+    })
+    String evaluator;
+
+    @Param({"1000"})
+    int numTrees;
+
+    @Param({"16", "64"})
+    int numLeaves;
+
+    @Param({"50"})
+    int numFeatures;
+
+    /** As with {@code reRankDocs=500}. */
+    @Param({"500"})
+    int numDocs;
+
+    LTRScoringModel model;
+    float[][] featureVectors;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      SplittableRandom random = new SplittableRandom(42);
+      SolrResourceLoader loader = new SolrResourceLoader(Path.of("").toAbsolutePath());
+
+      List<Feature> features = new ArrayList<>();
+      List<Normalizer> norms = new ArrayList<>();
+      for (int i = 0; i < numFeatures; i++) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("value", i);
+        Feature feature =
+            Feature.getInstance(loader, ValueFeature.class.getName(), "f" + i, params);
+        feature.setIndex(i);
+        features.add(feature);
+        norms.add(IdentityNormalizer.INSTANCE);
+      }
+
+      List<Object> trees = new ArrayList<>();
+      for (int t = 0; t < numTrees; t++) {
+        Map<String, Object> tree = new LinkedHashMap<>();
+        tree.put("weight", "0.1");
+        tree.put("root", node(random, numLeaves));
+        trees.add(tree);
+      }
+      Map<String, Object> params = new LinkedHashMap<>();
+      params.put("trees", trees);
+      params.put("evaluator", evaluator);
+      model =
+          LTRScoringModel.getInstance(
+              loader,
+              MultipleAdditiveTreesModel.class.getName(),
+              "bench",
+              features,
+              norms,
+              "benchStore",
+              features,
+              params);
+
+      featureVectors = new float[numDocs][numFeatures];
+      for (float[] featureVector : featureVectors) {
+        for (int i = 0; i < numFeatures; i++) {
+          featureVector[i] = (float) random.nextDouble();
+        }
+      }
+    }
+
+    /** Creates a random tree with the given number of leaves. */
+    private Map<String, Object> node(SplittableRandom random, int leaves) {
+      Map<String, Object> node = new LinkedHashMap<>();
+      if (leaves == 1) {
+        node.put("value", Double.toString(random.nextDouble(-1, 1)));
+        return node;
+      }
+      int leftLeaves = 1 + random.nextInt(leaves - 1);
+      node.put("feature", "f" + random.nextInt(numFeatures));
+      node.put("threshold", Double.toString(random.nextDouble()));
+      node.put("left", node(random, leftLeaves));
+      node.put("right", node(random, leaves - leftLeaves));
+      return node;
+    }
+  }
+
+  @Benchmark
+  public float score(BenchState state) {
+    float sum = 0;
+    for (float[] featureVector : state.featureVectors) {
+      sum += state.model.score(featureVector);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.search;
+
+import static org.apache.solr.bench.Docs.docs;
+import static org.apache.solr.bench.generators.SourceDSL.doubles;
+import static org.apache.solr.bench.generators.SourceDSL.integers;
+import static org.apache.solr.bench.generators.SourceDSL.longs;
+import static org.apache.solr.bench.generators.SourceDSL.strings;
+
+import java.io.IOException;
+import org.apache.solr.bench.Docs;
+import org.apache.solr.bench.MiniClusterState;
+import org.apache.solr.bench.MiniClusterState.MiniClusterBenchState;
+import org.apache.solr.client.solrj.io.SolrClientCache;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.stream.SolrStream;
+import org.apache.solr.client.solrj.io.stream.StreamContext;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selects every row of a collection through the /sql handler, which exports them with the /export
+ * handler, either in columnar batches or as one map per row.
+ */
+@Fork(value = 1)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(time = 5, iterations = 1)
+@Measurement(time = 30, iterations = 4)
+@Threads(value = 1)
+public class SQLSelect {
+
+  private static final String collection = "benchSQLSelect";
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    @Param({"1000000"})
+    public int docCount;
+
+    @Param({"true", "false"})
+    String columnar;
+
+    private String baseUrl;
+    private ModifiableSolrParams params;
+    private StreamContext streamContext;
+
+    @Setup(Level.Trial)
+    public void setup(MiniClusterBenchState miniClusterState) throws Exception {
+      miniClusterState.startMiniCluster(2);
+      miniClusterState.createCollection(collection, 4, 1);
+      Docs docGen =
+          docs()
+              .field("id", integers().incrementing())
+              .field("name_s", strings().basicLatinAlphabet().ofLengthBetween(5, 20))
+              .field("count_i", integers().all())
+              .field("size_l", longs().all())
+              .field("price_d", doubles().all());
+      miniClusterState.index(collection, docGen, docCount);
+      miniClusterState.waitForMerges(collection);
+
+      baseUrl = miniClusterState.nodes.get(0) + "/" + collection;
+      params = new ModifiableSolrParams();
+      params.set(CommonParams.QT, "/sql");
+      params.set("columnar", columnar);
+      params.set("stmt", "SELECT name_s, count_i, size_l, price_d FROM " + collection);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+      streamContext = new StreamContext();
+      streamContext.setSolrClientCache(new SolrClientCache());
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardownIt() {
+      streamContext.getSolrClientCache().close();
+    }
+  }
+
+  @Benchmark
+  public long select(BenchState benchState, MiniClusterState.MiniClusterBenchState miniClusterState)
+      throws IOException {
+    SolrStream stream = new SolrStream(benchState.baseUrl, benchState.params);
+    stream.setStreamContext(benchState.streamContext);
+    long rows = 0;
+    try {
+      stream.open();
+      for (Tuple t = stream.read(); !t.EOF; t = stream.read()) {
+        rows++;
+      }
+    } finally {
+      stream.close();
+    }
+    if (rows != benchState.docCount) {
+      throw new IllegalStateException("Expected " + benchState.docCount + " rows, got " + rows);
+    }
+    return rows;
+  }
+}
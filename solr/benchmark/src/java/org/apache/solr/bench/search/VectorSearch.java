@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.search;
+
+import static org.apache.solr.bench.generators.SourceDSL.floats;
+import static org.apache.solr.bench.generators.SourceDSL.integers;
+import static org.apache.solr.bench.generators.SourceDSL.lists;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import org.apache.solr.bench.BaseBenchState;
+import org.apache.solr.bench.CircularIterator;
+import org.apache.solr.bench.Docs;
+import org.apache.solr.bench.MiniClusterState;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks knn queries on quantized and full precision vectors, with and without rescoring the
+ * candidates with the full precision vectors. The recall of the queries, compared to the exact
+ * nearest neighbors, is logged once the documents are indexed.
+ */
+@Fork(value = 1)
+@Warmup(time = 5, iterations = 5)
+@Measurement(time = 5, iterations = 5)
+@Threads(value = 1)
+public class VectorSearch {
+
+  static final String COLLECTION = "c1";
+
+  /** The dimension of the vector field types of the benchmark schema */
+  static final int DIMENSION = 768;
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    /** The vectorQuantization of the searched field, see the *_vector dynamic fields */
+    @Param({"none", "int8", "int4"})
+    String quantization;
+
+    /** The oversample of the knn queries, 0 to not rescore the results */
+    @Param({"0", "3"})
+    String oversample;
+
+    @Param("10")
+    int topK;
+
+    @Param("50000")
+    int docCount;
+
+    int queryCount = 100;
+    String field;
+    Iterator<String> queryVectors;
+
+    @Setup(Level.Trial)
+    public void setupTrial(MiniClusterState.MiniClusterBenchState miniClusterState)
+        throws Exception {
+      field = "v_vector" + ("none".equals(quantization) ? "" : "_" + quantization);
+
+      miniClusterState.startMiniCluster(1);
+      miniClusterState.createCollection(COLLECTION, 1, 1);
+      Docs docs =
+          Docs.docs()
+              .field("id", integers().incrementing())
+              .field(field, lists().of(floats().between(-1f, 1f)).ofSize(DIMENSION));
+      miniClusterState.index(COLLECTION, docs, docCount);
+      miniClusterState.forceMerge(COLLECTION, 1);
+
+      SplittableRandom random = miniClusterState.getRandom();
+      List<String> vectors = new ArrayList<>(queryCount);
+      for (int i = 0; i < queryCount; i++) {
+        StringBuilder vector = new StringBuilder("[");
+        for (int j = 0; j < DIMENSION; j++) {
+          vector.append(j == 0 ? "" : ",").append((float) random.nextDouble(-1, 1));
+        }
+        vectors.add(vector.append(']').toString());
+      }
+      logRecall(miniClusterState, vectors);
+      queryVectors = new CircularIterator<>(vectors);
+    }
+
+    private void logRecall(
+        MiniClusterState.MiniClusterBenchState miniClusterState, List<String> vectors)
+        throws SolrServerException, IOException {
+      double recall = 0;
+      for (String vector : vectors) {
+        Set<String> exact =
+            ids(miniClusterState, "{!func}vectorSimilarity(" + field + "," + vector + ")");
+        Set<String> approximate = ids(miniClusterState, knnQuery(vector));
+        approximate.retainAll(exact);
+        recall += (double) approximate.size() / exact.size();
+      }
+      BaseBenchState.log(
+          "recall@"
+              + topK
+              + " of "
+              + field
+              + " with oversample "
+              + oversample
+              + ": "
+              + recall / vectors.size());
+    }
+
+    private Set<String> ids(MiniClusterState.MiniClusterBenchState miniClusterState, String q)
+        throws SolrServerException, IOException {
+      QueryResponse response =
+          new QueryRequest(new SolrQuery("q", q, "fl", "id", "rows", String.valueOf(topK)))
+              .process(miniClusterState.client, COLLECTION);
+      Set<String> ids = new HashSet<>();
+      for (SolrDocument doc : response.getResults()) {
+        ids.add(String.valueOf(doc.getFieldValue("id")));
+      }
+      return ids;
+    }
+
+    String knnQuery(String vector) {
+      return "{!knn f="
+          + field
+          + " topK="
+          + topK
+          + ("0".equals(oversample) ? "" : " oversample=" + oversample)
+          + "}"
+          + vector;
+    }
+
+    public QueryRequest query() {
+      return new QueryRequest(
+          new SolrQuery(
+              "q", knnQuery(queryVectors.next()), "fl", "id", "rows", String.valueOf(topK)));
+    }
+  }
+
+  @Benchmark
+  public Object knn(
+      Blackhole blackhole,
+      BenchState benchState,
+      MiniClusterState.MiniClusterBenchState miniClusterState)
+      throws SolrServerException, IOException {
+    QueryResponse response = benchState.query().process(miniClusterState.client, COLLECTION);
+    blackhole.consume(response);
+    return response;
+  }
+}
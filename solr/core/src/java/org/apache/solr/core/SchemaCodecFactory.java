@@ -28,6 +28,7 @@ import org.apache.lucene.codecs.KnnVectorsWriter;
 import org.apache.lucene.codecs.PostingsFormat;
 import org.apache.lucene.codecs.lucene99.Lucene99Codec;
 import org.apache.lucene.codecs.lucene99.Lucene99Codec.Mode;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswScalarQuantizedVectorsFormat;
 import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.SegmentWriteState;
@@ -131,7 +132,23 @@ public class SchemaCodecFactory extends CodecFactory implements SolrCoreAware {
               if (DenseVectorField.HNSW_ALGORITHM.equals(knnAlgorithm)) {
                 int maxConn = vectorType.getHnswMaxConn();
                 int beamWidth = vectorType.getHnswBeamWidth();
-                var delegate = new Lucene99HnswVectorsFormat(maxConn, beamWidth);
+                DenseVectorField.VectorQuantization quantization =
+                    vectorType.getVectorQuantization();
+                KnnVectorsFormat delegate;
+                if (quantization == DenseVectorField.VectorQuantization.NONE) {
+                  delegate = new Lucene99HnswVectorsFormat(maxConn, beamWidth);
+                } else {
+                  // int4 values are packed two per byte
+                  delegate =
+                      new Lucene99HnswScalarQuantizedVectorsFormat(
+                          maxConn,
+                          beamWidth,
+                          Lucene99HnswVectorsFormat.DEFAULT_NUM_MERGE_WORKER,
+                          quantization.getBits(),
+                          quantization == DenseVectorField.VectorQuantization.INT4,
+                          null,
+                          null);
+                }
                 return new SolrDelegatingKnnVectorsFormat(delegate, vectorType.getDimension());
               } else {
                 throw new SolrException(
@@ -319,6 +319,8 @@ public class SolrConfig implements MapSerializable {
       }
       fieldValueCacheConfig = conf;
       useColdSearcher = get("query").get("useColdSearcher").boolVal(false);
+      backgroundWarming = get("query").get("backgroundWarming").boolVal(false);
+      backgroundWarmingThreads = get("query").get("backgroundWarmingThreads").intVal(2);
       dataDir = get("dataDir").txt();
       if (dataDir != null && dataDir.length() == 0) dataDir = null;
 
@@ -686,6 +688,8 @@ public class SolrConfig implements MapSerializable {
 
   public final int maxWarmingSearchers;
   public final boolean useColdSearcher;
+  public final boolean backgroundWarming;
+  public final int backgroundWarmingThreads;
   public final Version luceneMatchVersion;
   protected String dataDir;
   public final int slowQueryThresholdMillis; // threshold above which a query is considered slow
@@ -62,6 +62,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -1063,6 +1064,13 @@ public class SolrCore implements SolrInfoBean, Closeable {
 
     // ensure that in unclean shutdown tests we still close this
     assert ObjectReleaseTracker.track(searcherExecutor);
+    SolrConfig config = configSet.getSolrConfig();
+    this.backgroundWarmingExecutor =
+        config.backgroundWarming
+            ? ExecutorUtil.newMDCAwareFixedThreadPool(
+                Math.max(1, config.backgroundWarmingThreads),
+                new SolrNamedThreadFactory("backgroundWarming"))
+            : null;
 
     final CountDownLatch latch = new CountDownLatch(1);
     try {
@@ -1804,6 +1812,22 @@ public class SolrCore implements SolrInfoBean, Closeable {
     }
     assert ObjectReleaseTracker.release(searcherExecutor);
 
+    if (backgroundWarmingExecutor != null) {
+      synchronized (searcherLock) {
+        if (_searcher != null) {
+          _searcher.get().stopWarming();
+        }
+      }
+      try {
+        ExecutorUtil.shutdownAndAwaitTermination(backgroundWarmingExecutor);
+      } catch (Throwable e) {
+        log.error("Exception shutting down backgroundWarmingExecutor", e);
+        if (e instanceof Error) {
+          throw (Error) e;
+        }
+      }
+    }
+
     try {
       // Since we waited for the searcherExecutor to shut down,
       // there should be no more searchers warming in the background
@@ -2047,6 +2071,8 @@ public class SolrCore implements SolrInfoBean, Closeable {
   final ExecutorService searcherExecutor =
       ExecutorUtil.newMDCAwareSingleLazyThreadExecutor(
           new SolrNamedThreadFactory("searcherExecutor"), 60L, TimeUnit.SECONDS);
+  // bounded pool warming the caches of registered searchers, when backgroundWarming is enabled
+  private final ExecutorService backgroundWarmingExecutor;
   private int onDeckSearchers; // number of searchers preparing
   // Lock ordering: one can acquire the openSearcherLock and then the searcherLock, but not
   // vice-versa.
@@ -2593,6 +2619,8 @@ public class SolrCore implements SolrInfoBean, Closeable {
 
       final SolrIndexSearcher currSearcher =
           currSearcherHolder == null ? null : currSearcherHolder.get();
+      final boolean warmInBackground =
+          backgroundWarmingExecutor != null && currSearcher != null && newSearcher != currSearcher;
 
       Future<Void> future = null;
 
@@ -2601,7 +2629,8 @@ public class SolrCore implements SolrInfoBean, Closeable {
 
         // warm the new searcher based on the current searcher.
         // should this go before the other event handlers or after?
-        if (currSearcher != null) {
+        // with backgroundWarming, the caches are warmed once the new searcher is registered
+        if (currSearcher != null && !warmInBackground) {
           future =
               searcherExecutor.submit(
                   () -> {
@@ -2675,9 +2704,14 @@ public class SolrCore implements SolrInfoBean, Closeable {
                       throw (Error) e;
                     }
                   } finally {
-                    // we are all done with the old searcher we used
-                    // for warming...
-                    if (currSearcherHolderF != null) currSearcherHolderF.decref();
+                    if (warmInBackground) {
+                      // the old searcher is released once the background warming is done
+                      warmInBackground(newSearchHolder, currSearcherHolderF);
+                    } else if (currSearcherHolderF != null) {
+                      // we are all done with the old searcher we used
+                      // for warming...
+                      currSearcherHolderF.decref();
+                    }
                   }
                   return null;
                 });
@@ -2767,6 +2801,44 @@ public class SolrCore implements SolrInfoBean, Closeable {
     return isReloaded;
   }
 
+  /**
+   * Warms the caches of a just registered searcher from the previous searcher on the background
+   * warming pool, then releases both searchers.
+   */
+  private void warmInBackground(
+      RefCounted<SolrIndexSearcher> newSearcherHolder,
+      RefCounted<SolrIndexSearcher> currSearcherHolder) {
+    newSearcherHolder.incref();
+    try {
+      backgroundWarmingExecutor.submit(
+          () -> {
+            Timer.Context warmupContext = newSearcherWarmupTimer.time();
+            try {
+              newSearcherHolder
+                  .get()
+                  .warmInBackground(
+                      currSearcherHolder.get(),
+                      backgroundWarmingExecutor,
+                      solrConfig.backgroundWarmingThreads);
+            } catch (Throwable e) {
+              log.error("Exception warming new searcher", e);
+              if (e instanceof Error) {
+                throw (Error) e;
+              }
+            } finally {
+              warmupContext.close();
+              newSearcherHolder.decref();
+              currSearcherHolder.decref();
+            }
+            return null;
+          });
+    } catch (RejectedExecutionException e) {
+      // the core is closing
+      newSearcherHolder.decref();
+      currSearcherHolder.decref();
+    }
+  }
+
   // Take control of newSearcherHolder (which should have a reference count of at
   // least 1 already). If the caller wishes to use the newSearcherHolder directly
   // after registering it, then they should increment the reference count *before*
@@ -2788,6 +2860,8 @@ public class SolrCore implements SolrInfoBean, Closeable {
         }
 
         if (_searcher != null) {
+          // no use finishing to warm a searcher that no longer serves requests
+          _searcher.get().stopWarming();
           _searcher.decref(); // dec refcount for this._searcher
           _searcher = null;
         }
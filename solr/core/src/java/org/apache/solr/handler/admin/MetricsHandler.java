@@ -25,6 +25,7 @@ import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -49,6 +50,7 @@ import org.apache.solr.common.util.StrUtils;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.handler.RequestHandlerBase;
 import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.prometheus.SolrPrometheusRegistryCache;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.PrometheusResponseWriter;
@@ -79,6 +81,8 @@ public class MetricsHandler extends RequestHandlerBase implements PermissionName
   private final CoreContainer cc;
   private final Map<String, String> injectedSysProps = CommonTestInjection.injectAdditionalProps();
   private final boolean enabled;
+  private final SolrPrometheusRegistryCache prometheusRegistryCache =
+      new SolrPrometheusRegistryCache();
 
   public MetricsHandler(CoreContainer coreContainer) {
     this.metricManager = coreContainer.getMetricManager();
@@ -190,19 +194,33 @@ public class MetricsHandler extends RequestHandlerBase implements PermissionName
 
     for (String registryName : requestedRegistries) {
       MetricRegistry dropwizardRegistry = metricManager.registry(registryName);
-      PrometheusResponseWriter.toPrometheus(
-          dropwizardRegistry,
-          registryName,
-          metricFilters,
-          mustMatchFilter,
-          propertyFilter,
-          false,
-          false,
-          true,
-          (registry) -> {
-            response.add(registryName, registry);
-          });
+      if (propertyFilter != MetricUtils.ALL_PROPERTIES) {
+        // properties can only be filtered on the converted metrics
+        PrometheusResponseWriter.toPrometheus(
+            dropwizardRegistry,
+            registryName,
+            metricFilters,
+            mustMatchFilter,
+            propertyFilter,
+            false,
+            false,
+            true,
+            (registry) -> {
+              response.add(registryName, registry);
+            });
+      } else {
+        prometheusRegistryCache.toPrometheus(
+            dropwizardRegistry,
+            registryName,
+            metricFilters,
+            mustMatchFilter,
+            (registry) -> {
+              response.add(registryName, registry);
+            });
+      }
     }
+    // forget the registries that were removed, like the ones of unloaded cores
+    prometheusRegistryCache.retainAll(metricManager.registryNames());
     return response;
   }
 
@@ -533,6 +551,12 @@ public class MetricsHandler extends RequestHandlerBase implements PermissionName
     return Category.ADMIN;
   }
 
+  @Override
+  public void close() throws IOException {
+    prometheusRegistryCache.close();
+    super.close();
+  }
+
   enum MetricType {
     histogram(Histogram.class),
     meter(Meter.class),
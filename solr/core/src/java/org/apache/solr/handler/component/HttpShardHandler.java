@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -36,6 +37,7 @@ import org.apache.solr.client.solrj.impl.LBHttp2SolrClient;
 import org.apache.solr.client.solrj.impl.LBSolrClient;
 import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.routing.NoOpReplicaListTransformer;
+import org.apache.solr.client.solrj.routing.NodeLatencyStats;
 import org.apache.solr.client.solrj.routing.ReplicaListTransformer;
 import org.apache.solr.cloud.CloudDescriptor;
 import org.apache.solr.cloud.ZkController;
@@ -77,6 +79,9 @@ public class HttpShardHandler extends ShardHandler {
    */
   public static String ONLY_NRT_REPLICAS = "distribOnlyRealtime";
 
+  /** The least latency recorded for a node that failed a request, so that it's avoided a while. */
+  private static final long FAILED_REQUEST_LATENCY = TimeUnit.SECONDS.toNanos(1);
+
   private final HttpShardHandlerFactory httpShardHandlerFactory;
 
   /*
@@ -281,7 +286,7 @@ public class HttpShardHandler extends ShardHandler {
       SimpleSolrResponse ssr,
       ShardResponse srsp,
       long startTimeNS) {
-    CompletableFuture<LBSolrClient.Rsp> future = this.lbClient.requestAsync(lbReq);
+    CompletableFuture<LBSolrClient.Rsp> future = requestAsync(lbReq);
     future.whenComplete(new ShardRequestCallback(ssr, srsp, startTimeNS, sreq, shard, params));
     synchronized (FUTURE_MAP_LOCK) {
       // we want to ensure that there is a future in flight before incrementing
@@ -293,6 +298,46 @@ public class HttpShardHandler extends ShardHandler {
     }
   }
 
+  /**
+   * Sends a request to the replicas of a shard, hedging it with a request to another replica if the
+   * factory is configured to.
+   */
+  protected CompletableFuture<LBSolrClient.Rsp> requestAsync(LBSolrClient.Req lbReq) {
+    ShardRequestHedger hedger = httpShardHandlerFactory.hedger;
+    if (hedger == null) {
+      return send(lbReq);
+    }
+    return hedger.request(lbReq, this::send);
+  }
+
+  /**
+   * Sends a request with the load balancer, recording the latency of the first replica's node. A
+   * failure, or a response from another replica, counts as a slow response of that node.
+   */
+  private CompletableFuture<LBSolrClient.Rsp> send(LBSolrClient.Req lbReq) {
+    List<LBSolrClient.Endpoint> endpoints = lbReq.getEndpoints();
+    if (endpoints.isEmpty()) {
+      return this.lbClient.requestAsync(lbReq);
+    }
+    NodeLatencyStats stats = httpShardHandlerFactory.latencyStats;
+    String url = endpoints.get(0).toString();
+    stats.requestStarted(url);
+    long start = System.nanoTime();
+    CompletableFuture<LBSolrClient.Rsp> future = this.lbClient.requestAsync(lbReq);
+    future.whenComplete(
+        (rsp, t) -> {
+          long elapsed = System.nanoTime() - start;
+          if (t instanceof CancellationException) {
+            stats.requestCancelled(url);
+          } else if (t == null && url.equals(rsp.getServer())) {
+            stats.requestFinished(url, elapsed);
+          } else {
+            stats.requestFinished(url, Math.max(elapsed, FAILED_REQUEST_LATENCY));
+          }
+        });
+    return future;
+  }
+
   /** Subclasses could modify the request based on the shard */
   @SuppressWarnings("unused")
   protected QueryRequest createQueryRequest(
@@ -36,6 +36,8 @@ import org.apache.solr.client.solrj.impl.LBHttp2SolrClient;
 import org.apache.solr.client.solrj.impl.LBSolrClient;
 import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.routing.AffinityReplicaListTransformerFactory;
+import org.apache.solr.client.solrj.routing.LatencyReplicaListTransformerFactory;
+import org.apache.solr.client.solrj.routing.NodeLatencyStats;
 import org.apache.solr.client.solrj.routing.ReplicaListTransformer;
 import org.apache.solr.client.solrj.routing.ReplicaListTransformerFactory;
 import org.apache.solr.client.solrj.routing.RequestReplicaListTransformerGenerator;
@@ -93,6 +95,13 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
   int permittedLoadBalancerRequestsMinimumAbsolute = 0;
   float permittedLoadBalancerRequestsMaximumFraction = 1.0f;
   boolean accessPolicy = false;
+  boolean hedgeRequests = false;
+  float hedgeDelayPercentile = 95f;
+  int hedgeMinDelay = 10;
+  float hedgeMaxPercent = 5f;
+  protected ShardRequestHedger hedger;
+  // the latencies and outstanding requests of the nodes, for replica.base:latency
+  protected final NodeLatencyStats latencyStats = new NodeLatencyStats();
   private SolrMetricsContext solrMetricsContext;
 
   private String scheme = null;
@@ -102,7 +111,8 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
   protected final Random r = new Random();
 
   private RequestReplicaListTransformerGenerator requestReplicaListTransformerGenerator =
-      new RequestReplicaListTransformerGenerator();
+      new RequestReplicaListTransformerGenerator(
+          null, null, new LatencyReplicaListTransformerFactory(latencyStats));
 
   // URL scheme to be used in distributed search.
   static final String INIT_URL_SCHEME = "urlScheme";
@@ -128,6 +138,18 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
   // Configure if the threadpool favours fairness over throughput
   static final String INIT_FAIRNESS_POLICY = "fairnessPolicy";
 
+  // If a second request is sent to another replica when a shard is slower than usual to answer
+  static final String HEDGE_REQUESTS = "hedgeRequests";
+
+  // The percentile of a replica's latencies after which its requests are hedged
+  static final String HEDGE_DELAY_PERCENTILE = "hedgeDelayPercentile";
+
+  // The least time to wait, in milliseconds, before hedging a request
+  static final String HEDGE_MIN_DELAY = "hedgeMinDelay";
+
+  // The maximum percentage of shard requests that may be hedged
+  static final String HEDGE_MAX_PERCENT = "hedgeMaxPercent";
+
   /** Get {@link ShardHandler} that uses the default http client. */
   @Override
   public ShardHandler getShardHandler() {
@@ -159,6 +181,7 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
   private void initReplicaListTransformers(NamedList<?> routingConfig) {
     String defaultRouting = null;
     ReplicaListTransformerFactory stableRltFactory = null;
+    ReplicaListTransformerFactory latencyRltFactory = null;
     ReplicaListTransformerFactory defaultRltFactory;
     if (routingConfig != null && routingConfig.size() > 0) {
       Iterator<? extends Entry<String, ?>> iter = routingConfig.iterator();
@@ -179,6 +202,11 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
             defaultRouting = checkDefaultReplicaListTransformer(c, key, defaultRouting);
             stableRltFactory = new AffinityReplicaListTransformerFactory(c);
             break;
+          case ShardParams.REPLICA_LATENCY:
+            NamedList<?> l = getNamedList(e.getValue());
+            defaultRouting = checkDefaultReplicaListTransformer(l, key, defaultRouting);
+            latencyRltFactory = new LatencyReplicaListTransformerFactory(latencyStats, l);
+            break;
           default:
             throw new IllegalArgumentException("invalid replica routing spec name: " + key);
         }
@@ -187,13 +215,19 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
     if (stableRltFactory == null) {
       stableRltFactory = new AffinityReplicaListTransformerFactory();
     }
+    if (latencyRltFactory == null) {
+      latencyRltFactory = new LatencyReplicaListTransformerFactory(latencyStats);
+    }
     if (ShardParams.REPLICA_STABLE.equals(defaultRouting)) {
       defaultRltFactory = stableRltFactory;
+    } else if (ShardParams.REPLICA_LATENCY.equals(defaultRouting)) {
+      defaultRltFactory = latencyRltFactory;
     } else {
       defaultRltFactory = RequestReplicaListTransformerGenerator.RANDOM_RLTF;
     }
     this.requestReplicaListTransformerGenerator =
-        new RequestReplicaListTransformerGenerator(defaultRltFactory, stableRltFactory);
+        new RequestReplicaListTransformerGenerator(
+            defaultRltFactory, stableRltFactory, latencyRltFactory);
   }
 
   /**
@@ -216,6 +250,12 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
    *       false otherwise
    *   <li>replicaRouting - a NamedList of preferences used to select the order in which replicas
    *       for a shard will be used by created ShardHandlers
+   *   <li>hedgeRequests - true if a request should be sent to the next replica of a shard when the
+   *       first one takes longer than usual to answer, the first response being used
+   *   <li>hedgeDelayPercentile - the percentile of a replica's latencies after which its requests
+   *       are hedged
+   *   <li>hedgeMinDelay - the least time to wait, in milliseconds, before hedging a request
+   *   <li>hedgeMaxPercent - the maximum percentage of shard requests that may be hedged
    * </ul>
    *
    * @param info configuration for the created factory, typically reflecting the contents of a
@@ -260,6 +300,11 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
             permittedLoadBalancerRequestsMaximumFraction,
             sb);
     this.accessPolicy = getParameter(args, INIT_FAIRNESS_POLICY, accessPolicy, sb);
+    this.hedgeRequests = getParameter(args, HEDGE_REQUESTS, hedgeRequests, sb);
+    this.hedgeDelayPercentile =
+        getParameter(args, HEDGE_DELAY_PERCENTILE, hedgeDelayPercentile, sb);
+    this.hedgeMinDelay = getParameter(args, HEDGE_MIN_DELAY, hedgeMinDelay, sb);
+    this.hedgeMaxPercent = getParameter(args, HEDGE_MAX_PERCENT, hedgeMaxPercent, sb);
 
     if (args != null && args.get("shardsWhitelist") != null) {
       log.warn(
@@ -315,6 +360,9 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
             .build();
     this.defaultClient.addListenerFactory(this.httpListenerFactory);
     this.loadbalancer = new LBHttp2SolrClient.Builder<Http2SolrClient>(defaultClient).build();
+    if (hedgeRequests) {
+      this.hedger = new ShardRequestHedger(hedgeDelayPercentile, hedgeMinDelay, hedgeMaxPercent);
+    }
 
     initReplicaListTransformers(getParameter(args, "replicaRouting", null, sb));
 
@@ -353,6 +401,9 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
           IOUtils.closeQuietly(defaultClient);
         }
       } finally {
+        if (hedger != null) {
+          hedger.close();
+        }
         ExecutorUtil.shutdownAndAwaitTermination(commExecutor);
       }
     }
@@ -441,6 +492,9 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
     solrMetricsContext = parentContext.getChildContext(this);
     String expandedScope = SolrMetricManager.mkName(scope, SolrInfoBean.Category.QUERY.name());
     httpListenerFactory.initializeMetrics(solrMetricsContext, expandedScope);
+    if (hedger != null) {
+      hedger.initializeMetrics(solrMetricsContext, expandedScope);
+    }
     commExecutor =
         MetricUtils.instrumentedExecutorService(
             commExecutor,
@@ -24,9 +24,11 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Array;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -115,6 +117,7 @@ import org.apache.solr.search.grouping.endresulttransformer.EndResultTransformer
 import org.apache.solr.search.grouping.endresulttransformer.GroupedEndResultTransformer;
 import org.apache.solr.search.grouping.endresulttransformer.MainEndResultTransformer;
 import org.apache.solr.search.grouping.endresulttransformer.SimpleEndResultTransformer;
+import org.apache.solr.search.neural.KnnQParser;
 import org.apache.solr.search.stats.LocalStatsCache;
 import org.apache.solr.search.stats.StatsCache;
 import org.apache.solr.util.SolrPluginUtils;
@@ -619,6 +622,7 @@ public class QueryComponent extends SearchComponent {
     }
     if (rb.stage == ResponseBuilder.STAGE_PARSE_QUERY) {
       createDistributedStats(rb);
+      createKnnThresholdRequest(rb);
       return ResponseBuilder.STAGE_EXECUTE_QUERY;
     }
     if (rb.stage < ResponseBuilder.STAGE_EXECUTE_QUERY) {
@@ -671,6 +675,10 @@ public class QueryComponent extends SearchComponent {
       updateStats(rb, sreq);
     }
 
+    if ((sreq.purpose & ShardRequest.PURPOSE_GET_KNN_THRESHOLD) != 0) {
+      updateKnnThreshold(rb, sreq);
+    }
+
     if ((sreq.purpose & ShardRequest.PURPOSE_GET_FIELDS) != 0) {
       returnFields(rb, sreq);
     }
@@ -766,6 +774,71 @@ public class QueryComponent extends SearchComponent {
     cache.mergeToGlobalStats(rb.req, sreq.responses);
   }
 
+  /**
+   * Searches each shard for its share of the <code>topK</code> neighbors of a {@link KnnQParser}
+   * query using <code>globalTopK</code>, to estimate how similar the <code>topK</code>-th neighbor
+   * of the collection is. The main query then only searches the shards for the neighbors that are
+   * at least as similar.
+   */
+  protected void createKnnThresholdRequest(ResponseBuilder rb) {
+    if (!(rb.getQparser() instanceof KnnQParser knnParser)
+        || !knnParser.isGlobalTopK()
+        || rb.getRankQuery() != null
+        || rb.shards == null
+        || rb.shards.length < 2) {
+      return;
+    }
+    final int shardTopK = (knnParser.getTopK() + rb.shards.length - 1) / rb.shards.length;
+
+    ShardRequest sreq = new ShardRequest();
+    sreq.purpose = ShardRequest.PURPOSE_GET_KNN_THRESHOLD;
+    sreq.params = new ModifiableSolrParams(rb.req.getParams());
+    sreq.params.remove(ShardParams.SHARDS);
+    sreq.params.set(CommonParams.Q, knnParser.toShardQueryString(shardTopK, null));
+    sreq.params.set(CommonParams.START, "0");
+    sreq.params.set(CommonParams.ROWS, shardTopK);
+    sreq.params.set(CommonParams.FL, rb.req.getSchema().getUniqueKeyField().getName() + ",score");
+    rb.addRequest(this, sreq);
+  }
+
+  protected void updateKnnThreshold(ResponseBuilder rb, ShardRequest sreq) {
+    final int topK = ((KnnQParser) rb.getQparser()).getTopK();
+    final List<Float> similarities = new ArrayList<>();
+    for (ShardResponse srsp : sreq.responses) {
+      if (srsp.getException() != null) {
+        // the neighbors of the other shards still give a lower bound
+        continue;
+      }
+      final NamedList<?> responseHeader =
+          (NamedList<?>)
+              SolrResponseUtil.getSubsectionFromShardResponse(rb, srsp, "responseHeader", false);
+      final SolrDocumentList docs =
+          (SolrDocumentList)
+              SolrResponseUtil.getSubsectionFromShardResponse(rb, srsp, "response", false);
+      if (responseHeader == null || docs == null) {
+        continue;
+      }
+      final Object visitedNodes = responseHeader.get(KnnQParser.VISITED_NODES);
+      if (visitedNodes != null) {
+        rb.knnVisitedNodes.put(srsp.getShard(), ((Number) visitedNodes).longValue());
+      }
+      for (SolrDocument doc : docs) {
+        final Object scoreObj = doc.getFieldValue("score");
+        if (scoreObj instanceof String) {
+          similarities.add(Float.parseFloat((String) scoreObj));
+        } else if (scoreObj != null) {
+          similarities.add(((Number) scoreObj).floatValue());
+        }
+      }
+    }
+
+    // the topK-th of these neighbors can't be more similar than the topK-th of the collection
+    if (similarities.size() >= topK) {
+      similarities.sort(Collections.reverseOrder());
+      rb.knnMinSimilarity = similarities.get(topK - 1);
+    }
+  }
+
   protected void createMainQuery(ResponseBuilder rb) {
     ShardRequest sreq = new ShardRequest();
     sreq.purpose = ShardRequest.PURPOSE_GET_TOP_IDS;
@@ -796,6 +869,13 @@ public class QueryComponent extends SearchComponent {
     // don't pass through any shards param
     sreq.params.remove(ShardParams.SHARDS);
 
+    if (rb.knnMinSimilarity != null) {
+      // only search the shards for the neighbors that can make the topK of the collection
+      KnnQParser knnParser = (KnnQParser) rb.getQparser();
+      sreq.params.set(
+          CommonParams.Q, knnParser.toShardQueryString(knnParser.getTopK(), rb.knnMinSimilarity));
+    }
+
     // set the start (offset) to 0 for each shard request so we can properly merge
     // results from the start.
     if (rb.shards_start > -1) {
@@ -901,6 +981,8 @@ public class QueryComponent extends SearchComponent {
 
     // Merge the docs via a priority queue so we don't have to sort *all* of the
     // documents... we only need to order the top (rows+start)
+    // TODO: merge the docs of each shard response as it is decoded, and stop reading a shard's docs
+    // once they can't make the page, rather than buffering every shard response until all arrived
     final ShardFieldSortedHitQueue queue =
         new ShardFieldSortedHitQueue(
             sortFields, ss.getOffset() + ss.getCount(), rb.req.getSearcher());
@@ -916,6 +998,7 @@ public class QueryComponent extends SearchComponent {
     Float maxScore = null;
     boolean thereArePartialResults = false;
     Boolean segmentTerminatedEarly = null;
+    Long knnVisitedNodes = null;
     int failedShardCount = 0;
     for (ShardResponse srsp : sreq.responses) {
       SolrDocumentList docs = null;
@@ -960,6 +1043,10 @@ public class QueryComponent extends SearchComponent {
           nl.add("numFound", docs.getNumFound());
           nl.add("numFoundExact", docs.getNumFoundExact());
           nl.add("maxScore", docs.getMaxScore());
+          final Long shardKnnVisitedNodes = getKnnVisitedNodes(rb, srsp, responseHeader);
+          if (shardKnnVisitedNodes != null) {
+            nl.add(KnnQParser.VISITED_NODES, shardKnnVisitedNodes);
+          }
           nl.add("shardAddress", srsp.getShardAddress());
         }
         if (srsp.getSolrResponse() != null) {
@@ -1010,6 +1097,12 @@ public class QueryComponent extends SearchComponent {
         }
       }
 
+      final Long shardKnnVisitedNodes = getKnnVisitedNodes(rb, srsp, responseHeader);
+      if (shardKnnVisitedNodes != null) {
+        knnVisitedNodes =
+            knnVisitedNodes == null ? shardKnnVisitedNodes : knnVisitedNodes + shardKnnVisitedNodes;
+      }
+
       // calculate global maxScore and numDocsFound
       if (docs.getMaxScore() != null) {
         maxScore = maxScore == null ? docs.getMaxScore() : Math.max(maxScore, docs.getMaxScore());
@@ -1149,6 +1242,24 @@ public class QueryComponent extends SearchComponent {
                 segmentTerminatedEarly);
       }
     }
+    if (knnVisitedNodes != null) {
+      rb.rsp.getResponseHeader().add(KnnQParser.VISITED_NODES, knnVisitedNodes);
+    }
+  }
+
+  /**
+   * Returns the number of vectors a shard compared for the knn query of the request, including
+   * while estimating its similarity threshold, or null if it didn't count them.
+   */
+  private static Long getKnnVisitedNodes(
+      ResponseBuilder rb, ShardResponse srsp, NamedList<?> responseHeader) {
+    final Object visitedNodes = responseHeader.get(KnnQParser.VISITED_NODES);
+    final Long thresholdVisitedNodes = rb.knnVisitedNodes.get(srsp.getShard());
+    if (visitedNodes == null) {
+      return thresholdVisitedNodes;
+    }
+    return ((Number) visitedNodes).longValue()
+        + (thresholdVisitedNodes == null ? 0 : thresholdVisitedNodes);
   }
 
   /**
@@ -1230,18 +1341,48 @@ public class QueryComponent extends SearchComponent {
       if (null == schemaField) {
         unmarshalledSortValsPerField.add(sortField.getField(), sortVals);
       } else {
-        FieldType fieldType = schemaField.getType();
-        List<Object> unmarshalledSortVals = new ArrayList<>();
-        for (Object sortVal : sortVals) {
-          unmarshalledSortVals.add(fieldType.unmarshalSortValue(sortVal));
-        }
-        unmarshalledSortValsPerField.add(sortField.getField(), unmarshalledSortVals);
+        unmarshalledSortValsPerField.add(
+            sortField.getField(), new UnmarshalledSortValues(schemaField.getType(), sortVals));
       }
       marshalledFieldNum++;
     }
     return unmarshalledSortValsPerField;
   }
 
+  /**
+   * The sort values of a shard response, each unmarshalled the first time it is read. When merging,
+   * the queue only reads the values of a sort field for the docs it compares on that field, so the
+   * values of later sort fields are mostly left marshalled.
+   */
+  static final class UnmarshalledSortValues extends AbstractList<Object> {
+    private static final Object NOT_UNMARSHALLED = new Object();
+
+    private final FieldType fieldType;
+    private final List<Object> sortVals;
+    private final Object[] unmarshalled;
+
+    UnmarshalledSortValues(FieldType fieldType, List<Object> sortVals) {
+      this.fieldType = fieldType;
+      this.sortVals = sortVals;
+      this.unmarshalled = new Object[sortVals.size()];
+      Arrays.fill(unmarshalled, NOT_UNMARSHALLED);
+    }
+
+    @Override
+    public Object get(int index) {
+      Object val = unmarshalled[index];
+      if (val == NOT_UNMARSHALLED) {
+        val = unmarshalled[index] = fieldType.unmarshalSortValue(sortVals.get(index));
+      }
+      return val;
+    }
+
+    @Override
+    public int size() {
+      return unmarshalled.length;
+    }
+  }
+
   protected void createRetrieveDocs(ResponseBuilder rb) {
 
     // TODO: in a system with nTiers > 2, we could be passed "ids" here
@@ -1712,6 +1853,11 @@ public class QueryComponent extends SearchComponent {
       }
     }
 
+    final Long knnVisitedNodes = KnnQParser.getVisitedNodes(req);
+    if (knnVisitedNodes != null) {
+      rsp.getResponseHeader().add(KnnQParser.VISITED_NODES, knnVisitedNodes);
+    }
+
     if (rb.mergeFieldHandler != null) {
       rb.mergeFieldHandler.handleMergeFields(rb, searcher);
     } else {
@@ -174,6 +174,12 @@ public class ResponseBuilder {
 
   public boolean onePassDistributedQuery;
 
+  public Float knnMinSimilarity;
+  public final Map<String, Long> knnVisitedNodes = new HashMap<>();
+  // The similarity the neighbors of a globalTopK knn query have to reach on the shards, and
+  // the number of vectors each shard compared to estimate it.
+  // Only valid after STAGE_PARSE_QUERY has completed.
+
   public FacetComponent.FacetInfo _facetInfo;
   /* private... components that don't own these shouldn't use them */
   SolrDocumentList _responseDocs;
@@ -40,6 +40,7 @@ public class ShardRequest {
   public static final int PURPOSE_REFINE_PIVOT_FACETS = 0x2000;
   public static final int PURPOSE_SET_TERM_STATS = 0x4000;
   public static final int PURPOSE_GET_TERM_STATS = 0x8000;
+  public static final int PURPOSE_GET_KNN_THRESHOLD = 0x10000;
 
   public int purpose; // the purpose of this request
 
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import com.codahale.metrics.Counter;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.impl.LBSolrClient;
+import org.apache.solr.client.solrj.request.IsUpdateRequest;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.metrics.SolrMetricsContext;
+
+/**
+ * Sends a second, hedged request to another replica of a shard when the first one takes longer
+ * than it usually does, and takes whichever response comes first. The other request is cancelled.
+ *
+ * <p>How long a replica usually takes is a percentile of the latencies of its last responses.
+ * Replicas with too few responses yet are never hedged. Hedged requests are limited to a
+ * percentage of all the requests, so that a slow cluster isn't sent twice as many requests.
+ *
+ * <p>Updates and admin requests, which the load balancer doesn't retry either, are never hedged.
+ */
+class ShardRequestHedger implements Closeable {
+
+  /** Number of latencies kept per replica. */
+  static final int WINDOW = 128;
+
+  /** Number of responses of a replica before its requests may be hedged. */
+  static final int MIN_SAMPLES = 20;
+
+  /** How often, in responses, the hedge delay of a replica is recomputed. */
+  private static final int RECOMPUTE_EVERY = 16;
+
+  /** The budget of a hedge, in millionths: each request adds a fraction of it. */
+  private static final long HEDGE_COST = 1_000_000;
+
+  /** The most hedges that can be sent in a burst after a quiet period. */
+  private static final long MAX_BUDGET = 10 * HEDGE_COST;
+
+  private final float percentile;
+  private final long minDelayNanos;
+  private final long budgetPerRequest;
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, Latencies> latencies = new ConcurrentHashMap<>();
+  private final AtomicLong budget = new AtomicLong();
+
+  private Counter fired = new Counter();
+  private Counter won = new Counter();
+  private Counter overBudget = new Counter();
+
+  /**
+   * @param percentile the percentile of a replica's latencies after which its requests are hedged
+   * @param minDelayMillis the least time to wait before hedging a request
+   * @param maxPercent the most hedged requests, as a percentage of all the requests
+   */
+  ShardRequestHedger(float percentile, int minDelayMillis, float maxPercent) {
+    if (percentile <= 0 || percentile > 100) {
+      throw new IllegalArgumentException("Invalid hedge percentile: " + percentile);
+    }
+    if (maxPercent < 0 || maxPercent > 100) {
+      throw new IllegalArgumentException("Invalid maximum percentage of hedges: " + maxPercent);
+    }
+    this.percentile = percentile;
+    this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, minDelayMillis));
+    this.budgetPerRequest = Math.round(maxPercent * HEDGE_COST / 100);
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(1, new SolrNamedThreadFactory("httpShardHedger"));
+    executor.setRemoveOnCancelPolicy(true);
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    this.scheduler = executor;
+  }
+
+  void initializeMetrics(SolrMetricsContext solrMetricsContext, String scope) {
+    fired = solrMetricsContext.counter("fired", scope, "hedges");
+    won = solrMetricsContext.counter("won", scope, "hedges");
+    overBudget = solrMetricsContext.counter("overBudget", scope, "hedges");
+  }
+
+  /**
+   * Sends a request with {@code sender}, and sends it again to the next replicas in the list if no
+   * response came within the hedge delay of the first replica.
+   *
+   * @return a future of the first response, that cancels all the requests when cancelled
+   */
+  CompletableFuture<LBSolrClient.Rsp> request(
+      LBSolrClient.Req req,
+      Function<LBSolrClient.Req, CompletableFuture<LBSolrClient.Rsp>> sender) {
+    budget.getAndUpdate(b -> Math.min(b + budgetPerRequest, MAX_BUDGET));
+    List<LBSolrClient.Endpoint> endpoints = req.getEndpoints();
+    long delayNanos =
+        endpoints.size() > 1 && isHedgeable(req.getRequest())
+            ? getDelayNanos(endpoints.get(0).toString())
+            : -1;
+    if (delayNanos < 0) {
+      return send(req, sender);
+    }
+
+    HedgedRequest hedged = new HedgedRequest(sender, endpoints.get(0).toString());
+    hedged.send(req, false);
+    hedged.schedule(hedgeRequest(req), delayNanos);
+    return hedged.result;
+  }
+
+  /**
+   * Returns how long to wait for a response from a replica before hedging, or -1 if it hasn't
+   * answered enough requests yet.
+   */
+  long getDelayNanos(String url) {
+    Latencies l = latencies.get(url);
+    long delay = l == null ? -1 : l.getPercentile();
+    return delay < 0 ? -1 : Math.max(delay, minDelayNanos);
+  }
+
+  long getFired() {
+    return fired.getCount();
+  }
+
+  long getWon() {
+    return won.getCount();
+  }
+
+  long getOverBudget() {
+    return overBudget.getCount();
+  }
+
+  @Override
+  public void close() {
+    ExecutorUtil.shutdownAndAwaitTermination(scheduler);
+  }
+
+  /** Whether a request may be sent twice, as the load balancer would retry it. */
+  private static boolean isHedgeable(SolrRequest<?> request) {
+    return !(request instanceof IsUpdateRequest)
+        && !CommonParams.ADMIN_PATHS.contains(request.getPath());
+  }
+
+  /** The request, starting with the second replica and ending with the first one. */
+  private static LBSolrClient.Req hedgeRequest(LBSolrClient.Req req) {
+    List<LBSolrClient.Endpoint> endpoints = req.getEndpoints();
+    List<LBSolrClient.Endpoint> rotated = new ArrayList<>(endpoints.size());
+    rotated.addAll(endpoints.subList(1, endpoints.size()));
+    rotated.add(endpoints.get(0));
+    LBSolrClient.Req hedge =
+        new LBSolrClient.Req(req.getRequest(), rotated, req.getNumServersToTry());
+    hedge.setNumDeadServersToTry(req.getNumDeadServersToTry());
+    return hedge;
+  }
+
+  private CompletableFuture<LBSolrClient.Rsp> send(
+      LBSolrClient.Req req,
+      Function<LBSolrClient.Req, CompletableFuture<LBSolrClient.Rsp>> sender) {
+    long start = System.nanoTime();
+    CompletableFuture<LBSolrClient.Rsp> future = sender.apply(req);
+    future.whenComplete(
+        (rsp, t) -> {
+          if (rsp != null && rsp.getServer() != null) {
+            record(rsp.getServer(), System.nanoTime() - start);
+          }
+        });
+    // the future of the sender, so that cancelling it cancels the request
+    return future;
+  }
+
+  private void record(String url, long nanos) {
+    latencies.computeIfAbsent(url, u -> new Latencies(percentile)).record(nanos);
+  }
+
+  private boolean takeBudget() {
+    return budget.getAndUpdate(b -> b >= HEDGE_COST ? b - HEDGE_COST : b) >= HEDGE_COST;
+  }
+
+  /** A request and its hedge, if it was sent. */
+  private class HedgedRequest {
+    final CompletableFuture<LBSolrClient.Rsp> result = new CompletableFuture<>();
+    private final Function<LBSolrClient.Req, CompletableFuture<LBSolrClient.Rsp>> sender;
+    private final String url;
+    private final long start = System.nanoTime();
+    private final List<CompletableFuture<LBSolrClient.Rsp>> attempts = new ArrayList<>(2);
+    private volatile boolean hedged;
+    private int pending;
+    private ScheduledFuture<?> timer;
+
+    HedgedRequest(
+        Function<LBSolrClient.Req, CompletableFuture<LBSolrClient.Rsp>> sender, String url) {
+      this.sender = sender;
+      this.url = url;
+      // whichever way the result completes, including when it's cancelled, the rest is cancelled
+      result.whenComplete((rsp, t) -> cancelAll());
+    }
+
+    void schedule(LBSolrClient.Req hedge, long delayNanos) {
+      ScheduledFuture<?> scheduled =
+          scheduler.schedule(() -> sendHedge(hedge), delayNanos, TimeUnit.NANOSECONDS);
+      synchronized (this) {
+        timer = scheduled;
+      }
+      if (result.isDone()) {
+        scheduled.cancel(false);
+      }
+    }
+
+    private void sendHedge(LBSolrClient.Req hedge) {
+      if (result.isDone()) {
+        return;
+      }
+      if (!takeBudget()) {
+        overBudget.inc();
+        return;
+      }
+      fired.inc();
+      hedged = true;
+      send(hedge, true);
+    }
+
+    void send(LBSolrClient.Req req, boolean isHedge) {
+      CompletableFuture<LBSolrClient.Rsp> attempt = ShardRequestHedger.this.send(req, sender);
+      synchronized (this) {
+        attempts.add(attempt);
+        pending++;
+      }
+      attempt.whenComplete((rsp, t) -> completed(rsp, t, isHedge));
+      if (!isHedge) {
+        // a first replica that lost to the hedge took at least this long: leaving it out would
+        // keep its slowest requests out of its latencies, and so its hedge delay too short
+        attempt.whenComplete(
+            (rsp, t) -> {
+              if (t instanceof CancellationException && hedged) {
+                record(url, System.nanoTime() - start);
+              }
+            });
+      }
+      if (result.isDone()) {
+        attempt.cancel(true);
+      }
+    }
+
+    private void completed(LBSolrClient.Rsp rsp, Throwable t, boolean isHedge) {
+      if (t == null) {
+        if (result.complete(rsp) && isHedge) {
+          won.inc();
+        }
+        return;
+      }
+      synchronized (this) {
+        // the other request may still answer
+        if (--pending > 0) {
+          return;
+        }
+      }
+      // the load balancer already tried the other replicas, so there's no point in hedging
+      result.completeExceptionally(t);
+    }
+
+    private void cancelAll() {
+      List<CompletableFuture<LBSolrClient.Rsp>> toCancel;
+      synchronized (this) {
+        if (timer != null) {
+          timer.cancel(false);
+        }
+        toCancel = new ArrayList<>(attempts);
+      }
+      for (CompletableFuture<LBSolrClient.Rsp> attempt : toCancel) {
+        attempt.cancel(true);
+      }
+    }
+  }
+
+  /** The latest latencies of a replica. */
+  private static class Latencies {
+    private final float percentile;
+    private final long[] samples = new long[WINDOW];
+    private long count;
+    private long value = -1;
+
+    Latencies(float percentile) {
+      this.percentile = percentile;
+    }
+
+    synchronized void record(long nanos) {
+      samples[(int) (count++ % WINDOW)] = nanos;
+      if (count >= MIN_SAMPLES && (count == MIN_SAMPLES || count % RECOMPUTE_EVERY == 0)) {
+        int n = (int) Math.min(count, WINDOW);
+        long[] sorted = Arrays.copyOf(samples, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * n) - 1;
+        value = sorted[Math.max(0, Math.min(index, n - 1))];
+      }
+    }
+
+    synchronized long getPercentile() {
+      return value;
+    }
+  }
+}
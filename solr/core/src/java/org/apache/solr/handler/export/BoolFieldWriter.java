@@ -37,4 +37,9 @@ class BoolFieldWriter extends StringFieldWriter {
     fieldType.indexedToReadable(ref, cref);
     ew.put(this.field, "true".equals(cref.toString()));
   }
+
+  @Override
+  ExportColumn newColumn() {
+    return new ExportColumn.Bool(field, docValuesCache);
+  }
 }
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.handler.export;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.solr.common.MapWriter;
+
+/**
+ * Writes the docs of an {@link ExportBuffers.Buffer} as a single batch of {@link ExportColumn}s
+ * instead of one map per doc. The docs keep their sort order within the batch, but each column is
+ * filled by visiting the docs in index order, so DocValues are read sequentially and the values
+ * land directly in reusable primitive buffers.
+ */
+class ColumnarBatchWriter implements MapWriter {
+  private final List<LeafReaderContext> leaves;
+  private final ExportColumn[] columns;
+
+  private int count;
+  // (docBase + docId) << 32 | position in the batch, sorted to give index order
+  private long[] order = new long[0];
+
+  ColumnarBatchWriter(List<LeafReaderContext> leaves, ExportColumn[] columns) {
+    this.leaves = leaves;
+    this.columns = columns;
+  }
+
+  /** Reads the values of all the docs in the buffer. */
+  void fill(ExportBuffers.Buffer buffer) throws IOException {
+    count = Math.max(0, buffer.outDocsIndex + 1);
+    if (count == 0) {
+      return;
+    }
+    if (order.length < count) {
+      order = new long[ArrayUtil.oversize(count, Long.BYTES)];
+    }
+    for (int i = 0; i < count; i++) {
+      SortDoc doc = buffer.outDocs[i];
+      order[i] = ((long) (doc.docBase + doc.docId) << 32) | i;
+    }
+    Arrays.sort(order, 0, count);
+
+    for (ExportColumn column : columns) {
+      column.reset(count);
+      int leaf = 0;
+      LeafReaderContext context = leaves.get(0);
+      int nextDocBase = leaves.size() > 1 ? leaves.get(1).docBase : Integer.MAX_VALUE;
+      for (int i = 0; i < count; i++) {
+        int globalDoc = (int) (order[i] >>> 32);
+        while (globalDoc >= nextDocBase) {
+          context = leaves.get(++leaf);
+          nextDocBase = leaf + 1 < leaves.size() ? leaves.get(leaf + 1).docBase : Integer.MAX_VALUE;
+        }
+        column.read(context, globalDoc - context.docBase, (int) order[i]);
+      }
+    }
+  }
+
+  int size() {
+    return count;
+  }
+
+  @Override
+  public void writeMap(EntryWriter ew) throws IOException {
+    ew.put("count", count);
+    for (ExportColumn column : columns) {
+      ew.put(column.field, column);
+    }
+  }
+}
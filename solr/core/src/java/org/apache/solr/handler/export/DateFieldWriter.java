@@ -32,4 +32,9 @@ class DateFieldWriter extends LongFieldWriter {
   protected void doWrite(MapWriter.EntryWriter ew, long val) throws IOException {
     ew.put(field, new Date(val));
   }
+
+  @Override
+  ExportColumn newColumn() {
+    return new ExportColumn.Numeric(field, "date", Long.BYTES, docValuesCache);
+  }
 }
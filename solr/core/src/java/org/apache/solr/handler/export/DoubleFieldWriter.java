@@ -59,4 +59,9 @@ class DoubleFieldWriter extends FieldWriter {
     ew.put(this.field, val);
     return true;
   }
+
+  @Override
+  ExportColumn newColumn() {
+    return new ExportColumn.Numeric(field, "double", Long.BYTES, docValuesCache);
+  }
 }
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.handler.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.search.DocValuesIteratorCache;
+
+/**
+ * The values of one field for a batch of exported docs, laid out like an Apache Arrow vector: a
+ * validity bitmap (only written when some docs have no value), followed by either fixed width
+ * little-endian values or UTF-8 bytes with offsets. The buffers are reused from batch to batch.
+ *
+ * @see ColumnarBatchWriter
+ */
+abstract class ExportColumn implements MapWriter {
+  final String field;
+  private final String type;
+  final DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache;
+
+  int count;
+  private int present;
+  private byte[] validity = new byte[0];
+
+  ExportColumn(
+      String field, String type, DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache) {
+    this.field = field;
+    this.type = type;
+    this.docValuesCache = docValuesCache;
+  }
+
+  /** Clears the column for a batch of {@code count} docs. */
+  void reset(int count) {
+    this.count = count;
+    this.present = 0;
+    int bytes = bitmapBytes(count);
+    if (validity.length < bytes) {
+      validity = new byte[ArrayUtil.oversize(bytes, 1)];
+    } else {
+      Arrays.fill(validity, 0, bytes, (byte) 0);
+    }
+  }
+
+  /**
+   * Reads the value of a doc into the given position of the batch. Within a batch, the docs of a
+   * segment are read in increasing docId order so that the DocValues iterators only move forward.
+   */
+  abstract void read(LeafReaderContext context, int docId, int position) throws IOException;
+
+  abstract void writeValues(EntryWriter ew) throws IOException;
+
+  void setPresent(int position) {
+    validity[position >>> 3] |= (byte) (1 << (position & 7));
+    present++;
+  }
+
+  @Override
+  public void writeMap(EntryWriter ew) throws IOException {
+    ew.put("type", type);
+    if (present < count) {
+      ew.put("validity", ByteBuffer.wrap(validity, 0, bitmapBytes(count)));
+    }
+    writeValues(ew);
+  }
+
+  static int bitmapBytes(int count) {
+    return (count + 7) >>> 3;
+  }
+
+  private static ByteBuffer grow(ByteBuffer buffer, int bytes) {
+    if (buffer.capacity() >= bytes) {
+      Arrays.fill(buffer.array(), 0, bytes, (byte) 0);
+      return buffer;
+    }
+    return ByteBuffer.allocate(ArrayUtil.oversize(bytes, 1)).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Numeric DocValues copied as they are stored: ints and floats as 4 bytes, longs, doubles and
+   * dates (epoch millis) as 8 bytes. Floats and doubles are already stored as their IEEE bits.
+   */
+  static final class Numeric extends ExportColumn {
+    private final int width;
+    private ByteBuffer values = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+
+    Numeric(
+        String field,
+        String type,
+        int width,
+        DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache) {
+      super(field, type, docValuesCache);
+      assert width == Integer.BYTES || width == Long.BYTES;
+      this.width = width;
+    }
+
+    @Override
+    void reset(int count) {
+      super.reset(count);
+      values = grow(values, count * width);
+    }
+
+    @Override
+    void read(LeafReaderContext context, int docId, int position) throws IOException {
+      NumericDocValues vals =
+          docValuesCache.getNumericDocValues(docId, context.reader(), context.ord);
+      if (vals == null) {
+        return;
+      }
+      if (width == Long.BYTES) {
+        values.putLong(position * Long.BYTES, vals.longValue());
+      } else {
+        values.putInt(position * Integer.BYTES, (int) vals.longValue());
+      }
+      setPresent(position);
+    }
+
+    @Override
+    void writeValues(EntryWriter ew) throws IOException {
+      ew.put("values", ByteBuffer.wrap(values.array(), 0, count * width));
+    }
+  }
+
+  /** Booleans packed into a bitmap, in the same bit order as the validity bitmap. */
+  static final class Bool extends ExportColumn {
+    private byte[] values = new byte[0];
+
+    Bool(String field, DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache) {
+      super(field, "boolean", docValuesCache);
+    }
+
+    @Override
+    void reset(int count) {
+      super.reset(count);
+      int bytes = bitmapBytes(count);
+      if (values.length < bytes) {
+        values = new byte[ArrayUtil.oversize(bytes, 1)];
+      } else {
+        Arrays.fill(values, 0, bytes, (byte) 0);
+      }
+    }
+
+    @Override
+    void read(LeafReaderContext context, int docId, int position) throws IOException {
+      SortedDocValues vals = docValuesCache.getSortedDocValues(docId, context.reader(), context.ord);
+      if (vals == null) {
+        return;
+      }
+      // BoolField indexes true as "T" and false as "F"
+      BytesRef ref = vals.lookupOrd(vals.ordValue());
+      if (ref.length > 0 && ref.bytes[ref.offset] == 'T') {
+        values[position >>> 3] |= (byte) (1 << (position & 7));
+      }
+      setPresent(position);
+    }
+
+    @Override
+    void writeValues(EntryWriter ew) throws IOException {
+      ew.put("values", ByteBuffer.wrap(values, 0, bitmapBytes(count)));
+    }
+  }
+
+  /**
+   * Strings written as {@code count + 1} little-endian int offsets into their concatenated UTF-8
+   * bytes. Values are read in doc order but must be written in batch order, so the bytes are
+   * gathered in a scratch buffer first and then copied into place.
+   */
+  static final class Strings extends ExportColumn {
+    private int[] starts = new int[0];
+    private int[] lengths = new int[0];
+    private byte[] scratch = new byte[0];
+    private int scratchLength;
+    private byte[] values = new byte[0];
+    private ByteBuffer offsets = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+
+    Strings(String field, DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache) {
+      super(field, "string", docValuesCache);
+    }
+
+    @Override
+    void reset(int count) {
+      super.reset(count);
+      if (lengths.length < count) {
+        starts = new int[ArrayUtil.oversize(count, Integer.BYTES)];
+        lengths = new int[starts.length];
+      } else {
+        Arrays.fill(lengths, 0, count, 0);
+      }
+      scratchLength = 0;
+      offsets = grow(offsets, (count + 1) * Integer.BYTES);
+    }
+
+    @Override
+    void read(LeafReaderContext context, int docId, int position) throws IOException {
+      SortedDocValues vals = docValuesCache.getSortedDocValues(docId, context.reader(), context.ord);
+      if (vals == null) {
+        return;
+      }
+      BytesRef ref = vals.lookupOrd(vals.ordValue());
+      scratch = ArrayUtil.grow(scratch, scratchLength + ref.length);
+      System.arraycopy(ref.bytes, ref.offset, scratch, scratchLength, ref.length);
+      starts[position] = scratchLength;
+      lengths[position] = ref.length;
+      scratchLength += ref.length;
+      setPresent(position);
+    }
+
+    @Override
+    void writeValues(EntryWriter ew) throws IOException {
+      values = ArrayUtil.grow(values, scratchLength);
+      int end = 0;
+      for (int i = 0; i < count; i++) {
+        offsets.putInt(i * Integer.BYTES, end);
+        System.arraycopy(scratch, starts[i], values, end, lengths[i]);
+        end += lengths[i];
+      }
+      offsets.putInt(count * Integer.BYTES, end);
+      ew.put("offsets", ByteBuffer.wrap(offsets.array(), 0, (count + 1) * Integer.BYTES));
+      ew.put("values", ByteBuffer.wrap(values, 0, end));
+    }
+  }
+}
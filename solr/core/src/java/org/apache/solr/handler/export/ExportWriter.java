@@ -99,6 +99,11 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
 
   public static final String BATCH_SIZE_PARAM = "batchSize";
   public static final String QUEUE_SIZE_PARAM = "queueSize";
+  /**
+   * Write each batch of docs as columns of primitive values rather than one map per doc. Only
+   * supported with {@code wt=javabin}.
+   */
+  public static final String COLUMNAR_PARAM = StreamParams.COLUMNAR;
 
   public static final int DEFAULT_BATCH_SIZE = 30000;
   public static final int DEFAULT_QUEUE_SIZE = 150000;
@@ -124,6 +129,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   StreamExpression streamExpression;
   StreamContext streamContext;
   List<FieldWriter> fieldWriters;
+  ColumnarBatchWriter columnarWriter;
   int totalHits = 0;
   FixedBitSet[] sets = null;
   PushWriter writer;
@@ -302,6 +308,23 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     }
 
     String expr = params.get(StreamParams.EXPR);
+    if (params.getBool(COLUMNAR_PARAM, false)) {
+      if (!(writer instanceof JavaBinCodec) || expr != null) {
+        writeException(
+            (new IOException(
+                new SyntaxError(
+                    COLUMNAR_PARAM + " export requires wt=javabin and can't be used with expr"))),
+            writer,
+            true);
+        return;
+      }
+      try {
+        columnarWriter = getColumnarWriter(fieldWriters, req);
+      } catch (Exception e) {
+        writeException(e, writer, true);
+        return;
+      }
+    }
     if (expr != null) {
       StreamFactory streamFactory = initialStreamContext.getStreamFactory();
       streamFactory.withDefaultSort(params.get(CommonParams.SORT));
@@ -341,7 +364,9 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
                 (MapWriter)
                     mw -> {
                       mw.put("numFound", totalHits);
-                      mw.put("docs", (IteratorWriter) iw -> writeDocs(req, os, iw, sort));
+                      mw.put(
+                          columnarWriter == null ? "docs" : "batches",
+                          (IteratorWriter) iw -> writeDocs(req, os, iw, sort));
                     });
           });
     } catch (java.io.EOFException e) {
@@ -446,12 +471,19 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
                 log.debug("--- writer interrupted");
                 break;
               }
-              for (int i = 0; i <= buffer.outDocsIndex; ++i) {
-                // we're using the raw writer here because there's no potential
-                // reduction in the number of output items, unlike when using
-                // streaming expressions
-                final SortDoc currentDoc = buffer.outDocs[i];
-                writer.add((MapWriter) ew -> writeDoc(currentDoc, leaves, ew, fieldWriters));
+              if (columnarWriter != null) {
+                columnarWriter.fill(buffer);
+                if (columnarWriter.size() > 0) {
+                  writer.add(columnarWriter);
+                }
+              } else {
+                for (int i = 0; i <= buffer.outDocsIndex; ++i) {
+                  // we're using the raw writer here because there's no potential
+                  // reduction in the number of output items, unlike when using
+                  // streaming expressions
+                  final SortDoc currentDoc = buffer.outDocs[i];
+                  writer.add((MapWriter) ew -> writeDoc(currentDoc, leaves, ew, fieldWriters));
+                }
               }
               // log.debug("--- writer exchanging from {}", buffer);
               long startExchangeBuffers = System.nanoTime();
@@ -577,6 +609,24 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     return writers;
   }
 
+  ColumnarBatchWriter getColumnarWriter(List<FieldWriter> writers, SolrQueryRequest req)
+      throws IOException {
+    List<ExportColumn> columns = new ArrayList<>(writers.size());
+    for (FieldWriter fieldWriter : writers) {
+      if (fieldWriter == EMPTY_FIELD_WRITER) {
+        continue;
+      }
+      ExportColumn column = fieldWriter.newColumn();
+      if (column == null) {
+        throw new IOException(
+            "Only single valued fields can be exported with " + COLUMNAR_PARAM + "=true");
+      }
+      columns.add(column);
+    }
+    return new ColumnarBatchWriter(
+        req.getSearcher().getTopReaderContext().leaves(), columns.toArray(new ExportColumn[0]));
+  }
+
   SortDoc getSortDoc(SolrIndexSearcher searcher, SortField[] sortFields) throws IOException {
     SortValue[] sortValues = new SortValue[sortFields.length];
     IndexSchema schema = searcher.getSchema();
@@ -25,4 +25,12 @@ abstract class FieldWriter {
   public abstract boolean write(
       SortDoc sortDoc, LeafReaderContext readerContext, MapWriter.EntryWriter out, int fieldIndex)
       throws IOException;
+
+  /**
+   * Returns a column that reads this field for a whole batch of docs, or null if the field can only
+   * be written doc by doc.
+   */
+  ExportColumn newColumn() {
+    return null;
+  }
 }
@@ -59,4 +59,9 @@ class FloatFieldWriter extends FieldWriter {
     ew.put(this.field, val);
     return true;
   }
+
+  @Override
+  ExportColumn newColumn() {
+    return new ExportColumn.Numeric(field, "float", Integer.BYTES, docValuesCache);
+  }
 }
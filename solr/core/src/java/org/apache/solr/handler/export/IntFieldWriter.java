@@ -59,4 +59,9 @@ class IntFieldWriter extends FieldWriter {
     ew.put(this.field, val);
     return true;
   }
+
+  @Override
+  ExportColumn newColumn() {
+    return new ExportColumn.Numeric(field, "int", Integer.BYTES, docValuesCache);
+  }
 }
@@ -26,7 +26,7 @@ import org.apache.solr.search.DocValuesIteratorCache;
 class LongFieldWriter extends FieldWriter {
   protected final String field;
 
-  private final DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache;
+  protected final DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache;
 
   public LongFieldWriter(
       String field, DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache) {
@@ -64,4 +64,9 @@ class LongFieldWriter extends FieldWriter {
   protected void doWrite(MapWriter.EntryWriter ew, long val) throws IOException {
     ew.put(field, val);
   }
+
+  @Override
+  ExportColumn newColumn() {
+    return new ExportColumn.Numeric(field, "long", Long.BYTES, docValuesCache);
+  }
 }
@@ -33,7 +33,7 @@ class StringFieldWriter extends FieldWriter {
   private final FieldType fieldType;
   private BytesRef lastRef;
   private int lastOrd = -1;
-  private final DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache;
+  protected final DocValuesIteratorCache.FieldDocValuesSupplier docValuesCache;
 
   protected CharsRefBuilder cref = new CharsRefBuilder();
   final ByteArrayUtf8CharSequence utf8 =
@@ -114,4 +114,9 @@ class StringFieldWriter extends FieldWriter {
       ew.put(this.field, cref.toString());
     }
   }
+
+  @Override
+  ExportColumn newColumn() {
+    return new ExportColumn.Strings(field, docValuesCache);
+  }
 }
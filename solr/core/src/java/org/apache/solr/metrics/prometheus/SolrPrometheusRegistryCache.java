@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.metrics.prometheus;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.apache.solr.response.PrometheusResponseWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the {@link SolrMetric}s of each Dropwizard registry exported to Prometheus, with their
+ * parsed names and labels, so that a scrape only reads the values of the metrics. The metrics of a
+ * registry are categorized again only once metrics are added to, or removed from the registry.
+ */
+public class SolrPrometheusRegistryCache implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final Map<String, CachedRegistry> registries = new ConcurrentHashMap<>();
+
+  /**
+   * Exports the metrics of the given registry matching the filters to a new {@link
+   * SolrPrometheusFormatter}
+   *
+   * @param registry the {@link MetricRegistry} to be exported
+   * @param registryName the name of the registry
+   * @param shouldMatchFilters a metric must match <em>any one</em> of these filters to be exported
+   * @param mustMatchFilter a metric <em>must</em> match this filter to be exported
+   * @param consumer consumer that accepts the produced {@link SolrPrometheusFormatter}
+   */
+  public void toPrometheus(
+      MetricRegistry registry,
+      String registryName,
+      List<MetricFilter> shouldMatchFilters,
+      MetricFilter mustMatchFilter,
+      Consumer<SolrPrometheusFormatter> consumer) {
+    SolrPrometheusFormatter formatter = PrometheusResponseWriter.getFormatterType(registryName);
+    if (formatter == null) {
+      return;
+    }
+
+    CachedRegistry cached = registries.get(registryName);
+    if (cached == null || cached.registry != registry) {
+      // the registry was created, or replaced
+      cached =
+          registries.compute(
+              registryName,
+              (name, previous) -> {
+                if (previous != null && previous.registry == registry) {
+                  return previous;
+                }
+                if (previous != null) {
+                  previous.close();
+                }
+                return new CachedRegistry(name, registry);
+              });
+    }
+
+    for (SolrMetric metric : cached.getMetrics()) {
+      if (!mustMatchFilter.matches(metric.metricName, metric.dropwizardMetric)
+          || shouldMatchFilters.stream()
+              .noneMatch(filter -> filter.matches(metric.metricName, metric.dropwizardMetric))) {
+        continue;
+      }
+      try {
+        metric.toPrometheus(formatter);
+      } catch (Exception e) {
+        // Do not fail entirely for metrics exporting. Log and try to export next metric
+        log.warn("Error occurred exporting Dropwizard Metric to Prometheus", e);
+      }
+    }
+    consumer.accept(formatter);
+  }
+
+  /** Removes the registries that aren't in <code>registryNames</code> anymore */
+  public void retainAll(Collection<String> registryNames) {
+    registries
+        .entrySet()
+        .removeIf(
+            entry -> {
+              if (registryNames.contains(entry.getKey())) {
+                return false;
+              }
+              entry.getValue().close();
+              return true;
+            });
+  }
+
+  @Override
+  public void close() {
+    retainAll(List.of());
+  }
+
+  /** The categorized metrics of a registry, categorized again once the registry changes */
+  private static final class CachedRegistry implements MetricRegistryListener {
+    final String registryName;
+    final MetricRegistry registry;
+    private volatile boolean dirty = true;
+    private volatile List<SolrMetric> metrics = List.of();
+
+    CachedRegistry(String registryName, MetricRegistry registry) {
+      this.registryName = registryName;
+      this.registry = registry;
+      registry.addListener(this);
+    }
+
+    List<SolrMetric> getMetrics() {
+      if (dirty) {
+        synchronized (this) {
+          if (dirty) {
+            // metrics changing while they are categorized make the registry dirty again
+            dirty = false;
+            metrics = categorize();
+          }
+        }
+      }
+      return metrics;
+    }
+
+    private List<SolrMetric> categorize() {
+      SolrPrometheusFormatter formatter = PrometheusResponseWriter.getFormatterType(registryName);
+      List<SolrMetric> categorized = new ArrayList<>();
+      registry
+          .getMetrics()
+          .forEach(
+              (name, dropwizardMetric) -> {
+                try {
+                  SolrMetric solrMetric =
+                      formatter.categorizeMetric(dropwizardMetric, name).parseLabels();
+                  if (solrMetric instanceof SolrNoOpMetric) {
+                    return;
+                  }
+                  // the first export finishes updating the labels, so that later exports don't
+                  // modify the metric, and can run concurrently
+                  solrMetric.toPrometheus(formatter);
+                  categorized.add(solrMetric);
+                } catch (Exception e) {
+                  log.warn("Error occurred exporting Dropwizard Metric to Prometheus", e);
+                }
+              });
+      return categorized;
+    }
+
+    void close() {
+      registry.removeListener(this);
+    }
+
+    private void changed() {
+      dirty = true;
+    }
+
+    @Override
+    public void onGaugeAdded(String name, Gauge<?> gauge) {
+      changed();
+    }
+
+    @Override
+    public void onGaugeRemoved(String name) {
+      changed();
+    }
+
+    @Override
+    public void onCounterAdded(String name, Counter counter) {
+      changed();
+    }
+
+    @Override
+    public void onCounterRemoved(String name) {
+      changed();
+    }
+
+    @Override
+    public void onHistogramAdded(String name, Histogram histogram) {
+      changed();
+    }
+
+    @Override
+    public void onHistogramRemoved(String name) {
+      changed();
+    }
+
+    @Override
+    public void onMeterAdded(String name, Meter meter) {
+      changed();
+    }
+
+    @Override
+    public void onMeterRemoved(String name) {
+      changed();
+    }
+
+    @Override
+    public void onTimerAdded(String name, Timer timer) {
+      changed();
+    }
+
+    @Override
+    public void onTimerRemoved(String name) {
+      changed();
+    }
+  }
+}
@@ -95,11 +95,11 @@ public class PrometheusResponseWriter extends RawResponseWriter {
       boolean skipAggregateValues,
       boolean compact,
       Consumer<SolrPrometheusFormatter> consumer) {
-    Map<String, Metric> dropwizardMetrics = registry.getMetrics();
     var formatter = getFormatterType(registryName);
     if (formatter == null) {
       return;
     }
+    Map<String, Metric> dropwizardMetrics = registry.getMetrics();
 
     MetricUtils.toMaps(
         registry,
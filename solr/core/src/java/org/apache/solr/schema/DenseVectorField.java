@@ -68,6 +68,8 @@ public class DenseVectorField extends FloatPointField {
   static final String HNSW_MAX_CONNECTIONS = "hnswMaxConnections";
   static final String HNSW_BEAM_WIDTH = "hnswBeamWidth";
   static final String VECTOR_ENCODING = "vectorEncoding";
+  static final String VECTOR_QUANTIZATION = "vectorQuantization";
+  static final VectorQuantization DEFAULT_VECTOR_QUANTIZATION = VectorQuantization.NONE;
   static final VectorEncoding DEFAULT_VECTOR_ENCODING = VectorEncoding.FLOAT32;
   static final String KNN_SIMILARITY_FUNCTION = "similarityFunction";
   static final VectorSimilarityFunction DEFAULT_SIMILARITY = VectorSimilarityFunction.EUCLIDEAN;
@@ -93,6 +95,35 @@ public class DenseVectorField extends FloatPointField {
    */
   private VectorEncoding vectorEncoding;
 
+  /**
+   * Scalar quantization of the indexed vectors, which keeps the vectors searched by the hnsw
+   * algorithm in a fraction of the memory of the FLOAT32 vectors. The full precision vectors are
+   * still stored in the index, and are used to rescore the results by {@link
+   * org.apache.solr.search.neural.KnnQParser}. The default is NONE
+   */
+  private VectorQuantization vectorQuantization = DEFAULT_VECTOR_QUANTIZATION;
+
+  /** The scalar quantizations supported for FLOAT32 vectors */
+  public enum VectorQuantization {
+    /** No quantization, the hnsw algorithm searches the full precision vectors */
+    NONE(0),
+    /** One byte per dimension, using 7 bits per value */
+    INT8(7),
+    /** Half a byte per dimension */
+    INT4(4);
+
+    private final int bits;
+
+    VectorQuantization(int bits) {
+      this.bits = bits;
+    }
+
+    /** The number of bits each dimension is quantized to */
+    public int getBits() {
+      return bits;
+    }
+  }
+
   public DenseVectorField() {
     super();
   }
@@ -140,6 +171,17 @@ public class DenseVectorField extends FloatPointField {
             .orElse(DEFAULT_VECTOR_ENCODING);
     args.remove(VECTOR_ENCODING);
 
+    this.vectorQuantization =
+        ofNullable(args.get(VECTOR_QUANTIZATION))
+            .map(value -> VectorQuantization.valueOf(value.toUpperCase(Locale.ROOT)))
+            .orElse(DEFAULT_VECTOR_QUANTIZATION);
+    args.remove(VECTOR_QUANTIZATION);
+    if (vectorQuantization != VectorQuantization.NONE && vectorEncoding != VectorEncoding.FLOAT32) {
+      throw new SolrException(
+          SolrException.ErrorCode.SERVER_ERROR,
+          "vector quantization is only supported for the FLOAT32 vector encoding");
+    }
+
     this.hnswMaxConn =
         ofNullable(args.get(HNSW_MAX_CONNECTIONS)).map(Integer::parseInt).orElse(DEFAULT_MAX_CONN);
     args.remove(HNSW_MAX_CONNECTIONS);
@@ -178,6 +220,10 @@ public class DenseVectorField extends FloatPointField {
     return vectorEncoding;
   }
 
+  public VectorQuantization getVectorQuantization() {
+    return vectorQuantization;
+  }
+
   @Override
   protected boolean enableDocValuesByDefault() {
     return false;
@@ -210,6 +210,8 @@ public class BitDocSet extends DocSet {
   protected static void andNot(FixedBitSet bits, DocSet other) {
     if (other instanceof BitDocSet) {
       bits.andNot(((BitDocSet) other).bits);
+    } else if (other instanceof RoaringDocSet) {
+      ((RoaringDocSet) other).removeAllFrom(bits);
     } else {
       DocIterator iter = other.iterator();
       while (iter.hasNext()) {
@@ -28,22 +28,28 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.metrics.MetricsMap;
 import org.apache.solr.metrics.SolrMetricsContext;
+import org.apache.solr.util.HelperThreads;
 import org.apache.solr.util.IOFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +68,13 @@ import org.slf4j.LoggerFactory;
  * cache is able to outperform classic policies like LRU and LFU, as well as modern policies like
  * ARC and LIRS. This policy performed particularly well in search workloads.
  *
+ * <p>When {@code costAware} is enabled, the time spent computing each entry in {@link
+ * #computeIfAbsent} is recorded, and entries that were cheaper to compute than average are given
+ * a proportionally larger weight (up to 16 times), so that they use up more
+ * of the size or RAM budget and are evicted in favor of expensive ones. Hit frequency is still
+ * accounted for by the eviction policy itself. The compute time saved by cache hits is reported as
+ * a metric. Entries inserted with {@link #put} carry no cost and are weighed normally.
+ *
  * <p>[1] https://github.com/ben-manes/caffeine [2] http://arxiv.org/pdf/1512.00727.pdf [3]
  * http://highscalability.com/blog/2016/1/25/design-of-a-modern-cache.html
  */
@@ -77,6 +90,16 @@ public class CaffeineCache<K, V> extends SolrCacheBase
   private static final long RAM_BYTES_PER_FUTURE =
       RamUsageEstimator.shallowSizeOfInstance(CompletableFuture.class);
 
+  private static final long RAM_BYTES_PER_COST =
+      RamUsageEstimator.HASHTABLE_RAM_BYTES_PER_ENTRY
+          + RamUsageEstimator.shallowSizeOfInstance(ComputeCost.class);
+
+  /** Weight of an entry of average cost when the cache is limited by size rather than RAM. */
+  private static final int COST_WEIGHT_UNIT = 1024;
+
+  /** The most an entry's weight is multiplied by for being cheap to compute. */
+  static final int MAX_COST_PENALTY = 16;
+
   private Executor executor;
 
   private CacheStats priorStats;
@@ -97,10 +120,27 @@ public class CaffeineCache<K, V> extends SolrCacheBase
   private int maxIdleTimeSec;
   private boolean cleanupThread;
   private boolean async;
+  private boolean costAware;
+
+  // nanoseconds it took to compute the value of each entry, only tracked when costAware
+  private final Map<K, ComputeCost> computeCosts = new ConcurrentHashMap<>();
+  private final LongAdder computeNanos = new LongAdder();
+  private final LongAdder computeCount = new LongAdder();
+  private final LongAdder savedNanos = new LongAdder();
+  private long priorSavedNanos;
 
   private MetricsMap cacheMap;
   private SolrMetricsContext solrMetricsContext;
 
+  // progress of the last warming, and the hits and lookups while it was running
+  private volatile boolean warming;
+  private volatile int warmTotal;
+  private final LongAdder warmedCount = new LongAdder();
+  private volatile long warmingStartHits;
+  private volatile long warmingStartLookups;
+  private volatile long warmingHits;
+  private volatile long warmingLookups;
+
   private long initialRamBytes = 0;
   private final LongAdder ramBytes = new LongAdder();
 
@@ -126,6 +166,7 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     maxRamBytes = maxRamMB < 0 ? Long.MAX_VALUE : maxRamMB * 1024L * 1024L;
     cleanupThread = Boolean.parseBoolean(args.get(CLEANUP_THREAD_PARAM));
     async = Boolean.parseBoolean(args.getOrDefault(ASYNC_PARAM, "true"));
+    costAware = Boolean.parseBoolean(args.get(COST_AWARE_PARAM));
     if (async) {
       // We record futures in the map to decrease bucket-lock contention, but need computation
       // handled in same thread
@@ -161,7 +202,11 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     if (maxIdleTimeSec > 0) {
       builder.expireAfterAccess(Duration.ofSeconds(maxIdleTimeSec));
     }
-    if (maxRamBytes != Long.MAX_VALUE) {
+    if (costAware) {
+      builder.maximumWeight(
+          maxRamBytes != Long.MAX_VALUE ? maxRamBytes : (long) maxSize * COST_WEIGHT_UNIT);
+      builder.weigher(this::costWeight);
+    } else if (maxRamBytes != Long.MAX_VALUE) {
       builder.maximumWeight(maxRamBytes);
       builder.weigher(
           (k, v) -> (int) (RamUsageEstimator.sizeOfObject(k) + RamUsageEstimator.sizeOfObject(v)));
@@ -181,8 +226,52 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     return newCache;
   }
 
+  /**
+   * Weighs an entry by its size, or as one unit when limited by size, multiplied by how much
+   * cheaper than average the entry was to compute.
+   */
+  private int costWeight(K key, V value) {
+    long weight =
+        maxRamBytes != Long.MAX_VALUE
+            ? RamUsageEstimator.sizeOfObject(key) + RamUsageEstimator.sizeOfObject(value)
+            : COST_WEIGHT_UNIT;
+    ComputeCost cost = computeCosts.get(key);
+    long count = computeCount.sum();
+    if (cost != null && cost.isOf(value) && count > 0) {
+      double meanCost = (double) computeNanos.sum() / count;
+      double penalty = meanCost / Math.max(1L, cost.nanos);
+      if (penalty > 1) {
+        weight = (long) (weight * Math.min(penalty, MAX_COST_PENALTY));
+      }
+    }
+    return (int) Math.min(weight, Integer.MAX_VALUE);
+  }
+
+  private void recordComputeCost(K key, V value, long nanos) {
+    if (computeCosts.put(key, new ComputeCost(value, nanos)) == null) {
+      ramBytes.add(RAM_BYTES_PER_COST);
+    }
+    computeNanos.add(nanos);
+    computeCount.increment();
+  }
+
+  private void recordSavedCost(K key) {
+    ComputeCost cost = computeCosts.get(key);
+    if (cost != null) {
+      savedNanos.add(cost.nanos);
+    }
+  }
+
   @Override
   public void onRemoval(K key, V value, RemovalCause cause) {
+    if (costAware && cause != RemovalCause.REPLACED) {
+      // removals are notified asynchronously, possibly after the key was computed again, so only
+      // the cost of the removed value is dropped
+      ComputeCost cost = computeCosts.get(key);
+      if (cost != null && cost.isOf(value) && computeCosts.remove(key, cost)) {
+        ramBytes.add(-RAM_BYTES_PER_COST);
+      }
+    }
     ramBytes.add(
         -(RamUsageEstimator.sizeOfObject(key, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED)
             + RamUsageEstimator.sizeOfObject(value, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED)
@@ -199,7 +288,11 @@ public class CaffeineCache<K, V> extends SolrCacheBase
 
   @Override
   public V get(K key) {
-    return cache.getIfPresent(key);
+    V value = cache.getIfPresent(key);
+    if (costAware && value != null) {
+      recordSavedCost(key);
+    }
+    return value;
   }
 
   private V computeAsync(K key, IOFunction<? super K, ? extends V> mappingFunction)
@@ -212,6 +305,9 @@ public class CaffeineCache<K, V> extends SolrCacheBase
         // Another thread is already working on this computation, wait for them to finish
         V value = result.join();
         hits.increment();
+        if (costAware) {
+          recordSavedCost(key);
+        }
         return value;
       } catch (CompletionException e) {
         Throwable cause = e.getCause();
@@ -230,7 +326,12 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     }
     try {
       // We reserved the slot, so we do the work
+      long startNanos = System.nanoTime();
       V value = mappingFunction.apply(key);
+      if (costAware && value != null) {
+        // must be known before completing, as the weigher reads it
+        recordComputeCost(key, value, System.nanoTime() - startNanos);
+      }
       future.complete(value); // This will update the weight and expiration
       recordRamBytes(key, null, value);
       inserts.increment();
@@ -249,31 +350,48 @@ public class CaffeineCache<K, V> extends SolrCacheBase
       return computeAsync(key, mappingFunction);
     }
 
+    boolean[] computed = new boolean[1];
+    V result;
     try {
-      return cache.get(
-          key,
-          k -> {
-            V value;
-            try {
-              value = mappingFunction.apply(k);
-            } catch (IOException e) {
-              throw new UncheckedIOException(e);
-            }
-            if (value == null) {
-              return null;
-            }
-            recordRamBytes(key, null, value);
-            inserts.increment();
-            return value;
-          });
+      result =
+          cache.get(
+              key,
+              k -> {
+                computed[0] = true;
+                long startNanos = System.nanoTime();
+                V value;
+                try {
+                  value = mappingFunction.apply(k);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+                if (value == null) {
+                  return null;
+                }
+                if (costAware) {
+                  recordComputeCost(key, value, System.nanoTime() - startNanos);
+                }
+                recordRamBytes(key, null, value);
+                inserts.increment();
+                return value;
+              });
     } catch (UncheckedIOException e) {
       throw e.getCause();
     }
+    if (costAware && !computed[0] && result != null) {
+      recordSavedCost(key);
+    }
+    return result;
   }
 
   @Override
   public V put(K key, V val) {
     inserts.increment();
+    if (costAware) {
+      // the cost of the key carries over to the new value, as does a cost copied while warming
+      computeCosts.computeIfPresent(
+          key, (k, cost) -> cost.value == val ? cost : new ComputeCost(val, cost.nanos));
+    }
     V old = cache.asMap().put(key, val);
     recordRamBytes(key, old, val);
     return old;
@@ -310,6 +428,7 @@ public class CaffeineCache<K, V> extends SolrCacheBase
   @Override
   public void clear() {
     cache.invalidateAll();
+    computeCosts.clear();
     ramBytes.reset();
   }
 
@@ -326,6 +445,7 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     if (executor instanceof ExecutorService) {
       ((ExecutorService) executor).shutdownNow();
     }
+    computeCosts.clear();
     ramBytes.reset();
   }
 
@@ -342,7 +462,11 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     Optional<Eviction<K, V>> evictionOpt = cache.policy().eviction();
     if (evictionOpt.isPresent()) {
       Eviction<K, V> eviction = evictionOpt.get();
-      eviction.setMaximum(maxSize);
+      if (costAware && maxRamBytes == Long.MAX_VALUE) {
+        eviction.setMaximum((long) maxSize * COST_WEIGHT_UNIT);
+      } else {
+        eviction.setMaximum(maxSize);
+      }
       this.maxSize = maxSize;
       initialSize = Math.min(1024, this.maxSize);
       description = generateDescription(this.maxSize, initialSize);
@@ -363,8 +487,8 @@ public class CaffeineCache<K, V> extends SolrCacheBase
       Optional<Eviction<K, V>> evictionOpt = cache.policy().eviction();
       if (evictionOpt.isPresent()) {
         Eviction<K, V> eviction = evictionOpt.get();
-        if (!eviction.isWeighted()) {
-          // rebuild cache using weigher
+        if (!eviction.isWeighted() || costAware) {
+          // rebuild cache using weigher, or re-weigh cost aware entries by size
           cache = buildCache(cache);
           return;
         } else if (maxRamBytes == Long.MAX_VALUE) {
@@ -394,46 +518,159 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     long warmingStartTime = System.nanoTime();
     Map<K, V> hottest = Collections.emptyMap();
     CaffeineCache<K, V> other = (CaffeineCache<K, V>) old;
+    // when warming in the background, this cache is already serving requests
+    ExecutorService warmingExecutor = searcher == null ? null : searcher.getWarmingExecutor();
+    boolean background = warmingExecutor != null;
+    if (background) {
+      carryOverStats(other);
+    }
 
-    // warm entries
+    // warm entries, hottest first
     if (isAutowarmingOn()) {
       int size = autowarm.getWarmCount(other.cache.asMap().size());
       hottest =
           other.cache.policy().eviction().map(p -> p.hottest(size)).orElse(Collections.emptyMap());
     }
 
-    for (Entry<K, V> entry : hottest.entrySet()) {
-      try {
-        boolean continueRegen =
-            regenerator.regenerateItem(searcher, this, old, entry.getKey(), entry.getValue());
-        if (!continueRegen) {
-          break;
+    if (costAware && other.costAware) {
+      // carry over the average cost, and the cost of the warmed keys, in case the regenerator
+      // uses put() rather than recomputing the entries
+      computeNanos.add(other.computeNanos.sum());
+      computeCount.add(other.computeCount.sum());
+    }
+
+    List<Entry<K, V>> entries = new ArrayList<>(hottest.entrySet());
+    startWarming(entries.size());
+    try {
+      if (background && searcher.getWarmingThreads() > 1 && entries.size() > 1) {
+        regenerateConcurrently(
+            searcher, other, entries, warmingExecutor, searcher.getWarmingThreads());
+      } else {
+        for (Entry<K, V> entry : entries) {
+          if (isWarmingStopped(searcher) || !regenerate(searcher, other, entry)) {
+            break;
+          }
         }
-      } catch (Exception e) {
-        log.error("Error during auto-warming of key: {}", entry.getKey(), e);
       }
+    } finally {
+      endWarming();
+    }
+
+    if (!background) {
+      hits.reset();
+      inserts.reset();
+      lookups.reset();
+      carryOverStats(other);
     }
+    warmupTime =
+        TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+  }
+
+  private static boolean isWarmingStopped(SolrIndexSearcher searcher) {
+    return searcher != null && searcher.isWarmingStopped();
+  }
 
-    hits.reset();
-    inserts.reset();
-    lookups.reset();
+  private void carryOverStats(CaffeineCache<K, V> other) {
     CacheStats oldStats = other.cache.stats();
     priorStats = oldStats.plus(other.priorStats);
     priorHits = oldStats.hitCount() + other.hits.sum() + other.priorHits;
     priorInserts = other.inserts.sum() + other.priorInserts;
     priorLookups = oldStats.requestCount() + other.lookups.sum() + other.priorLookups;
-    warmupTime =
-        TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+    priorSavedNanos = other.savedNanos.sum() + other.priorSavedNanos;
+  }
+
+  /**
+   * Regenerates one entry of the old cache into this one.
+   *
+   * @return false if the regenerator asked to stop warming
+   */
+  private boolean regenerate(
+      SolrIndexSearcher searcher, CaffeineCache<K, V> other, Entry<K, V> entry) {
+    try {
+      if (cache.asMap().containsKey(entry.getKey())) {
+        // already added by a request while warming in the background
+        return true;
+      }
+      if (costAware && other.costAware) {
+        ComputeCost cost = other.computeCosts.get(entry.getKey());
+        // not bound to a value until the regenerator puts the entry
+        if (cost != null
+            && computeCosts.putIfAbsent(entry.getKey(), new ComputeCost(null, cost.nanos))
+                == null) {
+          ramBytes.add(RAM_BYTES_PER_COST);
+        }
+      }
+      return regenerator.regenerateItem(searcher, this, other, entry.getKey(), entry.getValue());
+    } catch (Exception e) {
+      log.error("Error during auto-warming of key: {}", entry.getKey(), e);
+      return true;
+    } finally {
+      warmedCount.increment();
+    }
+  }
+
+  /**
+   * Regenerates the entries on up to {@code threads} threads: the calling one, and helpers run on
+   * the executor. Entries are picked up in order, so the hottest are regenerated first. As with
+   * {@link HelperThreads}, helpers that haven't started by the time the caller runs out of entries
+   * never run, so that warmings sharing the executor can't wait on each other. The executor is
+   * expected to pass on the warming request's {@code SolrRequestInfo}, as Solr's MDC aware
+   * executors do.
+   */
+  private void regenerateConcurrently(
+      SolrIndexSearcher searcher,
+      CaffeineCache<K, V> other,
+      List<Entry<K, V>> entries,
+      ExecutorService executor,
+      int threads) {
+    AtomicInteger next = new AtomicInteger();
+    AtomicBoolean stop = new AtomicBoolean();
+    Runnable worker =
+        () -> {
+          for (int i = next.getAndIncrement(); i < entries.size(); i = next.getAndIncrement()) {
+            if (stop.get() || isWarmingStopped(searcher)) {
+              return;
+            }
+            if (!regenerate(searcher, other, entries.get(i))) {
+              stop.set(true);
+            }
+          }
+        };
+
+    try {
+      HelperThreads.run(
+          executor,
+          Math.min(threads, entries.size()),
+          worker,
+          e -> log.error("Error during auto-warming", e));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void startWarming(int total) {
+    warmedCount.reset();
+    warmTotal = total;
+    warmingStartHits = cache.stats().hitCount() + hits.sum();
+    warmingStartLookups = cache.stats().requestCount() + lookups.sum();
+    warming = true;
+  }
+
+  private void endWarming() {
+    warmingHits = cache.stats().hitCount() + hits.sum() - warmingStartHits;
+    warmingLookups = cache.stats().requestCount() + lookups.sum() - warmingStartLookups;
+    warming = false;
   }
 
   /** Returns the description of this cache. */
   private String generateDescription(int limit, int initialSize) {
     return String.format(
         Locale.ROOT,
-        "Caffeine Cache(maxSize=%d, initialSize=%d%s)",
+        "Caffeine Cache(maxSize=%d, initialSize=%d%s%s)",
         limit,
         initialSize,
-        isAutowarmingOn() ? (", " + getAutowarmDescription()) : "");
+        isAutowarmingOn() ? (", " + getAutowarmDescription()) : "",
+        costAware ? ", costAware" : "");
   }
 
   @Override
@@ -459,6 +696,12 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     return cacheMap;
   }
 
+  // for unit tests only
+  @VisibleForTesting
+  void cleanUp() {
+    cache.cleanUp();
+  }
+
   @Override
   public SolrMetricsContext getSolrMetricsContext() {
     return solrMetricsContext;
@@ -488,6 +731,18 @@ public class CaffeineCache<K, V> extends SolrCacheBase
                 map.put(EVICTIONS_PARAM, stats.evictionCount());
                 map.put(SIZE_PARAM, cache.asMap().size());
                 map.put("warmupTime", warmupTime);
+                map.put("warming", warming);
+                int total = warmTotal;
+                map.put(
+                    "warmupProgress", total == 0 ? 1.0 : (double) warmedCount.sum() / total);
+                long duringWarmingHits = warmingHits;
+                long duringWarmingLookups = warmingLookups;
+                if (warming) {
+                  duringWarmingHits = hitCount - warmingStartHits;
+                  duringWarmingLookups = lookupCount - warmingStartLookups;
+                }
+                map.put("warmingLookups", duringWarmingLookups);
+                map.put("warmingHitratio", hitRate(duringWarmingHits, duringWarmingLookups));
                 map.put(RAM_BYTES_USED_PARAM, ramBytesUsed());
                 map.put(MAX_RAM_MB_PARAM, getMaxRamMB());
 
@@ -499,6 +754,13 @@ public class CaffeineCache<K, V> extends SolrCacheBase
                 map.put("cumulative_hitratio", hitRate(cumHits, cumLookups));
                 map.put("cumulative_inserts", priorInserts + insertCount);
                 map.put("cumulative_evictions", cumulativeStats.evictionCount());
+                if (costAware) {
+                  long saved = savedNanos.sum();
+                  map.put("savedComputeTime", TimeUnit.NANOSECONDS.toMillis(saved));
+                  map.put(
+                      "cumulative_savedComputeTime",
+                      TimeUnit.NANOSECONDS.toMillis(priorSavedNanos + saved));
+                }
               }
             });
     solrMetricsContext.gauge(cacheMap, true, scope, getCategory().toString());
@@ -507,4 +769,22 @@ public class CaffeineCache<K, V> extends SolrCacheBase
   private static double hitRate(long hitCount, long lookupCount) {
     return lookupCount == 0 ? 1.0 : (double) hitCount / lookupCount;
   }
+
+  /**
+   * The time it took to compute a value. Compared by identity, like the value it's bound to, which
+   * is null for a cost copied while warming but not put yet.
+   */
+  private static final class ComputeCost {
+    final Object value;
+    final long nanos;
+
+    ComputeCost(Object value, long nanos) {
+      this.value = value;
+      this.nanos = nanos;
+    }
+
+    boolean isOf(Object value) {
+      return this.value == null || this.value == value;
+    }
+  }
 }
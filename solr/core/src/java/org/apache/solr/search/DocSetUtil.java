@@ -36,6 +36,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.common.util.EnvUtils;
 
 /**
  * @lucene.experimental
@@ -53,6 +54,28 @@ public class DocSetUtil {
     return (maxDoc >> 6) + 5; // The +5 is for better test coverage for small sets
   }
 
+  /** Whether {@link #compact(DocSet)} may replace sets by a {@link RoaringDocSet}. */
+  static final boolean COMPRESS_DOC_SETS =
+      EnvUtils.getPropertyAsBool("solr.search.compressDocSets", true);
+
+  /**
+   * Returns an equivalent {@link RoaringDocSet} if the set is a {@link BitDocSet} whose docs are
+   * sparse or clustered enough for the compressed form to use at most half the heap, otherwise
+   * returns the set itself. Operations on the compressed form are somewhat slower, so this is
+   * meant for sets that are likely to be cached, such as filters.
+   *
+   * @lucene.experimental
+   */
+  public static DocSet compact(DocSet set) {
+    // exact class check: a MutableBitDocSet is meant to be modified
+    if (!COMPRESS_DOC_SETS || set.getClass() != BitDocSet.class) {
+      return set;
+    }
+    DocSet compressed =
+        RoaringDocSet.fromBits(((BitDocSet) set).getBits(), set.ramBytesUsed() / 2);
+    return compressed != null ? compressed : set;
+  }
+
   /**
    * Iterates DocSets to test for equality - slow and for testing purposes only.
    *
@@ -153,7 +176,11 @@ public class DocSetUtil {
     // negated before use) or cached.
     searcher.search(query, collector);
 
-    return getDocSet(collector, searcher);
+    if (collector.size() == searcher.numDocs()) {
+      // will be deduplicated with the live docs
+      return getDocSet(collector, searcher);
+    }
+    return compact(collector.getDocSet());
   }
 
   public static DocSet createDocSet(SolrIndexSearcher searcher, Term term) throws IOException {
@@ -248,7 +275,7 @@ public class DocSetUtil {
       return smallSet;
     }
 
-    return docSet;
+    return compact(docSet);
   }
 
   public static DocSet toSmallSet(BitDocSet bitSet) {
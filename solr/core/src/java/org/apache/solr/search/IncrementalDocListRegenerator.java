@@ -0,0 +1,390 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Pruning;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.SortedSetSortField;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+/**
+ * A queryResultCache {@link CacheRegenerator} that autowarms sorted, unscored results segment by
+ * segment. Regenerated entries are {@link SegmentedDocSlice}s recording the number of matches per
+ * segment. On the next reopen, the docs of segments shared with the old searcher are taken from
+ * the old entry, minus any new deletions, and the query is only executed against new segments; the
+ * results are merged on their sort values. If the old entry didn't hold all the matches and the
+ * merged results can't be proven to rank above its last doc, the query is re-executed in full.
+ *
+ * <p>Only entries sorted on doc values fields, without scores, are regenerated this way; other
+ * entries, and queries whose matches in a segment may depend on other segments (any query that
+ * {@link SegmentLocalQueryVisitor} doesn't allow), are re-executed as by the default regenerator.
+ * Enabled with {@code incrementalWarming="true"} on the queryResultCache.
+ */
+public class IncrementalDocListRegenerator implements CacheRegenerator {
+
+  private final int queryResultWindowSize;
+  private final int queryResultMaxDocsCached;
+
+  public IncrementalDocListRegenerator(int queryResultWindowSize, int queryResultMaxDocsCached) {
+    this.queryResultWindowSize = queryResultWindowSize;
+    this.queryResultMaxDocsCached = queryResultMaxDocsCached;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <K, V> boolean regenerateItem(
+      SolrIndexSearcher newSearcher,
+      SolrCache<K, V> newCache,
+      SolrCache<K, V> oldCache,
+      K oldKey,
+      V oldVal)
+      throws IOException {
+    QueryResultKey key = (QueryResultKey) oldKey;
+    DocList oldList = (DocList) oldVal;
+    SolrIndexSearcher oldSearcher = newSearcher.getWarmingFrom();
+    DocList answer = null;
+    if (oldSearcher != null && isSupported(key, oldList)) {
+      int nDocs =
+          queryResultWindowSize <= 1
+              ? Math.min(oldList.offset() + oldList.size(), 40)
+              : queryResultWindowSize;
+      answer = regenerate(newSearcher, oldSearcher, key, oldList, Math.max(nDocs, 1));
+    }
+    if (answer == null) {
+      SolrIndexSearcher.regenerateQueryResult(newSearcher, key, oldList, queryResultWindowSize);
+    } else if (answer.size() <= queryResultMaxDocsCached) {
+      newCache.put(oldKey, (V) answer);
+    }
+    return true;
+  }
+
+  private static boolean isSupported(QueryResultKey key, DocList oldList) {
+    if (key.sort == null
+        || oldList.hasScores()
+        || (key.nc_flags & SolrIndexSearcher.GET_SCORES) != 0
+        || !isSupported(key.query)) {
+      return false;
+    }
+    if (key.filters != null) {
+      for (Query filter : key.filters) {
+        // uncached filters include post filters, which are applied by collectors
+        if (!isSupported(filter)
+            || (filter instanceof ExtendedQuery && !((ExtendedQuery) filter).getCache())) {
+          return false;
+        }
+      }
+    }
+    for (SortField sf : key.sort.getSort()) {
+      if (getField(sf) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSupported(Query query) {
+    return !(query instanceof RankQuery) && SegmentLocalQueryVisitor.isSegmentLocal(query);
+  }
+
+  /**
+   * Returns the doc values field that a sort field sorts on, or null if it sorts on anything else
+   * (scores, doc ids, functions...), for which the sort values of a segment may change.
+   */
+  private static String getField(SortField sf) {
+    if (sf instanceof SortedNumericSortField || sf instanceof SortedSetSortField) {
+      return sf.getField();
+    }
+    if (sf.getClass() != SortField.class) {
+      return null;
+    }
+    switch (sf.getType()) {
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case STRING:
+      case STRING_VAL:
+        return sf.getField();
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Computes the results of the key's query against the new searcher, reusing the old results of
+   * the segments it shares with the old searcher when the old results are a {@link
+   * SegmentedDocSlice}.
+   *
+   * @return the results, or null if they have to be computed in full
+   */
+  static SegmentedDocSlice regenerate(
+      SolrIndexSearcher newSearcher,
+      SolrIndexSearcher oldSearcher,
+      QueryResultKey key,
+      DocList oldList,
+      int nDocs)
+      throws IOException {
+    // negative queries and filters match all the docs but theirs, as in getDocListC
+    Query query = QueryUtils.makeQueryable(key.query);
+    if (key.filters != null && !key.filters.isEmpty()) {
+      BooleanQuery.Builder builder = new BooleanQuery.Builder();
+      builder.add(query, BooleanClause.Occur.MUST);
+      for (Query filter : key.filters) {
+        Query absFilter = QueryUtils.getAbs(filter);
+        builder.add(
+            absFilter,
+            absFilter == filter ? BooleanClause.Occur.FILTER : BooleanClause.Occur.MUST_NOT);
+      }
+      query = builder.build();
+    }
+    Weight weight =
+        newSearcher.createWeight(newSearcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+    Sort sort = key.sort;
+
+    List<LeafReaderContext> oldLeaves = oldSearcher.getTopReaderContext().leaves();
+    Map<Object, LeafReaderContext> oldLeavesByKey = new HashMap<>();
+    Map<Object, Integer> oldMatches = Map.of();
+    if (oldList instanceof SegmentedDocSlice) {
+      oldMatches = ((SegmentedDocSlice) oldList).segmentMatches;
+      for (LeafReaderContext ctx : oldLeaves) {
+        Object coreKey = getCoreKey(ctx);
+        if (coreKey != null && oldMatches.containsKey(coreKey)) {
+          oldLeavesByKey.put(coreKey, ctx);
+        }
+      }
+    }
+
+    List<LeafReaderContext> leaves = newSearcher.getTopReaderContext().leaves();
+    // the old leaf each new leaf reuses the results of, by new leaf ord, and the reverse
+    LeafReaderContext[] reused = new LeafReaderContext[leaves.size()];
+    LeafReaderContext[] reusing = new LeafReaderContext[oldLeaves.size()];
+    for (LeafReaderContext ctx : leaves) {
+      Object coreKey = getCoreKey(ctx);
+      LeafReaderContext oldCtx = coreKey == null ? null : oldLeavesByKey.get(coreKey);
+      if (oldCtx != null && weight.isCacheable(ctx) && sameSortValues(sort, oldCtx, ctx)) {
+        reused[ctx.ord] = oldCtx;
+        reusing[oldCtx.ord] = ctx;
+      }
+    }
+
+    // the old docs of reused segments that are still live, by new leaf ord
+    int[][] reusedDocs = new int[leaves.size()][];
+    int[] reusedCounts = new int[leaves.size()];
+    DocIterator it = oldList.iterator();
+    for (int i = 0; i < oldList.size(); i++) {
+      int oldDoc = it.nextDoc();
+      LeafReaderContext oldCtx = oldLeaves.get(ReaderUtil.subIndex(oldDoc, oldLeaves));
+      LeafReaderContext ctx = reusing[oldCtx.ord];
+      if (ctx == null) {
+        continue;
+      }
+      int doc = oldDoc - oldCtx.docBase;
+      Bits liveDocs = ctx.reader().getLiveDocs();
+      if (liveDocs == null || liveDocs.get(doc)) {
+        int[] docs = reusedDocs[ctx.ord];
+        if (docs == null) {
+          docs = reusedDocs[ctx.ord] = new int[8];
+        } else if (reusedCounts[ctx.ord] == docs.length) {
+          docs = reusedDocs[ctx.ord] = Arrays.copyOf(docs, docs.length * 2);
+        }
+        docs[reusedCounts[ctx.ord]++] = doc;
+      }
+    }
+
+    TopFieldCollector collector = TopFieldCollector.create(sort, nDocs, Integer.MAX_VALUE);
+    Map<Object, Integer> segmentMatches = new HashMap<>();
+    long matches = 0;
+    // whether matches of reused segments may be missing from the old docs
+    boolean incomplete = false;
+    for (LeafReaderContext ctx : leaves) {
+      LeafCollector leafCollector = collector.getLeafCollector(ctx);
+      int leafMatches;
+      LeafReaderContext oldCtx = reused[ctx.ord];
+      if (oldCtx != null) {
+        int[] docs = reusedDocs[ctx.ord];
+        int count = reusedCounts[ctx.ord];
+        leafCollector.setScorer(new NoScore());
+        if (docs != null) {
+          Arrays.sort(docs, 0, count);
+          for (int i = 0; i < count; i++) {
+            leafCollector.collect(docs[i]);
+          }
+        }
+        leafMatches =
+            oldMatches.get(getCoreKey(ctx)) - countDeletedMatches(weight, oldCtx, ctx);
+        incomplete |= leafMatches > count;
+      } else {
+        leafMatches = collectLeaf(weight, ctx, leafCollector);
+      }
+      Object coreKey = getCoreKey(ctx);
+      if (coreKey != null) {
+        segmentMatches.put(coreKey, leafMatches);
+      }
+      matches += leafMatches;
+    }
+
+    TopFieldDocs topDocs = collector.topDocs();
+    ScoreDoc[] hits = topDocs.scoreDocs;
+    if (incomplete) {
+      // the missing docs rank after the old cutoff, so the results hold if they all rank before it
+      Object[] oldCutoff = ((SegmentedDocSlice) oldList).cutoff;
+      if (oldCutoff == null
+          || hits.length < nDocs
+          || compare(sort, ((FieldDoc) hits[hits.length - 1]).fields, oldCutoff) >= 0) {
+        return null;
+      }
+    }
+
+    int[] docs = new int[hits.length];
+    for (int i = 0; i < hits.length; i++) {
+      docs[i] = hits[i].doc;
+    }
+    Object[] cutoff = matches > hits.length ? ((FieldDoc) hits[hits.length - 1]).fields : null;
+    return new SegmentedDocSlice(docs, matches, segmentMatches, cutoff);
+  }
+
+  private static Object getCoreKey(LeafReaderContext ctx) {
+    IndexReader.CacheHelper helper = ctx.reader().getCoreCacheHelper();
+    return helper == null ? null : helper.getKey();
+  }
+
+  /** Returns false if doc values updates may have changed the sort values of a segment. */
+  private static boolean sameSortValues(
+      Sort sort, LeafReaderContext oldCtx, LeafReaderContext ctx) {
+    for (SortField sf : sort.getSort()) {
+      String field = getField(sf);
+      FieldInfo oldInfo = oldCtx.reader().getFieldInfos().fieldInfo(field);
+      FieldInfo info = ctx.reader().getFieldInfos().fieldInfo(field);
+      if (oldInfo == null
+          ? info != null
+          : info == null || oldInfo.getDocValuesGen() != info.getDocValuesGen()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Counts the matches of a reused segment that were deleted since the old searcher. */
+  private static int countDeletedMatches(
+      Weight weight, LeafReaderContext oldCtx, LeafReaderContext ctx) throws IOException {
+    // deletions of a segment only ever grow
+    int newDeletions = ctx.reader().numDeletedDocs() - oldCtx.reader().numDeletedDocs();
+    if (newDeletions <= 0) {
+      return 0;
+    }
+    Bits liveDocs = ctx.reader().getLiveDocs();
+    Bits oldLiveDocs = oldCtx.reader().getLiveDocs();
+    Scorer scorer = null;
+    DocIdSetIterator iterator = null;
+    int count = 0;
+    for (int doc = 0; newDeletions > 0 && doc < ctx.reader().maxDoc(); doc++) {
+      if (liveDocs.get(doc) || (oldLiveDocs != null && !oldLiveDocs.get(doc))) {
+        continue;
+      }
+      newDeletions--;
+      if (scorer == null) {
+        scorer = weight.scorer(ctx);
+        if (scorer == null) {
+          return 0;
+        }
+        iterator = scorer.iterator();
+      }
+      // scorers ignore deletions, so a deleted doc is still found if it matches
+      if (iterator.docID() < doc) {
+        iterator.advance(doc);
+      }
+      if (iterator.docID() == doc) {
+        count++;
+      } else if (iterator.docID() == DocIdSetIterator.NO_MORE_DOCS) {
+        break;
+      }
+    }
+    return count;
+  }
+
+  private static int collectLeaf(Weight weight, LeafReaderContext ctx, LeafCollector collector)
+      throws IOException {
+    BulkScorer scorer = weight.bulkScorer(ctx);
+    if (scorer == null) {
+      return 0;
+    }
+    int[] count = new int[1];
+    scorer.score(
+        new FilterLeafCollector(collector) {
+          @Override
+          public void collect(int doc) throws IOException {
+            count[0]++;
+            super.collect(doc);
+          }
+        },
+        ctx.reader().getLiveDocs());
+    return count[0];
+  }
+
+  /** Compares sort values as {@link org.apache.lucene.search.TopDocs#merge} does. */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compare(Sort sort, Object[] values1, Object[] values2) {
+    SortField[] fields = sort.getSort();
+    for (int i = 0; i < fields.length; i++) {
+      FieldComparator comparator = fields[i].getComparator(1, Pruning.NONE);
+      int cmp = comparator.compareValues(values1[i], values2[i]);
+      if (cmp != 0) {
+        return fields[i].getReverse() ? -cmp : cmp;
+      }
+    }
+    return 0;
+  }
+
+  private static final class NoScore extends Scorable {
+    @Override
+    public float score() {
+      return 0f;
+    }
+
+    @Override
+    public int docID() {
+      return -1;
+    }
+  }
+}
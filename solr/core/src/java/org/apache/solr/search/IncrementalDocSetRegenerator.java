@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A filterCache {@link CacheRegenerator} that autowarms entries segment by segment: the docs of
+ * segments that the new searcher shares with the old one (same core cache key) are copied from the
+ * old DocSet, minus any new deletions, and the query is only executed against new segments. Docs
+ * of segments that were merged away are simply not carried over.
+ *
+ * <p>This only holds for queries whose matches in a segment only depend on that segment, which
+ * {@link SegmentLocalQueryVisitor} allows; other queries, such as knn vector queries, whose top
+ * hits change with new segments, are regenerated in full. Segments whose doc values were updated
+ * are executed again too, as {@link Weight#isCacheable(LeafReaderContext)} tells. Enabled with
+ * {@code incrementalWarming="true"} on the filterCache.
+ */
+public class IncrementalDocSetRegenerator implements CacheRegenerator {
+
+  /** The filterCache attribute enabling this regenerator. */
+  public static final String INCREMENTAL_WARMING_PARAM = "incrementalWarming";
+
+  @Override
+  public <K, V> boolean regenerateItem(
+      SolrIndexSearcher newSearcher,
+      SolrCache<K, V> newCache,
+      SolrCache<K, V> oldCache,
+      K oldKey,
+      V oldVal)
+      throws IOException {
+    Query query = (Query) oldKey;
+    SolrIndexSearcher oldSearcher = newSearcher.getWarmingFrom();
+    if (oldSearcher == null || !SegmentLocalQueryVisitor.isSegmentLocal(query)) {
+      newSearcher.cacheDocSet(query, null, false);
+      return true;
+    }
+
+    DocSet answer = regenerate(newSearcher, oldSearcher, query, (DocSet) oldVal);
+    newSearcher.cacheDocSet(query, answer, true);
+    return true;
+  }
+
+  static DocSet regenerate(
+      SolrIndexSearcher newSearcher, SolrIndexSearcher oldSearcher, Query query, DocSet oldSet)
+      throws IOException {
+    Map<Object, LeafReaderContext> oldLeaves = new HashMap<>();
+    for (LeafReaderContext ctx : oldSearcher.getTopReaderContext().leaves()) {
+      IndexReader.CacheHelper helper = ctx.reader().getCoreCacheHelper();
+      if (helper != null) {
+        oldLeaves.put(helper.getKey(), ctx);
+      }
+    }
+
+    Weight weight =
+        newSearcher.createWeight(newSearcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+    List<LeafReaderContext> leaves = newSearcher.getTopReaderContext().leaves();
+    FixedBitSet bits = new FixedBitSet(newSearcher.maxDoc());
+    for (LeafReaderContext ctx : leaves) {
+      IndexReader.CacheHelper helper = ctx.reader().getCoreCacheHelper();
+      LeafReaderContext oldCtx = helper == null ? null : oldLeaves.get(helper.getKey());
+      if (oldCtx != null && weight.isCacheable(ctx)) {
+        copyLeaf(oldSet.iterator(oldCtx), ctx, bits);
+      } else {
+        collectLeaf(weight, ctx, bits);
+      }
+    }
+
+    int size = bits.cardinality();
+    DocSet answer;
+    if (size <= DocSetUtil.smallSetSize(bits.length())) {
+      answer = DocSetUtil.toSmallSet(new BitDocSet(bits, size));
+    } else {
+      answer = DocSetUtil.compact(new BitDocSet(bits, size));
+    }
+    return DocSetUtil.getDocSet(answer, newSearcher);
+  }
+
+  /** Copies the docs of an unchanged segment, skipping the ones deleted since. */
+  private static void copyLeaf(DocIdSetIterator oldDocs, LeafReaderContext ctx, FixedBitSet bits)
+      throws IOException {
+    if (oldDocs == null) {
+      return;
+    }
+    Bits liveDocs = ctx.reader().getLiveDocs();
+    int base = ctx.docBase;
+    for (int doc = oldDocs.nextDoc();
+        doc != DocIdSetIterator.NO_MORE_DOCS;
+        doc = oldDocs.nextDoc()) {
+      if (liveDocs == null || liveDocs.get(doc)) {
+        bits.set(base + doc);
+      }
+    }
+  }
+
+  private static void collectLeaf(Weight weight, LeafReaderContext ctx, FixedBitSet bits)
+      throws IOException {
+    BulkScorer scorer = weight.bulkScorer(ctx);
+    if (scorer == null) {
+      return;
+    }
+    int base = ctx.docBase;
+    scorer.score(
+        new LeafCollector() {
+          @Override
+          public void setScorer(Scorable scorer) {}
+
+          @Override
+          public void collect(int doc) {
+            bits.set(base + doc);
+          }
+        },
+        ctx.reader().getLiveDocs());
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Computes the {@link DocSet}s of several cached filter queries at once, evaluating the filter
+ * cache misses concurrently on the searcher's executor. Misses are split by query, and generic
+ * queries are further split by segment, so that a single expensive filter also benefits.
+ *
+ * @see SolrIndexSearcher#getProcessedFilter(List, boolean)
+ */
+final class MultiThreadedDocSets {
+
+  private MultiThreadedDocSets() {}
+
+  /**
+   * Returns the positive DocSet of each query, as {@link SolrIndexSearcher#getPositiveDocSet} would
+   * for a cached query. Cache misses are computed concurrently and added to the filter cache.
+   *
+   * @param queries positive, cacheable queries; {@link WrappedQuery} instances are unwrapped
+   * @return the DocSets keyed by the queries as passed in
+   */
+  static Map<Query, DocSet> getPositiveDocSets(SolrIndexSearcher searcher, List<Query> queries)
+      throws IOException {
+    SolrCache<Query, DocSet> filterCache = searcher.getFilterCache();
+    assert filterCache != null : "must check for caching before calling this method";
+
+    Map<Query, DocSet> results = new HashMap<>();
+    // unwrapped query -> keys in "results" waiting for it
+    Map<Query, List<Query>> misses = new HashMap<>();
+    for (Query key : queries) {
+      if (results.containsKey(key)) continue;
+      Query query = key instanceof WrappedQuery ? ((WrappedQuery) key).getWrappedQuery() : key;
+      if (query instanceof MatchAllDocsQuery) {
+        // bypass the filterCache for MatchAllDocsQuery
+        results.put(key, searcher.getLiveDocSet());
+        continue;
+      }
+      List<Query> waiting = misses.get(query);
+      if (waiting != null) {
+        waiting.add(key);
+        continue;
+      }
+      DocSet cached = filterCache.get(query);
+      if (cached != null) {
+        results.put(key, cached);
+      } else {
+        waiting = new ArrayList<>(1);
+        waiting.add(key);
+        misses.put(query, waiting);
+      }
+    }
+    if (misses.isEmpty()) {
+      return results;
+    }
+
+    List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    List<Callable<Void>> tasks = new ArrayList<>();
+    List<PendingDocSet> pending = new ArrayList<>(misses.size());
+    for (Query query : misses.keySet()) {
+      PendingDocSet p = new PendingDocSet(query);
+      pending.add(p);
+      if (query instanceof TermQuery || query instanceof DocSetProducer || leaves.size() <= 1) {
+        // these have specialized implementations; compute them whole
+        tasks.add(
+            () -> {
+              p.answer = searcher.getDocSetNC(query, null);
+              return null;
+            });
+      } else {
+        Weight weight =
+            searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+        p.leafBits = new FixedBitSet[leaves.size()];
+        for (LeafReaderContext ctx : leaves) {
+          tasks.add(
+              () -> {
+                p.leafBits[ctx.ord] = collectLeaf(weight, ctx);
+                return null;
+              });
+        }
+      }
+    }
+
+    searcher.getTaskExecutor().invokeAll(tasks);
+
+    for (PendingDocSet p : pending) {
+      DocSet answer = p.answer != null ? p.answer : merge(searcher, leaves, p.leafBits);
+      assert !(answer instanceof MutableBitDocSet) : "should not be mutable";
+      filterCache.put(p.query, answer);
+      for (Query key : misses.get(p.query)) {
+        results.put(key, answer);
+      }
+    }
+    return results;
+  }
+
+  private static FixedBitSet collectLeaf(Weight weight, LeafReaderContext ctx) throws IOException {
+    BulkScorer scorer = weight.bulkScorer(ctx);
+    if (scorer == null) {
+      return null;
+    }
+    FixedBitSet bits = new FixedBitSet(ctx.reader().maxDoc());
+    scorer.score(
+        new LeafCollector() {
+          @Override
+          public void setScorer(Scorable scorer) {}
+
+          @Override
+          public void collect(int doc) {
+            bits.set(doc);
+          }
+        },
+        ctx.reader().getLiveDocs());
+    return bits;
+  }
+
+  private static DocSet merge(
+      SolrIndexSearcher searcher, List<LeafReaderContext> leaves, FixedBitSet[] leafBits)
+      throws IOException {
+    int count = 0;
+    for (FixedBitSet bits : leafBits) {
+      if (bits != null) count += bits.cardinality();
+    }
+    if (count == 0) {
+      return DocSet.empty();
+    }
+
+    int maxDoc = searcher.maxDoc();
+    DocSet answer;
+    if (count <= DocSetUtil.smallSetSize(maxDoc)) {
+      int[] docs = new int[count];
+      int upto = 0;
+      for (LeafReaderContext ctx : leaves) {
+        FixedBitSet bits = leafBits[ctx.ord];
+        if (bits == null) continue;
+        BitSetIterator it = new BitSetIterator(bits, 0);
+        for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+          docs[upto++] = ctx.docBase + doc;
+        }
+      }
+      answer = new SortedIntDocSet(docs);
+    } else {
+      FixedBitSet all = new FixedBitSet(maxDoc);
+      for (LeafReaderContext ctx : leaves) {
+        FixedBitSet bits = leafBits[ctx.ord];
+        if (bits == null) continue;
+        BitSetIterator it = new BitSetIterator(bits, 0);
+        for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+          all.set(ctx.docBase + doc);
+        }
+      }
+      answer = DocSetUtil.compact(new BitDocSet(all, count));
+    }
+    return DocSetUtil.getDocSet(answer, searcher);
+  }
+
+  private static class PendingDocSet {
+    final Query query;
+    // either the whole answer, or the matches of each segment
+    DocSet answer;
+    FixedBitSet[] leafBits;
+
+    PendingDocSet(Query query) {
+      this.query = query;
+    }
+  }
+}
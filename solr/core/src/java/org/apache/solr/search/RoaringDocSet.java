@@ -0,0 +1,822 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A compressed implementation of {@link DocSet} in the style of Roaring bitmaps. The doc id space
+ * is split in chunks of 2^16 docs; chunks without docs take no space, sparse chunks store the low
+ * 16 bits of their docs in a sorted {@code char[]}, and dense chunks store a bitmap of 1024 longs.
+ * Good for medium sized sets, or sets whose docs are clustered, which would otherwise need a
+ * {@link BitDocSet} of maxDoc bits.
+ *
+ * <p>Instances are created by {@link DocSetUtil#compact(DocSet)} when they save enough memory over
+ * the equivalent {@link BitDocSet}.
+ *
+ * @see <a href="https://arxiv.org/abs/1402.6407">Better bitmap performance with Roaring
+ *     bitmaps</a>
+ */
+public class RoaringDocSet extends DocSet {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(RoaringDocSet.class);
+
+  private static final int CHUNK_SHIFT = 16;
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+  private static final int BITMAP_WORDS = 1 << (CHUNK_SHIFT - 6);
+  // an array container of this many docs takes as much space as a bitmap container
+  static final int MAX_ARRAY_SIZE = BITMAP_WORDS * 4;
+
+  private static final long BITMAP_RAM_BYTES_USED =
+      RamUsageEstimator.sizeOf(new long[BITMAP_WORDS]);
+
+  private final int length; // one past the largest possible doc, like FixedBitSet.length()
+  private final int size;
+  // per chunk, at most one of these is non-null
+  private final char[][] arrays;
+  private final long[][] bitmaps;
+  private final long ramBytesUsed;
+
+  private RoaringDocSet(int length, char[][] arrays, long[][] bitmaps) {
+    assert arrays.length == bitmaps.length;
+    this.length = length;
+    this.arrays = arrays;
+    this.bitmaps = bitmaps;
+    int size = 0;
+    long ramBytesUsed =
+        BASE_RAM_BYTES_USED
+            + RamUsageEstimator.shallowSizeOf(arrays)
+            + RamUsageEstimator.shallowSizeOf(bitmaps);
+    for (int i = 0; i < arrays.length; i++) {
+      assert arrays[i] == null || bitmaps[i] == null;
+      if (arrays[i] != null) {
+        size += arrays[i].length;
+        ramBytesUsed += RamUsageEstimator.sizeOf(arrays[i]);
+      } else if (bitmaps[i] != null) {
+        size += cardinality(bitmaps[i]);
+        ramBytesUsed += BITMAP_RAM_BYTES_USED;
+      }
+    }
+    this.size = size;
+    this.ramBytesUsed = ramBytesUsed;
+  }
+
+  private static int numChunks(int length) {
+    return (int) (((long) length + CHUNK_MASK) >>> CHUNK_SHIFT);
+  }
+
+  /**
+   * Returns a RoaringDocSet with the same docs as the given bits, or null if it would use more
+   * than {@code maxRamBytes} of heap.
+   */
+  public static RoaringDocSet fromBits(FixedBitSet bits, long maxRamBytes) {
+    final long[] words = bits.getBits();
+    final int numWords = FixedBitSet.bits2words(bits.length());
+    final int numChunks = numChunks(bits.length());
+
+    // first pass: count the docs per chunk to see if it is worth it
+    int[] counts = new int[numChunks];
+    long chunksRamBytes =
+        RamUsageEstimator.alignObjectSize(
+            RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * numChunks);
+    long estimate = BASE_RAM_BYTES_USED + 2 * chunksRamBytes;
+    for (int c = 0; c < numChunks; c++) {
+      int from = c * BITMAP_WORDS;
+      int to = Math.min(from + BITMAP_WORDS, numWords);
+      int count = 0;
+      for (int w = from; w < to; w++) {
+        count += Long.bitCount(words[w]);
+      }
+      counts[c] = count;
+      if (count > MAX_ARRAY_SIZE) {
+        estimate += BITMAP_RAM_BYTES_USED;
+      } else if (count > 0) {
+        estimate +=
+            RamUsageEstimator.alignObjectSize(
+                RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) Character.BYTES * count);
+      }
+      if (estimate > maxRamBytes) {
+        return null;
+      }
+    }
+
+    char[][] arrays = new char[numChunks][];
+    long[][] bitmaps = new long[numChunks][];
+    for (int c = 0; c < numChunks; c++) {
+      int from = c * BITMAP_WORDS;
+      if (counts[c] > MAX_ARRAY_SIZE) {
+        // copyOfRange pads the last chunk with zeros
+        bitmaps[c] = Arrays.copyOfRange(words, from, from + BITMAP_WORDS);
+      } else if (counts[c] > 0) {
+        arrays[c] = toArray(words, from, Math.min(from + BITMAP_WORDS, numWords), counts[c]);
+      }
+    }
+    return new RoaringDocSet(bits.length(), arrays, bitmaps);
+  }
+
+  /** Returns a RoaringDocSet with the first {@code len} docs of the sorted array. */
+  public static RoaringDocSet fromSortedDocs(int[] docs, int len, int length) {
+    final int numChunks = numChunks(length);
+    char[][] arrays = new char[numChunks][];
+    long[][] bitmaps = new long[numChunks][];
+    int start = 0;
+    while (start < len) {
+      int c = docs[start] >>> CHUNK_SHIFT;
+      int end = start + 1;
+      while (end < len && (docs[end] >>> CHUNK_SHIFT) == c) {
+        end++;
+      }
+      if (end - start > MAX_ARRAY_SIZE) {
+        long[] bitmap = new long[BITMAP_WORDS];
+        for (int i = start; i < end; i++) {
+          bitmap[(docs[i] & CHUNK_MASK) >>> 6] |= 1L << docs[i];
+        }
+        bitmaps[c] = bitmap;
+      } else {
+        char[] array = new char[end - start];
+        for (int i = start; i < end; i++) {
+          array[i - start] = (char) docs[i];
+        }
+        arrays[c] = array;
+      }
+      start = end;
+    }
+    return new RoaringDocSet(length, arrays, bitmaps);
+  }
+
+  private static RoaringDocSet toRoaring(DocSet set, int minLength) {
+    if (set instanceof RoaringDocSet) {
+      return (RoaringDocSet) set;
+    }
+    assert set instanceof SortedIntDocSet;
+    int[] docs = ((SortedIntDocSet) set).getDocs();
+    int length = docs.length == 0 ? minLength : Math.max(minLength, docs[docs.length - 1] + 1);
+    return fromSortedDocs(docs, docs.length, length);
+  }
+
+  private static int cardinality(long[] bitmap) {
+    int count = 0;
+    for (long word : bitmap) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  private static char[] toArray(long[] words, int from, int to, int count) {
+    char[] array = new char[count];
+    int upto = 0;
+    for (int w = from; w < to; w++) {
+      long word = words[w];
+      while (word != 0) {
+        array[upto++] = (char) (((w - from) << 6) + Long.numberOfTrailingZeros(word));
+        word &= word - 1;
+      }
+    }
+    assert upto == count;
+    return array;
+  }
+
+  private static int nextSetBit(long[] bitmap, int from) {
+    int w = from >>> 6;
+    long word = bitmap[w] >>> from;
+    if (word != 0) {
+      return from + Long.numberOfTrailingZeros(word);
+    }
+    while (++w < BITMAP_WORDS) {
+      if (bitmap[w] != 0) {
+        return (w << 6) + Long.numberOfTrailingZeros(bitmap[w]);
+      }
+    }
+    return -1;
+  }
+
+  private static boolean get(long[] words, int index) {
+    int w = index >>> 6;
+    return w < words.length && (words[w] & (1L << index)) != 0;
+  }
+
+  /** Accumulates the containers of a new set, picking the container type by cardinality. */
+  private static final class Builder {
+    final int length;
+    final char[][] arrays;
+    final long[][] bitmaps;
+
+    Builder(int length) {
+      this.length = length;
+      int numChunks = numChunks(length);
+      arrays = new char[numChunks][];
+      bitmaps = new long[numChunks][];
+    }
+
+    void setArray(int c, char[] array, int count) {
+      if (count > 0) {
+        arrays[c] = count == array.length ? array : Arrays.copyOf(array, count);
+      }
+    }
+
+    void setBitmap(int c, long[] bitmap) {
+      int count = cardinality(bitmap);
+      if (count > MAX_ARRAY_SIZE) {
+        bitmaps[c] = bitmap;
+      } else if (count > 0) {
+        arrays[c] = toArray(bitmap, 0, BITMAP_WORDS, count);
+      }
+    }
+
+    RoaringDocSet build() {
+      return new RoaringDocSet(length, arrays, bitmaps);
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean exists(int doc) {
+    int c = doc >>> CHUNK_SHIFT;
+    if (c >= arrays.length) {
+      return false;
+    }
+    if (bitmaps[c] != null) {
+      return (bitmaps[c][(doc & CHUNK_MASK) >>> 6] & (1L << doc)) != 0;
+    }
+    return arrays[c] != null && Arrays.binarySearch(arrays[c], (char) doc) >= 0;
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private final ChunkIterator iter = new ChunkIterator(0, length, size);
+      private int pos = iter.nextDoc();
+
+      @Override
+      public boolean hasNext() {
+        return pos != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        return nextDoc();
+      }
+
+      /** The remove operation is not supported by this Iterator. */
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException(
+            "The remove operation is not supported by this Iterator.");
+      }
+
+      @Override
+      public int nextDoc() {
+        int old = pos;
+        pos = iter.nextDoc();
+        return old;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  @Override
+  public DocIdSetIterator iterator(LeafReaderContext context) {
+    if (size == 0) {
+      return null;
+    }
+    if (context.isTopLevel) {
+      return new ChunkIterator(0, length, size);
+    }
+    final int maxDoc = context.reader().maxDoc();
+    if (maxDoc < 1) {
+      // entirely empty segment
+      return null;
+    }
+    final int base = context.docBase;
+    // pro-rate the size for the segment
+    long cost = length == 0 ? 0 : (long) ((double) size * maxDoc / length);
+    return new ChunkIterator(base, base + maxDoc, cost);
+  }
+
+  /** Iterates over docs in {@code [base, limit)}, returning them relative to {@code base}. */
+  private final class ChunkIterator extends DocIdSetIterator {
+    private final int base;
+    private final int limit;
+    private final long cost;
+    private int doc = -1;
+    // the array container chunk of the current doc and its index in it, if any
+    private int chunk = -1;
+    private int index;
+
+    ChunkIterator(int base, int limit, long cost) {
+      this.base = base;
+      this.limit = limit;
+      this.cost = cost;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      if (doc == NO_MORE_DOCS) {
+        return doc;
+      }
+      return advanceTo(doc + base + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+      if (target >= limit - base) {
+        return doc = NO_MORE_DOCS;
+      }
+      return advanceTo(target + base);
+    }
+
+    private int advanceTo(int target) {
+      if (target >= limit) {
+        return doc = NO_MORE_DOCS;
+      }
+      for (int c = target >>> CHUNK_SHIFT; c < arrays.length; c++) {
+        int low = c == target >>> CHUNK_SHIFT ? target & CHUNK_MASK : 0;
+        int found = -1;
+        char[] array = arrays[c];
+        if (array != null) {
+          // we only ever move forward, so start after the previous match in this chunk
+          int from = c == chunk ? index + 1 : 0;
+          if (from < array.length && array[from] < low) {
+            int i = Arrays.binarySearch(array, from + 1, array.length, (char) low);
+            from = i < 0 ? -i - 1 : i;
+          }
+          if (from < array.length) {
+            chunk = c;
+            index = from;
+            found = array[from];
+          }
+        } else if (bitmaps[c] != null) {
+          found = nextSetBit(bitmaps[c], low);
+        }
+        if (found >= 0) {
+          int global = (c << CHUNK_SHIFT) | found;
+          return doc = global < limit ? global - base : NO_MORE_DOCS;
+        }
+      }
+      return doc = NO_MORE_DOCS;
+    }
+
+    @Override
+    public long cost() {
+      return cost;
+    }
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof RoaringDocSet) {
+      return and((RoaringDocSet) other);
+    } else if (other instanceof BitDocSet) {
+      return and(((BitDocSet) other).getBits());
+    }
+    // SortedIntDocSet is smaller and probes us
+    return other.intersection(this);
+  }
+
+  private RoaringDocSet and(FixedBitSet bits) {
+    long[] words = bits.getBits();
+    Builder builder = new Builder(Math.min(length, bits.length()));
+    int numChunks = builder.arrays.length;
+    for (int c = 0; c < numChunks; c++) {
+      int from = c * BITMAP_WORDS;
+      if (arrays[c] != null) {
+        char[] array = arrays[c];
+        char[] result = new char[array.length];
+        int count = 0;
+        for (char low : array) {
+          if (get(words, (c << CHUNK_SHIFT) | low)) {
+            result[count++] = low;
+          }
+        }
+        builder.setArray(c, result, count);
+      } else if (bitmaps[c] != null) {
+        long[] bitmap = bitmaps[c];
+        long[] result = new long[BITMAP_WORDS];
+        int to = Math.min(BITMAP_WORDS, words.length - from);
+        for (int w = 0; w < to; w++) {
+          result[w] = bitmap[w] & words[from + w];
+        }
+        builder.setBitmap(c, result);
+      }
+    }
+    return builder.build();
+  }
+
+  private RoaringDocSet and(RoaringDocSet other) {
+    Builder builder = new Builder(Math.min(length, other.length));
+    int numChunks = Math.min(arrays.length, other.arrays.length);
+    for (int c = 0; c < numChunks; c++) {
+      if (isEmpty(c) || other.isEmpty(c)) {
+        continue;
+      }
+      if (arrays[c] != null && other.arrays[c] != null) {
+        char[] a = arrays[c];
+        char[] b = other.arrays[c];
+        char[] result = new char[Math.min(a.length, b.length)];
+        builder.setArray(c, result, intersect(a, b, result));
+      } else if (arrays[c] != null || other.arrays[c] != null) {
+        char[] array = arrays[c] != null ? arrays[c] : other.arrays[c];
+        long[] bitmap = bitmaps[c] != null ? bitmaps[c] : other.bitmaps[c];
+        char[] result = new char[array.length];
+        int count = 0;
+        for (char low : array) {
+          if ((bitmap[low >>> 6] & (1L << low)) != 0) {
+            result[count++] = low;
+          }
+        }
+        builder.setArray(c, result, count);
+      } else {
+        long[] a = bitmaps[c];
+        long[] b = other.bitmaps[c];
+        long[] result = new long[BITMAP_WORDS];
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+          result[w] = a[w] & b[w];
+        }
+        builder.setBitmap(c, result);
+      }
+    }
+    return builder.build();
+  }
+
+  private boolean isEmpty(int c) {
+    return c >= arrays.length || (arrays[c] == null && bitmaps[c] == null);
+  }
+
+  /** Intersects two sorted arrays into target, returning the number of values written. */
+  private static int intersect(char[] a, char[] b, char[] target) {
+    int i = 0, j = 0, count = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        if (target != null) {
+          target[count] = a[i];
+        }
+        count++;
+        i++;
+        j++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof BitDocSet) {
+      long[] words = ((BitDocSet) other).getBits().getBits();
+      int count = 0;
+      for (int c = 0; c < arrays.length; c++) {
+        if (arrays[c] != null) {
+          for (char low : arrays[c]) {
+            if (get(words, (c << CHUNK_SHIFT) | low)) count++;
+          }
+        } else if (bitmaps[c] != null) {
+          long[] bitmap = bitmaps[c];
+          int from = c * BITMAP_WORDS;
+          int to = Math.min(BITMAP_WORDS, words.length - from);
+          for (int w = 0; w < to; w++) {
+            count += Long.bitCount(bitmap[w] & words[from + w]);
+          }
+        }
+      }
+      return count;
+    } else if (other instanceof RoaringDocSet) {
+      RoaringDocSet o = (RoaringDocSet) other;
+      int count = 0;
+      int numChunks = Math.min(arrays.length, o.arrays.length);
+      for (int c = 0; c < numChunks; c++) {
+        if (isEmpty(c) || o.isEmpty(c)) {
+          continue;
+        }
+        if (arrays[c] != null && o.arrays[c] != null) {
+          count += intersect(arrays[c], o.arrays[c], null);
+        } else if (arrays[c] != null || o.arrays[c] != null) {
+          char[] array = arrays[c] != null ? arrays[c] : o.arrays[c];
+          long[] bitmap = bitmaps[c] != null ? bitmaps[c] : o.bitmaps[c];
+          for (char low : array) {
+            if ((bitmap[low >>> 6] & (1L << low)) != 0) count++;
+          }
+        } else {
+          long[] a = bitmaps[c];
+          long[] b = o.bitmaps[c];
+          for (int w = 0; w < BITMAP_WORDS; w++) {
+            count += Long.bitCount(a[w] & b[w]);
+          }
+        }
+      }
+      return count;
+    }
+    // they had better not call us back!
+    return other.intersectionSize(this);
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    if (other instanceof BitDocSet || other instanceof RoaringDocSet) {
+      DocIdSetIterator it = new ChunkIterator(0, length, size);
+      for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+        if (other.exists(doc)) return true;
+      }
+      return false;
+    }
+    // they had better not call us back!
+    return other.intersects(this);
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    if (other instanceof BitDocSet) {
+      FixedBitSet bits = ((BitDocSet) other).getBits();
+      FixedBitSet newbits = FixedBitSet.ensureCapacity(bits.clone(), length);
+      addAllTo(newbits);
+      return new BitDocSet(newbits);
+    }
+    RoaringDocSet o = toRoaring(other, 0);
+    Builder builder = new Builder(Math.max(length, o.length));
+    for (int c = 0; c < builder.arrays.length; c++) {
+      if (isEmpty(c) || o.isEmpty(c)) {
+        // containers are never modified, so they can be shared
+        RoaringDocSet nonEmpty = isEmpty(c) ? o : this;
+        if (!nonEmpty.isEmpty(c)) {
+          builder.arrays[c] = nonEmpty.arrays[c];
+          builder.bitmaps[c] = nonEmpty.bitmaps[c];
+        }
+      } else if (arrays[c] != null && o.arrays[c] != null) {
+        char[] a = arrays[c];
+        char[] b = o.arrays[c];
+        if (a.length + b.length <= MAX_ARRAY_SIZE) {
+          char[] result = new char[a.length + b.length];
+          builder.setArray(c, result, merge(a, b, result));
+        } else {
+          long[] result = new long[BITMAP_WORDS];
+          setAll(result, a);
+          setAll(result, b);
+          builder.setBitmap(c, result);
+        }
+      } else {
+        long[] result = bitmaps[c] != null ? bitmaps[c].clone() : o.bitmaps[c].clone();
+        if (arrays[c] != null) {
+          setAll(result, arrays[c]);
+        } else if (o.arrays[c] != null) {
+          setAll(result, o.arrays[c]);
+        } else {
+          long[] b = o.bitmaps[c];
+          for (int w = 0; w < BITMAP_WORDS; w++) {
+            result[w] |= b[w];
+          }
+        }
+        builder.bitmaps[c] = result;
+      }
+    }
+    return builder.build();
+  }
+
+  private static void setAll(long[] bitmap, char[] array) {
+    for (char low : array) {
+      bitmap[low >>> 6] |= 1L << low;
+    }
+  }
+
+  /** Merges two sorted arrays without duplicates into target, returning the values written. */
+  private static int merge(char[] a, char[] b, char[] target) {
+    int i = 0, j = 0, count = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        target[count++] = a[i++];
+      } else if (a[i] > b[j]) {
+        target[count++] = b[j++];
+      } else {
+        target[count++] = a[i++];
+        j++;
+      }
+    }
+    while (i < a.length) target[count++] = a[i++];
+    while (j < b.length) target[count++] = b[j++];
+    return count;
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    if (other.size() == 0) {
+      return this;
+    }
+    Builder builder = new Builder(length);
+    if (other instanceof BitDocSet) {
+      long[] words = ((BitDocSet) other).getBits().getBits();
+      for (int c = 0; c < arrays.length; c++) {
+        int from = c * BITMAP_WORDS;
+        if (arrays[c] != null) {
+          char[] array = arrays[c];
+          char[] result = new char[array.length];
+          int count = 0;
+          for (char low : array) {
+            if (!get(words, (c << CHUNK_SHIFT) | low)) {
+              result[count++] = low;
+            }
+          }
+          builder.setArray(c, result, count);
+        } else if (bitmaps[c] != null) {
+          long[] result = bitmaps[c].clone();
+          int to = Math.min(BITMAP_WORDS, words.length - from);
+          for (int w = 0; w < to; w++) {
+            result[w] &= ~words[from + w];
+          }
+          builder.setBitmap(c, result);
+        }
+      }
+      return builder.build();
+    }
+
+    RoaringDocSet o = toRoaring(other, 0);
+    for (int c = 0; c < arrays.length; c++) {
+      if (isEmpty(c)) {
+        continue;
+      }
+      if (o.isEmpty(c)) {
+        builder.arrays[c] = arrays[c];
+        builder.bitmaps[c] = bitmaps[c];
+      } else if (arrays[c] != null) {
+        char[] array = arrays[c];
+        char[] result = new char[array.length];
+        int count = 0;
+        if (o.arrays[c] != null) {
+          char[] b = o.arrays[c];
+          int j = 0;
+          for (char low : array) {
+            while (j < b.length && b[j] < low) j++;
+            if (j == b.length || b[j] != low) {
+              result[count++] = low;
+            }
+          }
+        } else {
+          long[] bitmap = o.bitmaps[c];
+          for (char low : array) {
+            if ((bitmap[low >>> 6] & (1L << low)) == 0) {
+              result[count++] = low;
+            }
+          }
+        }
+        builder.setArray(c, result, count);
+      } else {
+        long[] result = bitmaps[c].clone();
+        if (o.arrays[c] != null) {
+          for (char low : o.arrays[c]) {
+            result[low >>> 6] &= ~(1L << low);
+          }
+        } else {
+          long[] b = o.bitmaps[c];
+          for (int w = 0; w < BITMAP_WORDS; w++) {
+            result[w] &= ~b[w];
+          }
+        }
+        builder.setBitmap(c, result);
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  public DocSetQuery makeQuery() {
+    return new DocSetQuery(this);
+  }
+
+  @Override
+  public void addAllTo(FixedBitSet target) {
+    long[] words = target.getBits();
+    for (int c = 0; c < arrays.length; c++) {
+      if (arrays[c] != null) {
+        int base = c << CHUNK_SHIFT;
+        for (char low : arrays[c]) {
+          target.set(base | low);
+        }
+      } else if (bitmaps[c] != null) {
+        long[] bitmap = bitmaps[c];
+        int from = c * BITMAP_WORDS;
+        int to = Math.min(BITMAP_WORDS, words.length - from);
+        for (int w = 0; w < to; w++) {
+          words[from + w] |= bitmap[w];
+        }
+      }
+    }
+  }
+
+  /** Clears all the docs of this set from the target. */
+  void removeAllFrom(FixedBitSet target) {
+    long[] words = target.getBits();
+    for (int c = 0; c < arrays.length; c++) {
+      if (arrays[c] != null) {
+        int base = c << CHUNK_SHIFT;
+        for (char low : arrays[c]) {
+          int doc = base | low;
+          if (doc < target.length()) {
+            target.clear(doc);
+          }
+        }
+      } else if (bitmaps[c] != null) {
+        long[] bitmap = bitmaps[c];
+        int from = c * BITMAP_WORDS;
+        int to = Math.min(BITMAP_WORDS, words.length - from);
+        for (int w = 0; w < to; w++) {
+          words[from + w] &= ~bitmap[w];
+        }
+      }
+    }
+  }
+
+  @Override
+  public RoaringDocSet clone() {
+    char[][] newArrays = new char[arrays.length][];
+    long[][] newBitmaps = new long[bitmaps.length][];
+    for (int c = 0; c < arrays.length; c++) {
+      newArrays[c] = arrays[c] == null ? null : arrays[c].clone();
+      newBitmaps[c] = bitmaps[c] == null ? null : bitmaps[c].clone();
+    }
+    return new RoaringDocSet(length, newArrays, newBitmaps);
+  }
+
+  @Override
+  public Bits getBits() {
+    return new Bits() {
+      @Override
+      public boolean get(int index) {
+        return exists(index);
+      }
+
+      @Override
+      public int length() {
+        return length;
+      }
+    };
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSet() {
+    return getFixedBitSetClone();
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSetClone() {
+    FixedBitSet bitSet = new FixedBitSet(length);
+    addAllTo(bitSet);
+    return bitSet;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public String toString() {
+    return "RoaringDocSet{"
+        + "size="
+        + size()
+        + ","
+        + "ramUsed="
+        + RamUsageEstimator.humanReadableUnits(ramBytesUsed())
+        + '}';
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.function.Supplier;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.spans.SpanQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.FieldExistsQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.SynonymQuery;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopTermsRewrite;
+import org.apache.lucene.util.automaton.ByteRunAutomaton;
+import org.apache.solr.query.FilterQuery;
+
+/**
+ * Tells whether the matches of a query in a segment only depend on that segment, so that cached
+ * results can be regenerated segment by segment. This is an allowlist of term, phrase, multi-term,
+ * point and exists queries, and of boolean combinations of them: any other query is assumed to
+ * depend on the rest of the index, as queries selecting the top hits of the index do (knn vector
+ * queries and their rewritten forms, top terms rewrites), or queries producing their matches at
+ * the top level ({@link DocSetProducer}).
+ */
+final class SegmentLocalQueryVisitor extends QueryVisitor {
+
+  private boolean segmentLocal = true;
+
+  private SegmentLocalQueryVisitor() {}
+
+  /** Returns true if the matches of the query in a segment only depend on that segment. */
+  static boolean isSegmentLocal(Query query) {
+    SegmentLocalQueryVisitor visitor = new SegmentLocalQueryVisitor();
+    query.visit(visitor);
+    return visitor.segmentLocal;
+  }
+
+  @Override
+  public void consumeTerms(Query query, Term... terms) {
+    if (!(query instanceof TermQuery
+        || query instanceof PhraseQuery
+        || query instanceof MultiPhraseQuery
+        || query instanceof SynonymQuery
+        || query instanceof TermInSetQuery
+        || query instanceof SpanQuery)) {
+      segmentLocal = false;
+    }
+  }
+
+  @Override
+  public void consumeTermsMatching(
+      Query query, String field, Supplier<ByteRunAutomaton> automaton) {
+    if (query instanceof MultiTermQuery multiTermQuery) {
+      // the top terms are selected across the whole index
+      if (multiTermQuery.getRewriteMethod() instanceof TopTermsRewrite) {
+        segmentLocal = false;
+      }
+    } else if (!(query instanceof TermInSetQuery)) {
+      segmentLocal = false;
+    }
+  }
+
+  @Override
+  public void visitLeaf(Query query) {
+    if (!(query instanceof MatchAllDocsQuery
+        || query instanceof MatchNoDocsQuery
+        || query instanceof FieldExistsQuery
+        || query instanceof PointRangeQuery
+        || query instanceof PointInSetQuery)) {
+      segmentLocal = false;
+    }
+  }
+
+  @Override
+  public QueryVisitor getSubVisitor(BooleanClause.Occur occur, Query parent) {
+    if (parent instanceof IndexOrDocValuesQuery indexOrDocValuesQuery) {
+      // both match the same docs, and the doc values query isn't allowed by itself
+      indexOrDocValuesQuery.getIndexQuery().visit(this);
+      return EMPTY_VISITOR;
+    }
+    if (!(parent instanceof BooleanQuery
+        || parent instanceof BoostQuery
+        || parent instanceof ConstantScoreQuery
+        || parent instanceof DisjunctionMaxQuery
+        || parent instanceof FilterQuery
+        || parent instanceof SpanQuery)) {
+      segmentLocal = false;
+    }
+    return this;
+  }
+}
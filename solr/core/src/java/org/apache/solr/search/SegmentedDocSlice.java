@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A {@link DocSlice} of sorted, unscored results that also records what {@link
+ * IncrementalDocListRegenerator} needs to update it for a new searcher: the number of matches in
+ * each segment, and the sort values of the last doc when the slice doesn't hold all the matches.
+ */
+final class SegmentedDocSlice extends DocSlice {
+  // a hash map entry and a boxed count; the keys are shared with the index readers
+  private static final long RAM_BYTES_PER_SEGMENT = 64;
+
+  /** Matches per segment, keyed by the segment's core cache key. */
+  final Map<Object, Integer> segmentMatches;
+
+  /** Sort values of the last doc, or null if all the matches are in the slice. */
+  final Object[] cutoff;
+
+  SegmentedDocSlice(
+      int[] docs, long matches, Map<Object, Integer> segmentMatches, Object[] cutoff) {
+    super(
+        0,
+        docs.length,
+        docs,
+        null,
+        matches,
+        matches > 0 ? Float.NaN : 0.0f,
+        TotalHits.Relation.EQUAL_TO);
+    this.segmentMatches = segmentMatches;
+    this.cutoff = cutoff;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return super.ramBytesUsed()
+        + segmentMatches.size() * RAM_BYTES_PER_SEGMENT
+        + (cutoff == null ? 0 : RamUsageEstimator.shallowSizeOf(cutoff));
+  }
+}
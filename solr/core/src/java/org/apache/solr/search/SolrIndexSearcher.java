@@ -28,6 +28,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -94,6 +95,7 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.CollectionUtil;
 import org.apache.solr.common.util.ExecutorUtil.MDCAwareThreadPoolExecutor;
@@ -156,6 +158,12 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   private final long openNanoTime = System.nanoTime();
   private Date registerTime;
   private long warmupTime = 0;
+  // the searcher being autowarmed from; only set for the duration of warm()
+  private SolrIndexSearcher warmingFrom;
+  // only set for the duration of warmInBackground()
+  private volatile ExecutorService warmingExecutor;
+  private volatile int warmingThreads;
+  private volatile boolean warmingStopped;
   private final DirectoryReader reader;
   private final boolean closeReader;
 
@@ -702,66 +710,91 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
     if (solrConfig.filterCacheConfig != null
         && solrConfig.filterCacheConfig.getRegenerator() == null) {
-      solrConfig.filterCacheConfig.setRegenerator(
-          new CacheRegenerator() {
-            @Override
-            public <K, V> boolean regenerateItem(
-                SolrIndexSearcher newSearcher,
-                SolrCache<K, V> newCache,
-                SolrCache<K, V> oldCache,
-                K oldKey,
-                V oldVal)
-                throws IOException {
-              newSearcher.cacheDocSet((Query) oldKey, null, false);
-              return true;
-            }
-          });
+      if (isIncrementalWarming(solrConfig.filterCacheConfig)) {
+        solrConfig.filterCacheConfig.setRegenerator(new IncrementalDocSetRegenerator());
+      } else {
+        solrConfig.filterCacheConfig.setRegenerator(
+            new CacheRegenerator() {
+              @Override
+              public <K, V> boolean regenerateItem(
+                  SolrIndexSearcher newSearcher,
+                  SolrCache<K, V> newCache,
+                  SolrCache<K, V> oldCache,
+                  K oldKey,
+                  V oldVal)
+                  throws IOException {
+                newSearcher.cacheDocSet((Query) oldKey, null, false);
+                return true;
+              }
+            });
+      }
     }
 
     if (solrConfig.queryResultCacheConfig != null
         && solrConfig.queryResultCacheConfig.getRegenerator() == null) {
       final int queryResultWindowSize = solrConfig.queryResultWindowSize;
-      solrConfig.queryResultCacheConfig.setRegenerator(
-          new CacheRegenerator() {
-            @Override
-            public <K, V> boolean regenerateItem(
-                SolrIndexSearcher newSearcher,
-                SolrCache<K, V> newCache,
-                SolrCache<K, V> oldCache,
-                K oldKey,
-                V oldVal)
-                throws IOException {
-              QueryResultKey key = (QueryResultKey) oldKey;
-              int nDocs = 1;
-              // request 1 doc and let caching round up to the next window size...
-              // unless the window size is <=1, in which case we will pick
-              // the minimum of the number of documents requested last time and
-              // a reasonable number such as 40.
-              // TODO: make more configurable later...
-
-              if (queryResultWindowSize <= 1) {
-                DocList oldList = (DocList) oldVal;
-                int oldnDocs = oldList.offset() + oldList.size();
-                // 40 has factors of 2,4,5,10,20
-                nDocs = Math.min(oldnDocs, 40);
+      if (isIncrementalWarming(solrConfig.queryResultCacheConfig)) {
+        solrConfig.queryResultCacheConfig.setRegenerator(
+            new IncrementalDocListRegenerator(
+                queryResultWindowSize, solrConfig.queryResultMaxDocsCached));
+      } else {
+        solrConfig.queryResultCacheConfig.setRegenerator(
+            new CacheRegenerator() {
+              @Override
+              public <K, V> boolean regenerateItem(
+                  SolrIndexSearcher newSearcher,
+                  SolrCache<K, V> newCache,
+                  SolrCache<K, V> oldCache,
+                  K oldKey,
+                  V oldVal)
+                  throws IOException {
+                regenerateQueryResult(
+                    newSearcher, (QueryResultKey) oldKey, (DocList) oldVal, queryResultWindowSize);
+                return true;
               }
-
-              int flags = NO_CHECK_QCACHE | key.nc_flags;
-              QueryCommand qc = new QueryCommand();
-              qc.setQuery(key.query)
-                  .setFilterList(key.filters)
-                  .setSort(key.sort)
-                  .setLen(nDocs)
-                  .setSupersetMaxDoc(nDocs)
-                  .setFlags(flags);
-              QueryResult qr = new QueryResult();
-              newSearcher.getDocListC(qr, qc);
-              return true;
-            }
-          });
+            });
+      }
     }
   }
 
+  private static boolean isIncrementalWarming(CacheConfig config) {
+    Object incremental =
+        config.toMap(new HashMap<>()).get(IncrementalDocSetRegenerator.INCREMENTAL_WARMING_PARAM);
+    return Boolean.parseBoolean(String.valueOf(incremental));
+  }
+
+  /** Re-executes a queryResultCache entry of the old searcher, caching the result. */
+  static void regenerateQueryResult(
+      SolrIndexSearcher newSearcher,
+      QueryResultKey key,
+      DocList oldList,
+      int queryResultWindowSize)
+      throws IOException {
+    int nDocs = 1;
+    // request 1 doc and let caching round up to the next window size...
+    // unless the window size is <=1, in which case we will pick
+    // the minimum of the number of documents requested last time and
+    // a reasonable number such as 40.
+    // TODO: make more configurable later...
+
+    if (queryResultWindowSize <= 1) {
+      int oldnDocs = oldList.offset() + oldList.size();
+      // 40 has factors of 2,4,5,10,20
+      nDocs = Math.min(oldnDocs, 40);
+    }
+
+    int flags = NO_CHECK_QCACHE | key.nc_flags;
+    QueryCommand qc = new QueryCommand();
+    qc.setQuery(key.query)
+        .setFilterList(key.filters)
+        .setSort(key.sort)
+        .setLen(nDocs)
+        .setSupersetMaxDoc(nDocs)
+        .setFlags(flags);
+    QueryResult qr = new QueryResult();
+    newSearcher.getDocListC(qr, qc);
+  }
+
   /** Primary entrypoint for searching, using a {@link QueryCommand}. */
   public QueryResult search(QueryCommand cmd) throws IOException {
     return search(new QueryResult(), cmd);
@@ -975,7 +1008,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   public BitDocSet getDocSetBits(Query q) throws IOException {
     DocSet answer = getDocSet(q);
     BitDocSet answerBits = makeBitDocSet(answer);
-    if (answerBits != answer && filterCache != null) {
+    // keep compressed sets cached as they are, for the heap they save
+    if (answerBits != answer && filterCache != null && !(answer instanceof RoaringDocSet)) {
       filterCache.put(q, answerBits);
     }
     return answerBits;
@@ -1211,13 +1245,43 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
    * INTERNAL: Processes conjunction (AND) of the queries into a {@link ProcessedFilter} result.
    * Queries may be null/empty thus doesn't restrict the matching docs. Queries typically are
    * resolved against the filter cache, and populate it.
+   *
+   * <p>Filter cache misses are computed concurrently if the current request has {@link
+   * CommonParams#MULTI_THREADED} set.
    */
   public ProcessedFilter getProcessedFilter(List<Query> queries) throws IOException {
+    return getProcessedFilter(queries, isMultiThreadedRequest());
+  }
+
+  /**
+   * INTERNAL: Like {@link #getProcessedFilter(List)}, but if {@code multiThreaded} is true and
+   * there is a searcher executor, the DocSets of the cached filters that are missing from the
+   * filter cache are computed concurrently on the executor, split by query and by segment.
+   */
+  public ProcessedFilter getProcessedFilter(List<Query> queries, boolean multiThreaded)
+      throws IOException {
     ProcessedFilter pf = new ProcessedFilter();
     if (queries == null || queries.size() == 0) {
       return pf;
     }
 
+    Map<Query, DocSet> precomputed = null;
+    if (multiThreaded
+        && queries.size() > 1
+        && filterCache != null
+        && core.getCoreContainer().getIndexSearcherExecutor() != null
+        // same as getAndCacheDocSet: with limits, results must stay on this thread
+        && !QueryLimits.getCurrentLimits().isLimitsEnabled()) {
+      List<Query> cachedPositive = new ArrayList<>(queries.size());
+      for (Query q : queries) {
+        if (q instanceof ExtendedQuery && !((ExtendedQuery) q).getCache()) continue;
+        cachedPositive.add(QueryUtils.getAbs(q));
+      }
+      if (cachedPositive.size() > 1) {
+        precomputed = MultiThreadedDocSets.getPositiveDocSets(this, cachedPositive);
+      }
+    }
+
     // We combine all the filter queries that come from the filter cache into "answer".
     // This might become pf.answer but not if there are any non-cached filters
     DocSet answer = null;
@@ -1253,7 +1317,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       }
 
       Query posQuery = QueryUtils.getAbs(q);
-      DocSet docSet = getPositiveDocSet(posQuery);
+      DocSet docSet = precomputed != null ? precomputed.get(posQuery) : null;
+      if (docSet == null) {
+        docSet = getPositiveDocSet(posQuery);
+      }
       // Negative query if absolute value different from original
       if (Objects.equals(q, posQuery)) {
         // keep track of the smallest positive set; use "answer" for this.
@@ -1350,6 +1417,13 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return pf;
   }
 
+  private static boolean isMultiThreadedRequest() {
+    SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    return requestInfo != null
+        && requestInfo.getReq() != null
+        && requestInfo.getReq().getParams().getBool(CommonParams.MULTI_THREADED, false);
+  }
+
   /**
    * @lucene.internal
    */
@@ -1426,7 +1500,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         fbs.set(docs[i]);
       }
       bitsSet += upto;
-      result = new BitDocSet(fbs, bitsSet);
+      result = DocSetUtil.compact(new BitDocSet(fbs, bitsSet));
     } else {
       result = upto == 0 ? DocSet.empty() : new SortedIntDocSet(Arrays.copyOf(docs, upto));
     }
@@ -1886,7 +1960,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
     final boolean needScores = (cmd.getFlags() & GET_SCORES) != 0;
 
-    final ProcessedFilter pf = getProcessedFilter(cmd.getFilterList());
+    final ProcessedFilter pf = getProcessedFilter(cmd.getFilterList(), cmd.getMultiThreaded());
     final Query query =
         QueryUtils.combineQueryAndFilter(QueryUtils.makeQueryable(cmd.getQuery()), pf.filter);
     final Relation hitsRelation;
@@ -2019,7 +2093,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     final int maxDoc = maxDoc();
     cmd.setMinExactCount(Integer.MAX_VALUE); // We need the full DocSet
 
-    final ProcessedFilter pf = getProcessedFilter(cmd.getFilterList());
+    final ProcessedFilter pf = getProcessedFilter(cmd.getFilterList(), cmd.getMultiThreaded());
     final Query query =
         QueryUtils.combineQueryAndFilter(QueryUtils.makeQueryable(cmd.getQuery()), pf.filter);
 
@@ -2516,7 +2590,18 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     // warm the caches in order...
     ModifiableSolrParams params = new ModifiableSolrParams();
     params.add("warming", "true");
-    for (int i = 0; i < cacheList.length; i++) {
+    warmingFrom = old;
+    try {
+      warmCaches(old, params);
+    } finally {
+      warmingFrom = null;
+    }
+    warmupTime =
+        TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+  }
+
+  private void warmCaches(SolrIndexSearcher old, ModifiableSolrParams params) {
+    for (int i = 0; i < cacheList.length && !warmingStopped; i++) {
       if (log.isDebugEnabled()) {
         log.debug("autowarming [{}] from [{}]\n\t{}", this, old, old.cacheList[i]);
       }
@@ -2548,8 +2633,47 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         log.debug("autowarming result for [{}]\n\t{}", this, cacheList[i]);
       }
     }
-    warmupTime =
-        TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the searcher whose caches this searcher is being autowarmed from, or null when not
+   * called from within {@link #warm(SolrIndexSearcher)}.
+   */
+  SolrIndexSearcher getWarmingFrom() {
+    return warmingFrom;
+  }
+
+  /**
+   * Like {@link #warm(SolrIndexSearcher)}, but for a searcher that is already registered and whose
+   * caches serve requests while they are warmed. Caches that support it regenerate their entries
+   * concurrently, hottest first, on up to {@code threads} threads of the given executor.
+   */
+  public void warmInBackground(SolrIndexSearcher old, ExecutorService executor, int threads) {
+    warmingExecutor = executor;
+    warmingThreads = threads;
+    try {
+      warm(old);
+    } finally {
+      warmingExecutor = null;
+    }
+  }
+
+  /** Stops any ongoing background warming, e.g. because this searcher has been replaced. */
+  public void stopWarming() {
+    warmingStopped = true;
+  }
+
+  boolean isWarmingStopped() {
+    return warmingStopped;
+  }
+
+  /** Returns the executor to warm caches on, or null unless warming in the background. */
+  ExecutorService getWarmingExecutor() {
+    return warmingExecutor;
+  }
+
+  int getWarmingThreads() {
+    return warmingThreads;
   }
 
   /** return the named generic cache */
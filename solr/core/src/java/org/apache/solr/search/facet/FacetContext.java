@@ -41,6 +41,8 @@ public class FacetContext {
   FacetContext parent;
   boolean cache = true;
   int flags;
+  // the most threads this request may use, see FacetTasks; 0 uses only the request thread
+  int threads;
   FacetDebugInfo debugInfo;
 
   public void setDebugInfo(FacetDebugInfo debugInfo) {
@@ -105,6 +107,7 @@ public class FacetContext {
     // carry over from parent
     ctx.cache = cache;
     ctx.flags = flags;
+    ctx.threads = threads;
     ctx.qcontext = qcontext;
     ctx.req = req;
     ctx.searcher = searcher;
@@ -41,6 +41,8 @@ import org.apache.solr.uninverting.FieldCacheImpl;
 /** Grabs values from {@link DocValues}. */
 class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
   static boolean unwrap_singleValued_multiDv = true; // only set to false for test coverage
+  // smallest domain worth counting segments concurrently; lowered for test coverage
+  static int concurrentMinDomainSize = 100_000;
 
   boolean multiValuedField;
   SortedSetDocValues si; // only used for term lookups (for both single and multi-valued)
@@ -132,6 +134,14 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
 
     final int maxSize = others.size() + 1; // others + base
     final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+
+    if (accumSeg
+        && others.isEmpty()
+        && domainSize >= concurrentMinDomainSize
+        && FacetTasks.isConcurrent(fcontext, leaves.size())) {
+      collectPerSegConcurrently(base, leaves);
+      return;
+    }
     final DocIdSetIterator[] subIterators = new DocIdSetIterator[maxSize];
     final CountSlotAcc[] activeCountAccs = new CountSlotAcc[maxSize];
 
@@ -249,6 +259,89 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     segCounter.register(disi.countAccs, toGlobal, segMax - 1);
   }
 
+  /**
+   * Counts every segment into its own array, on as many threads as the request may use, and then
+   * adds the counts up on this thread in segment order. Only used for plain counts over the full
+   * range of terms, where slots are global ords.
+   */
+  private void collectPerSegConcurrently(SweepCountAccStruct base, List<LeafReaderContext> leaves)
+      throws IOException {
+    final int[][] segCounts = new int[leaves.size()][];
+    FacetTasks.run(
+        fcontext,
+        leaves.size(),
+        subIdx -> segCounts[subIdx] = countSegment(base, leaves.get(subIdx)));
+
+    for (int subIdx = 0; subIdx < segCounts.length; subIdx++) {
+      int[] counts = segCounts[subIdx];
+      if (counts == null) {
+        continue;
+      }
+      LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(subIdx);
+      for (int segOrd = 0; segOrd < counts.length; segOrd++) {
+        if (counts[segOrd] > 0) {
+          int ord = toGlobal == null ? segOrd : (int) toGlobal.get(segOrd);
+          base.countAcc.incrementCount(ord, counts[segOrd]);
+        }
+      }
+    }
+  }
+
+  /** Returns the count of each segment ord in the domain, or null if there are none. */
+  private int[] countSegment(SweepCountAccStruct base, LeafReaderContext subCtx)
+      throws IOException {
+    DocIdSetIterator disi = base.docSet.iterator(subCtx);
+    if (disi == null) {
+      return null;
+    }
+    SortedDocValues singleDv;
+    SortedSetDocValues multiDv = null;
+    if (multiValuedField) {
+      multiDv = subCtx.reader().getSortedSetDocValues(sf.getName());
+      if (multiDv == null || multiDv.getValueCount() < 1) {
+        return null;
+      }
+      singleDv = unwrap_singleValued_multiDv ? DocValues.unwrapSingleton(multiDv) : null;
+    } else {
+      singleDv = subCtx.reader().getSortedDocValues(sf.getName());
+      if (singleDv == null || singleDv.getValueCount() < 1) {
+        return null;
+      }
+    }
+
+    int doc;
+    if (singleDv != null) {
+      final int[] counts = new int[singleDv.getValueCount()];
+      if (singleDv instanceof FieldCacheImpl.SortedDocValuesImpl.Iter fc) {
+        while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          final int segOrd = fc.getOrd(doc);
+          if (segOrd >= 0) {
+            counts[segOrd]++;
+          }
+        }
+      } else {
+        while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          if (singleDv.advanceExact(doc)) {
+            counts[singleDv.ordValue()]++;
+          }
+        }
+      }
+      return counts;
+    }
+
+    final int[] counts = new int[(int) multiDv.getValueCount()];
+    while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+      if (multiDv.advanceExact(doc)) {
+        for (; ; ) {
+          int segOrd = (int) multiDv.nextOrd();
+          if (segOrd < 0) break;
+          counts[segOrd]++;
+        }
+      }
+    }
+    return counts;
+  }
+
   private SegCountPerSeg getSegCountPerSeg(SweepDISI disi, int segMax) {
     final int size = disi.size;
     return new SegCountPerSeg(
@@ -134,6 +134,7 @@ public class FacetModule extends SearchComponent {
     fcontext.searcher = rb.req.getSearcher();
     fcontext.qcontext = QueryContext.newContext(fcontext.searcher);
     fcontext.cache = cache;
+    fcontext.threads = rb.req.getParams().getInt(FacetParams.FACET_THREADS, 0);
     if (isShard) {
       fcontext.flags |= FacetContext.IS_SHARD;
       fcontext.facetInfo =
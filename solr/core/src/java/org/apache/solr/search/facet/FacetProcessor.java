@@ -38,6 +38,7 @@ import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.QParser;
+import org.apache.solr.search.QueryContext;
 import org.apache.solr.search.QueryUtils;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SyntaxError;
@@ -462,6 +463,9 @@ public abstract class FacetProcessor<T extends FacetRequest> {
 
     boolean emptyDomain = domain == null || domain.size() == 0;
 
+    List<String> keys = new ArrayList<>(freq.getSubFacets().size());
+    List<FacetRequest> subRequests = new ArrayList<>(freq.getSubFacets().size());
+    List<FacetContext> subContexts = new ArrayList<>(freq.getSubFacets().size());
     for (Map.Entry<String, FacetRequest> sub : freq.getSubFacets().entrySet()) {
       FacetRequest subRequest = sub.getValue();
 
@@ -497,9 +501,30 @@ public abstract class FacetProcessor<T extends FacetRequest> {
         fcontext.getDebugInfo().addChild(fdebug);
       }
 
-      Object result = subRequest.process(subContext);
+      keys.add(sub.getKey());
+      subRequests.add(subRequest);
+      subContexts.add(subContext);
+    }
 
-      response.add(sub.getKey(), result);
+    // Sibling facets only share read-only state, so the top level ones can be processed
+    // concurrently. Nested facets run once per bucket and are left on the thread of their parent.
+    Object[] results = new Object[subRequests.size()];
+    if (fcontext.parent == null && FacetTasks.isConcurrent(fcontext, subRequests.size())) {
+      for (FacetContext subContext : subContexts) {
+        // a QueryContext is a plain map that processors cache things in
+        subContext.qcontext = QueryContext.newContext(fcontext.searcher);
+      }
+      FacetTasks.run(
+          fcontext,
+          subRequests.size(),
+          i -> results[i] = subRequests.get(i).process(subContexts.get(i)));
+    } else {
+      for (int i = 0; i < subRequests.size(); i++) {
+        results[i] = subRequests.get(i).process(subContexts.get(i));
+      }
+    }
+    for (int i = 0; i < results.length; i++) {
+      response.add(keys.get(i), results[i]);
     }
   }
 
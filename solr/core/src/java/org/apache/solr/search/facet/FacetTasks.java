@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.util.HelperThreads;
+
+/**
+ * Runs independent pieces of facet work on up to {@link FacetContext#threads} threads: the request
+ * thread and helpers from the same executor that {@link org.apache.solr.request.SimpleFacets} uses
+ * for {@link FacetParams#FACET_THREADS}. The request thread claims tasks just like the helpers do,
+ * and, as with {@link HelperThreads}, helpers that haven't started by the time it runs out of tasks
+ * never run, so nested facets sharing the executor can't end up waiting on each other.
+ */
+final class FacetTasks {
+
+  @FunctionalInterface
+  interface Task {
+    void run(int index) throws IOException;
+  }
+
+  private FacetTasks() {}
+
+  /** Returns true if {@link #run} may use more than the request thread for this many tasks. */
+  static boolean isConcurrent(FacetContext fcontext, int numTasks) {
+    return fcontext.threads != 0 && numTasks > 1 && fcontext.req.getCoreContainer() != null;
+  }
+
+  /** Runs {@code task} for every index from 0 to {@code numTasks - 1} and waits for all of them. */
+  static void run(FacetContext fcontext, int numTasks, Task task) throws IOException {
+    if (!isConcurrent(fcontext, numTasks)) {
+      for (int i = 0; i < numTasks; i++) {
+        task.run(i);
+      }
+      return;
+    }
+    // like facet.threads, a negative number means one thread per task
+    int threads = fcontext.threads < 0 ? numTasks : Math.min(fcontext.threads, numTasks);
+
+    AtomicInteger next = new AtomicInteger();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    Runnable worker =
+        () -> {
+          for (int i = next.getAndIncrement(); i < numTasks; i = next.getAndIncrement()) {
+            if (error.get() != null) {
+              return;
+            }
+            try {
+              task.run(i);
+            } catch (Throwable t) {
+              error.compareAndSet(null, t);
+            }
+          }
+        };
+
+    ExecutorService executor =
+        fcontext.req.getCoreContainer().getUpdateShardHandler().getUpdateExecutor();
+    try {
+      HelperThreads.run(executor, threads, worker, e -> error.compareAndSet(null, e));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    }
+
+    Throwable t = error.get();
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t != null) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, t);
+    }
+  }
+}
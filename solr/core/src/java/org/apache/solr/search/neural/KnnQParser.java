@@ -16,12 +16,17 @@
  */
 package org.apache.solr.search.neural;
 
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.index.VectorEncoding;
 import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.DenseVectorField;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.SyntaxError;
+import org.apache.solr.util.vector.DenseVectorParser;
 
 public class KnnQParser extends AbstractVectorQParserBase {
 
@@ -29,6 +34,21 @@ public class KnnQParser extends AbstractVectorQParserBase {
   static final String TOP_K = "topK";
   static final int DEFAULT_TOP_K = 10;
 
+  // retrieve topK * oversample candidates, and rescore them with the full precision vectors
+  static final String OVERSAMPLE = "oversample";
+
+  // only match the neighbors that are at least this similar to the vector to search
+  static final String MIN_SIMILARITY = "minSimilarity";
+
+  // search the topK neighbors of the whole collection, instead of topK neighbors per shard
+  static final String GLOBAL_TOP_K = "globalTopK";
+
+  /**
+   * The request context key of the number of vectors compared by the knn queries using {@link
+   * #MIN_SIMILARITY} or {@link #GLOBAL_TOP_K}, which is also returned in the response header
+   */
+  public static final String VISITED_NODES = "knnVisitedNodes";
+
   public KnnQParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req) {
     super(qstr, localParams, params, req);
   }
@@ -38,9 +58,123 @@ public class KnnQParser extends AbstractVectorQParserBase {
     final SchemaField schemaField = req.getCore().getLatestSchema().getField(getFieldName());
     final DenseVectorField denseVectorType = getCheckedFieldType(schemaField);
     final String vectorToSearch = getVectorToSearch();
-    final int topK = localParams.getInt(TOP_K, DEFAULT_TOP_K);
+    final int topK = getTopK();
+
+    final Float oversample = localParams.getFloat(OVERSAMPLE);
+    final Float minSimilarity = localParams.getFloat(MIN_SIMILARITY);
+    if (minSimilarity != null || isGlobalTopK()) {
+      if (oversample != null) {
+        throw new SolrException(
+            SolrException.ErrorCode.BAD_REQUEST,
+            "'"
+                + OVERSAMPLE
+                + "' can't be combined with '"
+                + MIN_SIMILARITY
+                + "' or '"
+                + GLOBAL_TOP_K
+                + "'");
+      }
+      return getMinSimilarityKnnQuery(
+          schemaField.getName(),
+          denseVectorType,
+          vectorToSearch,
+          topK,
+          minSimilarity == null ? Float.NEGATIVE_INFINITY : minSimilarity);
+    }
+
+    if (oversample == null) {
+      return denseVectorType.getKnnVectorQuery(
+          schemaField.getName(), vectorToSearch, topK, getFilterQuery());
+    }
+
+    if (oversample < 1) {
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST,
+          "'" + OVERSAMPLE + "' must be at least 1: " + oversample);
+    }
+    if (denseVectorType.getVectorEncoding() != VectorEncoding.FLOAT32) {
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST,
+          "'" + OVERSAMPLE + "' is only supported for the FLOAT32 vector encoding");
+    }
+    final int candidates = (int) Math.ceil((double) topK * oversample);
+    final float[] target =
+        denseVectorType
+            .getVectorBuilder(vectorToSearch, DenseVectorParser.BuilderPhase.QUERY)
+            .getFloatVector();
+    return new RescoreKnnVectorQuery(
+        denseVectorType.getKnnVectorQuery(
+            schemaField.getName(), vectorToSearch, candidates, getFilterQuery()),
+        schemaField.getName(),
+        target,
+        denseVectorType.getSimilarityFunction(),
+        topK,
+        candidates);
+  }
+
+  private Query getMinSimilarityKnnQuery(
+      String fieldName,
+      DenseVectorField denseVectorType,
+      String vectorToSearch,
+      int topK,
+      float minSimilarity)
+      throws SyntaxError {
+    final DenseVectorParser vectorBuilder =
+        denseVectorType.getVectorBuilder(vectorToSearch, DenseVectorParser.BuilderPhase.QUERY);
+    final LongAdder visitedNodes =
+        (LongAdder) req.getContext().computeIfAbsent(VISITED_NODES, k -> new LongAdder());
+    switch (denseVectorType.getVectorEncoding()) {
+      case FLOAT32:
+        return new MinSimilarityKnnFloatVectorQuery(
+            fieldName,
+            vectorBuilder.getFloatVector(),
+            topK,
+            getFilterQuery(),
+            minSimilarity,
+            visitedNodes);
+      case BYTE:
+        return new MinSimilarityKnnByteVectorQuery(
+            fieldName,
+            vectorBuilder.getByteVector(),
+            topK,
+            getFilterQuery(),
+            minSimilarity,
+            visitedNodes);
+      default:
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR,
+            "Unexpected state. Vector Encoding: " + denseVectorType.getVectorEncoding());
+    }
+  }
+
+  /** Returns true if the topK of this query is the topK of the collection, not of each shard */
+  public boolean isGlobalTopK() {
+    return localParams.getBool(GLOBAL_TOP_K, false);
+  }
+
+  public int getTopK() {
+    return localParams.getInt(TOP_K, DEFAULT_TOP_K);
+  }
+
+  /**
+   * Returns this query, searching for <code>topK</code> neighbors that are at least <code>
+   * minSimilarity</code> similar, if not null.
+   */
+  public String toShardQueryString(int topK, Float minSimilarity) {
+    final ModifiableSolrParams shardParams = new ModifiableSolrParams(localParams);
+    shardParams.set(TOP_K, topK);
+    if (minSimilarity != null) {
+      shardParams.set(MIN_SIMILARITY, Float.toString(minSimilarity));
+    }
+    return shardParams.toLocalParamsString();
+  }
 
-    return denseVectorType.getKnnVectorQuery(
-        schemaField.getName(), vectorToSearch, topK, getFilterQuery());
+  /**
+   * Returns the number of vectors compared by the knn queries of the request using {@link
+   * #MIN_SIMILARITY} or {@link #GLOBAL_TOP_K}, or null if there are none.
+   */
+  public static Long getVisitedNodes(SolrQueryRequest req) {
+    final Object visitedNodes = req.getContext().get(VISITED_NODES);
+    return visitedNodes == null ? null : ((LongAdder) visitedNodes).sum();
   }
 }
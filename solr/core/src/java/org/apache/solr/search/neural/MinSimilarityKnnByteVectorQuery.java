@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.neural;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnByteVectorQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.knn.KnnCollectorManager;
+
+/**
+ * A {@link KnnByteVectorQuery} that only matches the neighbors that are at least <code>
+ * minSimilarity</code> similar to the target, and counts the vectors it compares.
+ *
+ * @see MinSimilarityKnnCollector
+ */
+public class MinSimilarityKnnByteVectorQuery extends KnnByteVectorQuery {
+
+  private final float minSimilarity;
+  private final LongAdder visitedNodes;
+
+  /**
+   * @param field the field of the vectors
+   * @param target the vector to search
+   * @param k the number of neighbors to find
+   * @param filter a filter of the neighbors, or null
+   * @param minSimilarity the similarity the neighbors need to reach
+   * @param visitedNodes the counter of the compared vectors
+   */
+  public MinSimilarityKnnByteVectorQuery(
+      String field,
+      byte[] target,
+      int k,
+      Query filter,
+      float minSimilarity,
+      LongAdder visitedNodes) {
+    super(field, target, k, filter);
+    this.minSimilarity = minSimilarity;
+    this.visitedNodes = visitedNodes;
+  }
+
+  @Override
+  protected KnnCollectorManager getKnnCollectorManager(int k, IndexSearcher searcher) {
+    return MinSimilarityKnnCollector.wrap(super.getKnnCollectorManager(k, searcher), minSimilarity);
+  }
+
+  @Override
+  protected TopDocs mergeLeafResults(TopDocs[] perLeafResults) {
+    return MinSimilarityKnnCollector.filter(
+        super.mergeLeafResults(perLeafResults), minSimilarity, visitedNodes);
+  }
+
+  @Override
+  public String toString(String field) {
+    return super.toString(field) + "[minSimilarity=" + minSimilarity + "]";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o)
+        && Float.compare(((MinSimilarityKnnByteVectorQuery) o).minSimilarity, minSimilarity) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * super.hashCode() + Float.hashCode(minSimilarity);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.neural;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.search.KnnCollector;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.knn.KnnCollectorManager;
+
+/**
+ * Collects the neighbors of a segment like its delegate, but stops exploring the graph once the
+ * neighbors left are less similar than <code>minSimilarity</code>, a similarity that was already
+ * reached by enough neighbors elsewhere, like on other shards.
+ *
+ * <p>The similarity is only used once the collector found some good neighbors on its own, like
+ * {@link org.apache.lucene.search.knn.MultiLeafKnnCollector} does with the similarities of the
+ * other segments, as the graph is first explored from neighbors that are far from the target.
+ */
+final class MinSimilarityKnnCollector implements KnnCollector {
+
+  // the share of the k neighbors to collect before using the min similarity
+  private static final float GREEDINESS = 0.1f;
+
+  private final KnnCollector delegate;
+  private final float minSimilarity;
+  // the best similarities collected so far, in ascending order
+  private final float[] best;
+  private int size;
+
+  MinSimilarityKnnCollector(KnnCollector delegate, float minSimilarity) {
+    this.delegate = delegate;
+    this.minSimilarity = minSimilarity;
+    this.best = new float[Math.max(1, Math.round(GREEDINESS * delegate.k()))];
+  }
+
+  /** Wraps the collectors of the given manager */
+  static KnnCollectorManager wrap(KnnCollectorManager manager, float minSimilarity) {
+    return (visitedLimit, context) ->
+        new MinSimilarityKnnCollector(manager.newCollector(visitedLimit, context), minSimilarity);
+  }
+
+  /**
+   * Removes the neighbors that are less similar than <code>minSimilarity</code> from the merged
+   * results of the segments, and adds the number of vectors that were compared to find them to
+   * <code>visitedNodes</code>.
+   */
+  static TopDocs filter(TopDocs topDocs, float minSimilarity, LongAdder visitedNodes) {
+    visitedNodes.add(topDocs.totalHits.value);
+    ScoreDoc[] scoreDocs =
+        Arrays.stream(topDocs.scoreDocs)
+            .filter(scoreDoc -> scoreDoc.score >= minSimilarity)
+            .toArray(ScoreDoc[]::new);
+    return new TopDocs(topDocs.totalHits, scoreDocs);
+  }
+
+  @Override
+  public boolean earlyTerminated() {
+    return delegate.earlyTerminated();
+  }
+
+  @Override
+  public void incVisitedCount(int count) {
+    delegate.incVisitedCount(count);
+  }
+
+  @Override
+  public long visitedCount() {
+    return delegate.visitedCount();
+  }
+
+  @Override
+  public long visitLimit() {
+    return delegate.visitLimit();
+  }
+
+  @Override
+  public int k() {
+    return delegate.k();
+  }
+
+  @Override
+  public boolean collect(int docId, float similarity) {
+    boolean collected = delegate.collect(docId, similarity);
+    return offer(similarity) || collected;
+  }
+
+  /** Returns true if the least of the best similarities changed */
+  private boolean offer(float similarity) {
+    int i;
+    if (size < best.length) {
+      i = size++;
+      while (i > 0 && best[i - 1] > similarity) {
+        best[i] = best[i - 1];
+        i--;
+      }
+    } else if (similarity > best[0]) {
+      i = 0;
+      while (i + 1 < size && best[i + 1] < similarity) {
+        best[i] = best[i + 1];
+        i++;
+      }
+    } else {
+      return false;
+    }
+    best[i] = similarity;
+    return size == best.length;
+  }
+
+  @Override
+  public float minCompetitiveSimilarity() {
+    float local = size < best.length ? Float.NEGATIVE_INFINITY : best[0];
+    return Math.max(delegate.minCompetitiveSimilarity(), Math.min(local, minSimilarity));
+  }
+
+  @Override
+  public TopDocs topDocs() {
+    return delegate.topDocs();
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.neural;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
+
+/**
+ * Runs a knn query for more candidates than needed, and keeps the <code>topK</code> of them that
+ * are the most similar to the target vector, as computed with the full precision vectors of the
+ * field. This recovers the recall lost by searching quantized vectors, as the full precision
+ * vectors are only read for the candidates.
+ *
+ * <p>Like the knn queries, this query is rewritten to a query that matches the top documents with
+ * their scores.
+ */
+public class RescoreKnnVectorQuery extends Query {
+
+  private final Query knnQuery;
+  private final String field;
+  private final float[] target;
+  private final VectorSimilarityFunction similarityFunction;
+  private final int topK;
+  private final int candidates;
+
+  /**
+   * @param knnQuery the query finding the candidates
+   * @param field the field of the vectors
+   * @param target the vector to search
+   * @param similarityFunction the similarity function of the field
+   * @param topK the number of documents to keep
+   * @param candidates the number of documents found by <code>knnQuery</code>
+   */
+  public RescoreKnnVectorQuery(
+      Query knnQuery,
+      String field,
+      float[] target,
+      VectorSimilarityFunction similarityFunction,
+      int topK,
+      int candidates) {
+    this.knnQuery = Objects.requireNonNull(knnQuery);
+    this.field = Objects.requireNonNull(field);
+    this.target = Objects.requireNonNull(target);
+    this.similarityFunction = Objects.requireNonNull(similarityFunction);
+    this.topK = topK;
+    this.candidates = candidates;
+  }
+
+  @Override
+  public Query rewrite(IndexSearcher searcher) throws IOException {
+    TopDocs topDocs = searcher.search(knnQuery, Math.max(1, candidates));
+    ScoreDoc[] hits = topDocs.scoreDocs;
+
+    // read the vectors of the candidates in doc order, segment by segment
+    Arrays.sort(hits, Comparator.comparingInt(hit -> hit.doc));
+    IndexReader reader = searcher.getIndexReader();
+    List<LeafReaderContext> leaves = reader.leaves();
+    LeafReaderContext leaf = null;
+    FloatVectorValues vectors = null;
+    for (ScoreDoc hit : hits) {
+      if (leaf == null || hit.doc >= leaf.docBase + leaf.reader().maxDoc()) {
+        leaf = leaves.get(ReaderUtil.subIndex(hit.doc, leaves));
+        vectors = leaf.reader().getFloatVectorValues(field);
+      }
+      int segmentDoc = hit.doc - leaf.docBase;
+      if (vectors != null && vectors.docID() < segmentDoc) {
+        vectors.advance(segmentDoc);
+      }
+      if (vectors != null && vectors.docID() == segmentDoc) {
+        hit.score = similarityFunction.compare(target, vectors.vectorValue());
+      }
+    }
+
+    Arrays.sort(
+        hits,
+        Comparator.comparingDouble((ScoreDoc hit) -> hit.score)
+            .reversed()
+            .thenComparingInt(hit -> hit.doc));
+    ScoreDoc[] top = Arrays.copyOf(hits, Math.min(topK, hits.length));
+    Arrays.sort(top, Comparator.comparingInt(hit -> hit.doc));
+
+    int[] docs = new int[top.length];
+    float[] scores = new float[top.length];
+    for (int i = 0; i < top.length; i++) {
+      docs[i] = top[i].doc;
+      scores[i] = top[i].score;
+    }
+    return new DocAndScoreQuery(docs, scores, reader.getContext().id());
+  }
+
+  @Override
+  public void visit(QueryVisitor visitor) {
+    knnQuery.visit(visitor);
+  }
+
+  @Override
+  public String toString(String field) {
+    return getClass().getSimpleName()
+        + "("
+        + knnQuery.toString(field)
+        + ", topK="
+        + topK
+        + ", candidates="
+        + candidates
+        + ")";
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return sameClassAs(other) && equalsTo(getClass().cast(other));
+  }
+
+  private boolean equalsTo(RescoreKnnVectorQuery other) {
+    return topK == other.topK
+        && candidates == other.candidates
+        && field.equals(other.field)
+        && Arrays.equals(target, other.target)
+        && similarityFunction == other.similarityFunction
+        && knnQuery.equals(other.knnQuery);
+  }
+
+  @Override
+  public int hashCode() {
+    int h = classHash();
+    h = 31 * h + knnQuery.hashCode();
+    h = 31 * h + Arrays.hashCode(target);
+    h = 31 * h + topK;
+    h = 31 * h + candidates;
+    return h;
+  }
+
+  /** Matches the given documents, sorted by doc id, with the given scores */
+  static final class DocAndScoreQuery extends Query {
+    private final int[] docs;
+    private final float[] scores;
+    private final Object contextIdentity;
+
+    DocAndScoreQuery(int[] docs, float[] scores, Object contextIdentity) {
+      this.docs = docs;
+      this.scores = scores;
+      this.contextIdentity = contextIdentity;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost)
+        throws IOException {
+      if (searcher.getIndexReader().getContext().id() != contextIdentity) {
+        throw new IllegalStateException("This query was rewritten by a different reader");
+      }
+      float maxScore = 0;
+      for (float score : scores) {
+        maxScore = Math.max(maxScore, score);
+      }
+      final float maxBoostedScore = maxScore * boost;
+
+      return new Weight(this) {
+        @Override
+        public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+          int index = Arrays.binarySearch(docs, context.docBase + doc);
+          if (index < 0) {
+            return Explanation.noMatch("not in the top documents");
+          }
+          return Explanation.match(scores[index] * boost, "full precision vector similarity");
+        }
+
+        @Override
+        public Scorer scorer(LeafReaderContext context) throws IOException {
+          int start = lowerBound(context.docBase);
+          int end = lowerBound(context.docBase + context.reader().maxDoc());
+          if (start == end) {
+            return null;
+          }
+          return new Scorer(this) {
+            int index = start - 1;
+            int doc = -1;
+
+            final DocIdSetIterator iterator =
+                new DocIdSetIterator() {
+                  @Override
+                  public int docID() {
+                    return doc;
+                  }
+
+                  @Override
+                  public int nextDoc() {
+                    return advance(doc + 1);
+                  }
+
+                  @Override
+                  public int advance(int target) {
+                    while (++index < end) {
+                      if (docs[index] - context.docBase >= target) {
+                        return doc = docs[index] - context.docBase;
+                      }
+                    }
+                    return doc = NO_MORE_DOCS;
+                  }
+
+                  @Override
+                  public long cost() {
+                    return end - start;
+                  }
+                };
+
+            @Override
+            public int docID() {
+              return doc;
+            }
+
+            @Override
+            public DocIdSetIterator iterator() {
+              return iterator;
+            }
+
+            @Override
+            public float getMaxScore(int upTo) {
+              return maxBoostedScore;
+            }
+
+            @Override
+            public float score() {
+              return scores[index] * boost;
+            }
+          };
+        }
+
+        @Override
+        public boolean isCacheable(LeafReaderContext ctx) {
+          return true;
+        }
+      };
+    }
+
+    /** The index of the first document that is at least <code>doc</code> */
+    private int lowerBound(int doc) {
+      int index = Arrays.binarySearch(docs, doc);
+      return index < 0 ? -1 - index : index;
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+      visitor.visitLeaf(this);
+    }
+
+    @Override
+    public String toString(String field) {
+      return "DocAndScoreQuery[" + docs.length + " docs]";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!sameClassAs(other)) {
+        return false;
+      }
+      DocAndScoreQuery that = (DocAndScoreQuery) other;
+      return contextIdentity == that.contextIdentity
+          && Arrays.equals(docs, that.docs)
+          && Arrays.equals(scores, that.scores);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(
+          classHash(), contextIdentity, Arrays.hashCode(docs), Arrays.hashCode(scores));
+    }
+  }
+}
@@ -17,7 +17,9 @@
 package org.apache.solr.spelling.suggest;
 
 import java.io.IOException;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.search.spell.Dictionary;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.search.SolrIndexSearcher;
@@ -43,4 +45,24 @@ public abstract class DictionaryFactory {
    * </code>, in case of index based dictionaries
    */
   public abstract Dictionary create(SolrCore core, SolrIndexSearcher searcher) throws IOException;
+
+  /**
+   * Returns true if this factory can create a Dictionary of a single segment of the index, which
+   * the suggesters need to be built incrementally
+   *
+   * @see #createForSegment(SolrCore, LeafReader)
+   */
+  public boolean supportsSegments() {
+    return false;
+  }
+
+  /**
+   * Create a Dictionary of the documents of a single <code>segment</code> of the index. Only the
+   * factories that {@link #supportsSegments() support segments} implement it.
+   */
+  public Dictionary createForSegment(SolrCore core, LeafReader segment) throws IOException {
+    throw new SolrException(
+        SolrException.ErrorCode.SERVER_ERROR,
+        getClass().getName() + " can't create a dictionary per segment");
+  }
 }
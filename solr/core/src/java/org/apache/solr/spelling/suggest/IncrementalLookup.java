@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.spelling.suggest;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.StringHelper;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Lookup} made of one lookup per segment of the index, so that building it only builds
+ * the lookups of the new segments, and of the segments with new deletions. The lookups of the
+ * other segments are kept from the previous build, or loaded from the store directory, where each
+ * lookup is stored in its own file, and read through a memory mapping.
+ *
+ * <p>The suggestions of the segments are merged at query time: each suggestion keeps its highest
+ * weight across the segments, and the suggestions are sorted by weight, so the lookups must keep
+ * the weights of the dictionary: {@link org.apache.lucene.search.suggest.fst.FSTCompletionLookup},
+ * which normalizes them per segment, isn't supported.
+ *
+ * <p>The lookup is built with {@link #build(SolrIndexSearcher)}, which requires a dictionary that
+ * {@link DictionaryFactory#supportsSegments() supports segments}, and a lookup that keeps its data
+ * in memory. {@link #reload(SolrIndexSearcher)} loads the stored lookups again.
+ */
+public class IncrementalLookup extends Lookup {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(IncrementalLookup.class);
+
+  /** The lookup of a segment, with the key of the segment if it can be reused and stored */
+  private static final class SegmentLookup {
+    final String key;
+    final Lookup lookup;
+
+    SegmentLookup(String key, Lookup lookup) {
+      this.key = key;
+      this.lookup = lookup;
+    }
+  }
+
+  private final LookupFactory factory;
+  private final NamedList<?> config;
+  private final SolrCore core;
+  private final DictionaryFactory dictionaryFactory;
+  private final Path storeDir;
+
+  private volatile List<SegmentLookup> segments = Collections.emptyList();
+
+  // the number of lookups of segments that the last build built, reused and loaded
+  private int built;
+  private int reused;
+  private int loaded;
+
+  /**
+   * @param factory the factory of the lookups of the segments
+   * @param config the config of the suggester, to create the lookups
+   * @param core the core of the suggester
+   * @param dictionaryFactory the factory of the dictionaries of the segments
+   * @param storeDir the directory where the lookups of the segments are stored, or null
+   */
+  public IncrementalLookup(
+      LookupFactory factory,
+      NamedList<?> config,
+      SolrCore core,
+      DictionaryFactory dictionaryFactory,
+      Path storeDir) {
+    this.factory = factory;
+    this.config = config;
+    this.core = core;
+    this.dictionaryFactory = dictionaryFactory;
+    this.storeDir = storeDir;
+  }
+
+  /** Builds the lookups of the segments of <code>searcher</code> that changed since last build */
+  public synchronized void build(SolrIndexSearcher searcher) throws IOException {
+    build(searcher, segments);
+  }
+
+  /**
+   * Loads the stored lookups of the segments of <code>searcher</code>, instead of reusing the ones
+   * of the last build. Only the lookups of the segments that aren't stored are built.
+   */
+  public synchronized void reload(SolrIndexSearcher searcher) throws IOException {
+    build(searcher, Collections.emptyList());
+  }
+
+  /** Returns the number of lookups of segments that the last build or reload built */
+  public synchronized int getBuiltCount() {
+    return built;
+  }
+
+  /** Returns the number of lookups of segments that the last build or reload reused */
+  public synchronized int getReusedCount() {
+    return reused;
+  }
+
+  /** Returns the number of lookups of segments that the last build or reload loaded */
+  public synchronized int getLoadedCount() {
+    return loaded;
+  }
+
+  private void build(SolrIndexSearcher searcher, List<SegmentLookup> previousSegments)
+      throws IOException {
+    Map<String, Lookup> previous = new HashMap<>();
+    for (SegmentLookup segment : previousSegments) {
+      if (segment.key != null) {
+        previous.put(segment.key, segment.lookup);
+      }
+    }
+
+    List<SegmentLookup> built = new ArrayList<>();
+    int reused = 0;
+    int loaded = 0;
+    try (Directory directory = storeDir == null ? null : new MMapDirectory(storeDir)) {
+      for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+        String key = getSegmentKey(leaf);
+        Lookup lookup = key == null ? null : previous.get(key);
+        if (lookup != null) {
+          reused++;
+        } else if (key != null && directory != null && (lookup = load(directory, key)) != null) {
+          loaded++;
+        } else {
+          lookup = factory.create(config, core);
+          lookup.build(dictionaryFactory.createForSegment(core, leaf.reader()));
+          if (key != null && directory != null) {
+            store(directory, key, lookup);
+          }
+        }
+        built.add(new SegmentLookup(key, lookup));
+      }
+      segments = built;
+      this.built = built.size() - reused - loaded;
+      this.reused = reused;
+      this.loaded = loaded;
+
+      if (directory != null) {
+        deleteUnusedFiles(directory, built);
+      }
+    }
+    if (log.isInfoEnabled()) {
+      log.info(
+          "Built the lookups of {} segments, reused {} and loaded {}",
+          this.built,
+          reused,
+          loaded);
+    }
+  }
+
+  /**
+   * Returns a key identifying the documents of the segment, and their deletions, or null if the
+   * segment isn't a {@link SegmentReader}
+   */
+  private static String getSegmentKey(LeafReaderContext leaf) {
+    LeafReader reader = FilterLeafReader.unwrap(leaf.reader());
+    if (!(reader instanceof SegmentReader segmentReader)) {
+      return null;
+    }
+    SegmentCommitInfo info = segmentReader.getSegmentInfo();
+    // doc values can be updated in place, like the weights
+    return StringHelper.idToString(info.info.getId())
+        + "_"
+        + reader.numDeletedDocs()
+        + "_"
+        + info.getDocValuesGen();
+  }
+
+  private String getFileName(String key) {
+    return key + "." + factory.storeFileName();
+  }
+
+  private Lookup load(Directory directory, String key) {
+    String fileName = getFileName(key);
+    Lookup lookup = factory.create(config, core);
+    try (IndexInput input = directory.openInput(fileName, IOContext.READONCE)) {
+      return lookup.load(input) ? lookup : null;
+    } catch (IOException e) {
+      // not stored yet, or not readable: the lookup is built again
+      return null;
+    }
+  }
+
+  private void store(Directory directory, String key, Lookup lookup) throws IOException {
+    String fileName = getFileName(key);
+    boolean stored;
+    try (IndexOutput output = directory.createOutput(fileName, IOContext.DEFAULT)) {
+      stored = lookup.store(output);
+    }
+    if (!stored) {
+      // like the empty lookups
+      directory.deleteFile(fileName);
+    }
+  }
+
+  private void deleteUnusedFiles(Directory directory, List<SegmentLookup> built)
+      throws IOException {
+    Set<String> used = new HashSet<>();
+    for (SegmentLookup segment : built) {
+      if (segment.key != null) {
+        used.add(getFileName(segment.key));
+      }
+    }
+    String suffix = "." + factory.storeFileName();
+    for (String fileName : directory.listAll()) {
+      if (fileName.endsWith(suffix) && !used.contains(fileName)) {
+        try {
+          directory.deleteFile(fileName);
+        } catch (IOException e) {
+          log.warn("Could not delete the unused lookup file {}", fileName, e);
+        }
+      }
+    }
+  }
+
+  /** Not supported, the lookup is built per segment with {@link #build(SolrIndexSearcher)} */
+  @Override
+  public void build(InputIterator inputIterator) {
+    throw new SolrException(
+        SolrException.ErrorCode.BAD_REQUEST,
+        "A suggester built incrementally is built per segment of the index, from a searcher,"
+            + " not from a dictionary");
+  }
+
+  @Override
+  public List<LookupResult> lookup(
+      CharSequence key, Set<BytesRef> contexts, boolean onlyMorePopular, int num)
+      throws IOException {
+    List<SegmentLookup> segments = this.segments;
+    if (segments.size() == 1) {
+      return segments.get(0).lookup.lookup(key, contexts, onlyMorePopular, num);
+    }
+
+    Map<String, LookupResult> results = new HashMap<>();
+    for (SegmentLookup segment : segments) {
+      for (LookupResult result : segment.lookup.lookup(key, contexts, onlyMorePopular, num)) {
+        results.merge(
+            result.key.toString(),
+            result,
+            (previous, current) -> previous.value >= current.value ? previous : current);
+      }
+    }
+    List<LookupResult> merged = new ArrayList<>(results.values());
+    merged.sort(
+        Comparator.comparingLong((LookupResult result) -> result.value)
+            .reversed()
+            .thenComparing(result -> result.key.toString()));
+    return merged.size() > num ? merged.subList(0, num) : merged;
+  }
+
+  @Override
+  public long getCount() throws IOException {
+    long count = 0;
+    for (SegmentLookup segment : segments) {
+      count += segment.lookup.getCount();
+    }
+    return count;
+  }
+
+  /** Not supported, the lookups of the segments are stored when they are built */
+  @Override
+  public boolean store(DataOutput output) {
+    return false;
+  }
+
+  /** Not supported, the lookups of the segments are loaded when the lookup is built */
+  @Override
+  public boolean load(DataInput input) {
+    return false;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long ramBytesUsed = BASE_RAM_BYTES_USED;
+    for (SegmentLookup segment : segments) {
+      ramBytesUsed += segment.lookup.ramBytesUsed();
+    }
+    return ramBytesUsed;
+  }
+}
@@ -37,9 +37,16 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.spell.Dictionary;
 import org.apache.lucene.search.suggest.Lookup;
 import org.apache.lucene.search.suggest.Lookup.LookupResult;
+import org.apache.lucene.search.suggest.fst.FSTCompletionLookup;
 import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.IOUtils;
 import org.apache.solr.analysis.TokenizerChain;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.CloseHook;
 import org.apache.solr.core.SolrCore;
@@ -74,6 +81,12 @@ public class SolrSuggester implements Accountable {
    */
   public static final String STORE_DIR = "storeDir";
 
+  /**
+   * Whether to build one lookup per segment of the index, and only build the lookups of the
+   * segments that changed on later builds, see {@link IncrementalLookup}.
+   */
+  public static final String BUILD_INCREMENTALLY = "buildIncrementally";
+
   static SuggesterResult EMPTY_RESULT = new SuggesterResult();
 
   private String sourceLocation;
@@ -83,6 +96,8 @@ public class SolrSuggester implements Accountable {
   private String lookupImpl;
   private String dictionaryImpl;
   private String name;
+  private boolean buildIncrementally;
+  private SolrCore core;
 
   private LookupFactory factory;
   private DictionaryFactory dictionaryFactory;
@@ -101,6 +116,8 @@ public class SolrSuggester implements Accountable {
     lookupImpl = (String) config.get(LOOKUP_IMPL);
     dictionaryImpl = (String) config.get(DICTIONARY_IMPL);
     String store = (String) config.get(STORE_DIR);
+    buildIncrementally = Boolean.parseBoolean(String.valueOf(config.get(BUILD_INCREMENTALLY)));
+    this.core = core;
 
     if (lookupImpl == null) {
       lookupImpl = LookupFactory.DEFAULT_FILE_BASED_DICT;
@@ -114,6 +131,18 @@ public class SolrSuggester implements Accountable {
     factory = core.getResourceLoader().newInstance(lookupImpl, LookupFactory.class);
     lookup = factory.create(config, core);
 
+    // the lookups keeping their data in a directory of their own can't be built per segment, and
+    // the suggestions of the segments can't be merged when the weights are normalized per segment
+    if (buildIncrementally
+        && (lookup instanceof Closeable || lookup instanceof FSTCompletionLookup)) {
+      if (lookup instanceof Closeable) {
+        IOUtils.closeWhileHandlingException((Closeable) lookup);
+      }
+      throw new SolrException(
+          SolrException.ErrorCode.SERVER_ERROR,
+          BUILD_INCREMENTALLY + " isn't supported by " + lookup.getClass().getName());
+    }
+
     if (lookup instanceof Closeable) {
       core.addCloseHook(
           new CloseHook() {
@@ -139,10 +168,10 @@ public class SolrSuggester implements Accountable {
         log.warn("Could not create directory {}", storeDir);
       }
       Path storeFile = getStoreFile();
-      if (Files.exists(storeFile)) {
+      if (!buildIncrementally && Files.exists(storeFile)) {
         log.debug("attempt reload of the stored lookup from file {}", storeFile);
         try {
-          lookup.load(Files.newInputStream(storeFile));
+          load(storeFile);
         } catch (IOException e) {
           log.warn("Loading stored lookup data failed, possibly not cached yet");
         }
@@ -163,6 +192,16 @@ public class SolrSuggester implements Accountable {
     dictionaryFactory.setParams(config);
     log.info("Dictionary loaded with params: {}", config);
 
+    if (buildIncrementally) {
+      if (!dictionaryFactory.supportsSegments()) {
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR,
+            BUILD_INCREMENTALLY + " isn't supported by " + dictionaryImpl);
+      }
+      // the stored lookups of the segments are loaded on build
+      lookup = new IncrementalLookup(factory, config, core, dictionaryFactory, storeDir);
+    }
+
     return name;
   }
 
@@ -170,8 +209,13 @@ public class SolrSuggester implements Accountable {
   public void build(SolrCore core, SolrIndexSearcher searcher) throws IOException {
     log.info("SolrSuggester.build({})", name);
 
-    dictionary = dictionaryFactory.create(core, searcher);
     try {
+      if (lookup instanceof IncrementalLookup incrementalLookup) {
+        // the lookups of the segments are stored as they are built
+        incrementalLookup.build(searcher);
+        return;
+      }
+      dictionary = dictionaryFactory.create(core, searcher);
       lookup.build(dictionary);
     } catch (AlreadyClosedException e) {
       RuntimeException e2 =
@@ -195,17 +239,42 @@ public class SolrSuggester implements Accountable {
   /** Reloads the underlying Lucene Suggester */
   public void reload() throws IOException {
     log.info("SolrSuggester.reload({})", name);
+    if (lookup instanceof IncrementalLookup incrementalLookup) {
+      if (storeDir != null) {
+        // loads the stored lookups of the segments of the current searcher
+        core.withSearcher(
+            searcher -> {
+              incrementalLookup.reload(searcher);
+              return null;
+            });
+      }
+      return;
+    }
     if (dictionary == null && storeDir != null) {
       Path lookupFile = getStoreFile();
       if (Files.exists(lookupFile)) {
         // this may be a firstSearcher event, try loading it
-        lookup.load(Files.newInputStream(lookupFile));
+        load(lookupFile);
       } else {
         log.info("lookup file doesn't exist");
       }
     }
   }
 
+  /** Loads the lookup from the given file, read through a memory mapping */
+  private void load(Path storeFile) throws IOException {
+    try (Directory directory = new MMapDirectory(storeFile.getParent());
+        IndexInput input =
+            directory.openInput(storeFile.getFileName().toString(), IOContext.READONCE)) {
+      lookup.load(input);
+    }
+  }
+
+  /** Returns the lookup of this suggester */
+  public Lookup getLookup() {
+    return lookup;
+  }
+
   /**
    * @return the file where this suggester is stored. null if no storeDir was configured
    */
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.Arrays;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.StringHelper;
+import org.apache.solr.update.UpdateLog.LogPtr;
+
+/**
+ * A map from indexed id to the location and version of the latest update for that id in the
+ * transaction log, as used by {@link UpdateLog} for realtime-get and version lookups.
+ *
+ * <p>Unlike a {@code HashMap<BytesRef, LogPtr>}, no objects are retained per entry: id bytes are
+ * copied into a byte slab and the pointer, version and previous pointer are stored in a long
+ * array, with an open-addressing table of entry ordinals on top. {@link #clear()} keeps the
+ * allocated arrays so the map can be reused.
+ *
+ * <p>The map isn't thread-safe: {@link UpdateLog} only accesses its maps under its monitor, which
+ * it holds anyway to swap them on commit.
+ *
+ * <p>Entries are never removed individually; an existing entry is overwritten in place.
+ */
+public class LogPtrMap implements Accountable {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(LogPtrMap.class);
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // entry ordinal + 1 per slot; 0 marks an empty slot. Length is always a power of two.
+  private int[] table = new int[INITIAL_CAPACITY * 2];
+  private int size;
+
+  // per entry
+  private int[] hashes = new int[INITIAL_CAPACITY];
+  private int[] keyStarts = new int[INITIAL_CAPACITY];
+  private int[] keyLengths = new int[INITIAL_CAPACITY];
+  private long[] values = new long[INITIAL_CAPACITY * 3]; // pointer, version, previousPointer
+
+  private byte[] keyBytes = new byte[INITIAL_CAPACITY * 16];
+  private int keyBytesUsed;
+
+  private static int hash(BytesRef id) {
+    return StringHelper.murmurhash3_x86_32(id.bytes, id.offset, id.length, 0);
+  }
+
+  /** Returns the entry for the given id, or null if there is none. */
+  public LogPtr get(BytesRef id) {
+    int ord = find(hash(id), id);
+    if (ord < 0) {
+      return null;
+    }
+    int base = ord * 3;
+    return new LogPtr(values[base], values[base + 1], values[base + 2]);
+  }
+
+  public void put(BytesRef id, LogPtr ptr) {
+    put(id, ptr.pointer, ptr.version, ptr.previousPointer);
+  }
+
+  /** Adds or replaces the entry for the given id. The id bytes are copied. */
+  public void put(BytesRef id, long pointer, long version, long previousPointer) {
+    put(hash(id), id, pointer, version, previousPointer);
+  }
+
+  /** Returns the number of entries in the map. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the ordinal of the entry for the id if present, otherwise {@code -(slot + 1)} where
+   * slot is the empty slot the id would be inserted at.
+   */
+  private int find(int hash, BytesRef id) {
+    int mask = table.length - 1;
+    int slot = hash & mask;
+    while (true) {
+      int ord = table[slot] - 1;
+      if (ord < 0) {
+        return -(slot + 1);
+      }
+      if (hashes[ord] == hash && keyEquals(ord, id)) {
+        return ord;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private boolean keyEquals(int ord, BytesRef id) {
+    int start = keyStarts[ord];
+    int len = keyLengths[ord];
+    return len == id.length
+        && Arrays.equals(keyBytes, start, start + len, id.bytes, id.offset, id.offset + id.length);
+  }
+
+  private void put(int hash, BytesRef id, long pointer, long version, long previousPointer) {
+    int ord = find(hash, id);
+    if (ord < 0) {
+      if ((size + 1) * 4L > table.length * 3L) {
+        rehash(table.length << 1);
+        ord = find(hash, id);
+      }
+      int slot = -ord - 1;
+      ord = size++;
+      ensureEntryCapacity(size);
+      ensureKeyCapacity(keyBytesUsed + id.length);
+      System.arraycopy(id.bytes, id.offset, keyBytes, keyBytesUsed, id.length);
+      hashes[ord] = hash;
+      keyStarts[ord] = keyBytesUsed;
+      keyLengths[ord] = id.length;
+      keyBytesUsed += id.length;
+      table[slot] = ord + 1;
+    }
+    int base = ord * 3;
+    values[base] = pointer;
+    values[base + 1] = version;
+    values[base + 2] = previousPointer;
+  }
+
+  private void ensureEntryCapacity(int minSize) {
+    if (hashes.length < minSize) {
+      int newSize = ArrayUtil.oversize(minSize, Integer.BYTES);
+      hashes = ArrayUtil.growExact(hashes, newSize);
+      keyStarts = ArrayUtil.growExact(keyStarts, newSize);
+      keyLengths = ArrayUtil.growExact(keyLengths, newSize);
+      values = ArrayUtil.growExact(values, newSize * 3);
+    }
+  }
+
+  private void ensureKeyCapacity(int minSize) {
+    keyBytes = ArrayUtil.grow(keyBytes, minSize);
+  }
+
+  private void rehash(int newTableSize) {
+    int[] newTable = new int[newTableSize];
+    int mask = newTableSize - 1;
+    for (int ord = 0; ord < size; ord++) {
+      int slot = hashes[ord] & mask;
+      while (newTable[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      newTable[slot] = ord + 1;
+    }
+    table = newTable;
+  }
+
+  /** Removes all entries, retaining the allocated storage for reuse. */
+  public void clear() {
+    Arrays.fill(table, 0);
+    size = 0;
+    keyBytesUsed = 0;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED
+        + RamUsageEstimator.sizeOf(table)
+        + RamUsageEstimator.sizeOf(hashes)
+        + RamUsageEstimator.sizeOf(keyStarts)
+        + RamUsageEstimator.sizeOf(keyLengths)
+        + RamUsageEstimator.sizeOf(values)
+        + RamUsageEstimator.sizeOf(keyBytes);
+  }
+
+  @Override
+  public String toString() {
+    return "LogPtrMap{size=" + size + "}";
+  }
+}
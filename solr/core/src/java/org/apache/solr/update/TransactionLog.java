@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.invoke.MethodHandles;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
@@ -85,6 +86,21 @@ public class TransactionLog implements Closeable {
   protected volatile boolean deleteOnClose = true;
 
   protected AtomicInteger refcount = new AtomicInteger(1);
+
+  // group commit state: all accesses are synchronized on syncLock
+  protected volatile boolean groupCommit;
+  protected volatile FsyncListener fsyncListener;
+  private final Object syncLock = new Object();
+  private boolean syncInProgress;
+  private long syncedPos;
+  private int syncedRecords;
+
+  // set once no more records are expected to be written to this log
+  protected volatile boolean finished;
+  protected volatile boolean mmapReads;
+  // read-only memory-mapped view of the log, created lazily once the log is finished
+  private volatile MappedLogView mappedView;
+
   protected Map<String, Integer> globalStringMap = new HashMap<>();
   protected List<String> globalStringList = new ArrayList<>();
 
@@ -158,6 +174,42 @@ public class TransactionLog implements Closeable {
       return super.readObject(dis);
     }
 
+    /**
+     * Reads the array header that starts every log record.
+     *
+     * @return the number of elements in the record
+     */
+    int readRecordHeader(DataInputInputStream dis) throws IOException {
+      tagByte = dis.readByte();
+      if ((tagByte >>> 5) != (ARR >>> 5)) {
+        // the same failure as casting a non-list entry when reading whole records
+        throw new ClassCastException("Expected a log record but found tag " + tagByte);
+      }
+      return readSize(dis);
+    }
+
+    /** Reads an int value without boxing it. */
+    int readIntVal(DataInputInputStream dis) throws IOException {
+      tagByte = dis.readByte();
+      if ((tagByte >>> 5) == (SINT >>> 5)) {
+        return readSmallInt(dis);
+      } else if (tagByte == INT) {
+        return dis.readInt();
+      }
+      return ((Number) readObject(dis)).intValue();
+    }
+
+    /** Reads a long value without boxing it. */
+    long readLongVal(DataInputInputStream dis) throws IOException {
+      tagByte = dis.readByte();
+      if ((tagByte >>> 5) == (SLONG >>> 5)) {
+        return readSmallLong(dis);
+      } else if (tagByte == LONG) {
+        return dis.readLong();
+      }
+      return ((Number) readObject(dis)).longValue();
+    }
+
     @Override
     public boolean writePrimitive(Object val) throws IOException {
       if (val instanceof java.util.UUID uuid) {
@@ -215,6 +267,8 @@ public class TransactionLog implements Closeable {
         if (start > 0) {
           channel.position(start);
           setWrittenCount(start);
+          // existing logs are only replayed or capped, never appended to with new updates
+          finished = true;
         } else {
           addGlobalStrings(globalStrings);
         }
@@ -541,6 +595,7 @@ public class TransactionLog implements Closeable {
 
         fos.flush(); // flush since this will be the last record in a log fill
         assert fos.size() == getLogFileSize();
+        finished = true;
 
         return pos;
       } catch (IOException e) {
@@ -569,7 +624,7 @@ public class TransactionLog implements Closeable {
         */
       }
 
-      DataInputInputStream is = channelInputStreamOpener.open(channel, pos);
+      DataInputInputStream is = openReadStream(pos);
       try (LogCodec codec = new LogCodec(resolver)) {
         return codec.readVal(is);
       }
@@ -607,11 +662,77 @@ public class TransactionLog implements Closeable {
    * Move to a read-only state, closing and releasing resources while keeping the log available for
    * reads
    */
-  public void closeOutput() {}
+  public void closeOutput() {
+    finished = true;
+  }
+
+  /**
+   * Enables reading this log through a read-only memory-mapped view once it is finished (capped
+   * with a commit record, or moved to a read-only state by {@link #closeOutput()}), instead of
+   * positional channel reads. Reads beyond the mapped region, which can only happen if the log is
+   * written to after being finished, fall back to the channel.
+   */
+  public void setMmapReads(boolean mmapReads) {
+    this.mmapReads = mmapReads;
+  }
+
+  /** Opens a stream to read the log starting at the given position. */
+  protected ChannelFastInputStream openReadStream(long position) throws IOException {
+    MappedLogView view = getMappedView();
+    if (view != null) {
+      return new MappedChannelFastInputStream(channel, position, view);
+    }
+    return channelInputStreamOpener.open(channel, position);
+  }
+
+  private MappedLogView getMappedView() throws IOException {
+    // a custom opener may transform the bytes on disk, so only map the raw file
+    if (!mmapReads || !finished || channelInputStreamOpener != CHANNEL_INPUT_STREAM_OPENER) {
+      return null;
+    }
+    MappedLogView view = mappedView;
+    if (view == null) {
+      synchronized (this) {
+        view = mappedView;
+        if (view == null) {
+          fos.flush();
+          view = mappedView = new MappedLogView(channel, fos.size());
+        }
+      }
+    }
+    return view;
+  }
+
+  /** Receives notifications about each fsync of the log file. */
+  public interface FsyncListener {
+    /**
+     * @param records the number of records made durable by this fsync
+     * @param elapsedNanos the time spent in the fsync call
+     */
+    void onFsync(int records, long elapsedNanos);
+  }
+
+  /**
+   * Enables or disables group commit for {@link UpdateLog.SyncLevel#FSYNC}. When enabled,
+   * concurrent callers of {@link #finish(UpdateLog.SyncLevel)} share a single fsync: one thread
+   * flushes and syncs everything written so far, and every caller whose records were covered by
+   * that sync returns without issuing its own.
+   */
+  public void setGroupCommit(boolean groupCommit, FsyncListener fsyncListener) {
+    synchronized (syncLock) {
+      this.groupCommit = groupCommit;
+      this.fsyncListener = fsyncListener;
+    }
+  }
 
   public void finish(UpdateLog.SyncLevel syncLevel) {
     if (syncLevel == UpdateLog.SyncLevel.NONE) return;
     try {
+      if (syncLevel == UpdateLog.SyncLevel.FSYNC && groupCommit) {
+        groupFsync();
+        return;
+      }
+
       synchronized (this) {
         fos.flush();
       }
@@ -620,7 +741,12 @@ public class TransactionLog implements Closeable {
         // Since fsync is outside of synchronized block, we can end up with a partial
         // last record on power failure (which is OK, and does not represent an error...
         // we just need to be aware of it when reading).
+        long start = System.nanoTime();
         channel.force(true);
+        FsyncListener listener = fsyncListener;
+        if (listener != null) {
+          listener.onFsync(1, System.nanoTime() - start);
+        }
       }
 
     } catch (IOException e) {
@@ -628,6 +754,65 @@ public class TransactionLog implements Closeable {
     }
   }
 
+  /**
+   * Makes everything written by the calling thread durable, piggybacking on an fsync issued by
+   * another thread when possible. The first caller to find no sync in progress becomes the leader:
+   * it flushes the shared output buffer and fsyncs on behalf of every record written up to that
+   * point. Callers arriving while a sync is running wait for it, and only start a new one if their
+   * records were written after the leader took its snapshot.
+   */
+  protected void groupFsync() throws IOException {
+    long target;
+    synchronized (this) {
+      target = fos.size();
+    }
+
+    synchronized (syncLock) {
+      while (syncInProgress && syncedPos < target) {
+        try {
+          syncLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SolrException(
+              SolrException.ErrorCode.SERVER_ERROR, "Interrupted while waiting for tlog fsync", e);
+        }
+      }
+      if (syncedPos >= target) {
+        return; // another thread's fsync already covered our records
+      }
+      syncInProgress = true;
+    }
+
+    long upTo = syncedPos;
+    int records = syncedRecords;
+    boolean success = false;
+    try {
+      synchronized (this) {
+        fos.flush();
+        upTo = fos.size();
+        records = numRecords;
+      }
+      long start = System.nanoTime();
+      channel.force(true);
+      long elapsed = System.nanoTime() - start;
+      success = true;
+
+      FsyncListener listener = fsyncListener;
+      if (listener != null) {
+        listener.onFsync(records - syncedRecords, elapsed);
+      }
+    } finally {
+      synchronized (syncLock) {
+        if (success) {
+          syncedPos = upTo;
+          syncedRecords = records;
+        }
+        syncInProgress = false;
+        syncLock.notifyAll();
+      }
+    }
+  }
+
   @Override
   public void close() {
     try {
@@ -638,6 +823,8 @@ public class TransactionLog implements Closeable {
       synchronized (this) {
         fos.flush();
         fos.close();
+        // the mapping is released on GC, once the readers still using the view are done with it
+        mappedView = null;
       }
 
       if (deleteOnClose) {
@@ -709,7 +896,7 @@ public class TransactionLog implements Closeable {
 
     public LogReader(long startingPos) throws IOException {
       incref();
-      fis = channelInputStreamOpener.open(channel, startingPos);
+      fis = openReadStream(startingPos);
     }
 
     // for classes that extend
@@ -834,6 +1021,9 @@ public class TransactionLog implements Closeable {
   }
 
   public abstract static class ReverseReader {
+    protected List<?> current;
+    protected int flags;
+    protected long version;
 
     /**
      * Returns the next object from the log, or null if none available.
@@ -843,6 +1033,37 @@ public class TransactionLog implements Closeable {
      */
     public abstract Object next() throws IOException;
 
+    /**
+     * Advances to the next record like {@link #next()}, but only needs to decode its operation
+     * flags and version, which are then available from {@link #getFlags()} and {@link
+     * #getVersion()}. Use {@link #readRecord()} to decode the rest of the record if needed.
+     *
+     * @return false if there are no more records
+     * @throws IOException If there is a low-level I/O error.
+     */
+    public boolean nextVersion() throws IOException {
+      current = (List<?>) next();
+      if (current == null) return false;
+      flags = (Integer) current.get(UpdateLog.FLAGS_IDX);
+      version = (Long) current.get(UpdateLog.VERSION_IDX);
+      return true;
+    }
+
+    /** The operation and flags of the record last returned by {@link #nextVersion()} */
+    public int getFlags() {
+      return flags;
+    }
+
+    /** The version of the record last returned by {@link #nextVersion()} */
+    public long getVersion() {
+      return version;
+    }
+
+    /** Decodes the whole record last returned by {@link #nextVersion()} */
+    public List<?> readRecord() throws IOException {
+      return current;
+    }
+
     /* returns the position in the log file of the last record returned by next() */
     public abstract long position();
 
@@ -879,7 +1100,7 @@ public class TransactionLog implements Closeable {
         assert sz == getLogFileSize();
       }
 
-      fis = channelInputStreamOpener.open(channel, 0);
+      fis = openReadStream(0);
       if (sz >= 4) {
         // readHeader(fis);  // should not be needed
         prevPos = sz - 4;
@@ -896,7 +1117,35 @@ public class TransactionLog implements Closeable {
      */
     @Override
     public Object next() throws IOException {
-      if (prevPos <= 0) return null;
+      if (!advance()) return null;
+
+      // TODO: optionally skip document data
+      Object o = codec.readVal(fis);
+
+      // this is only true if we read all the data (and we currently skip reading SolrInputDocument)
+      // assert fis.position() == prevPos + 4 + thisLength;
+
+      return o;
+    }
+
+    @Override
+    public boolean nextVersion() throws IOException {
+      if (!advance()) return false;
+      codec.readRecordHeader(fis);
+      flags = codec.readIntVal(fis);
+      version = codec.readLongVal(fis);
+      return true;
+    }
+
+    @Override
+    public List<?> readRecord() throws IOException {
+      fis.seek(position());
+      return (List<?>) codec.readVal(fis);
+    }
+
+    /** Positions the stream at the start of the next record, returning false if there is none. */
+    private boolean advance() throws IOException {
+      if (prevPos <= 0) return false;
 
       long endOfThisRecord = prevPos;
 
@@ -905,7 +1154,7 @@ public class TransactionLog implements Closeable {
       long recordStart = prevPos - thisLength; // back up to the beginning of the next record
       prevPos = recordStart - 4; // back up 4 more to read the length of the next record
 
-      if (prevPos <= 0) return null; // this record is the header
+      if (prevPos <= 0) return false; // this record is the header
 
       long bufferPos = fis.getBufferPos();
       if (prevPos >= bufferPos) {
@@ -924,14 +1173,7 @@ public class TransactionLog implements Closeable {
       fis.seek(prevPos);
       // this is the length of the *next* record (i.e. closer to the beginning)
       nextLength = fis.readInt();
-
-      // TODO: optionally skip document data
-      Object o = codec.readVal(fis);
-
-      // this is only true if we read all the data (and we currently skip reading SolrInputDocument)
-      // assert fis.position() == prevPos + 4 + thisLength;
-
-      return o;
+      return true;
     }
 
     /* returns the position in the log file of the last record returned by next() */
@@ -1021,6 +1263,57 @@ public class TransactionLog implements Closeable {
     }
   }
 
+  /**
+   * A read-only memory-mapped view over the first {@code size} bytes of a log file, split into
+   * chunks since a single mapping is limited to 2GB.
+   */
+  static class MappedLogView {
+    static final int CHUNK_SHIFT = 30;
+    static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    final MappedByteBuffer[] chunks;
+    final long size;
+
+    MappedLogView(FileChannel ch, long size) throws IOException {
+      this.size = size;
+      int numChunks = (int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT);
+      chunks = new MappedByteBuffer[numChunks];
+      for (int i = 0; i < numChunks; i++) {
+        long start = (long) i << CHUNK_SHIFT;
+        chunks[i] =
+            ch.map(
+                FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << CHUNK_SHIFT));
+      }
+    }
+  }
+
+  /**
+   * A {@link ChannelFastInputStream} that fills its buffer from a {@link MappedLogView} rather than
+   * with positional channel reads, avoiding a system call per buffer refill.
+   */
+  public static class MappedChannelFastInputStream extends ChannelFastInputStream {
+    private final MappedLogView view;
+
+    MappedChannelFastInputStream(FileChannel ch, long chPosition, MappedLogView view) {
+      super(ch, chPosition);
+      this.view = view;
+    }
+
+    @Override
+    public int readWrappedStream(byte[] target, int offset, int len) throws IOException {
+      long position = readFromStream;
+      if (position >= view.size) {
+        return super.readWrappedStream(target, offset, len);
+      }
+      MappedByteBuffer chunk = view.chunks[(int) (position >>> MappedLogView.CHUNK_SHIFT)];
+      int chunkOffset = (int) (position & MappedLogView.CHUNK_MASK);
+      int n = (int) Math.min(len, Math.min(chunk.limit() - chunkOffset, view.size - position));
+      // absolute bulk get: does not touch the shared buffer's position
+      chunk.get(chunkOffset, target, offset, n);
+      return n;
+    }
+  }
+
   /** Opens {@link OutputStream} from {@link FileChannel}. */
   protected interface OutputStreamOpener {
 
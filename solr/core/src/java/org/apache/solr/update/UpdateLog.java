@@ -22,7 +22,9 @@ import static org.apache.solr.update.processor.DistributingUpdateProcessorFactor
 import com.carrotsearch.hppc.LongHashSet;
 import com.carrotsearch.hppc.LongSet;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -213,13 +215,17 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   protected Deque<TransactionLog> newestLogsOnStartup = new ArrayDeque<>();
   protected int numOldRecords; // number of records in the recent logs
 
-  protected Map<BytesRef, LogPtr> map = new HashMap<>();
-  protected Map<BytesRef, LogPtr> prevMap; // used while committing/reopening is happening
-  protected Map<BytesRef, LogPtr> prevMap2; // used while committing/reopening is happening
+  // The maps are only accessed under the UpdateLog monitor, which also keeps lookups across them
+  // from missing an entry moving from one map to the next on commit.
+  protected LogPtrMap map = new LogPtrMap();
+  protected LogPtrMap prevMap; // used while committing/reopening is happening
+  protected LogPtrMap prevMap2; // used while committing/reopening is happening
   // the transaction log used to look up entries found in prevMap
   protected TransactionLog prevMapLog;
   // the transaction log used to look up entries found in prevMap2
   protected TransactionLog prevMapLog2;
+  // a map that is no longer used, kept to be cleared and reused as the next map
+  private LogPtrMap spareMap;
 
   protected final int numDeletesToKeep = 1000;
   protected final int numDeletesByQueryToKeep = 100;
@@ -258,6 +264,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   protected VersionInfo versionInfo;
 
   protected SyncLevel defaultSyncLevel = SyncLevel.FLUSH;
+  protected boolean groupCommit;
+  protected boolean mmapReads;
 
   protected volatile UpdateHandler uhandler; // a core reload can change this reference!
   protected volatile boolean cancelApplyBufferUpdate;
@@ -268,6 +276,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   protected Meter applyingBufferedOpsMeter;
   protected Meter replayOpsMeter;
   protected Meter copyOverOldUpdatesMeter;
+  protected Histogram fsyncBatchSizeHistogram;
+  protected Timer fsyncTimer;
   protected SolrMetricsContext solrMetricsContext;
 
   public static class LogPtr {
@@ -382,6 +392,16 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
 
     numRecordsToKeep = objToInt(info.initArgs.get("numRecordsToKeep"), 100);
     maxNumLogsToKeep = objToInt(info.initArgs.get("maxNumLogsToKeep"), 10);
+    Object groupCommitArg = info.initArgs.get("groupCommit");
+    groupCommit =
+        groupCommitArg != null
+            ? Boolean.parseBoolean(groupCommitArg.toString())
+            : EnvUtils.getPropertyAsBool("solr.update.groupCommit", false);
+    Object mmapReadsArg = info.initArgs.get("mmapReads");
+    mmapReads =
+        mmapReadsArg != null
+            ? Boolean.parseBoolean(mmapReadsArg.toString())
+            : EnvUtils.getPropertyAsBool("solr.update.mmapReads", false);
     if (info.initArgs.get("numVersionBuckets") != null) {
       log.warn("numVersionBuckets is obsolete");
     }
@@ -397,9 +417,11 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     updateLocks = new UpdateLocks(timeoutMs);
 
     log.info(
-        "Initializing UpdateLog: dataDir={} defaultSyncLevel={} numRecordsToKeep={} maxNumLogsToKeep={}",
+        "Initializing UpdateLog: dataDir={} defaultSyncLevel={} groupCommit={} mmapReads={} numRecordsToKeep={} maxNumLogsToKeep={}",
         dataDir,
         defaultSyncLevel,
+        groupCommit,
+        mmapReads,
         numRecordsToKeep,
         maxNumLogsToKeep);
   }
@@ -657,6 +679,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     applyingBufferedOpsMeter = solrMetricsContext.meter("ops", scope, "applyingBuffered");
     replayOpsMeter = solrMetricsContext.meter("ops", scope, "replay");
     copyOverOldUpdatesMeter = solrMetricsContext.meter("ops", scope, "copyOverOldUpdates");
+    fsyncBatchSizeHistogram = solrMetricsContext.histogram("batchSize", scope, "fsync");
+    fsyncTimer = solrMetricsContext.timer("time", scope, "fsync");
     solrMetricsContext.gauge(() -> state.getValue(), true, "state", scope);
   }
 
@@ -671,7 +695,9 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
    */
   public TransactionLog newTransactionLog(
       Path tlogFile, Collection<String> globalStrings, boolean openExisting) {
-    return new TransactionLog(tlogFile, globalStrings, openExisting);
+    TransactionLog newLog = new TransactionLog(tlogFile, globalStrings, openExisting);
+    newLog.setMmapReads(mmapReads);
+    return newLog;
   }
 
   public String getTlogDir() {
@@ -812,7 +838,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     // note: sync required to ensure maps aren't changed out form under us
     if (cmd.isInPlaceUpdate()) {
       BytesRef indexedId = cmd.getIndexedId();
-      for (Map<BytesRef, LogPtr> currentMap : Arrays.asList(map, prevMap, prevMap2)) {
+      for (LogPtrMap currentMap : Arrays.asList(map, prevMap, prevMap2)) {
         if (currentMap != null) {
           LogPtr prevEntry = currentMap.get(indexedId);
           if (null != prevEntry) {
@@ -977,20 +1003,37 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   }
 
   protected void newMap() {
+    if (prevMap2 != null) {
+      spareMap = prevMap2;
+    }
     prevMap2 = prevMap;
     prevMapLog2 = prevMapLog;
 
     prevMap = map;
     prevMapLog = tlog;
 
-    map = new HashMap<>();
+    map = reuseMap();
   }
 
   private void clearOldMaps() {
+    if (prevMap != null || prevMap2 != null) {
+      spareMap = prevMap != null ? prevMap : prevMap2;
+    }
     prevMap = null;
     prevMap2 = null;
   }
 
+  /** Returns the spare map cleared, so as not to allocate its arrays again, or a new map */
+  private LogPtrMap reuseMap() {
+    LogPtrMap reused = spareMap;
+    if (reused == null) {
+      return new LogPtrMap();
+    }
+    spareMap = null;
+    reused.clear();
+    return reused;
+  }
+
   public boolean hasUncommittedChanges() {
     return tlog != null;
   }
@@ -1056,13 +1099,11 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
 
     synchronized (this) {
       if (!cmd.softCommit) return; // already handled this at the start of the hard commit
-      newMap();
-
       // start adding documents to a new map since we won't know if
       // any added documents will make it into this commit or not.
       // But we do know that any updates already added will definitely
       // show up in the latest reader after the commit succeeds.
-      map = new HashMap<>();
+      newMap();
 
       if (debug) {
         log.debug(
@@ -1279,28 +1320,16 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   // synchronization is needed for stronger guarantees (as VersionUpdateProcessor does).
   public Long lookupVersion(BytesRef indexedId) {
     LogPtr entry;
-    TransactionLog lookupLog;
 
+    // sync required to ensure maps aren't swapped out from under us: an entry moves from map to
+    // prevMap to prevMap2 on commit, and unsynchronized reads can miss it while it moves
     synchronized (this) {
       entry = map.get(indexedId);
-      lookupLog = tlog; // something found in "map" will always be in "tlog"
-      // SolrCore.verbose("TLOG: lookup ver: for id ",indexedId.utf8ToString(),"in
-      // map",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
       if (entry == null && prevMap != null) {
         entry = prevMap.get(indexedId);
-        // something found in prevMap will always be found in prevMapLog (which could be tlog or
-        // prevTlog)
-        lookupLog = prevMapLog;
-        // SolrCore.verbose("TLOG: lookup ver: for id ",indexedId.utf8ToString(),"in
-        // prevMap",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
       }
       if (entry == null && prevMap2 != null) {
         entry = prevMap2.get(indexedId);
-        // something found in prevMap2 will always be found in prevMapLog2 (which could be tlog or
-        // prevTlog)
-        lookupLog = prevMapLog2;
-        // SolrCore.verbose("TLOG: lookup ver: for id ",indexedId.utf8ToString(),"in
-        // prevMap2",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
       }
     }
 
@@ -1408,7 +1437,9 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     if (tlog == null) {
       return null;
     }
-    map.clear();
+    synchronized (this) {
+      map.clear();
+    }
     recoveryInfo = new RecoveryInfo();
     tlog.incref();
 
@@ -1574,6 +1605,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
         String.format(Locale.ROOT, LOG_FILENAME_PATTERN, BUFFER_TLOG_NAME, System.nanoTime());
     bufferTlog = newTransactionLog(tlogDir.resolve(newLogName), globalStrings, false);
     bufferTlog.isBuffer = true;
+    initSync(bufferTlog);
   }
 
   // Cleanup old buffer tlogs
@@ -1593,6 +1625,21 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     if (tlog == null) {
       String newLogName = String.format(Locale.ROOT, LOG_FILENAME_PATTERN, TLOG_NAME, id);
       tlog = newTransactionLog(tlogDir.resolve(newLogName), globalStrings, false);
+      initSync(tlog);
+    }
+  }
+
+  /** Configures group commit and fsync metrics on a newly created log that will be written to. */
+  protected void initSync(TransactionLog theLog) {
+    theLog.setGroupCommit(groupCommit, this::onFsync);
+  }
+
+  private void onFsync(int records, long elapsedNanos) {
+    if (fsyncTimer != null) {
+      fsyncTimer.update(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+    if (fsyncBatchSizeHistogram != null) {
+      fsyncBatchSizeHistogram.update(records);
     }
   }
 
@@ -1759,6 +1806,15 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
       return result;
     }
 
+    /** Decodes the current record of the reader to log it, since only its header was read */
+    private Object readEntry(TransactionLog.ReverseReader reader) {
+      try {
+        return reader.readRecord();
+      } catch (Exception e) {
+        return "unreadable record at " + reader.position() + " of " + reader;
+      }
+    }
+
     private void update() {
       int numUpdates = 0;
       updateList = new ArrayList<>(logList.size());
@@ -1774,18 +1830,15 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
           reader = oldLog.getReverseReader();
 
           while (numUpdates < numRecordsToKeep) {
-            Object o = null;
             try {
-              o = reader.next();
-              if (o == null) break;
-
-              // should currently be a List<Oper,Ver,Doc/Id>
-              List<?> entry = (List<?>) o;
+              // only decode the operation and version; the rest of the record is only needed for
+              // deletes and in-place updates
+              if (!reader.nextVersion()) break;
 
               // TODO: refactor this out so we get common error handling
-              int opAndFlags = (Integer) entry.get(UpdateLog.FLAGS_IDX);
+              int opAndFlags = reader.getFlags();
               int oper = opAndFlags & UpdateLog.OPERATION_MASK;
-              long version = (Long) entry.get(UpdateLog.VERSION_IDX);
+              long version = reader.getVersion();
 
               if (oldLog.isBuffer) bufferUpdates.add(version);
 
@@ -1800,6 +1853,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                   update.version = version;
 
                   if (oper == UpdateLog.UPDATE_INPLACE) {
+                    // should currently be a List<Oper,Ver,PrevPointer,PrevVer,Doc>
+                    List<?> entry = reader.readRecord();
                     if (entry.size() == 5) {
                       update.previousVersion = (Long) entry.get(UpdateLog.PREV_VERSION_IDX);
                     }
@@ -1810,6 +1865,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                   if (oper == UpdateLog.DELETE_BY_QUERY) {
                     deleteByQueryList.add(update);
                   } else if (oper == UpdateLog.DELETE) {
+                    // should currently be a List<Oper,Ver,Id>
+                    List<?> entry = reader.readRecord();
                     deleteList.add(new DeleteUpdate(version, (byte[]) entry.get(2)));
                   }
 
@@ -1822,7 +1879,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                       SolrException.ErrorCode.SERVER_ERROR, "Unknown Operation! " + oper);
               }
             } catch (ClassCastException cl) {
-              log.warn("Unexpected log entry or corrupt log.  Entry={}", o, cl);
+              log.warn(
+                  "Unexpected log entry or corrupt log.  Entry={}", readEntry(reader), cl);
               // would be caused by a corrupt transaction log
             } catch (Exception ex) {
               log.warn("Exception reverse reading log", ex);
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.ToleratedUpdateError;
+import org.apache.solr.common.ToleratedUpdateError.CmdType;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.CommitUpdateCommand;
+import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.MergeIndexesCommand;
+import org.apache.solr.update.RollbackUpdateCommand;
+import org.apache.solr.update.UpdateCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands the adds and deletes by id of a request to <code>parallelism</code> lanes, each of which
+ * runs them through its own instance of the rest of the chain on a thread of the executor. The
+ * lane of a command is picked by hashing its id, so the commands of a document are processed in
+ * the order they were sent, and at most one at a time.
+ *
+ * <p>Other commands, like commits and deletes by query, wait for all the commands before them to
+ * be processed, and then go through the rest of the chain on the request thread.
+ *
+ * <p>Errors are recorded per document as {@link TolerantUpdateProcessor} does: at most <code>
+ * maxErrors</code> errors are tolerated, 0 by default. Once there are more, the commands that
+ * weren't processed yet are dropped, and the first error is thrown.
+ *
+ * @see ParallelUpdateProcessorFactory
+ */
+class ParallelUpdateProcessor extends UpdateRequestProcessor {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** String to be used as document key for errors when a real uniqueKey can't be determined */
+  private static final String UNKNOWN_ID = "(unknown)";
+
+  /** Number of commands a lane processes before giving its thread to the next task. */
+  private static final int BATCH_SIZE = 1000;
+
+  private final SolrQueryResponse rsp;
+  private final Executor executor;
+  private final Lane[] lanes;
+  private final int maxErrors;
+  private final SchemaField uniqueKeyField;
+
+  /** The commands handed to the lanes that weren't processed yet, up to the maximum. */
+  private final Semaphore inFlight;
+
+  private final int maxInFlight;
+
+  /** Errors in the order they were encountered. Synchronize on this processor to access. */
+  private final List<ToleratedUpdateError> knownErrors = new ArrayList<>();
+
+  private final TolerantUpdateProcessor.FirstErrTracker firstErrTracker =
+      new TolerantUpdateProcessor.FirstErrTracker();
+
+  /** True once there are more errors than tolerated. */
+  private volatile boolean failed = false;
+
+  ParallelUpdateProcessor(
+      SolrQueryRequest req,
+      SolrQueryResponse rsp,
+      UpdateRequestProcessor next,
+      UpdateRequestProcessorChain tail,
+      Executor executor,
+      int parallelism,
+      int queueSize,
+      int maxErrors) {
+    super(next);
+    this.rsp = rsp;
+    this.executor = executor;
+    this.maxErrors = ToleratedUpdateError.getEffectiveMaxErrors(maxErrors);
+    this.uniqueKeyField = req.getCore().getLatestSchema().getUniqueKeyField();
+    this.maxInFlight = parallelism * queueSize;
+    this.inFlight = new Semaphore(maxInFlight);
+
+    // the lanes are created here, on the request thread, as creating processors may change the
+    // request context; each has its own response, merged into the request's one in finish()
+    this.lanes = new Lane[parallelism];
+    for (int i = 0; i < parallelism; i++) {
+      SolrQueryResponse laneRsp = new SolrQueryResponse();
+      laneRsp.addResponseHeader(new SimpleOrderedMap<>());
+      lanes[i] = new Lane(tail.createProcessor(req, laneRsp, false, null), laneRsp);
+    }
+  }
+
+  @Override
+  public void processAdd(AddUpdateCommand cmd) throws IOException {
+    BytesRef id;
+    try {
+      // force AddUpdateCommand to validate+cache the id before proceeding
+      id = cmd.getIndexedId();
+    } catch (Throwable t) {
+      caught(new ToleratedUpdateError(CmdType.ADD, UNKNOWN_ID, t.getMessage()), t);
+      throwIfFailed();
+      return;
+    }
+    // the loader may reuse the command for the next document
+    submit(id, cmd.clone());
+  }
+
+  @Override
+  public void processDelete(DeleteUpdateCommand cmd) throws IOException {
+    if (cmd.isDeleteById()) {
+      submit(cmd.getIndexedId(), cmd.clone());
+    } else {
+      awaitLanes();
+      super.processDelete(cmd);
+    }
+  }
+
+  @Override
+  public void processMergeIndexes(MergeIndexesCommand cmd) throws IOException {
+    awaitLanes();
+    super.processMergeIndexes(cmd);
+  }
+
+  @Override
+  public void processCommit(CommitUpdateCommand cmd) throws IOException {
+    awaitLanes();
+    super.processCommit(cmd);
+  }
+
+  @Override
+  public void processRollback(RollbackUpdateCommand cmd) throws IOException {
+    awaitLanes();
+    super.processRollback(cmd);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    awaitLanes();
+
+    boolean finishFailed = false;
+    for (Lane lane : lanes) {
+      try {
+        lane.proc.finish();
+      } catch (Throwable t) {
+        // the other lanes still need to finish, e.g. to wait for their distributed updates
+        synchronized (this) {
+          firstErrTracker.caught(t);
+        }
+        finishFailed = true;
+      }
+    }
+    mergeResponses();
+
+    super.finish();
+
+    synchronized (this) {
+      if (maxErrors > 0) {
+        NamedList<Object> header = rsp.getResponseHeader();
+        header.add("errors", ToleratedUpdateError.formatForResponseHeader(knownErrors));
+        header.add("maxErrors", ToleratedUpdateError.getUserFriendlyMaxErrors(maxErrors));
+      }
+      firstErrTracker.annotate(knownErrors);
+      if (finishFailed || maxErrors < knownErrors.size()) {
+        firstErrTracker.throwFirst();
+      }
+    }
+  }
+
+  @Override
+  protected void doClose() {
+    // finish() isn't called when a command failed, but the lanes may still be processing others
+    inFlight.acquireUninterruptibly(maxInFlight);
+    inFlight.release(maxInFlight);
+    for (Lane lane : lanes) {
+      try {
+        lane.proc.close();
+      } catch (Exception e) {
+        log.error("Exception closing processor", e);
+      }
+    }
+  }
+
+  private void submit(BytesRef id, UpdateCommand cmd) {
+    throwIfFailed();
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Interrupted while submitting update", e);
+    }
+    // same hash as the one UpdateLocks locks on
+    lanes[Math.floorMod(id.hashCode(), lanes.length)].add(cmd);
+  }
+
+  /** Waits for the lanes to process the commands handed to them. */
+  private void awaitLanes() {
+    try {
+      inFlight.acquire(maxInFlight);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Interrupted while waiting for updates", e);
+    }
+    inFlight.release(maxInFlight);
+    throwIfFailed();
+  }
+
+  private void throwIfFailed() {
+    if (failed) {
+      synchronized (this) {
+        firstErrTracker.annotate(knownErrors);
+        firstErrTracker.throwFirst();
+      }
+    }
+  }
+
+  private synchronized void caught(ToleratedUpdateError err, Throwable t) {
+    firstErrTracker.caught(t);
+    knownErrors.add(err);
+    if (knownErrors.size() > maxErrors) {
+      failed = true;
+    }
+  }
+
+  private void process(UpdateRequestProcessor proc, UpdateCommand cmd) {
+    try {
+      if (cmd instanceof AddUpdateCommand) {
+        proc.processAdd((AddUpdateCommand) cmd);
+      } else {
+        proc.processDelete((DeleteUpdateCommand) cmd);
+      }
+    } catch (Throwable t) {
+      if (cmd instanceof AddUpdateCommand) {
+        BytesRef id = ((AddUpdateCommand) cmd).getIndexedId();
+        caught(new ToleratedUpdateError(CmdType.ADD, getPrintableId(id), t.getMessage()), t);
+      } else {
+        String id = ((DeleteUpdateCommand) cmd).id;
+        caught(new ToleratedUpdateError(CmdType.DELID, id, t.getMessage()), t);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void mergeResponses() {
+    Integer achievedRf = (Integer) rsp.getResponseHeader().get(UpdateRequest.REPFACT);
+    for (Lane lane : lanes) {
+      for (Map.Entry<String, Object> entry : lane.rsp.getValues()) {
+        if (SolrQueryResponse.RESPONSE_HEADER_KEY.equals(entry.getKey())) {
+          continue;
+        }
+        // e.g. the versions of the adds and deletes
+        Object value = rsp.getValues().get(entry.getKey());
+        if (value instanceof NamedList && entry.getValue() instanceof NamedList) {
+          ((NamedList<Object>) value).addAll((NamedList<Object>) entry.getValue());
+        } else {
+          rsp.add(entry.getKey(), entry.getValue());
+        }
+      }
+      Integer rf = (Integer) lane.rsp.getResponseHeader().get(UpdateRequest.REPFACT);
+      if (rf != null) {
+        achievedRf = achievedRf == null ? rf : Math.min(achievedRf, rf);
+      }
+    }
+    if (achievedRf != null) {
+      rsp.getResponseHeader().remove(UpdateRequest.REPFACT);
+      rsp.getResponseHeader().add(UpdateRequest.REPFACT, achievedRf);
+    }
+  }
+
+  private String getPrintableId(BytesRef ref) {
+    if (ref == null) {
+      return UNKNOWN_ID;
+    }
+    return uniqueKeyField.getType().indexedToReadable(ref, new CharsRefBuilder()).toString();
+  }
+
+  /**
+   * Processes its commands in order, one at a time, on a thread of the executor. It gives the
+   * thread back after a batch of commands, so that the lanes of other requests get their turn.
+   */
+  private class Lane implements Runnable {
+    final UpdateRequestProcessor proc;
+    final SolrQueryResponse rsp;
+    private final ArrayDeque<UpdateCommand> queue = new ArrayDeque<>();
+    private boolean running = false;
+
+    Lane(UpdateRequestProcessor proc, SolrQueryResponse rsp) {
+      this.proc = proc;
+      this.rsp = rsp;
+    }
+
+    void add(UpdateCommand cmd) {
+      synchronized (this) {
+        queue.add(cmd);
+        if (running) {
+          return;
+        }
+        running = true;
+      }
+      try {
+        // submitted from the request thread, so that the request info is passed on
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        synchronized (this) {
+          queue.remove(cmd);
+          running = false;
+        }
+        inFlight.release();
+        throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "Core is closing", e);
+      }
+    }
+
+    @Override
+    public void run() {
+      for (int processed = 0; ; processed++) {
+        UpdateCommand cmd;
+        synchronized (this) {
+          cmd = queue.poll();
+          if (cmd == null) {
+            running = false;
+            return;
+          }
+        }
+        if (processed == BATCH_SIZE) {
+          synchronized (this) {
+            queue.addFirst(cmd);
+          }
+          try {
+            executor.execute(this);
+            return;
+          } catch (RejectedExecutionException e) {
+            // the core is closing; finish the commands here
+            processed = 0;
+            continue;
+          }
+        }
+        try {
+          // fail fast
+          if (!failed) {
+            process(proc, cmd);
+          }
+        } finally {
+          inFlight.release();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.util.plugin.SolrCoreAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the documents of an update request in parallel: the processors after this one in the
+ * chain, including the {@link DistributedUpdateProcessor} and the {@link
+ * RunUpdateProcessorFactory}, run on <code>parallelism</code> threads, while the request is still
+ * being parsed on its own thread. The documents with the same id are processed in the order they
+ * were sent. See {@link ParallelUpdateProcessor} for the details.
+ *
+ * <p>The processors after this one get their own instance per thread, but they share the request,
+ * so they must not change it while processing documents, as the default ones don't.
+ *
+ * <p>The threads are taken from a pool of <code>threads</code> threads per core, which defaults to
+ * the number of processors. <code>parallelism</code> defaults to 1, which doesn't process the
+ * documents in parallel, and can be overridden per request. At most <code>queueSize</code>
+ * documents per thread are parsed ahead of being processed. Errors are tolerated like with {@link
+ * TolerantUpdateProcessorFactory}, up to <code>maxErrors</code>, which defaults to 0 here.
+ *
+ * <p>An example configuration would be:
+ *
+ * <pre class="prettyprint">
+ * &lt;updateRequestProcessorChain name="parallel-chain"&gt;
+ *   &lt;processor class="solr.LogUpdateProcessorFactory" /&gt;
+ *   &lt;processor class="solr.ParallelUpdateProcessorFactory"&gt;
+ *     &lt;int name="threads"&gt;8&lt;/int&gt;
+ *   &lt;/processor&gt;
+ *   &lt;processor class="solr.DistributedUpdateProcessorFactory" /&gt;
+ *   &lt;processor class="solr.RunUpdateProcessorFactory" /&gt;
+ * &lt;/updateRequestProcessorChain&gt;
+ * </pre>
+ *
+ * <p>And a request using 4 of its threads:
+ *
+ * <pre class="prettyprint">
+ * curl http://localhost:8983/update?update.chain=parallel-chain&amp;parallelism=4 -H "Content-Type: application/json" -d @docs.json
+ * </pre>
+ *
+ * @see ParallelUpdateProcessor
+ */
+public class ParallelUpdateProcessorFactory extends UpdateRequestProcessorFactory
+    implements SolrCoreAware {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Parameter that defines how many threads process the documents of a request */
+  public static final String PARALLELISM_PARAM = "parallelism";
+
+  /** Parameter that defines how many errors are tolerated */
+  private static final String MAX_ERRORS_PARAM = "maxErrors";
+
+  private static final String THREADS_PARAM = "threads";
+  private static final String QUEUE_SIZE_PARAM = "queueSize";
+
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private int queueSize = 100;
+  private int defaultParallelism = 1;
+  private int defaultMaxErrors = 0;
+
+  private ExecutorService executor;
+
+  @Override
+  public void init(NamedList<?> args) {
+    threads = getInt(args, THREADS_PARAM, threads, 1);
+    queueSize = getInt(args, QUEUE_SIZE_PARAM, queueSize, 1);
+    defaultParallelism = getInt(args, PARALLELISM_PARAM, defaultParallelism, 1);
+    defaultMaxErrors = getInt(args, MAX_ERRORS_PARAM, defaultMaxErrors, -1);
+  }
+
+  private static int getInt(NamedList<?> args, String name, int defaultValue, int min) {
+    Object obj = args.get(name);
+    if (obj == null) {
+      return defaultValue;
+    }
+    int value;
+    try {
+      value = Integer.parseInt(obj.toString());
+    } catch (Exception e) {
+      throw new SolrException(
+          ErrorCode.SERVER_ERROR, "Unable to parse " + name + " parameter: " + obj, e);
+    }
+    if (value < min) {
+      throw new SolrException(
+          ErrorCode.SERVER_ERROR, "Config option '" + name + "' must be at least " + min);
+    }
+    return value;
+  }
+
+  @Override
+  public void inform(SolrCore core) {
+    if (null == core.getLatestSchema().getUniqueKeyField()) {
+      throw new SolrException(
+          ErrorCode.SERVER_ERROR,
+          this.getClass().getName() + " requires a schema that includes a uniqueKey field.");
+    }
+    executor =
+        ExecutorUtil.newMDCAwareFixedThreadPool(
+            threads, new SolrNamedThreadFactory("parallelUpdate"));
+    core.addCloseHook(
+        new CloseHook() {
+          @Override
+          public void preClose(SolrCore core) {
+            ExecutorUtil.shutdownAndAwaitTermination(executor);
+          }
+        });
+  }
+
+  @Override
+  public UpdateRequestProcessor getInstance(
+      SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+    int parallelism = req.getParams().getInt(PARALLELISM_PARAM, defaultParallelism);
+    if (parallelism < 1) {
+      throw new SolrException(
+          ErrorCode.BAD_REQUEST, "'" + PARALLELISM_PARAM + "' must be positive: " + parallelism);
+    }
+    int maxErrors = req.getParams().getInt(MAX_ERRORS_PARAM, defaultMaxErrors);
+    if (maxErrors < -1) {
+      throw new SolrException(
+          ErrorCode.BAD_REQUEST,
+          "'"
+              + MAX_ERRORS_PARAM
+              + "' must either be non-negative, or -1 to indicate 'unlimited': "
+              + maxErrors);
+    }
+    parallelism = Math.min(parallelism, threads);
+    if (parallelism == 1) {
+      return next;
+    }
+
+    // the processors after this one, to create an instance of them per lane
+    List<UpdateRequestProcessorFactory> chain =
+        req.getCore().getUpdateProcessorChain(req.getParams()).getProcessors();
+    int index = chain.indexOf(this);
+    if (index < 0) {
+      log.warn("Can't find {} in the update chain, processing updates sequentially", this);
+      return next;
+    }
+    UpdateRequestProcessorChain tail =
+        new UpdateRequestProcessorChain(chain.subList(index + 1, chain.size()), req.getCore());
+
+    return new ParallelUpdateProcessor(
+        req, rsp, next, tail, executor, parallelism, queueSize, maxErrors);
+  }
+}
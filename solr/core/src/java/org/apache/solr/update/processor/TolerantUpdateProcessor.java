@@ -312,7 +312,7 @@ public class TolerantUpdateProcessor extends UpdateRequestProcessor {
    *
    * <p>NOTE: NOT THREAD SAFE
    */
-  private static final class FirstErrTracker {
+  static final class FirstErrTracker {
 
     SolrException first = null;
     boolean thrown = false;
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Runs a worker on the calling thread and on helper threads of an executor, the worker claiming
+ * its pieces of work from shared state, such as the next index of a list. Helpers that haven't
+ * started by the time the calling thread's worker returns never run, so the calling thread doesn't
+ * wait for them: callers sharing a bounded executor, possibly nested, can't end up waiting on each
+ * other.
+ */
+public final class HelperThreads {
+
+  private HelperThreads() {}
+
+  /**
+   * Runs {@code worker} on the calling thread, and on up to {@code threads - 1} helpers submitted
+   * to {@code executor}, then waits for the helpers that started. Helpers the executor rejects are
+   * skipped, leaving their share of the work to the others.
+   *
+   * @param helperFailure called with the exception a helper's worker failed with
+   * @throws InterruptedException if interrupted while waiting for a helper
+   */
+  public static void run(
+      ExecutorService executor, int threads, Runnable worker, Consumer<Throwable> helperFailure)
+      throws InterruptedException {
+    List<Future<?>> helpers = new ArrayList<>(threads - 1);
+    List<AtomicBoolean> claimed = new ArrayList<>(threads - 1);
+    for (int t = 1; t < threads; t++) {
+      // a helper only runs if it claims itself before the calling thread does
+      AtomicBoolean helperClaimed = new AtomicBoolean();
+      try {
+        helpers.add(
+            executor.submit(
+                () -> {
+                  if (helperClaimed.compareAndSet(false, true)) {
+                    worker.run();
+                  }
+                }));
+        claimed.add(helperClaimed);
+      } catch (RejectedExecutionException e) {
+        break; // shutting down; do the rest on this thread
+      }
+    }
+    worker.run();
+    for (int h = 0; h < helpers.size(); h++) {
+      if (claimed.get(h).compareAndSet(false, true)) {
+        continue; // never started, and now it never will
+      }
+      try {
+        helpers.get(h).get();
+      } catch (ExecutionException e) {
+        helperFailure.accept(e.getCause());
+      }
+    }
+  }
+}
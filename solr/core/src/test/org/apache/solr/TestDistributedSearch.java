@@ -307,6 +307,11 @@ public class TestDistributedSearch extends BaseDistributedSearchTestCase {
     query("q", "*:*", "sort", "n_tl1 asc", "fl", "*,score");
     query("q", "*:*", "sort", "n_tl1 desc");
 
+    // small pages and offsets, merging on several sort fields
+    query("q", "*:*", "sort", i1 + " desc, id asc", "rows", 1);
+    query("q", "*:*", "sort", i1 + " asc, id desc", "start", 4, "rows", 3);
+    query("q", "*:*", "sort", "id desc", "start", 7, "rows", 2, "fl", "*,score");
+
     handle.put("maxScore", SKIPVAL);
     testMinExactCount();
 
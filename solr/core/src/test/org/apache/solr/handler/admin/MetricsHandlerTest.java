@@ -1028,6 +1028,67 @@ public class MetricsHandlerTest extends SolrTestCaseJ4 {
     handler.close();
   }
 
+  @Test
+  public void testPrometheusMetricsCache() throws Exception {
+    MetricsHandler handler = new MetricsHandler(h.getCoreContainer());
+    SolrMetricManager metricManager = h.getCoreContainer().getMetricManager();
+    Labels labels =
+        Labels.of(
+            "category",
+            "QUERY",
+            "core",
+            "collection1",
+            "handler",
+            "/cached",
+            "type",
+            "requests");
+
+    // the scrapes read the current values of the cached metrics
+    Counter counter =
+        metricManager.counter(null, "solr.core.collection1", "QUERY./cached.requests");
+    counter.inc(2);
+    assertEquals(2, getCachedRequests(handler, labels), 0);
+    counter.inc(3);
+    assertEquals(5, getCachedRequests(handler, labels), 0);
+
+    // the registry is categorized again once a metric is removed
+    metricManager.registry("solr.core.collection1").remove("QUERY./cached.requests");
+    assertTrue(Double.isNaN(getCachedRequests(handler, labels)));
+
+    // or added
+    metricManager.counter(null, "solr.core.collection1", "QUERY./cached.requests").inc(7);
+    assertEquals(7, getCachedRequests(handler, labels), 0);
+
+    metricManager.registry("solr.core.collection1").remove("QUERY./cached.requests");
+    handler.close();
+  }
+
+  /** Returns the requests of the given labels, or NaN if they aren't exported */
+  private double getCachedRequests(MetricsHandler handler, Labels labels) throws Exception {
+    SolrQueryResponse resp = new SolrQueryResponse();
+    handler.handleRequestBody(
+        req(
+            CommonParams.QT,
+            "/admin/metrics",
+            CommonParams.WT,
+            "prometheus",
+            "group",
+            "core",
+            "prefix",
+            "QUERY"),
+        resp);
+    NamedList<?> values = (NamedList<?>) resp.getValues().get("metrics");
+    SolrPrometheusFormatter formatter =
+        (SolrPrometheusFormatter) values.get("solr.core.collection1");
+    MetricSnapshot snapshot = getMetricSnapshot(formatter.collect(), "solr_metrics_core_requests");
+    return snapshot.getDataPoints().stream()
+        .filter(dataPoint -> dataPoint.getLabels().hasSameValues(labels))
+        .mapToDouble(
+            dataPoint -> ((CounterSnapshot.CounterDataPointSnapshot) dataPoint).getValue())
+        .findAny()
+        .orElse(Double.NaN);
+  }
+
   @Test
   public void testMetricsUnload() throws Exception {
 
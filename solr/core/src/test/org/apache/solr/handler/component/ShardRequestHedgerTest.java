@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.impl.LBSolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.Test;
+
+public class ShardRequestHedgerTest extends SolrTestCase {
+
+  private static final String FIRST = "http://host1:8983/solr/coll_shard1_replica_n1";
+  private static final String SECOND = "http://host2:8983/solr/coll_shard1_replica_n2";
+
+  /** The requests sent, and their futures, which the tests complete. */
+  private final List<LBSolrClient.Req> sent = new CopyOnWriteArrayList<>();
+
+  private final List<CompletableFuture<LBSolrClient.Rsp>> futures = new CopyOnWriteArrayList<>();
+
+  @Test
+  public void testHedgeWins() throws Exception {
+    try (ShardRequestHedger hedger = new ShardRequestHedger(95, 10, 100)) {
+      train(hedger);
+      assertEquals(TimeUnit.MILLISECONDS.toNanos(10), hedger.getDelayNanos(FIRST));
+
+      CompletableFuture<LBSolrClient.Rsp> result = hedger.request(req(), this::send);
+      // the hedge goes to the second replica first
+      awaitSent(2);
+      assertEquals(SECOND, sent.get(1).getEndpoints().get(0).toString());
+      assertEquals(FIRST, sent.get(1).getEndpoints().get(1).toString());
+
+      futures.get(1).complete(rsp(SECOND));
+      assertEquals(SECOND, result.get(10, TimeUnit.SECONDS).getServer());
+      assertTrue(futures.get(0).isCancelled());
+      assertEquals(1, hedger.getFired());
+      assertEquals(1, hedger.getWon());
+    }
+  }
+
+  @Test
+  public void testFirstResponseBeforeDelay() throws Exception {
+    try (ShardRequestHedger hedger = new ShardRequestHedger(95, 60_000, 100)) {
+      train(hedger);
+
+      CompletableFuture<LBSolrClient.Rsp> result = hedger.request(req(), this::send);
+      futures.get(0).complete(rsp(FIRST));
+      assertEquals(FIRST, result.get(10, TimeUnit.SECONDS).getServer());
+      assertEquals(1, sent.size());
+      assertEquals(0, hedger.getFired());
+    }
+  }
+
+  @Test
+  public void testOverBudget() throws Exception {
+    try (ShardRequestHedger hedger = new ShardRequestHedger(95, 1, 0)) {
+      train(hedger);
+
+      CompletableFuture<LBSolrClient.Rsp> result = hedger.request(req(), this::send);
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (hedger.getOverBudget() == 0 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, hedger.getOverBudget());
+      assertEquals(0, hedger.getFired());
+      assertEquals(1, sent.size());
+      assertFalse(result.isDone());
+
+      futures.get(0).complete(rsp(FIRST));
+      assertEquals(FIRST, result.get(10, TimeUnit.SECONDS).getServer());
+    }
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    try (ShardRequestHedger hedger = new ShardRequestHedger(95, 1, 100)) {
+      train(hedger);
+
+      CompletableFuture<LBSolrClient.Rsp> result = hedger.request(req(), this::send);
+      awaitSent(2);
+      result.cancel(true);
+      assertTrue(futures.get(0).isCancelled());
+      assertTrue(futures.get(1).isCancelled());
+      assertEquals(0, hedger.getWon());
+    }
+  }
+
+  @Test
+  public void testFailureWaitsForHedge() throws Exception {
+    try (ShardRequestHedger hedger = new ShardRequestHedger(95, 1, 100)) {
+      train(hedger);
+
+      CompletableFuture<LBSolrClient.Rsp> result = hedger.request(req(), this::send);
+      awaitSent(2);
+      futures.get(0).completeExceptionally(new RuntimeException("first failed"));
+      assertFalse(result.isDone());
+      futures.get(1).complete(rsp(SECOND));
+      assertEquals(SECOND, result.get(10, TimeUnit.SECONDS).getServer());
+    }
+  }
+
+  @Test
+  public void testNotHedgedWithoutLatencies() throws Exception {
+    try (ShardRequestHedger hedger = new ShardRequestHedger(95, 1, 100)) {
+      assertEquals(-1, hedger.getDelayNanos(FIRST));
+      for (int i = 0; i < ShardRequestHedger.MIN_SAMPLES - 1; i++) {
+        hedger.request(req(), this::send);
+        futures.get(futures.size() - 1).complete(rsp(FIRST));
+      }
+      assertEquals(-1, hedger.getDelayNanos(FIRST));
+
+      sent.clear();
+      futures.clear();
+      CompletableFuture<LBSolrClient.Rsp> result = hedger.request(req(), this::send);
+      // the result is the request to the first replica itself
+      assertSame(futures.get(0), result);
+    }
+  }
+
+  @Test
+  public void testUpdatesAndAdminRequestsNotHedged() throws Exception {
+    try (ShardRequestHedger hedger = new ShardRequestHedger(95, 1, 100)) {
+      train(hedger);
+
+      CompletableFuture<LBSolrClient.Rsp> result =
+          hedger.request(req(new UpdateRequest()), this::send);
+      assertSame(futures.get(0), result);
+
+      QueryRequest admin = new QueryRequest(new ModifiableSolrParams());
+      admin.setPath(CommonParams.METRICS_PATH);
+      result = hedger.request(req(admin), this::send);
+      assertSame(futures.get(1), result);
+      assertEquals(2, sent.size());
+    }
+  }
+
+  @Test
+  public void testCancelledFirstReplicaRecorded() throws Exception {
+    try (ShardRequestHedger hedger = new ShardRequestHedger(50, 0, 100)) {
+      train(hedger);
+      long slow = TimeUnit.MILLISECONDS.toNanos(5);
+      assertTrue(hedger.getDelayNanos(FIRST) < slow);
+
+      // enough lost races for the slow latencies to be the majority when the delay is recomputed
+      for (int i = 0; i < ShardRequestHedger.WINDOW / 2 - ShardRequestHedger.MIN_SAMPLES; i++) {
+        CompletableFuture<LBSolrClient.Rsp> result = hedger.request(req(), this::send);
+        awaitSent(2);
+        Thread.sleep(5);
+        futures.get(1).complete(rsp(SECOND));
+        assertEquals(SECOND, result.get(10, TimeUnit.SECONDS).getServer());
+        assertTrue(futures.get(0).isCancelled());
+        sent.clear();
+        futures.clear();
+      }
+      assertTrue(hedger.getDelayNanos(FIRST) >= slow);
+    }
+  }
+
+  /** Answers enough requests from the first replica for it to have a hedge delay. */
+  private void train(ShardRequestHedger hedger) {
+    for (int i = 0; i < ShardRequestHedger.MIN_SAMPLES; i++) {
+      hedger.request(req(), this::send);
+      futures.get(futures.size() - 1).complete(rsp(FIRST));
+    }
+    assertTrue(hedger.getDelayNanos(FIRST) >= 0);
+    sent.clear();
+    futures.clear();
+  }
+
+  private void awaitSent(int count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (sent.size() < count && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, sent.size());
+  }
+
+  private CompletableFuture<LBSolrClient.Rsp> send(LBSolrClient.Req req) {
+    CompletableFuture<LBSolrClient.Rsp> future = new CompletableFuture<>();
+    // the future first, so that it's there once the request is
+    futures.add(future);
+    sent.add(req);
+    return future;
+  }
+
+  private static LBSolrClient.Req req() {
+    return req(new QueryRequest(new ModifiableSolrParams()));
+  }
+
+  private static LBSolrClient.Req req(SolrRequest<?> request) {
+    return new LBSolrClient.Req(
+        request,
+        List.of(LBSolrClient.Endpoint.from(FIRST), LBSolrClient.Endpoint.from(SECOND)));
+  }
+
+  private static LBSolrClient.Rsp rsp(String url) {
+    return new LBSolrClient.Rsp() {
+      {
+        server = url;
+      }
+    };
+  }
+}
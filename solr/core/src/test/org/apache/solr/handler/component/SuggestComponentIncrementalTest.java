@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.index.NoMergePolicyFactory;
+import org.apache.solr.spelling.suggest.DocumentDictionaryFactory;
+import org.apache.solr.spelling.suggest.IncrementalLookup;
+import org.apache.solr.spelling.suggest.SolrSuggester;
+import org.apache.solr.spelling.suggest.SuggesterParams;
+import org.apache.solr.spelling.suggest.fst.FSTLookupFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests the suggesters built per segment of the index */
+public class SuggestComponentIncrementalTest extends SolrTestCaseJ4 {
+
+  private static final String rh = "/suggest";
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // the segments that didn't change must not be merged, for their lookups to be reused
+    systemSetPropertySolrTestsMergePolicyFactory(NoMergePolicyFactory.class.getName());
+    initCore("solrconfig-suggestercomponent.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    systemClearPropertySolrTestsMergePolicyFactory();
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+
+    // id, cat, price, weight
+    assertU(adoc("id", "0", "cat", "This is a title", "price", "5", "weight", "10"));
+    assertU(adoc("id", "1", "cat", "This is another title", "price", "10", "weight", "10"));
+    assertU(adoc("id", "7", "cat", "example data", "price", "40", "weight", "30"));
+    assertU(adoc("id", "8", "cat", "example inputdata", "price", "45", "weight", "30"));
+    assertU((commit()));
+    waitForWarming();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    super.tearDown();
+    assertU(delQ("*:*"));
+    assertU((commit()));
+    waitForWarming();
+  }
+
+  @Test
+  public void testDocumentBasedIncremental() throws Exception {
+    String path = "//lst[@name='suggest']/lst[@name='suggest_fuzzy_doc_dict_incremental']";
+    // built on commit
+    assertQ(
+        req(
+            "qt",
+            rh,
+            SuggesterParams.SUGGEST_DICT,
+            "suggest_fuzzy_doc_dict_incremental",
+            SuggesterParams.SUGGEST_Q,
+            "exampel",
+            SuggesterParams.SUGGEST_COUNT,
+            "5"),
+        path + "/lst[@name='exampel']/int[@name='numFound'][.='2']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[1]/str[@name='term'][.='example inputdata']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[1]/long[@name='weight'][.='45']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[2]/str[@name='term'][.='example data']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[2]/long[@name='weight'][.='40']");
+
+    Path storeDir = Path.of(h.getCore().getDataDir(), "suggest_fuzzy_doc_dict_incremental");
+    try (Stream<Path> files = Files.list(storeDir)) {
+      assertTrue(files.anyMatch(file -> file.toString().endsWith(".fwfsta.bin")));
+    }
+    IncrementalLookup lookup = getIncrementalLookup("suggest_fuzzy_doc_dict_incremental");
+    int numSegments = getNumSegments();
+
+    // the suggestions of the new segment are merged with the others
+    assertU(adoc("id", "11", "cat", "example newdata", "price", "60", "weight", "40"));
+    assertU(commit());
+    waitForWarming();
+    assertQ(
+        req(
+            "qt",
+            rh,
+            SuggesterParams.SUGGEST_DICT,
+            "suggest_fuzzy_doc_dict_incremental",
+            SuggesterParams.SUGGEST_Q,
+            "exampel",
+            SuggesterParams.SUGGEST_COUNT,
+            "5"),
+        path + "/lst[@name='exampel']/int[@name='numFound'][.='3']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[1]/str[@name='term'][.='example newdata']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[1]/long[@name='weight'][.='60']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[2]/str[@name='term'][.='example inputdata']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[3]/str[@name='term'][.='example data']");
+    // only the lookup of the new segment was built
+    assertEquals(numSegments + 1, getNumSegments());
+    assertEquals(1, lookup.getBuiltCount());
+    assertEquals(numSegments, lookup.getReusedCount());
+    assertEquals(0, lookup.getLoadedCount());
+
+    // the segment with a new deletion is built again
+    assertU(delI("8"));
+    assertU(commit());
+    waitForWarming();
+    assertQ(
+        req(
+            "qt",
+            rh,
+            SuggesterParams.SUGGEST_DICT,
+            "suggest_fuzzy_doc_dict_incremental",
+            SuggesterParams.SUGGEST_Q,
+            "exampel",
+            SuggesterParams.SUGGEST_COUNT,
+            "5"),
+        path + "/lst[@name='exampel']/int[@name='numFound'][.='2']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[1]/str[@name='term'][.='example newdata']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[2]/str[@name='term'][.='example data']");
+    assertEquals(1, lookup.getBuiltCount());
+    assertEquals(numSegments, lookup.getReusedCount());
+
+    // reloading loads the stored lookups of all the segments
+    assertQ(
+        req(
+            "qt",
+            rh,
+            SuggesterParams.SUGGEST_DICT,
+            "suggest_fuzzy_doc_dict_incremental",
+            SuggesterParams.SUGGEST_RELOAD,
+            "true",
+            SuggesterParams.SUGGEST_Q,
+            "exampel",
+            SuggesterParams.SUGGEST_COUNT,
+            "5"),
+        "//str[@name='command'][.='reload']",
+        path + "/lst[@name='exampel']/int[@name='numFound'][.='2']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[1]/str[@name='term'][.='example newdata']",
+        path + "/lst[@name='exampel']/arr[@name='suggestions']/lst[2]/str[@name='term'][.='example data']");
+    assertEquals(0, lookup.getBuiltCount());
+    assertEquals(0, lookup.getReusedCount());
+    assertEquals(numSegments + 1, lookup.getLoadedCount());
+  }
+
+  @Test
+  public void testNormalizedWeightsNotSupported() {
+    NamedList<Object> config = new NamedList<>();
+    config.add(SolrSuggester.LOOKUP_IMPL, FSTLookupFactory.class.getName());
+    config.add(SolrSuggester.DICTIONARY_IMPL, DocumentDictionaryFactory.class.getName());
+    config.add(SolrSuggester.BUILD_INCREMENTALLY, "true");
+    SolrException e =
+        expectThrows(SolrException.class, () -> new SolrSuggester().init(config, h.getCore()));
+    assertTrue(e.getMessage(), e.getMessage().contains(SolrSuggester.BUILD_INCREMENTALLY));
+  }
+
+  @Test
+  public void testBuildFromDictionaryNotSupported() {
+    IncrementalLookup lookup = getIncrementalLookup("suggest_fuzzy_doc_dict_incremental");
+    expectThrows(SolrException.class, () -> lookup.build(InputIterator.EMPTY));
+  }
+
+  private static IncrementalLookup getIncrementalLookup(String dictionary) {
+    SuggestComponent component = (SuggestComponent) h.getCore().getSearchComponent("suggest");
+    return (IncrementalLookup) component.suggesters.get(dictionary).getLookup();
+  }
+
+  private static int getNumSegments() throws Exception {
+    return h.getCore().withSearcher(searcher -> searcher.getIndexReader().leaves().size());
+  }
+}
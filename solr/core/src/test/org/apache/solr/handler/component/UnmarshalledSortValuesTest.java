@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.schema.StrField;
+import org.junit.Test;
+
+public class UnmarshalledSortValuesTest extends SolrTestCase {
+
+  @Test
+  public void testUnmarshalsOnFirstRead() {
+    AtomicInteger unmarshalled = new AtomicInteger();
+    StrField fieldType =
+        new StrField() {
+          @Override
+          public Object unmarshalSortValue(Object value) {
+            unmarshalled.incrementAndGet();
+            return super.unmarshalSortValue(value);
+          }
+        };
+    List<Object> values =
+        new QueryComponent.UnmarshalledSortValues(fieldType, Arrays.asList("a", null, "c"));
+    assertEquals(3, values.size());
+    assertEquals(0, unmarshalled.get());
+
+    // each value is unmarshalled once, when it is first read
+    assertEquals(new BytesRef("c"), values.get(2));
+    assertEquals(new BytesRef("c"), values.get(2));
+    assertEquals(1, unmarshalled.get());
+    assertNull(values.get(1));
+    assertNull(values.get(1));
+    assertEquals(2, unmarshalled.get());
+    assertEquals(new BytesRef("a"), values.get(0));
+    assertEquals(3, unmarshalled.get());
+  }
+}
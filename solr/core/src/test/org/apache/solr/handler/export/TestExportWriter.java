@@ -17,7 +17,12 @@
 package org.apache.solr.handler.export;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -31,10 +36,14 @@ import org.apache.lucene.tests.util.TestUtil;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.StreamParams;
+import org.apache.solr.common.util.JavaBinCodec;
 import org.apache.solr.common.util.SuppressForbidden;
 import org.apache.solr.common.util.Utils;
 import org.apache.solr.index.LogDocMergePolicyFactory;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.BinaryQueryResponseWriter;
+import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.SchemaField;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -1403,6 +1412,244 @@ public class TestExportWriter extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testColumnar() throws Exception {
+    clearIndex();
+    int numDocs = atLeast(50);
+    Map<String, Object[]> model = new HashMap<>();
+    for (int i = 0; i < numDocs; i++) {
+      String id = String.valueOf(i);
+      SolrInputDocument doc = new SolrInputDocument("id", id);
+      // every field but id is missing from some docs
+      Object[] values = new Object[7];
+      if (random().nextInt(5) > 0) {
+        values[0] = random().nextInt();
+        doc.addField("intdv", values[0]);
+      }
+      if (random().nextInt(5) > 0) {
+        values[1] = random().nextLong();
+        doc.addField("longdv", values[1]);
+      }
+      if (random().nextInt(5) > 0) {
+        values[2] = random().nextFloat();
+        doc.addField("floatdv", values[2]);
+      }
+      if (random().nextInt(5) > 0) {
+        values[3] = random().nextDouble();
+        doc.addField("doubledv", values[3]);
+      }
+      if (random().nextInt(5) > 0) {
+        values[4] = TestUtil.randomSimpleString(random(), 1, 10);
+        doc.addField("stringdv", values[4]);
+      }
+      if (random().nextInt(5) > 0) {
+        values[5] = random().nextBoolean();
+        doc.addField("booleandv", values[5]);
+      }
+      if (random().nextInt(5) > 0) {
+        values[6] = random().nextInt(Integer.MAX_VALUE) * 1000L;
+        doc.addField("datedv", Instant.ofEpochMilli((Long) values[6]).toString());
+      }
+      model.put(id, values);
+      assertU(adoc(doc));
+      if (random().nextInt(20) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    String fl = "id,intdv,longdv,floatdv,doubledv,stringdv,booleandv,datedv";
+    String sort = "intdv desc,id asc";
+    List<?> docs = queryJsonReturnDocs(req("q", "*:*", "qt", "/export", "fl", fl, "sort", sort));
+
+    Map<?, ?> response =
+        (Map<?, ?>)
+            queryJavabin(
+                    req("q", "*:*", "fl", fl, "sort", sort, "wt", "javabin", "columnar", "true"))
+                .get("response");
+    assertEquals(numDocs, ((Number) response.get("numFound")).intValue());
+    List<?> batches = (List<?>) response.get("batches");
+    assertEquals(1, batches.size());
+    Map<?, ?> batch = (Map<?, ?>) batches.get(0);
+    assertEquals(numDocs, ((Number) batch.get("count")).intValue());
+
+    String[] ids = strings((Map<?, ?>) batch.get("id"), numDocs);
+    Object[][] columns = {
+      ints((Map<?, ?>) batch.get("intdv"), numDocs),
+      longs((Map<?, ?>) batch.get("longdv"), "long", numDocs),
+      floats((Map<?, ?>) batch.get("floatdv"), numDocs),
+      doubles((Map<?, ?>) batch.get("doubledv"), numDocs),
+      strings((Map<?, ?>) batch.get("stringdv"), numDocs),
+      booleans((Map<?, ?>) batch.get("booleandv"), numDocs),
+      longs((Map<?, ?>) batch.get("datedv"), "date", numDocs)
+    };
+    for (int i = 0; i < numDocs; i++) {
+      // same order as the docs exported one by one
+      assertEquals(((Map<?, ?>) docs.get(i)).get("id"), ids[i]);
+      Object[] expected = model.get(ids[i]);
+      for (int c = 0; c < columns.length; c++) {
+        assertEquals("doc " + ids[i] + " column " + c, expected[c], columns[c][i]);
+      }
+    }
+  }
+
+  @Test
+  public void testColumnarBatches() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+    createLargeIndex();
+
+    Map<?, ?> response =
+        (Map<?, ?>)
+            queryJavabin(
+                    req(
+                        "q",
+                        "*:*",
+                        "fl",
+                        "id,small_i_p",
+                        "sort",
+                        "small_i_p asc,id desc",
+                        "wt",
+                        "javabin",
+                        "columnar",
+                        "true"))
+                .get("response");
+    List<?> batches = (List<?>) response.get("batches");
+    assertTrue(batches.size() > 1);
+    int total = 0;
+    int last = Integer.MIN_VALUE;
+    for (Object b : batches) {
+      Map<?, ?> batch = (Map<?, ?>) b;
+      int count = ((Number) batch.get("count")).intValue();
+      String[] ids = strings((Map<?, ?>) batch.get("id"), count);
+      Object[] small = ints((Map<?, ?>) batch.get("small_i_p"), count);
+      for (int i = 0; i < count; i++) {
+        int id = Integer.parseInt(ids[i]);
+        int expected = (id / 5000 + id % 5000) % 37;
+        assertEquals(expected, small[i]);
+        assertTrue(expected >= last);
+        last = expected;
+      }
+      total += count;
+    }
+    assertEquals(100000, total);
+  }
+
+  @Test
+  public void testColumnarRequiresJavabin() throws Exception {
+    clearIndex();
+    assertU(adoc("id", "1", "intdv", "1"));
+    assertU(commit());
+    String resp =
+        h.query(
+            req(
+                "q",
+                "*:*",
+                "qt",
+                "/export",
+                "fl",
+                "id,intdv",
+                "sort",
+                "intdv asc",
+                "columnar",
+                "true"));
+    assertTrue(resp, resp.contains("columnar export requires wt=javabin"));
+  }
+
+  private Map<?, ?> queryJavabin(SolrQueryRequest req) throws Exception {
+    try {
+      SolrQueryResponse rsp = new SolrQueryResponse();
+      SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+      h.getCore().execute(h.getCore().getRequestHandler("/export"), req, rsp);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ((BinaryQueryResponseWriter) h.getCore().getQueryResponseWriter(req)).write(out, req, rsp);
+      try (JavaBinCodec codec = new JavaBinCodec()) {
+        return (Map<?, ?>) codec.unmarshal(out.toByteArray());
+      }
+    } finally {
+      req.close();
+      SolrRequestInfo.clearRequestInfo();
+    }
+  }
+
+  private static boolean isSet(byte[] bitmap, int i) {
+    return (bitmap[i >>> 3] & (1 << (i & 7))) != 0;
+  }
+
+  private static boolean isPresent(Map<?, ?> column, int i) {
+    byte[] validity = (byte[]) column.get("validity");
+    return validity == null || isSet(validity, i);
+  }
+
+  private static ByteBuffer values(Map<?, ?> column, String type, int width, int count) {
+    assertEquals(type, column.get("type"));
+    byte[] values = (byte[]) column.get("values");
+    assertEquals(width * count, values.length);
+    return ByteBuffer.wrap(values).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static Object[] ints(Map<?, ?> column, int count) {
+    ByteBuffer values = values(column, "int", Integer.BYTES, count);
+    Object[] result = new Object[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = isPresent(column, i) ? values.getInt(i * Integer.BYTES) : null;
+    }
+    return result;
+  }
+
+  private static Object[] longs(Map<?, ?> column, String type, int count) {
+    ByteBuffer values = values(column, type, Long.BYTES, count);
+    Object[] result = new Object[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = isPresent(column, i) ? values.getLong(i * Long.BYTES) : null;
+    }
+    return result;
+  }
+
+  private static Object[] floats(Map<?, ?> column, int count) {
+    ByteBuffer values = values(column, "float", Float.BYTES, count);
+    Object[] result = new Object[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = isPresent(column, i) ? values.getFloat(i * Float.BYTES) : null;
+    }
+    return result;
+  }
+
+  private static Object[] doubles(Map<?, ?> column, int count) {
+    ByteBuffer values = values(column, "double", Double.BYTES, count);
+    Object[] result = new Object[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = isPresent(column, i) ? values.getDouble(i * Double.BYTES) : null;
+    }
+    return result;
+  }
+
+  private static Object[] booleans(Map<?, ?> column, int count) {
+    assertEquals("boolean", column.get("type"));
+    byte[] values = (byte[]) column.get("values");
+    Object[] result = new Object[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = isPresent(column, i) ? isSet(values, i) : null;
+    }
+    return result;
+  }
+
+  private static String[] strings(Map<?, ?> column, int count) {
+    assertEquals("string", column.get("type"));
+    ByteBuffer offsets =
+        ByteBuffer.wrap((byte[]) column.get("offsets")).order(ByteOrder.LITTLE_ENDIAN);
+    byte[] values = (byte[]) column.get("values");
+    String[] result = new String[count];
+    for (int i = 0; i < count; i++) {
+      if (isPresent(column, i)) {
+        int start = offsets.getInt(i * Integer.BYTES);
+        int end = offsets.getInt((i + 1) * Integer.BYTES);
+        result[i] = new String(values, start, end - start, StandardCharsets.UTF_8);
+      }
+    }
+    return result;
+  }
+
   @SuppressWarnings("rawtypes")
   private List<?> queryJsonReturnDocs(SolrQueryRequest exportReq) throws Exception {
     String respStr = h.query(exportReq);
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
 import org.apache.lucene.index.VectorEncoding;
 import org.apache.lucene.index.VectorSimilarityFunction;
 import org.apache.solr.common.SolrException;
@@ -82,6 +83,14 @@ public class DenseVectorFieldTest extends AbstractBadConfigTestBase {
         "DenseVectorField fields can not be multiValued: vector");
   }
 
+  @Test
+  public void fieldTypeDefinition_quantizedByteEncoding_shouldThrowException() throws Exception {
+    assertConfigs(
+        "solrconfig-basic.xml",
+        "bad-schema-densevector-quantization.xml",
+        "vector quantization is only supported for the FLOAT32 vector encoding");
+  }
+
   @Test
   public void fieldTypeDefinition_nullSimilarityDistance_shouldUseDefaultSimilarityEuclidean()
       throws Exception {
@@ -169,6 +178,27 @@ public class DenseVectorFieldTest extends AbstractBadConfigTestBase {
       assertThat(typeDefault.getDimension(), is(4));
       assertThat(typeDefault.getHnswMaxConn(), is(16));
       assertThat(typeDefault.getHnswBeamWidth(), is(100));
+      assertThat(
+          typeDefault.getVectorQuantization(), is(DenseVectorField.VectorQuantization.NONE));
+
+      DenseVectorField typeInt8 = (DenseVectorField) schema.getField("vector_int8").getType();
+      assertThat(typeInt8.getVectorQuantization(), is(DenseVectorField.VectorQuantization.INT8));
+
+      DenseVectorField typeInt4 = (DenseVectorField) schema.getField("vector_int4").getType();
+      assertThat(typeInt4.getVectorQuantization(), is(DenseVectorField.VectorQuantization.INT4));
+      assertThat(typeInt4.getHnswMaxConn(), is(8));
+      assertThat(typeInt4.getHnswBeamWidth(), is(46));
+
+      Lucene99Codec codec = (Lucene99Codec) h.getCore().getCodec();
+      assertThat(
+          codec.getKnnVectorsFormatForField("vector_default").getName(),
+          is("Lucene99HnswVectorsFormat"));
+      assertThat(
+          codec.getKnnVectorsFormatForField("vector_int8").getName(),
+          is("Lucene99HnswScalarQuantizedVectorsFormat"));
+      assertThat(
+          codec.getKnnVectorsFormatForField("vector_int4").getName(),
+          is("Lucene99HnswScalarQuantizedVectorsFormat"));
     } finally {
       deleteCore();
     }
@@ -17,7 +17,10 @@
 package org.apache.solr.search;
 
 import java.io.IOException;
+import java.util.List;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -385,6 +388,71 @@ public class SolrIndexSearcherTest extends SolrTestCaseJ4 {
             });
   }
 
+  public void testMultiThreadedProcessedFilter() throws Exception {
+    // index across several segments, which the cache misses are computed per segment for
+    for (int i = 0; i < 120; i++) {
+      assertU(
+          adoc(
+              "id",
+              "mt" + i,
+              "mt_parity_s",
+              String.valueOf(i % 2),
+              "mt_decade_s",
+              String.valueOf(i / 10)));
+      if (i % 40 == 39) {
+        assertU(commit());
+      }
+    }
+    try {
+      h.getCore()
+          .withSearcher(
+              searcher -> {
+                assertTrue(searcher.getTopReaderContext().leaves().size() > 1);
+                Query evens = new TermQuery(new Term("mt_parity_s", "0"));
+                BooleanQuery.Builder decadesBelow6 = new BooleanQuery.Builder();
+                for (int decade = 0; decade < 6; decade++) {
+                  decadesBelow6.add(
+                      new TermQuery(new Term("mt_decade_s", String.valueOf(decade))),
+                      Occur.SHOULD);
+                }
+                Query decades1And3OrOdd =
+                    new BooleanQuery.Builder()
+                        .add(new TermQuery(new Term("mt_decade_s", "1")), Occur.SHOULD)
+                        .add(new TermQuery(new Term("mt_decade_s", "3")), Occur.SHOULD)
+                        .add(new TermQuery(new Term("mt_parity_s", "1")), Occur.SHOULD)
+                        .build();
+                Query notDecade3 =
+                    new BooleanQuery.Builder()
+                        .add(new TermQuery(new Term("mt_decade_s", "3")), Occur.MUST_NOT)
+                        .build();
+                searcher.getFilterCache().clear();
+
+                SolrIndexSearcher.ProcessedFilter pf =
+                    searcher.getProcessedFilter(
+                        List.of(evens, decadesBelow6.build(), decades1And3OrOdd, notDecade3), true);
+
+                // the even docs of decade 1
+                assertNotNull(pf.answer);
+                assertEquals(5, pf.answer.size());
+                DocSet expected =
+                    DocSetUtil.createDocSetGeneric(searcher, evens)
+                        .intersection(
+                            DocSetUtil.createDocSetGeneric(searcher, decadesBelow6.build()))
+                        .intersection(DocSetUtil.createDocSetGeneric(searcher, decades1And3OrOdd))
+                        .andNot(
+                            DocSetUtil.createDocSetGeneric(
+                                searcher, new TermQuery(new Term("mt_decade_s", "3"))));
+                assertTrue(DocSetUtil.equals(expected, pf.answer));
+                // the cache misses were added to the filter cache
+                assertNotNull(searcher.getFilterCache().get(decades1And3OrOdd));
+                return null;
+              });
+    } finally {
+      assertU(delQ("id:mt*"));
+      assertU(commit());
+    }
+  }
+
   public void testMinExactWithPostFilters() throws Exception {
     h.getCore()
         .withSearcher(
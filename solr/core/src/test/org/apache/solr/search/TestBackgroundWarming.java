@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.TimeSource;
+import org.apache.solr.util.TimeOut;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/** Tests warming the caches of a searcher after it has been registered */
+public class TestBackgroundWarming extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.backgroundWarming", "true");
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.backgroundWarming");
+  }
+
+  public void testWarmAfterRegistering() throws Exception {
+    assertTrue(h.getCore().getSolrConfig().backgroundWarming);
+
+    Query red = new TermQuery(new Term("color_s", "red"));
+    Query blue = new TermQuery(new Term("color_s", "blue"));
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 10; i++) {
+        assertU(adoc("id", round + "_" + i, "color_s", i % 2 == 0 ? "red" : "blue"));
+      }
+      assertU(commit());
+
+      int expected = (round + 1) * 5;
+      waitForWarming();
+      h.getCore()
+          .withSearcher(
+              searcher -> {
+                // anything warmed must be up to date
+                DocSet warmed = searcher.getFilterCache().get(red);
+                if (warmed != null) {
+                  assertEquals(expected, warmed.size());
+                }
+                assertEquals(expected, searcher.getDocSet(red).size());
+                assertEquals(expected, searcher.getDocSet(blue).size());
+                return null;
+              });
+    }
+
+    Map<String, Object> metrics =
+        h.getCore()
+            .withSearcher(
+                searcher -> ((CaffeineCache<?, ?>) searcher.getFilterCache()).getMetricsMap())
+            .getValue();
+    assertEquals(Boolean.FALSE, metrics.get("warming"));
+    assertEquals(1.0, (Double) metrics.get("warmupProgress"), 0.0);
+    assertNotNull(metrics.get("warmingHitratio"));
+  }
+
+  private void waitForWarming() throws Exception {
+    TimeOut timeOut = new TimeOut(30, TimeUnit.SECONDS, TimeSource.NANO_TIME);
+    timeOut.waitFor(
+        "filterCache still warming",
+        () -> {
+          try {
+            return h.getCore()
+                .withSearcher(
+                    searcher -> {
+                      Map<String, Object> metrics =
+                          ((CaffeineCache<?, ?>) searcher.getFilterCache())
+                              .getMetricsMap()
+                              .getValue();
+                      return Boolean.FALSE.equals(metrics.get("warming"))
+                          && ((Double) metrics.get("warmupProgress")) >= 1.0;
+                    });
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        });
+  }
+}
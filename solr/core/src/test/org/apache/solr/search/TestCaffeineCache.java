@@ -290,6 +290,73 @@ public class TestCaffeineCache extends SolrTestCase {
     cache.close();
   }
 
+  @Test
+  public void testCostAware() throws Exception {
+    CaffeineCache<String, String> cache = new CaffeineCache<>();
+    Map<String, String> params =
+        Map.of(
+            SolrCache.SIZE_PARAM, "100",
+            SolrCache.COST_AWARE_PARAM, "true",
+            SolrCache.ASYNC_PARAM, Boolean.toString(random().nextBoolean()));
+    cache.init(params, null, new NoOpRegenerator());
+    cache.initializeMetrics(new SolrMetricsContext(metricManager, registry, "foo"), scope);
+
+    long sleepMs = 50;
+    String value =
+        cache.computeIfAbsent(
+            "expensive",
+            k -> {
+              try {
+                Thread.sleep(sleepMs);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return "slow";
+            });
+    assertEquals("slow", value);
+    for (int i = 0; i < 5; i++) {
+      assertEquals("slow", cache.get("expensive"));
+    }
+    assertEquals("slow", cache.computeIfAbsent("expensive", k -> "not computed"));
+
+    // six hits, each saving the time it took to compute the entry
+    Map<String, Object> metrics = cache.getMetricsMap().getValue();
+    assertTrue(
+        "savedComputeTime: " + metrics.get("savedComputeTime"),
+        ((Number) metrics.get("savedComputeTime")).longValue() >= 6 * sleepMs);
+
+    // entries much cheaper than average count for more than one, so fewer fit
+    for (int i = 0; i < 200; i++) {
+      cache.computeIfAbsent("cheap-" + i, k -> k);
+    }
+    cache.cleanUp();
+    assertTrue("size: " + cache.size(), cache.size() < 100);
+    assertEquals("slow", cache.get("expensive"));
+
+    // removals are notified asynchronously, so one can come after the key was computed again
+    String removed = cache.remove("expensive");
+    value =
+        cache.computeIfAbsent(
+            "expensive",
+            k -> {
+              try {
+                Thread.sleep(sleepMs);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return "slow again";
+            });
+    assertEquals("slow again", value);
+    cache.onRemoval("expensive", removed, RemovalCause.EXPLICIT);
+    long savedMs = ((Number) cache.getMetricsMap().getValue().get("savedComputeTime")).longValue();
+    assertEquals("slow again", cache.get("expensive"));
+    assertTrue(
+        "the cost of the recomputed value must be kept",
+        ((Number) cache.getMetricsMap().getValue().get("savedComputeTime")).longValue()
+            >= savedMs + sleepMs);
+    cache.close();
+  }
+
   @Test
   public void testRamBytesSync() throws IOException {
     CaffeineCache<Integer, String> cache = new CaffeineCache<>();
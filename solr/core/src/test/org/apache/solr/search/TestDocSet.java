@@ -107,6 +107,10 @@ public class TestDocSet extends SolrTestCase {
     return new BitDocSet(bs);
   }
 
+  public DocSet getRoaringDocSet(FixedBitSet bs) {
+    return RoaringDocSet.fromBits(bs, Long.MAX_VALUE);
+  }
+
   public DocSlice getDocSlice(FixedBitSet bs) {
     int len = bs.cardinality();
     int[] arr = new int[len + 5];
@@ -128,7 +132,7 @@ public class TestDocSet extends SolrTestCase {
   }
 
   public DocSet getDocSet(FixedBitSet bs) {
-    switch (rand.nextInt(9)) {
+    switch (rand.nextInt(10)) {
       case 0:
       case 1:
       case 2:
@@ -145,6 +149,8 @@ public class TestDocSet extends SolrTestCase {
         return getIntDocSet(bs);
       case 8:
         return getIntDocSet(bs);
+      case 9:
+        return getRoaringDocSet(bs);
     }
     return null;
   }
@@ -224,6 +230,113 @@ public class TestDocSet extends SolrTestCase {
     // doMany(130, 1000000);
   }
 
+  /** Returns a set made of chunks of 2^16 docs that are empty, sparse, dense, or in between. */
+  private FixedBitSet getClusteredSet(int maxDoc) {
+    FixedBitSet bs = new FixedBitSet(maxDoc);
+    for (int start = 0; start < maxDoc; start += 1 << 16) {
+      int len = Math.min(maxDoc - start, 1 << 16);
+      int n;
+      switch (rand.nextInt(4)) {
+        case 0:
+          n = 0;
+          break;
+        case 1:
+          n = rand.nextInt(RoaringDocSet.MAX_ARRAY_SIZE);
+          break;
+        case 2:
+          n = len;
+          break;
+        default:
+          // around the cut-off between array and bitmap chunks
+          n = RoaringDocSet.MAX_ARRAY_SIZE + rand.nextInt(64) - 32;
+      }
+      for (int i = 0; i < n; i++) {
+        bs.set(start + rand.nextInt(len));
+      }
+    }
+    return bs;
+  }
+
+  private void assertSameDocs(FixedBitSet expected, DocSet actual) {
+    assertEquals(expected.cardinality(), actual.size());
+    BitSetIterator expectedIter = new BitSetIterator(expected, 0);
+    DocIterator iter = actual.iterator();
+    for (int doc = expectedIter.nextDoc();
+        doc != DocIdSetIterator.NO_MORE_DOCS;
+        doc = expectedIter.nextDoc()) {
+      assertTrue(actual.exists(doc));
+      assertTrue(iter.hasNext());
+      assertEquals(doc, iter.nextDoc());
+    }
+    assertFalse(iter.hasNext());
+  }
+
+  public void testRoaringDocSets() throws IOException {
+    for (int i = 0; i < 20; i++) {
+      int maxDoc = rand.nextInt(5 << 16) + 1;
+      FixedBitSet bs1 = getClusteredSet(maxDoc);
+      FixedBitSet bs2 = getClusteredSet(maxDoc);
+      DocSet r1 = getRoaringDocSet(bs1);
+      assertSameDocs(bs1, r1);
+      assertSameDocs(bs1, r1.clone());
+
+      FixedBitSet and = bs1.clone();
+      and.and(bs2);
+      FixedBitSet or = bs1.clone();
+      or.or(bs2);
+      FixedBitSet andNot = bs1.clone();
+      andNot.andNot(bs2);
+      FixedBitSet reverseAndNot = bs2.clone();
+      reverseAndNot.andNot(bs1);
+
+      for (DocSet other :
+          new DocSet[] {getRoaringDocSet(bs2), getBitDocSet(bs2.clone()), getIntDocSet(bs2)}) {
+        assertSameDocs(and, r1.intersection(other));
+        assertSameDocs(and, other.intersection(r1));
+        assertEquals(and.cardinality(), r1.intersectionSize(other));
+        assertEquals(and.cardinality(), other.intersectionSize(r1));
+        assertEquals(and.cardinality() > 0, r1.intersects(other));
+        assertEquals(and.cardinality() > 0, other.intersects(r1));
+
+        assertSameDocs(or, r1.union(other));
+        assertSameDocs(or, other.union(r1));
+        assertEquals(or.cardinality(), r1.unionSize(other));
+
+        assertSameDocs(andNot, r1.andNot(other));
+        assertSameDocs(reverseAndNot, other.andNot(r1));
+        assertEquals(andNot.cardinality(), r1.andNotSize(other));
+      }
+
+      FixedBitSet target = new FixedBitSet(maxDoc);
+      r1.addAllTo(target);
+      assertEquals(bs1, target);
+      assertEquals(bs1, r1.getFixedBitSetClone());
+    }
+
+    for (int i = 0; i < 10; i++) {
+      // segments spanning several chunks
+      doFilterTest(dummyMultiReader(4, 3 << 16));
+    }
+  }
+
+  public void testCompact() {
+    int maxDoc = 1 << 20;
+    FixedBitSet sparse = new FixedBitSet(maxDoc);
+    for (int i = 0; i < 1000; i++) {
+      sparse.set(rand.nextInt(1 << 16));
+    }
+    BitDocSet bitDocSet = new BitDocSet(sparse);
+    DocSet compact = DocSetUtil.compact(bitDocSet);
+    assertTrue(compact.toString(), compact instanceof RoaringDocSet);
+    assertTrue(compact.ramBytesUsed() <= bitDocSet.ramBytesUsed() / 2);
+    assertSameDocs(sparse, compact);
+
+    FixedBitSet dense = new FixedBitSet(maxDoc);
+    dense.set(0, maxDoc);
+    BitDocSet denseDocSet = new BitDocSet(dense);
+    assertSame(denseDocSet, DocSetUtil.compact(denseDocSet));
+  }
+
   public DocSet getRandomDocSet(int n, int maxDoc) {
     FixedBitSet obs = new FixedBitSet(maxDoc);
     int[] a = new int[n];
@@ -585,6 +698,7 @@ public class TestDocSet extends SolrTestCase {
     FixedBitSet bs = getRandomSet(reader.maxDoc(), rand.nextInt(reader.maxDoc() + 1));
     DocSet a = new BitDocSet(bs);
     DocSet b = getIntDocSet(bs);
+    DocSet c = getRoaringDocSet(bs);
 
     //    Query fa = a.makeQuery();
     //    Query fb = b.makeQuery();
@@ -604,7 +718,8 @@ public class TestDocSet extends SolrTestCase {
       doTestIteratorEqual(
           getExpectedBits(a, readerContext),
           () -> a.iterator(readerContext),
-          () -> b.iterator(readerContext));
+          () -> b.iterator(readerContext),
+          () -> c.iterator(readerContext));
     }
 
     int nReaders = leaves.size();
@@ -614,7 +729,8 @@ public class TestDocSet extends SolrTestCase {
       doTestIteratorEqual(
           getExpectedBits(a, readerContext),
           () -> a.iterator(readerContext),
-          () -> b.iterator(readerContext));
+          () -> b.iterator(readerContext),
+          () -> c.iterator(readerContext));
     }
   }
 
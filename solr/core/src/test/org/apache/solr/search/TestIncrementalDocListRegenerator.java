@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/** Tests that queryResultCache entries warmed segment by segment match a full recomputation */
+public class TestIncrementalDocListRegenerator extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.queryResultCache.incrementalWarming", "true");
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.queryResultCache.incrementalWarming");
+  }
+
+  public void testRegeneration() throws Exception {
+    assertTrue(
+        h.getCore().getSolrConfig().queryResultCacheConfig.getRegenerator()
+            instanceof IncrementalDocListRegenerator);
+
+    boolean reverse = random().nextBoolean();
+    // id -> whether the doc matches
+    TreeMap<Integer, Boolean> model = new TreeMap<>();
+    int id = 0;
+    for (int round = 0; round < 6; round++) {
+      int numDocs = atLeast(15);
+      for (int i = 0; i < numDocs; i++) {
+        boolean red = random().nextInt(3) == 0;
+        String n = Integer.toString(id);
+        assertU(adoc("id", n, "n_i", n, "color_s", red ? "red" : "blue"));
+        model.put(id++, red);
+      }
+      for (int i = 0; i < 3; i++) {
+        int del = random().nextInt(id);
+        assertU(delI(Integer.toString(del)));
+        model.remove(del);
+      }
+      assertU(commit());
+
+      Query red = new TermQuery(new Term("color_s", "red"));
+      // a purely negative filter, as fq=-color_s:red parses to
+      Query notRed = new BooleanQuery.Builder().add(red, BooleanClause.Occur.MUST_NOT).build();
+      assertResults(model, true, red, reverse);
+      assertResults(model, false, notRed, reverse);
+    }
+  }
+
+  private static void assertResults(
+      TreeMap<Integer, Boolean> model, boolean red, Query filter, boolean reverse)
+      throws Exception {
+    List<Integer> expected = new ArrayList<>();
+    model.forEach(
+        (k, isRed) -> {
+          if (isRed == red) expected.add(k);
+        });
+    if (reverse) {
+      expected.sort(Comparator.reverseOrder());
+    }
+    h.getCore()
+        .withSearcher(
+            searcher -> {
+              Sort sort = new Sort(searcher.getSchema().getField("n_i").getSortField(reverse));
+              QueryCommand cmd =
+                  new QueryCommand()
+                      .setQuery(new MatchAllDocsQuery())
+                      .setFilterList(filter)
+                      .setSort(sort)
+                      .setLen(10);
+              DocList docs = searcher.search(cmd).getDocList();
+              assertEquals(expected.size(), docs.matches());
+              assertEquals(Math.min(10, expected.size()), docs.size());
+              DocIterator it = docs.iterator();
+              for (int i = 0; i < docs.size(); i++) {
+                String n = searcher.getDocFetcher().doc(it.nextDoc()).get("id");
+                assertEquals(expected.get(i).toString(), n);
+              }
+              return null;
+            });
+  }
+}
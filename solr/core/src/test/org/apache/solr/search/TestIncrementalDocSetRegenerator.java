@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/** Tests that filterCache entries warmed segment by segment match a full recomputation */
+public class TestIncrementalDocSetRegenerator extends SolrTestCaseJ4 {
+
+  private static final Query RED = new TermQuery(new Term("color_s", "red"));
+  private static final Query RED_OR_BLUE =
+      new BooleanQuery.Builder()
+          .add(new TermQuery(new Term("color_s", "red")), BooleanClause.Occur.SHOULD)
+          .add(new TermQuery(new Term("color_s", "blue")), BooleanClause.Occur.SHOULD)
+          .build();
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.filterCache.incrementalWarming", "true");
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.filterCache.incrementalWarming");
+  }
+
+  public void testRegeneration() throws Exception {
+    assertTrue(
+        h.getCore().getSolrConfig().filterCacheConfig.getRegenerator()
+            instanceof IncrementalDocSetRegenerator);
+
+    String[] colors = {"red", "blue", "green"};
+    int id = 0;
+    for (int round = 0; round < 5; round++) {
+      int numDocs = atLeast(20);
+      for (int i = 0; i < numDocs; i++) {
+        assertU(adoc("id", Integer.toString(id++), "color_s", colors[random().nextInt(3)]));
+      }
+      // delete a few docs that may live in segments carried over from the previous searcher
+      for (int i = 0; i < 3; i++) {
+        assertU(delI(Integer.toString(random().nextInt(id))));
+      }
+      assertU(commit());
+
+      h.getCore()
+          .withSearcher(
+              searcher -> {
+                SolrCache<Query, DocSet> filterCache = searcher.getFilterCache();
+                for (Query q : List.of(RED, RED_OR_BLUE)) {
+                  DocSet expected = searcher.getDocSetNC(q, null);
+                  DocSet warmed = filterCache.get(q);
+                  if (warmed != null) {
+                    assertSameDocs(q, expected, warmed);
+                  }
+                  // make sure the query is cached for the next searcher to warm
+                  assertSameDocs(q, expected, searcher.getDocSet(q));
+                }
+                return null;
+              });
+    }
+  }
+
+  public void testKnnFilterAcrossCommit() throws Exception {
+    try {
+      for (int i = 0; i < 10; i++) {
+        assertU(adoc(sdoc("id", "knn" + i, "vector", Arrays.asList(1f, i + 2f, 1f, 1f))));
+      }
+      assertU(commit());
+      Query knn = parse("{!knn f=vector topK=3}[1.0,0.0,0.0,0.0]");
+      h.getCore()
+          .withSearcher(
+              searcher -> {
+                assertEquals(3, searcher.getDocSet(knn).size());
+                return null;
+              });
+
+      // docs closer to the query vector in a new segment push the old top hits out
+      for (int i = 10; i < 13; i++) {
+        assertU(adoc(sdoc("id", "knn" + i, "vector", Arrays.asList(1f, 0f, 0f, 0f))));
+      }
+      assertU(commit());
+      h.getCore()
+          .withSearcher(
+              searcher -> {
+                DocSet expected = searcher.getDocSetNC(knn, null);
+                assertEquals(3, expected.size());
+                DocSet warmed = searcher.getFilterCache().get(knn);
+                assertNotNull(warmed);
+                assertSameDocs(knn, expected, warmed);
+                return null;
+              });
+    } finally {
+      assertU(delQ("id:knn*"));
+      assertU(commit());
+    }
+  }
+
+  private static Query parse(String qstr) throws Exception {
+    try (SolrQueryRequest req = req()) {
+      return QParser.getParser(qstr, req).getQuery();
+    }
+  }
+
+  private static void assertSameDocs(Query q, DocSet expected, DocSet actual) {
+    assertEquals(q.toString(), expected.size(), actual.size());
+    assertEquals(q.toString(), expected.size(), expected.intersectionSize(actual));
+  }
+}
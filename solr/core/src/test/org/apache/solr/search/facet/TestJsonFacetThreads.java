@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.Map;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.util.Utils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/** Tests that JSON facets processed with facet.threads match the single threaded results */
+public class TestJsonFacetThreads extends SolrTestCaseJ4 {
+
+  private static int origConcurrentMinDomainSize;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    origConcurrentMinDomainSize = FacetFieldProcessorByArrayDV.concurrentMinDomainSize;
+    FacetFieldProcessorByArrayDV.concurrentMinDomainSize = 0;
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    FacetFieldProcessorByArrayDV.concurrentMinDomainSize = origConcurrentMinDomainSize;
+  }
+
+  public void testSameResults() throws Exception {
+    String[] cats = {"A", "B", "C", "D", "E", "F"};
+    int id = 0;
+    for (int seg = 0; seg < 5; seg++) {
+      int numDocs = atLeast(20);
+      for (int i = 0; i < numDocs; i++) {
+        assertU(
+            adoc(
+                "id", Integer.toString(id++),
+                "cat_s", cats[random().nextInt(cats.length)],
+                "where_s", cats[random().nextInt(3)],
+                "num_i", Integer.toString(random().nextInt(100))));
+      }
+      assertU(commit());
+    }
+
+    String json =
+        "{"
+            + " cats:{type:terms, field:cat_s, method:dv, perSeg:true, limit:-1},"
+            + " wheres:{type:terms, field:where_s, method:dv, limit:-1,"
+            + "   facet:{cats:{type:terms, field:cat_s, method:dv, perSeg:true},"
+            + "          unique:'unique(cat_s)'}},"
+            + " small:{type:query, q:'num_i:[0 TO 49]', facet:{x:'unique(where_s)'}},"
+            + " nums:{type:range, field:num_i, start:0, end:100, gap:25},"
+            + " unique:'unique(cat_s)'"
+            + "}";
+    Object expected = facets(json, 0);
+    assertNotNull(expected);
+    for (int threads : new int[] {2, 4, -1}) {
+      assertEquals("threads=" + threads, expected, facets(json, threads));
+    }
+  }
+
+  private Object facets(String json, int threads) throws Exception {
+    String response =
+        h.query(
+            req(
+                "q",
+                "*:*",
+                "rows",
+                "0",
+                "wt",
+                "json",
+                "json.facet",
+                json,
+                FacetParams.FACET_THREADS,
+                Integer.toString(threads)));
+    return ((Map<?, ?>) Utils.fromJSONString(response)).get("facets");
+  }
+}
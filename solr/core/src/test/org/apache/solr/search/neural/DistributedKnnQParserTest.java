@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.neural;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.BaseDistributedSearchTestCase;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+/** Tests the knn queries searching the topK neighbors of the collection with globalTopK */
+public class DistributedKnnQParserTest extends BaseDistributedSearchTestCase {
+
+  private static final int DIMENSION = 4;
+
+  public DistributedKnnQParserTest() {
+    schemaString = "schema-densevector.xml";
+    stress = 0;
+  }
+
+  @Test
+  @ShardsFixed(num = 3)
+  public void test() throws Exception {
+    del("*:*");
+    for (int i = 0; i < 30; i++) {
+      indexr(id, i, "vector", randomVector());
+    }
+    commit();
+
+    for (int i = 0; i < 10; i++) {
+      String vector = randomVector().toString();
+      List<String> expected =
+          ids(
+              controlClient.query(
+                  params("q", "{!knn f=vector topK=5}" + vector, "fl", "id", "rows", "5")));
+
+      QueryResponse rsp =
+          queryServer(
+              params(
+                  "q",
+                  "{!knn f=vector topK=5 globalTopK=true}" + vector,
+                  "fl",
+                  "id",
+                  "rows",
+                  "5",
+                  ShardParams.SHARDS_INFO,
+                  "true"));
+      assertEquals(expected, ids(rsp));
+      // the shards only return the neighbors that can make the topK of the collection
+      assertTrue(rsp.getResults().getNumFound() < 5 * getShardCount());
+
+      long visitedNodes = ((Number) rsp.getHeader().get(KnnQParser.VISITED_NODES)).longValue();
+      assertTrue(visitedNodes > 0);
+      long shardsVisitedNodes = 0;
+      NamedList<?> shardsInfo = (NamedList<?>) rsp.getResponse().get(ShardParams.SHARDS_INFO);
+      for (Map.Entry<String, ?> shardInfo : shardsInfo) {
+        shardsVisitedNodes +=
+            ((Number) ((NamedList<?>) shardInfo.getValue()).get(KnnQParser.VISITED_NODES))
+                .longValue();
+      }
+      assertEquals(visitedNodes, shardsVisitedNodes);
+    }
+
+    // an explicit minSimilarity applies to the neighbors of each shard
+    QueryResponse rsp =
+        queryServer(params("q", "{!knn f=vector topK=100 minSimilarity=2}[1, 2, 3, 4]"));
+    assertEquals(0, rsp.getResults().getNumFound());
+  }
+
+  private List<Float> randomVector() {
+    List<Float> vector = new ArrayList<>(DIMENSION);
+    for (int i = 0; i < DIMENSION; i++) {
+      vector.add(random().nextFloat() + 0.01f);
+    }
+    return vector;
+  }
+
+  private static List<String> ids(QueryResponse rsp) {
+    List<String> ids = new ArrayList<>();
+    for (SolrDocument doc : rsp.getResults()) {
+      ids.add(String.valueOf(doc.getFieldValue("id")));
+    }
+    return ids;
+  }
+}
@@ -37,6 +37,7 @@ public class KnnQParserTest extends SolrTestCaseJ4 {
   String vectorField = "vector";
   String vectorField2 = "vector2";
   String vectorFieldByteEncoding = "vector_byte_encoding";
+  String vectorFieldQuantized = "vector_int8";
 
   @Before
   public void prepareIndex() throws Exception {
@@ -97,6 +98,12 @@ public class KnnQParserTest extends SolrTestCaseJ4 {
         .addField(
             vectorField2, Arrays.asList(1.5f, 2.5f, 3.5f, 4.5f)); // cosine distance vector2= 0.998
 
+    for (SolrInputDocument doc : docs) {
+      if (doc.containsKey(vectorField)) {
+        doc.addField(vectorFieldQuantized, doc.getFieldValues(vectorField));
+      }
+    }
+
     docs.get(0).addField(vectorFieldByteEncoding, Arrays.asList(1, 2, 3, 4));
     docs.get(1).addField(vectorFieldByteEncoding, Arrays.asList(2, 2, 1, 4));
     docs.get(2).addField(vectorFieldByteEncoding, Arrays.asList(1, 2, 1, 2));
@@ -172,6 +179,120 @@ public class KnnQParserTest extends SolrTestCaseJ4 {
         "//result/doc[3]/str[@name='id'][.='2']");
   }
 
+  @Test
+  public void oversample_shouldRescoreTopKWithFullPrecision() {
+    String vectorToSearch = "[1.0, 2.0, 3.0, 4.0]";
+
+    assertQ(
+        req(
+            CommonParams.Q,
+            "{!knn f=vector_int8 topK=5 oversample=2}" + vectorToSearch,
+            "fl",
+            "id"),
+        "//result[@numFound='5']",
+        "//result/doc[1]/str[@name='id'][.='1']",
+        "//result/doc[2]/str[@name='id'][.='4']",
+        "//result/doc[3]/str[@name='id'][.='2']",
+        "//result/doc[4]/str[@name='id'][.='10']",
+        "//result/doc[5]/str[@name='id'][.='3']");
+
+    // the scores are the full precision ones
+    assertQ(
+        req(
+            CommonParams.Q,
+            "{!knn f=vector_int8 topK=1 oversample=3.5}" + vectorToSearch,
+            "fl",
+            "id,score"),
+        "//result[@numFound='1']",
+        "//result/doc[1]/str[@name='id'][.='1']",
+        "//result/doc[1]/float[@name='score'][.='1.0']");
+
+    assertQ(
+        req(CommonParams.Q, "{!knn f=vector topK=3 oversample=2}" + vectorToSearch, "fl", "id"),
+        "//result[@numFound='3']",
+        "//result/doc[1]/str[@name='id'][.='1']",
+        "//result/doc[2]/str[@name='id'][.='4']",
+        "//result/doc[3]/str[@name='id'][.='2']");
+  }
+
+  @Test
+  public void incorrectOversample_shouldThrowException() {
+    String vectorToSearch = "[1.0, 2.0, 3.0, 4.0]";
+
+    assertQEx(
+        "oversample lower than 1 should throw Exception",
+        "'oversample' must be at least 1: 0.5",
+        req(CommonParams.Q, "{!knn f=vector oversample=0.5}" + vectorToSearch, "fl", "id"),
+        SolrException.ErrorCode.BAD_REQUEST);
+
+    assertQEx(
+        "oversample of byte vectors should throw Exception",
+        "'oversample' is only supported for the FLOAT32 vector encoding",
+        req(CommonParams.Q, "{!knn f=vector_byte_encoding oversample=2}[1, 2, 3, 4]", "fl", "id"),
+        SolrException.ErrorCode.BAD_REQUEST);
+  }
+
+  @Test
+  public void minSimilarity_shouldOnlyReturnNeighborsAtLeastThatSimilar() {
+    String vectorToSearch = "[1.0, 2.0, 3.0, 4.0]";
+
+    assertQ(
+        req(
+            CommonParams.Q,
+            "{!knn f=vector topK=10 minSimilarity=0.99}" + vectorToSearch,
+            "fl",
+            "id"),
+        "//result[@numFound='5']",
+        "//result/doc[1]/str[@name='id'][.='1']",
+        "//result/doc[2]/str[@name='id'][.='4']",
+        "//result/doc[3]/str[@name='id'][.='2']",
+        "//result/doc[4]/str[@name='id'][.='10']",
+        "//result/doc[5]/str[@name='id'][.='3']",
+        "//lst[@name='responseHeader']/long[@name='knnVisitedNodes'][. > 0]");
+
+    assertQ(
+        req(
+            CommonParams.Q,
+            "{!knn f=vector_byte_encoding topK=10 minSimilarity=2}[2, 2, 1, 3]",
+            "fl",
+            "id"),
+        "//result[@numFound='0']");
+  }
+
+  @Test
+  public void globalTopK_shouldCountVisitedNodes() {
+    String vectorToSearch = "[1.0, 2.0, 3.0, 4.0]";
+
+    // on a single core, the topK of the core is the topK of the collection
+    assertQ(
+        req(CommonParams.Q, "{!knn f=vector topK=3 globalTopK=true}" + vectorToSearch, "fl", "id"),
+        "//result[@numFound='3']",
+        "//result/doc[1]/str[@name='id'][.='1']",
+        "//result/doc[2]/str[@name='id'][.='4']",
+        "//result/doc[3]/str[@name='id'][.='2']",
+        "//lst[@name='responseHeader']/long[@name='knnVisitedNodes'][. > 0]");
+
+    assertQ(
+        req(CommonParams.Q, "{!knn f=vector topK=3}" + vectorToSearch, "fl", "id"),
+        "//result[@numFound='3']",
+        "not(//lst[@name='responseHeader']/long[@name='knnVisitedNodes'])");
+  }
+
+  @Test
+  public void minSimilarityWithOversample_shouldThrowException() {
+    String vectorToSearch = "[1.0, 2.0, 3.0, 4.0]";
+
+    assertQEx(
+        "minSimilarity and oversample can't be combined",
+        "'oversample' can't be combined with 'minSimilarity' or 'globalTopK'",
+        req(
+            CommonParams.Q,
+            "{!knn f=vector minSimilarity=0.5 oversample=2}" + vectorToSearch,
+            "fl",
+            "id"),
+        SolrException.ErrorCode.BAD_REQUEST);
+  }
+
   @Test
   public void incorrectVectorFieldType_shouldThrowException() {
     String vectorToSearch = "[1.0, 2.0, 3.0, 4.0]";
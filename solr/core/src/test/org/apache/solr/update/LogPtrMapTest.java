@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.update.UpdateLog.LogPtr;
+import org.junit.Test;
+
+public class LogPtrMapTest extends SolrTestCase {
+
+  @Test
+  public void testPutGetAgainstHashMap() {
+    LogPtrMap map = new LogPtrMap();
+    Map<BytesRef, LogPtr> expected = new HashMap<>();
+    int numOps = atLeast(5000);
+    for (int i = 0; i < numOps; i++) {
+      BytesRef id = new BytesRef(Integer.toString(random().nextInt(numOps / 2)));
+      // put with a non-zero offset to make sure the id bytes are copied correctly
+      byte[] padded = new byte[id.length + 3];
+      System.arraycopy(id.bytes, id.offset, padded, 2, id.length);
+      LogPtr ptr = new LogPtr(random().nextLong(), random().nextLong(), random().nextLong());
+      map.put(new BytesRef(padded, 2, id.length), ptr);
+      expected.put(id, ptr);
+    }
+
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<BytesRef, LogPtr> e : expected.entrySet()) {
+      LogPtr actual = map.get(e.getKey());
+      assertNotNull(actual);
+      assertEquals(e.getValue().pointer, actual.pointer);
+      assertEquals(e.getValue().version, actual.version);
+      assertEquals(e.getValue().previousPointer, actual.previousPointer);
+    }
+    assertNull(map.get(new BytesRef("not-there")));
+    assertTrue(map.ramBytesUsed() > 0);
+
+    map.clear();
+    assertEquals(0, map.size());
+    for (BytesRef id : expected.keySet()) {
+      assertNull(map.get(id));
+    }
+
+    // the map is usable after being cleared
+    map.put(new BytesRef("a"), 1, 2, 3);
+    assertEquals(2, map.get(new BytesRef("a")).version);
+  }
+}
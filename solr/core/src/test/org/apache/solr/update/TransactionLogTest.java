@@ -22,6 +22,9 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.util.BytesRef;
 import org.apache.solr.SolrTestCase;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.update.TransactionLog.LogReader;
@@ -71,4 +74,132 @@ public class TransactionLogTest extends SolrTestCase {
       assertEquals(uuid, (UUID) doc.getFieldValue("uuid"));
     }
   }
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    String tlogFileName =
+        String.format(
+            Locale.ROOT, UpdateLog.LOG_FILENAME_PATTERN, UpdateLog.TLOG_NAME, Long.MAX_VALUE);
+    Path path = createTempDir();
+    Path logFile = path.resolve(tlogFileName);
+    final int numThreads = 8;
+    final int docsPerThread = 50;
+    AtomicInteger fsyncs = new AtomicInteger();
+    AtomicInteger syncedRecords = new AtomicInteger();
+
+    try (TransactionLog tlog = new TransactionLog(logFile, null)) {
+      tlog.deleteOnClose = false;
+      tlog.setGroupCommit(
+          true,
+          (records, elapsedNanos) -> {
+            fsyncs.incrementAndGet();
+            syncedRecords.addAndGet(records);
+          });
+
+      CountDownLatch start = new CountDownLatch(1);
+      Thread[] threads = new Thread[numThreads];
+      for (int t = 0; t < numThreads; t++) {
+        final int threadNum = t;
+        threads[t] =
+            new Thread(
+                () -> {
+                  try {
+                    start.await();
+                    for (int i = 0; i < docsPerThread; i++) {
+                      AddUpdateCommand cmd = new AddUpdateCommand(null);
+                      cmd.solrDoc = new SolrInputDocument();
+                      cmd.solrDoc.addField("id", threadNum + "_" + i);
+                      cmd.setVersion(threadNum * docsPerThread + i + 1);
+                      tlog.write(cmd);
+                      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+                    }
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                });
+        threads[t].start();
+      }
+      start.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      // every record (plus the header) must have been covered by some fsync,
+      // and never more fsyncs than finish() calls
+      assertEquals(numThreads * docsPerThread + 1, syncedRecords.get());
+      assertTrue(fsyncs.get() <= numThreads * docsPerThread);
+    }
+
+    try (TransactionLog tlog = new TransactionLog(logFile, null, true)) {
+      LogReader reader = tlog.getReader(0);
+      int count = 0;
+      while (reader.next() != null) {
+        count++;
+      }
+      assertEquals(numThreads * docsPerThread, count);
+    }
+  }
+
+  @Test
+  public void testMmapReadsAndVersionScan() throws Exception {
+    String tlogFileName =
+        String.format(
+            Locale.ROOT, UpdateLog.LOG_FILENAME_PATTERN, UpdateLog.TLOG_NAME, Long.MAX_VALUE);
+    Path path = createTempDir();
+    Path logFile = path.resolve(tlogFileName);
+    final int numDocs = 100;
+
+    try (TransactionLog tlog = new TransactionLog(logFile, null)) {
+      tlog.deleteOnClose = false;
+      tlog.setMmapReads(true);
+      long[] positions = new long[numDocs];
+      for (int i = 0; i < numDocs; i++) {
+        AddUpdateCommand cmd = new AddUpdateCommand(null);
+        cmd.solrDoc = new SolrInputDocument();
+        cmd.solrDoc.addField("id", Integer.toString(i));
+        cmd.setVersion(i + 1);
+        positions[i] = tlog.write(cmd);
+      }
+      DeleteUpdateCommand del = new DeleteUpdateCommand(null);
+      del.setIndexedId(new BytesRef("0"));
+      del.setVersion(-(numDocs + 1));
+      tlog.writeDelete(del);
+      tlog.writeCommit(new CommitUpdateCommand(null, false));
+
+      // the log is finished, so reads now go through the mapped view
+      TransactionLog.ReverseReader reverseReader = tlog.getReverseReader();
+      try {
+        assertTrue(reverseReader.nextVersion());
+        assertEquals(UpdateLog.COMMIT, reverseReader.getFlags() & UpdateLog.OPERATION_MASK);
+        assertTrue(reverseReader.nextVersion());
+        assertEquals(UpdateLog.DELETE, reverseReader.getFlags() & UpdateLog.OPERATION_MASK);
+        assertEquals(-(numDocs + 1), reverseReader.getVersion());
+        List<?> deleteEntry = reverseReader.readRecord();
+        assertEquals(new BytesRef("0"), new BytesRef((byte[]) deleteEntry.get(2)));
+        for (int i = numDocs - 1; i >= 0; i--) {
+          assertTrue(reverseReader.nextVersion());
+          assertEquals(UpdateLog.ADD, reverseReader.getFlags() & UpdateLog.OPERATION_MASK);
+          assertEquals(i + 1, reverseReader.getVersion());
+          assertEquals(positions[i], reverseReader.position());
+        }
+        assertFalse(reverseReader.nextVersion());
+      } finally {
+        reverseReader.close();
+      }
+
+      LogReader reader = tlog.getReader(0);
+      try {
+        for (int i = 0; i < numDocs; i++) {
+          List<?> entry = (List<?>) reader.next();
+          assertEquals((long) (i + 1), entry.get(UpdateLog.VERSION_IDX));
+        }
+      } finally {
+        reader.close();
+      }
+
+      List<?> entry = (List<?>) tlog.lookup(positions[numDocs / 2]);
+      SolrInputDocument doc = (SolrInputDocument) entry.get(2);
+      assertEquals(Integer.toString(numDocs / 2), doc.getFieldValue("id"));
+    }
+  }
 }
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.IOUtils;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.CommitUpdateCommand;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelUpdateProcessorFactoryTest extends UpdateProcessorTestBase {
+
+  private static final String CHAIN = "parallel-chain";
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-update-processor-chains.xml", "schema12.xml");
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    resetExceptionIgnores();
+    assertU(delQ("*:*"));
+    assertU(commit());
+    super.tearDown();
+  }
+
+  @Test
+  public void testAdds() throws IOException {
+    List<SolrInputDocument> docs = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      docs.add(sdoc("id", String.valueOf(i), "weight", i));
+    }
+    add(params(ParallelUpdateProcessorFactory.PARALLELISM_PARAM, "4"), docs, true);
+    assertQ(req("q", "*:*"), "//result[@numFound='500']");
+    assertQ(req("q", "weight:123"), "//result[@numFound='1']");
+  }
+
+  @Test
+  public void testUpdatesOfADocumentInOrder() throws IOException {
+    // every document is updated 50 times, the last update has to win
+    List<SolrInputDocument> docs = new ArrayList<>();
+    for (int v = 0; v < 50; v++) {
+      for (int i = 0; i < 20; i++) {
+        docs.add(sdoc("id", String.valueOf(i), "weight", v));
+      }
+    }
+    add(params(ParallelUpdateProcessorFactory.PARALLELISM_PARAM, "4"), docs, false);
+    assertU(commit());
+    assertQ(req("q", "*:*"), "//result[@numFound='20']");
+    assertQ(req("q", "weight:49"), "//result[@numFound='20']");
+  }
+
+  @Test
+  public void testTolerated() throws IOException {
+    ignoreException("Error adding field");
+    List<SolrInputDocument> docs = new ArrayList<>();
+    Set<String> badIds = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      if (i % 10 == 3) {
+        docs.add(sdoc("id", String.valueOf(i), "weight", "b"));
+        badIds.add(String.valueOf(i));
+      } else {
+        docs.add(sdoc("id", String.valueOf(i), "weight", i));
+      }
+    }
+    SolrQueryResponse rsp =
+        add(
+            params(ParallelUpdateProcessorFactory.PARALLELISM_PARAM, "4", "maxErrors", "-1"),
+            docs,
+            true);
+
+    @SuppressWarnings("unchecked")
+    List<SimpleOrderedMap<String>> errors =
+        (List<SimpleOrderedMap<String>>) rsp.getResponseHeader().get("errors");
+    assertEquals(badIds.size(), errors.size());
+    for (SimpleOrderedMap<String> err : errors) {
+      assertEquals("ADD", err.get("type"));
+      assertTrue(badIds.contains(err.get("id")));
+    }
+    assertQ(req("q", "*:*"), "//result[@numFound='90']");
+  }
+
+  @Test
+  public void testNotTolerated() {
+    ignoreException("Error adding field");
+    List<SolrInputDocument> docs = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      docs.add(sdoc("id", String.valueOf(i), "weight", i == 42 ? "b" : i));
+    }
+    SolrException e =
+        expectThrows(
+            SolrException.class,
+            () -> add(params(ParallelUpdateProcessorFactory.PARALLELISM_PARAM, "4"), docs, false));
+    assertTrue(e.getMessage(), e.getMessage().contains("Error adding field"));
+  }
+
+  @Test
+  public void testSequential() throws IOException {
+    SolrQueryRequest req = new LocalSolrQueryRequest(h.getCore(), params());
+    try {
+      UpdateRequestProcessorChain chain = h.getCore().getUpdateProcessingChain(CHAIN);
+      UpdateRequestProcessor processor = chain.createProcessor(req, new SolrQueryResponse());
+      // parallelism defaults to 1, which leaves the chain as it is
+      assertFalse(processor instanceof ParallelUpdateProcessor);
+      processor.close();
+    } finally {
+      req.close();
+    }
+  }
+
+  /**
+   * Adds the documents with the chain, and commits with it before finishing, which has to wait for
+   * the documents to be added.
+   */
+  private SolrQueryResponse add(
+      ModifiableSolrParams params, List<SolrInputDocument> docs, boolean commit)
+      throws IOException {
+    params.set(UpdateParams.UPDATE_CHAIN, CHAIN);
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    rsp.add("responseHeader", new SimpleOrderedMap<>());
+    SolrQueryRequest req = new LocalSolrQueryRequest(h.getCore(), params);
+    UpdateRequestProcessor processor = null;
+    try {
+      processor = h.getCore().getUpdateProcessingChain(CHAIN).createProcessor(req, rsp);
+      assertTrue(processor instanceof ParallelUpdateProcessor);
+      // the command is reused, as loaders do
+      AddUpdateCommand cmd = new AddUpdateCommand(req);
+      for (SolrInputDocument doc : docs) {
+        cmd.clear();
+        cmd.solrDoc = doc;
+        processor.processAdd(cmd);
+      }
+      if (commit) {
+        processor.processCommit(new CommitUpdateCommand(req, false));
+      }
+      processor.finish();
+    } finally {
+      IOUtils.closeQuietly(processor);
+      req.close();
+    }
+    return rsp;
+  }
+}
@@ -161,6 +161,12 @@ public class LTRRescorer extends Rescorer {
       ScoreDoc[] reranked)
       throws IOException {
 
+    if (scoringQuery.getFeatureLogger() == null) {
+      // no feature info to log for each hit, extract the features of all hits at once
+      scoreFeaturesBatch(topN, modelWeight, hits, leaves, reranked);
+      return;
+    }
+
     int readerUpto = -1;
     int endDoc = 0;
     int docBase = 0;
@@ -189,6 +195,28 @@ public class LTRRescorer extends Rescorer {
     }
   }
 
+  /**
+   * Scores the hits with the model's features extracted for all of them, segment by segment and
+   * feature by feature, and then with the model scoring all of them together.
+   */
+  private void scoreFeaturesBatch(
+      int topN,
+      LTRScoringQuery.ModelWeight modelWeight,
+      ScoreDoc[] hits,
+      List<LeafReaderContext> leaves,
+      ScoreDoc[] reranked)
+      throws IOException {
+    final float[][] featureVectors = modelWeight.extractNormalizedFeatures(hits, leaves);
+    checkQueryLimits();
+    final float[] scores = new float[hits.length];
+    scoringQuery.getScoringModel().score(featureVectors, scores);
+    checkQueryLimits();
+    for (int hitUpto = 0; hitUpto < hits.length; hitUpto++) {
+      hits[hitUpto].score = scores[hitUpto];
+      addToReranked(topN, hitUpto, hits[hitUpto], reranked);
+    }
+  }
+
   /**
    * Call this method if the {@link #scoreSingleHit(int, int, int, ScoreDoc, int,
    * org.apache.solr.ltr.LTRScoringQuery.ModelWeight.ModelScorer, ScoreDoc[])} method indicated that
@@ -232,10 +260,13 @@ public class LTRRescorer extends Rescorer {
     scorer.docID();
     scorer.iterator().advance(targetDoc);
 
-    boolean logHit = false;
-
     scorer.getDocInfo().setOriginalDocScore(hit.score);
     hit.score = scorer.score();
+    checkQueryLimits();
+    return addToReranked(topN, hitUpto, hit, reranked);
+  }
+
+  private static void checkQueryLimits() {
     if (QueryLimits.getCurrentLimits()
         .maybeExitWithPartialResults(
             "Learning To Rank rescoring -"
@@ -243,6 +274,14 @@ public class LTRRescorer extends Rescorer {
                 + " If partial results are tolerated the reranking got reverted and all documents preserved their original score and ranking.")) {
       throw new IncompleteRerankingException();
     }
+  }
+
+  /**
+   * Adds a scored hit to the topN reranked documents, which become a heap once full, and returns
+   * true if it made it into them.
+   */
+  private static boolean addToReranked(int topN, int hitUpto, ScoreDoc hit, ScoreDoc[] reranked) {
+    boolean logHit = false;
     if (hitUpto < topN) {
       reranked[hitUpto] = hit;
       // if the heap is not full, maybe I want to log the features for this
@@ -30,6 +30,7 @@ import java.util.concurrent.FutureTask;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.Semaphore;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.search.DisiPriorityQueue;
 import org.apache.lucene.search.DisiWrapper;
 import org.apache.lucene.search.DisjunctionDISIApproximation;
@@ -38,6 +39,7 @@ import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
@@ -452,6 +454,120 @@ public class LTRScoringQuery extends Query implements Accountable {
       return ltrScoringModel.score(modelFeatureValuesNormalized);
     }
 
+    /**
+     * Extracts the normalized values of the model's features for documents, as {@link ModelScorer}
+     * does one document at a time, but going through the documents of a segment once per feature.
+     * This way each feature scorer, such as one reading DocValues, only moves forward once through
+     * the segment. Segments are processed in parallel when the query has a {@link LTRThreadModule}.
+     *
+     * <p>Unlike {@link ModelScorer}, this doesn't fill the {@link #getFeaturesInfo() features info}
+     * for logging.
+     *
+     * @param hits documents sorted by docID, with their original scores
+     * @param leaves the segments of the searcher
+     * @return the normalized feature vector of each document, to score with {@link
+     *     LTRScoringModel#score(float[][], float[])}
+     */
+    public float[][] extractNormalizedFeatures(ScoreDoc[] hits, List<LeafReaderContext> leaves)
+        throws IOException {
+      final float[][] featureVectors = new float[hits.length][modelFeatureWeights.length];
+      final List<LeafReaderContext> segments = new ArrayList<>();
+      // the documents of segment i are from starts[i] to starts[i + 1]
+      final int[] starts = new int[hits.length + 1];
+      for (int hitUpto = 0; hitUpto < hits.length; ) {
+        final LeafReaderContext context =
+            leaves.get(ReaderUtil.subIndex(hits[hitUpto].doc, leaves));
+        final int endDoc = context.docBase + context.reader().maxDoc();
+        starts[segments.size()] = hitUpto;
+        segments.add(context);
+        while (hitUpto < hits.length && hits[hitUpto].doc < endDoc) {
+          hitUpto++;
+        }
+      }
+      starts[segments.size()] = hits.length;
+
+      if (querySemaphore == null || segments.size() == 1) {
+        for (int i = 0; i < segments.size(); i++) {
+          extractNormalizedFeatures(
+              segments.get(i), hits, starts[i], starts[i + 1], featureVectors);
+        }
+      } else {
+        extractNormalizedFeaturesParallel(segments, hits, starts, featureVectors);
+      }
+      return featureVectors;
+    }
+
+    private void extractNormalizedFeaturesParallel(
+        List<LeafReaderContext> segments, ScoreDoc[] hits, int[] starts, float[][] featureVectors) {
+      final List<Future<Void>> futures = new ArrayList<>(segments.size());
+      try {
+        for (int i = 0; i < segments.size(); i++) {
+          final LeafReaderContext context = segments.get(i);
+          final int from = starts[i];
+          final int to = starts[i + 1];
+          final RunnableFuture<Void> runnableFuture =
+              new FutureTask<>(
+                  () -> {
+                    try {
+                      extractNormalizedFeatures(context, hits, from, to, featureVectors);
+                      return null;
+                    } finally {
+                      querySemaphore.release();
+                      ltrThreadMgr.releaseLTRSemaphore();
+                    }
+                  });
+
+          // as when creating weights, acquire the query semaphore first
+          querySemaphore.acquire();
+
+          ltrThreadMgr.acquireLTRSemaphore(); // may block and/or interrupt
+          ltrThreadMgr.execute(runnableFuture); // releases semaphore when done
+          futures.add(runnableFuture);
+        }
+        for (final Future<Void> future : futures) {
+          future.get(); // future.get() will block if the job is still running
+        }
+      } catch (Exception e) { // To catch InterruptedException and ExecutionException
+        log.info("Error while extracting features in LTR", e);
+        throw new RuntimeException("Error while extracting features in LTR: " + e.getMessage(), e);
+      }
+    }
+
+    private void extractNormalizedFeatures(
+        LeafReaderContext context, ScoreDoc[] hits, int from, int to, float[][] featureVectors)
+        throws IOException {
+      final DocInfo docInfo = new DocInfo();
+      for (int pos = 0; pos < modelFeatureWeights.length; pos++) {
+        final Feature.FeatureWeight featureWeight = modelFeatureWeights[pos];
+        final float defaultValue = featureWeight.getDefaultValue();
+        final Feature.FeatureWeight.FeatureScorer scorer = featureWeight.scorer(context);
+        if (scorer == null) {
+          for (int hitUpto = from; hitUpto < to; hitUpto++) {
+            featureVectors[hitUpto][pos] = defaultValue;
+          }
+          continue;
+        }
+        scorer.setDocInfo(docInfo);
+        final DocIdSetIterator iterator = scorer.iterator();
+        for (int hitUpto = from; hitUpto < to; hitUpto++) {
+          final int targetDoc = hits[hitUpto].doc - context.docBase;
+          int doc = iterator.docID();
+          if (doc < targetDoc) {
+            doc = iterator.advance(targetDoc);
+          }
+          if (doc == targetDoc) {
+            docInfo.setOriginalDocScore(hits[hitUpto].score);
+            featureVectors[hitUpto][pos] = scorer.score();
+          } else {
+            featureVectors[hitUpto][pos] = defaultValue;
+          }
+        }
+      }
+      for (int hitUpto = from; hitUpto < to; hitUpto++) {
+        ltrScoringModel.normalizeFeaturesInPlace(featureVectors[hitUpto]);
+      }
+    }
+
     @Override
     public Explanation explain(LeafReaderContext context, int doc) throws IOException {
 
@@ -27,7 +27,8 @@ import org.apache.solr.util.plugin.NamedListInitializedPlugin;
  * The LTRThreadModule is optionally used by the {@link org.apache.solr.ltr.search.LTRQParserPlugin}
  * and {@link org.apache.solr.ltr.response.transform.LTRFeatureLoggerTransformerFactory
  * LTRFeatureLoggerTransformerFactory} classes to parallelize the creation of {@link
- * org.apache.solr.ltr.feature.Feature.FeatureWeight Feature.FeatureWeight} objects.
+ * org.apache.solr.ltr.feature.Feature.FeatureWeight Feature.FeatureWeight} objects, and to extract
+ * the features of the reranked documents of different segments in parallel.
  *
  * <p>Example configuration:
  *
@@ -253,6 +253,19 @@ public abstract class LTRScoringModel implements Accountable {
    */
   public abstract float score(float[] modelFeatureValuesNormalized);
 
+  /**
+   * Scores a batch of documents, each as {@link #score(float[])} does. Models can override this to
+   * score the documents of a batch together more efficiently.
+   *
+   * @param modelFeatureValuesNormalized The normalized feature values of each document
+   * @param scores Where to write the score of each document
+   */
+  public void score(float[][] modelFeatureValuesNormalized, float[] scores) {
+    for (int i = 0; i < modelFeatureValuesNormalized.length; i++) {
+      scores[i] = score(modelFeatureValuesNormalized[i]);
+    }
+  }
+
   /**
    * Similar to the score() function, except it returns an explanation of how the features were used
    * to calculate the score.
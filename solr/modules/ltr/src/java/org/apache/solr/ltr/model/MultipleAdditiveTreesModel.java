@@ -18,6 +18,8 @@ package org.apache.solr.ltr.model;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
@@ -25,6 +27,8 @@ import java.util.Map;
 import java.util.Objects;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Explanation;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.ltr.feature.Feature;
 import org.apache.solr.ltr.feature.FeatureException;
 import org.apache.solr.ltr.norm.Normalizer;
@@ -77,6 +81,18 @@ import org.apache.solr.util.SolrPluginUtils;
  * }
  * </pre>
  *
+ * <p>When the model is loaded its trees are compiled into flat arrays of feature indexes,
+ * thresholds, child offsets and leaf values, which {@link #score(float[])} reads instead of walking
+ * the tree nodes. The optional {@code evaluator} parameter picks how the trees are evaluated:
+ *
+ * <ul>
+ *   <li>{@code flat} (default): walks each tree in the compiled arrays.
+ *   <li>{@code quickScorer}: visits the nodes feature by feature, in threshold order, and finds the
+ *       leaf of each tree with a bitvector as in QuickScorer. Trees may have at most 64 leaves.
+ *   <li>{@code nodes}: walks the tree nodes, as {@link #explain(LeafReaderContext, int, float,
+ *       List)} always does.
+ * </ul>
+ *
  * <p>Training libraries:
  *
  * <ul>
@@ -98,6 +114,12 @@ import org.apache.solr.util.SolrPluginUtils;
  *       its Application to Learning Ranking Functions for Web Search. Advances in Neural
  *       Information Processing Systems (NIPS), 2007.</a>
  * </ul>
+ *
+ * <ul>
+ *   <li><a href="https://doi.org/10.1145/2766462.2767733">C. Lucchese, F. M. Nardini, S. Orlando,
+ *       R. Perego, N. Tonellotto, and R. Venturini. QuickScorer: A Fast Algorithm to Rank
+ *       Documents with Additive Ensembles of Regression Trees. SIGIR 2015.</a>
+ * </ul>
  */
 public class MultipleAdditiveTreesModel extends LTRScoringModel {
 
@@ -116,6 +138,15 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
 
   private boolean isNullSameAsZero = true;
 
+  public static final String EVALUATOR_FLAT = "flat";
+  public static final String EVALUATOR_QUICK_SCORER = "quickScorer";
+  public static final String EVALUATOR_NODES = "nodes";
+
+  private String evaluator = EVALUATOR_FLAT;
+
+  /** The trees compiled by {@link #validate()}, or null to walk the tree nodes. */
+  private CompiledTrees compiledTrees;
+
   private RegressionTree createRegressionTree(Map<String, Object> map) {
     final RegressionTree rt = new RegressionTree();
     if (map != null) {
@@ -136,6 +167,10 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
     isNullSameAsZero = nullSameAsZero;
   }
 
+  public void setEvaluator(String evaluator) {
+    this.evaluator = evaluator;
+  }
+
   public class RegressionTreeNode {
     private static final float NODE_SPLIT_SLACK = 1E-6f;
 
@@ -294,6 +329,30 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
     for (RegressionTree tree : trees) {
       tree.validate();
     }
+    switch (evaluator) {
+      case EVALUATOR_FLAT:
+        compiledTrees = new FlatTrees(trees, isNullSameAsZero);
+        break;
+      case EVALUATOR_QUICK_SCORER:
+        compiledTrees =
+            new QuickScorerTrees(new FlatTrees(trees, isNullSameAsZero), features.size());
+        break;
+      case EVALUATOR_NODES:
+        compiledTrees = null;
+        break;
+      default:
+        throw new ModelException(
+            "unknown evaluator "
+                + evaluator
+                + " for model "
+                + name
+                + ", expected one of "
+                + EVALUATOR_FLAT
+                + ", "
+                + EVALUATOR_QUICK_SCORER
+                + " or "
+                + EVALUATOR_NODES);
+    }
   }
 
   @Override
@@ -323,6 +382,10 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
 
   @Override
   public float score(float[] modelFeatureValuesNormalized) {
+    // the compiled trees don't check for features missing from the vector
+    if (compiledTrees != null && modelFeatureValuesNormalized.length >= features.size()) {
+      return compiledTrees.score(modelFeatureValuesNormalized);
+    }
     float score = 0;
     for (final RegressionTree t : trees) {
       score += t.score(modelFeatureValuesNormalized);
@@ -330,6 +393,21 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
     return score;
   }
 
+  @Override
+  public void score(float[][] modelFeatureValuesNormalized, float[] scores) {
+    if (compiledTrees == null) {
+      super.score(modelFeatureValuesNormalized, scores);
+      return;
+    }
+    for (final float[] featureVector : modelFeatureValuesNormalized) {
+      if (featureVector.length < features.size()) {
+        super.score(modelFeatureValuesNormalized, scores);
+        return;
+      }
+    }
+    compiledTrees.score(modelFeatureValuesNormalized, scores);
+  }
+
   private static float scoreNode(float[] featureVector, RegressionTreeNode regressionTreeNode) {
     while (true) {
       if (regressionTreeNode.isLeaf()) {
@@ -504,6 +582,11 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
         finalScore, toString() + " model applied to features, sum of:", details);
   }
 
+  @Override
+  public long ramBytesUsed() {
+    return super.ramBytesUsed() + (compiledTrees == null ? 0 : compiledTrees.ramBytesUsed());
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder(getClass().getSimpleName());
@@ -518,4 +601,298 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
     sb.append("])");
     return sb.toString();
   }
+
+  /** The trees compiled for scoring, see {@link #setEvaluator(String)}. */
+  private interface CompiledTrees extends Accountable {
+
+    /** Scores a vector with a value for every feature of the model. */
+    float score(float[] featureVector);
+
+    /** Scores vectors with a value for every feature of the model. */
+    default void score(float[][] featureVectors, float[] scores) {
+      for (int i = 0; i < featureVectors.length; i++) {
+        scores[i] = score(featureVectors[i]);
+      }
+    }
+  }
+
+  /**
+   * The trees as flat arrays of nodes and leaves, numbered tree by tree in depth first order. A
+   * reference to a child, or to the root of a tree, is the index of a node or the bitwise
+   * complement of the index of a leaf. Leaf values are multiplied by the weight of their tree, and
+   * nodes on a feature the model doesn't have become leaves of value 0, as they score when walked.
+   */
+  private static final class FlatTrees implements CompiledTrees {
+    private static final long BASE_RAM_BYTES =
+        RamUsageEstimator.shallowSizeOfInstance(FlatTrees.class);
+
+    private final int[] roots;
+
+    /** The first node of each tree, followed by the number of nodes. */
+    private final int[] nodeStarts;
+
+    /** The first leaf of each tree, followed by the number of leaves. */
+    private final int[] leafStarts;
+
+    private final int[] features;
+    private final float[] thresholds;
+    private final boolean[] missingLeft;
+
+    /** The left child of node {@code n} is at {@code 2 * n}, its right child right after. */
+    private final int[] children;
+
+    private final float[] leafValues;
+
+    FlatTrees(List<RegressionTree> trees, boolean isNullSameAsZero) {
+      final Deque<RegressionTreeNode> stack = new ArrayDeque<>();
+      int numNodes = 0;
+      int numLeaves = 0;
+      for (final RegressionTree tree : trees) {
+        stack.push(tree.root);
+        while (!stack.isEmpty()) {
+          final RegressionTreeNode node = stack.pop();
+          if (isCompiledLeaf(node)) {
+            numLeaves++;
+          } else {
+            numNodes++;
+            stack.push(node.right);
+            stack.push(node.left);
+          }
+        }
+      }
+
+      roots = new int[trees.size()];
+      nodeStarts = new int[trees.size() + 1];
+      leafStarts = new int[trees.size() + 1];
+      features = new int[numNodes];
+      thresholds = new float[numNodes];
+      missingLeft = new boolean[numNodes];
+      children = new int[2 * numNodes];
+      leafValues = new float[numLeaves];
+
+      // where to store the reference to each node of the stack, -1 for the root
+      final Deque<Integer> slots = new ArrayDeque<>();
+      numNodes = 0;
+      numLeaves = 0;
+      for (int t = 0; t < trees.size(); t++) {
+        final RegressionTree tree = trees.get(t);
+        nodeStarts[t] = numNodes;
+        leafStarts[t] = numLeaves;
+        stack.push(tree.root);
+        slots.push(-1);
+        while (!stack.isEmpty()) {
+          final RegressionTreeNode node = stack.pop();
+          final int slot = slots.pop();
+          final int ref;
+          if (isCompiledLeaf(node)) {
+            leafValues[numLeaves] = tree.weight.floatValue() * (node.isLeaf() ? node.value : 0f);
+            ref = ~numLeaves++;
+          } else {
+            ref = numNodes++;
+            features[ref] = node.featureIndex;
+            thresholds[ref] = node.threshold;
+            missingLeft[ref] = !isNullSameAsZero && "left".equals(node.missing);
+            // the left subtree is popped first, so that leaves are numbered from left to right
+            stack.push(node.right);
+            slots.push(2 * ref + 1);
+            stack.push(node.left);
+            slots.push(2 * ref);
+          }
+          if (slot < 0) {
+            roots[t] = ref;
+          } else {
+            children[slot] = ref;
+          }
+        }
+      }
+      nodeStarts[trees.size()] = numNodes;
+      leafStarts[trees.size()] = numLeaves;
+    }
+
+    private static boolean isCompiledLeaf(RegressionTreeNode node) {
+      return node.isLeaf() || node.featureIndex < 0;
+    }
+
+    /** Returns the index of the leftmost leaf under a reference. */
+    int firstLeaf(int ref) {
+      while (ref >= 0) {
+        ref = children[2 * ref];
+      }
+      return ~ref;
+    }
+
+    @Override
+    public float score(float[] featureVector) {
+      float score = 0;
+      for (final int root : roots) {
+        int ref = root;
+        while (ref >= 0) {
+          final float value = featureVector[features[ref]];
+          if (value <= thresholds[ref] || (missingLeft[ref] && Float.isNaN(value))) {
+            ref = children[2 * ref];
+          } else {
+            ref = children[2 * ref + 1];
+          }
+        }
+        score += leafValues[~ref];
+      }
+      return score;
+    }
+
+    /**
+     * Goes through the documents tree by tree rather than the trees document by document, so that
+     * the nodes of a tree are read from memory once for all documents.
+     */
+    @Override
+    public void score(float[][] featureVectors, float[] scores) {
+      Arrays.fill(scores, 0, featureVectors.length, 0f);
+      for (final int root : roots) {
+        for (int i = 0; i < featureVectors.length; i++) {
+          final float[] featureVector = featureVectors[i];
+          int ref = root;
+          while (ref >= 0) {
+            final float value = featureVector[features[ref]];
+            if (value <= thresholds[ref] || (missingLeft[ref] && Float.isNaN(value))) {
+              ref = children[2 * ref];
+            } else {
+              ref = children[2 * ref + 1];
+            }
+          }
+          scores[i] += leafValues[~ref];
+        }
+      }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES
+          + RamUsageEstimator.sizeOf(roots)
+          + RamUsageEstimator.sizeOf(nodeStarts)
+          + RamUsageEstimator.sizeOf(leafStarts)
+          + RamUsageEstimator.sizeOf(features)
+          + RamUsageEstimator.sizeOf(thresholds)
+          + RamUsageEstimator.sizeOf(missingLeft)
+          + RamUsageEstimator.sizeOf(children)
+          + RamUsageEstimator.sizeOf(leafValues);
+    }
+  }
+
+  /**
+   * The trees evaluated as in QuickScorer. The nodes of all trees are grouped by feature and sorted
+   * by threshold, so that scoring visits, for each feature, only the nodes whose test sends the
+   * document to the right. Each of these nodes rules out the leaves of its left subtree, held as a
+   * bitvector of the leaves of its tree, and the leaf a tree scores is the leftmost one left.
+   */
+  private static final class QuickScorerTrees implements CompiledTrees {
+    private static final long BASE_RAM_BYTES =
+        RamUsageEstimator.shallowSizeOfInstance(QuickScorerTrees.class);
+
+    /** The nodes on feature {@code f} are from {@code featureStarts[f]} to the next start. */
+    private final int[] featureStarts;
+
+    private final float[] thresholds;
+    private final boolean[] missingLeft;
+    private final int[] trees;
+
+    /** The leaves of the left subtree of each node, numbered within its tree. */
+    private final long[] leftLeaves;
+
+    private final int[] leafStarts;
+    private final float[] leafValues;
+
+    QuickScorerTrees(FlatTrees flat, int numFeatures) throws ModelException {
+      final int numTrees = flat.roots.length;
+      final int numNodes = flat.features.length;
+      final int[] nodeTrees = new int[numNodes];
+      final long[] nodeLeftLeaves = new long[numNodes];
+      for (int t = 0; t < numTrees; t++) {
+        final int leafStart = flat.leafStarts[t];
+        final int numLeaves = flat.leafStarts[t + 1] - leafStart;
+        if (numLeaves > Long.SIZE) {
+          throw new ModelException(
+              "MultipleAdditiveTreesModel tree "
+                  + t
+                  + " has "
+                  + numLeaves
+                  + " leaves, the "
+                  + EVALUATOR_QUICK_SCORER
+                  + " evaluator supports at most "
+                  + Long.SIZE);
+        }
+        for (int n = flat.nodeStarts[t]; n < flat.nodeStarts[t + 1]; n++) {
+          nodeTrees[n] = t;
+          // the leaves of the left subtree are numbered right before those of the right subtree
+          final int from = flat.firstLeaf(flat.children[2 * n]) - leafStart;
+          final int to = flat.firstLeaf(flat.children[2 * n + 1]) - leafStart;
+          nodeLeftLeaves[n] = ((1L << to) - 1) & (-1L << from);
+        }
+      }
+
+      final Integer[] order = new Integer[numNodes];
+      for (int n = 0; n < numNodes; n++) {
+        order[n] = n;
+      }
+      Arrays.sort(
+          order,
+          Comparator.comparingInt((Integer n) -> flat.features[n])
+              .thenComparing((n1, n2) -> Float.compare(flat.thresholds[n1], flat.thresholds[n2])));
+
+      featureStarts = new int[numFeatures + 1];
+      thresholds = new float[numNodes];
+      missingLeft = new boolean[numNodes];
+      trees = new int[numNodes];
+      leftLeaves = new long[numNodes];
+      for (int i = 0; i < numNodes; i++) {
+        final int n = order[i];
+        featureStarts[flat.features[n] + 1]++;
+        thresholds[i] = flat.thresholds[n];
+        missingLeft[i] = flat.missingLeft[n];
+        trees[i] = nodeTrees[n];
+        leftLeaves[i] = nodeLeftLeaves[n];
+      }
+      for (int f = 0; f < numFeatures; f++) {
+        featureStarts[f + 1] += featureStarts[f];
+      }
+      leafStarts = flat.leafStarts;
+      leafValues = flat.leafValues;
+    }
+
+    @Override
+    public float score(float[] featureVector) {
+      // the leaves of each tree that the document doesn't reach
+      final long[] ruledOut = new long[leafStarts.length - 1];
+      for (int f = 0; f < featureStarts.length - 1; f++) {
+        final float value = featureVector[f];
+        final int end = featureStarts[f + 1];
+        if (Float.isNaN(value)) {
+          for (int i = featureStarts[f]; i < end; i++) {
+            if (!missingLeft[i]) {
+              ruledOut[trees[i]] |= leftLeaves[i];
+            }
+          }
+        } else {
+          for (int i = featureStarts[f]; i < end && value > thresholds[i]; i++) {
+            ruledOut[trees[i]] |= leftLeaves[i];
+          }
+        }
+      }
+      float score = 0;
+      for (int t = 0; t < ruledOut.length; t++) {
+        score += leafValues[leafStarts[t] + Long.numberOfTrailingZeros(~ruledOut[t])];
+      }
+      return score;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES
+          + RamUsageEstimator.sizeOf(featureStarts)
+          + RamUsageEstimator.sizeOf(thresholds)
+          + RamUsageEstimator.sizeOf(missingLeft)
+          + RamUsageEstimator.sizeOf(trees)
+          + RamUsageEstimator.sizeOf(leftLeaves)
+          + RamUsageEstimator.sizeOf(leafStarts)
+          + RamUsageEstimator.sizeOf(leafValues);
+    }
+  }
 }
@@ -20,11 +20,15 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
@@ -36,9 +40,11 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.core.SolrResourceLoader;
 import org.apache.solr.ltr.feature.Feature;
 import org.apache.solr.ltr.feature.FieldValueFeature;
+import org.apache.solr.ltr.feature.OriginalScoreFeature;
 import org.apache.solr.ltr.model.LTRScoringModel;
 import org.apache.solr.ltr.model.TestLinearModel;
 import org.apache.solr.ltr.norm.IdentityNormalizer;
@@ -265,4 +271,90 @@ public class TestLTRReRankingPipeline extends SolrTestCaseJ4 {
       }
     }
   }
+
+  @Test
+  public void testBatchFeatureExtraction() throws Exception {
+    assertU(delQ("*:*"));
+    // a few segments, with some documents missing some of the fields
+    int id = 0;
+    for (int segment = 0; segment < 3; segment++) {
+      for (int i = 0; i < 10; i++, id++) {
+        if (id % 4 == 0) {
+          assertU(adoc("id", Integer.toString(id), "field", "wizard oz"));
+        } else {
+          assertU(
+              adoc(
+                  "id",
+                  Integer.toString(id),
+                  "field",
+                  id % 3 == 0 ? "wizard oz oz" : "wizard",
+                  "popularity",
+                  Integer.toString(id % 7),
+                  "finalScoreFloat",
+                  Float.toString(id / 10f)));
+        }
+      }
+      assertU(commit());
+    }
+
+    final ExecutorService executor = ExecutorUtil.newMDCAwareCachedThreadPool("ltrBatchTest");
+    try (SolrQueryRequest solrQueryRequest =
+        new LocalSolrQueryRequest(h.getCore(), new ModifiableSolrParams())) {
+      final BooleanQuery.Builder bqBuilder = new BooleanQuery.Builder();
+      bqBuilder.add(new TermQuery(new Term("field", "wizard")), BooleanClause.Occur.SHOULD);
+      bqBuilder.add(new TermQuery(new Term("field", "oz")), BooleanClause.Occur.SHOULD);
+      final SolrIndexSearcher searcher = solrQueryRequest.getSearcher();
+      final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+      final TopDocs hits = searcher.search(bqBuilder.build(), 100);
+      assertEquals(id, hits.totalHits.value);
+
+      final List<Feature> features = new ArrayList<>();
+      features.addAll(makeFieldValueFeatures(new int[] {0}, "popularity"));
+      features.addAll(makeFieldValueFeatures(new int[] {1}, "finalScoreFloat"));
+      final Feature originalScore =
+          Feature.getInstance(
+              solrResourceLoader, OriginalScoreFeature.class.getName(), "f2", new HashMap<>());
+      originalScore.setIndex(2);
+      features.add(originalScore);
+      final List<Normalizer> norms =
+          new ArrayList<>(Collections.nCopies(features.size(), IdentityNormalizer.INSTANCE));
+      final LTRScoringModel ltrScoringModel =
+          TestLinearModel.createLinearModel(
+              "test",
+              features,
+              norms,
+              "test",
+              features,
+              TestLinearModel.makeFeatureWeights(features));
+
+      final LTRThreadModule threadModule = new LTRThreadModule(4, 4);
+      threadModule.setExecutor(executor);
+      for (LTRThreadModule ltrThreadMgr : new LTRThreadModule[] {null, threadModule}) {
+        final LTRScoringQuery scoringQuery =
+            new LTRScoringQuery(ltrScoringModel, Collections.emptyMap(), ltrThreadMgr);
+        scoringQuery.setRequest(solrQueryRequest);
+        scoringQuery.setOriginalQuery(bqBuilder.build());
+        final LTRScoringQuery.ModelWeight modelWeight =
+            scoringQuery.createWeight(searcher, ScoreMode.COMPLETE, 1);
+
+        final ScoreDoc[] sortedHits = hits.scoreDocs.clone();
+        Arrays.sort(sortedHits, Comparator.comparingInt(hit -> hit.doc));
+        final float[][] featureVectors = modelWeight.extractNormalizedFeatures(sortedHits, leaves);
+        final float[] scores = new float[sortedHits.length];
+        ltrScoringModel.score(featureVectors, scores);
+
+        for (int i = 0; i < sortedHits.length; i++) {
+          final ScoreDoc hit = sortedHits[i];
+          final LeafReaderContext context = leaves.get(ReaderUtil.subIndex(hit.doc, leaves));
+          final LTRScoringQuery.ModelWeight.ModelScorer scorer = modelWeight.scorer(context);
+          scorer.iterator().advance(hit.doc - context.docBase);
+          scorer.getDocInfo().setOriginalDocScore(hit.score);
+          assertEquals(scorer.score(), scores[i], 0f);
+          assertEquals(hit.score, featureVectors[i][2], 0f);
+        }
+      }
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
 }
@@ -18,8 +18,18 @@ package org.apache.solr.ltr.model;
 
 import static org.hamcrest.core.StringContains.containsString;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.ltr.TestRerankBase;
+import org.apache.solr.ltr.feature.Feature;
+import org.apache.solr.ltr.feature.ValueFeature;
+import org.apache.solr.ltr.norm.IdentityNormalizer;
+import org.apache.solr.ltr.norm.Normalizer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -354,4 +364,147 @@ public class TestMultipleAdditiveTreesModel extends TestRerankBase {
     assertThat(qryResult, containsString(" Go Right "));
     assertThat(qryResult, containsString(" Go Left "));
   }
+
+  @Test
+  public void testEvaluatorsScoreTheSame() throws Exception {
+    final Random random = random();
+    for (int iter = 0; iter < 20; iter++) {
+      final List<Feature> features = makeFeatures(1 + random.nextInt(10));
+      final List<Object> trees = new ArrayList<>();
+      for (int t = 1 + random.nextInt(50); t > 0; t--) {
+        final Map<String, Object> tree = new LinkedHashMap<>();
+        tree.put("weight", Float.toString(random.nextFloat() * 2 - 0.5f));
+        tree.put("root", randomNode(random, features.size(), random.nextInt(8)));
+        trees.add(tree);
+      }
+      final String isNullSameAsZero = Boolean.toString(random.nextBoolean());
+      final LTRScoringModel nodes =
+          createModel(
+              features, trees, isNullSameAsZero, MultipleAdditiveTreesModel.EVALUATOR_NODES);
+      final LTRScoringModel flat =
+          createModel(features, trees, isNullSameAsZero, MultipleAdditiveTreesModel.EVALUATOR_FLAT);
+      final LTRScoringModel quickScorer =
+          createModel(
+              features, trees, isNullSameAsZero, MultipleAdditiveTreesModel.EVALUATOR_QUICK_SCORER);
+
+      for (int doc = 0; doc < 100; doc++) {
+        final float[] featureVector = new float[features.size()];
+        for (int i = 0; i < featureVector.length; i++) {
+          final int kind = random.nextInt(6);
+          featureVector[i] =
+              kind == 0 ? Float.NaN : kind == 1 ? random.nextInt(3) : random.nextFloat();
+        }
+        final float expected = nodes.score(featureVector);
+        assertEquals(expected, flat.score(featureVector), 0f);
+        assertEquals(expected, quickScorer.score(featureVector), 0f);
+      }
+    }
+  }
+
+  @Test
+  public void testQuickScorerTooManyLeaves() throws Exception {
+    final List<Feature> features = makeFeatures(1);
+    // a chain of 65 nodes going right, with 66 leaves
+    Map<String, Object> node = leaf(0f);
+    for (int i = 0; i < 65; i++) {
+      final Map<String, Object> parent = new LinkedHashMap<>();
+      parent.put("feature", "f0");
+      parent.put("threshold", Integer.toString(i));
+      parent.put("left", leaf(i));
+      parent.put("right", node);
+      node = parent;
+    }
+    final Map<String, Object> tree = new LinkedHashMap<>();
+    tree.put("weight", "1");
+    tree.put("root", node);
+
+    createModel(features, List.of(tree), "true", MultipleAdditiveTreesModel.EVALUATOR_FLAT);
+    final ModelException ex =
+        expectThrows(
+            ModelException.class,
+            () ->
+                createModel(
+                    features,
+                    List.of(tree),
+                    "true",
+                    MultipleAdditiveTreesModel.EVALUATOR_QUICK_SCORER));
+    assertEquals(
+        "MultipleAdditiveTreesModel tree 0 has 66 leaves, the quickScorer evaluator supports at"
+            + " most 64",
+        ex.getMessage());
+  }
+
+  @Test
+  public void testUnknownEvaluator() {
+    final ModelException ex =
+        expectThrows(
+            ModelException.class,
+            () -> {
+              final Map<String, Object> tree = new LinkedHashMap<>();
+              tree.put("weight", "1");
+              tree.put("root", leaf(1f));
+              createModel(makeFeatures(1), List.of(tree), "true", "walk");
+            });
+    assertEquals(
+        "unknown evaluator walk for model evaluatorModel,"
+            + " expected one of flat, quickScorer or nodes",
+        ex.getMessage());
+  }
+
+  private static List<Feature> makeFeatures(int count) {
+    final List<Feature> features = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final Map<String, Object> params = new HashMap<>();
+      params.put("value", i);
+      final Feature f =
+          Feature.getInstance(solrResourceLoader, ValueFeature.class.getName(), "f" + i, params);
+      f.setIndex(i);
+      features.add(f);
+    }
+    return features;
+  }
+
+  private static LTRScoringModel createModel(
+      List<Feature> features, List<Object> trees, String isNullSameAsZero, String evaluator)
+      throws ModelException {
+    final List<Normalizer> norms = new ArrayList<>();
+    for (int i = 0; i < features.size(); i++) {
+      norms.add(IdentityNormalizer.INSTANCE);
+    }
+    final Map<String, Object> params = new LinkedHashMap<>();
+    params.put("trees", trees);
+    params.put("isNullSameAsZero", isNullSameAsZero);
+    params.put("evaluator", evaluator);
+    return LTRScoringModel.getInstance(
+        solrResourceLoader,
+        MultipleAdditiveTreesModel.class.getName(),
+        "evaluatorModel",
+        features,
+        norms,
+        "test",
+        features,
+        params);
+  }
+
+  /** A random node, sometimes on a feature the model doesn't have. */
+  private static Map<String, Object> randomNode(Random random, int numFeatures, int depth) {
+    if (depth == 0 || random.nextInt(4) == 0) {
+      return leaf(random.nextFloat() * 10 - 5);
+    }
+    final Map<String, Object> node = new LinkedHashMap<>();
+    node.put("feature", random.nextInt(30) == 0 ? "notExist" : "f" + random.nextInt(numFeatures));
+    node.put(
+        "threshold",
+        Float.toString(random.nextInt(5) == 0 ? random.nextInt(3) : random.nextFloat()));
+    node.put("missing", random.nextBoolean() ? "left" : "right");
+    node.put("left", randomNode(random, numFeatures, depth - 1));
+    node.put("right", randomNode(random, numFeatures, depth - 1));
+    return node;
+  }
+
+  private static Map<String, Object> leaf(float value) {
+    final Map<String, Object> leaf = new LinkedHashMap<>();
+    leaf.put("value", Float.toString(value));
+    return leaf;
+  }
 }
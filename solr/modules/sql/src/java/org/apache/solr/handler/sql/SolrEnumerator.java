@@ -23,17 +23,25 @@ import java.util.List;
 import java.util.Map;
 import org.apache.calcite.linq4j.Enumerator;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.stream.TupleStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Enumerator that reads from a Solr collection. */
+/**
+ * Enumerator that reads from a Solr collection. Rows are read from the batches of columns of the
+ * stream as long as it returns them, and from its tuples after that.
+ */
 class SolrEnumerator implements Enumerator<Object> {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private final TupleStream tupleStream;
   private final List<Map.Entry<String, Class<?>>> fields;
   private Tuple current;
+  private TupleBatch batch;
+  private int[] columns;
+  private int row;
+  private boolean readBatches = true;
 
   /**
    * Creates a SolrEnumerator.
@@ -61,18 +69,45 @@ class SolrEnumerator implements Enumerator<Object> {
   @Override
   public Object current() {
     if (fields.size() == 1) {
-      return this.getter(current, fields.get(0));
+      return batch != null ? this.getter(0) : this.getter(current, fields.get(0));
     } else {
       // Build an array with all fields in this row
       Object[] row = new Object[fields.size()];
       for (int i = 0; i < fields.size(); i++) {
-        row[i] = this.getter(current, fields.get(i));
+        row[i] = batch != null ? this.getter(i) : this.getter(current, fields.get(i));
       }
 
       return row;
     }
   }
 
+  /** Returns the value of a field in the current row of the batch, like the tuple getter. */
+  private Object getter(int field) {
+    int column = columns[field];
+    if (column == -1 || batch.isNull(column, row)) {
+      return null;
+    }
+
+    Class<?> clazz = fields.get(field).getValue();
+    switch (batch.getType(column)) {
+      case LONG:
+        return batch.getLong(column, row);
+      case DOUBLE:
+        double val = batch.getDouble(column, row);
+        return clazz.equals(Long.class) ? this.getRealVal(val) : val;
+      case DATE:
+        if (clazz.equals(Date.class)) {
+          return new Date(batch.getLong(column, row));
+        }
+        return batch.get(column, row);
+      default:
+        if (clazz.equals(Date.class)) {
+          return batch.getTuple(row).getDate(fields.get(field).getKey());
+        }
+        return batch.get(column, row);
+    }
+  }
+
   private Object getter(Tuple tuple, Map.Entry<String, Class<?>> field) {
     Object val = tuple.get(field.getKey());
 
@@ -115,6 +150,25 @@ class SolrEnumerator implements Enumerator<Object> {
   @Override
   public boolean moveNext() {
     try {
+      if (readBatches) {
+        if (batch != null && ++row < batch.size()) {
+          return true;
+        }
+        do {
+          batch = this.tupleStream.readBatch();
+        } while (batch != null && batch.size() == 0);
+        if (batch != null) {
+          columns = new int[fields.size()];
+          for (int i = 0; i < columns.length; i++) {
+            columns[i] = batch.getColumnIndex(fields.get(i).getKey());
+          }
+          row = 0;
+          return true;
+        }
+        // the stream has no more batches, the rest of the rows are read from its tuples
+        readBatches = false;
+      }
+
       Tuple tuple = this.tupleStream.read();
       if (tuple.EOF) {
         return false;
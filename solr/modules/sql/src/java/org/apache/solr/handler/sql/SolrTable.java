@@ -75,7 +75,10 @@ import org.apache.solr.client.solrj.io.stream.StatsStream;
 import org.apache.solr.client.solrj.io.stream.StreamContext;
 import org.apache.solr.client.solrj.io.stream.TupleStream;
 import org.apache.solr.client.solrj.io.stream.UniqueStream;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionParameter;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionParser;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
 import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
 import org.apache.solr.client.solrj.io.stream.metrics.CountDistinctMetric;
@@ -87,6 +90,7 @@ import org.apache.solr.client.solrj.io.stream.metrics.MinMetric;
 import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.StreamParams;
 
 /** Table based on a Solr collection */
 class SolrTable extends AbstractQueryableTable implements TranslatableTable {
@@ -168,12 +172,18 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
     String zk = properties.getProperty("zk");
     try {
       if (metricPairs.isEmpty() && buckets.isEmpty()) {
-        tupleStream = handleSelect(zk, collection, q, fields, orders, limit, offset);
+        boolean columnar = Boolean.parseBoolean(properties.getProperty("columnar", "true"));
+        tupleStream = handleSelect(zk, collection, q, fields, orders, limit, offset, columnar);
       } else {
         if (buckets.isEmpty()) {
           tupleStream = handleStats(zk, collection, q, metricPairs, fields);
         } else {
-          if (mapReduce) {
+          // JSON facets can't sort the buckets as ordered, so roll them up from the /export handler
+          // unless a distinct count needs JSON facets
+          boolean rollupToSort =
+              !facetCanSort(orders, buildBuckets(buckets, fields))
+                  && !hasCountDistinct(metricPairs);
+          if (mapReduce || rollupToSort) {
             tupleStream =
                 handleGroupByMapReduce(
                     zk,
@@ -311,7 +321,8 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
       List<Map.Entry<String, Class<?>>> fields,
       List<Pair<String, String>> orders,
       String limit,
-      String offset)
+      String offset,
+      boolean columnar)
       throws IOException {
 
     ModifiableSolrParams params = new ModifiableSolrParams();
@@ -376,10 +387,28 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
       return limitStream;
     } else {
       params.add(CommonParams.QT, "/export");
+      if (columnar && orders.isEmpty() && isSingleValued(fields)) {
+        // The rows can come in any order, so the shards are read one after the other, in batches
+        // of columns that the enumerator turns into rows without creating tuples
+        params.add(CommonParams.WT, CommonParams.JAVABIN);
+        params.add(StreamParams.COLUMNAR, "true");
+        return new UnorderedCloudSolrStream(zk, collection, params);
+      }
       return new CloudSolrStream(zk, collection, params);
     }
   }
 
+  /** Returns true if no field is multi-valued, which is required to export them as columns. */
+  private static boolean isSingleValued(List<Map.Entry<String, Class<?>>> fields) {
+    for (Map.Entry<String, Class<?>> field : fields) {
+      // multi-valued fields have the SQL type ANY
+      if (Object.class.equals(field.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private String getSort(List<Pair<String, String>> orders) {
     StringBuilder buf = new StringBuilder();
     for (Pair<String, String> pair : orders) {
@@ -650,6 +679,91 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
     return bucketsArray;
   }
 
+  /**
+   * Returns true if a JSON facet request can sort the buckets as ordered. JSON facets sort each
+   * level of buckets on its own, so they can sort on one column, or on the bucket columns in the
+   * order they are nested.
+   */
+  private static boolean facetCanSort(List<Pair<String, String>> orders, Bucket[] buckets) {
+    if (orders == null || orders.size() <= 1) {
+      return true;
+    }
+    if (orders.size() != buckets.length) {
+      return false;
+    }
+    for (int i = 0; i < buckets.length; i++) {
+      if (buckets[i] == null || !buckets[i].toString().equals(orders.get(i).getKey())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasCountDistinct(List<Pair<String, String>> metricPairs) {
+    for (Pair<String, String> metricPair : metricPairs) {
+      if (COUNT_DISTINCT.equals(metricPair.getKey())
+          || APPROX_COUNT_DISTINCT.equals(metricPair.getKey())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Adds the conjuncts of a HAVING predicate, with nested ands flattened, to a list. */
+  private static void addConjuncts(StreamExpression predicate, List<StreamExpression> conjuncts) {
+    if ("and".equals(predicate.getFunctionName())
+        && predicate.getParameters().stream().allMatch(p -> p instanceof StreamExpression)) {
+      for (StreamExpressionParameter operand : predicate.getParameters()) {
+        addConjuncts((StreamExpression) operand, conjuncts);
+      }
+    } else {
+      conjuncts.add(predicate);
+    }
+  }
+
+  /**
+   * Returns the smallest bucket count that satisfies a comparison of count(*) with a constant in a
+   * HAVING predicate, or 0 if the comparison doesn't bound the count from below.
+   */
+  private static int countLowerBound(StreamExpression comparison) {
+    List<StreamExpressionParameter> operands = comparison.getParameters();
+    if (operands.size() != 2
+        || !isCountStar(operands.get(0))
+        || !(operands.get(1) instanceof StreamExpressionValue)) {
+      return 0;
+    }
+    double value;
+    try {
+      value = Double.parseDouble(((StreamExpressionValue) operands.get(1)).getValue());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+    double bound;
+    switch (comparison.getFunctionName()) {
+      case "gt":
+        bound = Math.floor(value) + 1;
+        break;
+      case "gteq":
+      case "eq":
+        bound = Math.ceil(value);
+        break;
+      default:
+        return 0;
+    }
+    return bound < 1 ? 0 : (int) Math.min(bound, Integer.MAX_VALUE);
+  }
+
+  private static boolean isCountStar(StreamExpressionParameter operand) {
+    if (!(operand instanceof StreamExpression)) {
+      return false;
+    }
+    StreamExpression expression = (StreamExpression) operand;
+    return "count".equals(expression.getFunctionName())
+        && expression.getParameters().size() == 1
+        && expression.getParameters().get(0) instanceof StreamExpressionValue
+        && "*".equals(((StreamExpressionValue) expression.getParameters().get(0)).getValue());
+  }
+
   private TupleStream handleGroupByFacet(
       String zkHost,
       String collection,
@@ -686,9 +800,28 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
 
     int limit = lim != null ? Integer.parseInt(lim) : 1000;
 
+    // Lower bounds on count(*) in the HAVING predicate become the mincount of the facet request,
+    // anything else is evaluated on the buckets returned
+    int minCount = 1;
+    boolean residualHaving = false;
+    if (havingPredicate != null) {
+      List<StreamExpression> conjuncts = new ArrayList<>();
+      addConjuncts(StreamExpressionParser.parse(havingPredicate), conjuncts);
+      for (StreamExpression conjunct : conjuncts) {
+        int bound = countLowerBound(conjunct);
+        minCount = Math.max(minCount, bound);
+        if (bound == 0 || "eq".equals(conjunct.getFunctionName())) {
+          residualHaving = true;
+        }
+      }
+    }
+
+    // If the facet request can't sort the buckets as ordered, all of them are sorted here
+    boolean sortBuckets = !facetCanSort(orders, buckets);
+
     FieldComparator[] sorts = null;
 
-    if (orders == null || orders.size() == 0) {
+    if (orders == null || orders.size() == 0 || sortBuckets) {
       sorts = new FieldComparator[buckets.length];
       for (int i = 0; i < sorts.length; i++) {
         sorts[i] = new FieldComparator("index", ComparatorOrder.ASCENDING);
@@ -699,8 +832,20 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
 
     int overfetch = (int) (limit * 1.25);
 
-    TupleStream tupleStream =
-        new FacetStream(zkHost, collection, solrParams, buckets, metrics, sorts, overfetch);
+    // The HAVING predicate has to be evaluated on all the buckets before LIMIT is applied
+    FacetStream facetStream =
+        new FacetStream(
+            zkHost,
+            collection,
+            solrParams,
+            buckets,
+            metrics,
+            sorts,
+            residualHaving || sortBuckets ? -1 : overfetch);
+    if (minCount > 1) {
+      facetStream.setMinCount(minCount);
+    }
+    TupleStream tupleStream = facetStream;
 
     StreamFactory factory =
         new StreamFactory()
@@ -722,14 +867,19 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
             .withFunctionName("lteq", LessThanEqualToEvaluator.class)
             .withFunctionName("gteq", GreaterThanEqualToEvaluator.class);
 
-    if (havingPredicate != null) {
+    if (residualHaving) {
       RecursiveBooleanEvaluator booleanOperation =
           (RecursiveBooleanEvaluator)
               factory.constructEvaluator(StreamExpressionParser.parse(havingPredicate));
       tupleStream = new HavingStream(tupleStream, booleanOperation);
     }
 
-    if (lim != null) {
+    if (sortBuckets) {
+      tupleStream =
+          lim != null
+              ? new RankStream(tupleStream, limit, getComp(orders))
+              : new SortStream(tupleStream, getComp(orders));
+    } else if (lim != null) {
       tupleStream = new LimitStream(tupleStream, limit);
     }
 
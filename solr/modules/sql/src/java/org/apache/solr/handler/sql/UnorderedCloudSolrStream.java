@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.sql;
+
+import static org.apache.solr.client.solrj.io.stream.StreamExecutorHelper.submitAllAndAwaitAggregatingExceptions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.stream.CloudSolrStream;
+import org.apache.solr.client.solrj.io.stream.SolrStream;
+import org.apache.solr.client.solrj.io.stream.TupleStream;
+import org.apache.solr.common.params.SolrParams;
+
+/**
+ * Reads the shards of a collection one after the other instead of merging them in sort order, for
+ * queries whose rows may come in any order. Unlike {@link CloudSolrStream} it passes on the
+ * batches of the shard streams from {@link #readBatch()}, so that rows exported with {@code
+ * columnar=true} are never turned into tuples.
+ */
+class UnorderedCloudSolrStream extends CloudSolrStream {
+  private static final long serialVersionUID = 1;
+
+  private transient int current;
+  private transient Tuple pending;
+
+  UnorderedCloudSolrStream(String zkHost, String collection, SolrParams params)
+      throws IOException {
+    super(zkHost, collection, params);
+  }
+
+  @Override
+  public void open() throws IOException {
+    this.solrStreams = new ArrayList<>();
+    this.eofTuples = Collections.synchronizedMap(new HashMap<>());
+    this.current = 0;
+    this.pending = null;
+    constructStreams();
+
+    // open the shard streams at once so that each shard exports while the previous ones are read
+    List<Callable<Void>> openers = new ArrayList<>(solrStreams.size());
+    for (TupleStream solrStream : solrStreams) {
+      openers.add(
+          () -> {
+            solrStream.open();
+            return null;
+          });
+    }
+    submitAllAndAwaitAggregatingExceptions(openers, "UnorderedCloudSolrStream");
+  }
+
+  @Override
+  public TupleBatch readBatch() throws IOException {
+    while (pending == null && current < solrStreams.size()) {
+      TupleStream solrStream = solrStreams.get(current);
+      TupleBatch batch = solrStream.readBatch();
+      if (batch != null) {
+        return batch;
+      }
+      // the shard has no more batches, anything it has left has to be read as tuples
+      Tuple tuple = solrStream.read();
+      if (!tuple.EOF) {
+        pending = tuple;
+        return null;
+      }
+      eofTuples.put(((SolrStream) solrStream).getBaseUrl(), tuple);
+      current++;
+    }
+    return null;
+  }
+
+  @Override
+  public Tuple read() throws IOException {
+    if (pending != null) {
+      Tuple tuple = pending;
+      pending = null;
+      return tuple;
+    }
+    while (current < solrStreams.size()) {
+      TupleStream solrStream = solrStreams.get(current);
+      Tuple tuple = solrStream.read();
+      if (!tuple.EOF) {
+        return tuple;
+      }
+      eofTuples.put(((SolrStream) solrStream).getBaseUrl(), tuple);
+      current++;
+    }
+    return Tuple.EOF();
+  }
+
+  /** Returns null, the rows of the shards are not merged in any order. */
+  @Override
+  public StreamComparator getStreamSort() {
+    return null;
+  }
+}
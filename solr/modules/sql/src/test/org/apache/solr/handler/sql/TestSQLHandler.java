@@ -24,6 +24,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -1674,6 +1675,88 @@ public class TestSQLHandler extends SolrCloudTestCase {
     assertEquals(0, tuples.size());
   }
 
+  @Test
+  public void testGroupingFacetsPushdown() throws Exception {
+
+    new UpdateRequest()
+        .add("id", "1", "str_s", "a", "field_i", "7")
+        .add("id", "2", "str_s", "b", "field_i", "8")
+        .add("id", "3", "str_s", "a", "field_i", "20")
+        .add("id", "4", "str_s", "b", "field_i", "11")
+        .add("id", "5", "str_s", "c", "field_i", "30")
+        .add("id", "6", "str_s", "c", "field_i", "40")
+        .add("id", "7", "str_s", "c", "field_i", "50")
+        .add("id", "8", "str_s", "c", "field_i", "60")
+        .add("id", "9", "str_s", "d", "field_i", "70")
+        .add("id", "10", "str_s", "e", "field_i", "5")
+        .commit(cluster.getSolrClient(), COLLECTIONORALIAS);
+
+    // a lower bound on count(*) is the mincount of the facet request
+    List<Tuple> tuples =
+        getTuples(
+            facetSql(
+                "select str_s, count(*), sum(field_i) from collection1 group by str_s "
+                    + "having count(*) > 1 order by str_s asc limit 2"),
+            sqlUrl());
+    assertEquals(2, tuples.size());
+    assertEquals("a", tuples.get(0).get("str_s"));
+    assertEquals(2, tuples.get(0).getLong("EXPR$1").longValue());
+    assertEquals("b", tuples.get(1).get("str_s"));
+
+    // the other conditions are evaluated before the limit is applied
+    tuples =
+        getTuples(
+            facetSql(
+                "select str_s, count(*), sum(field_i) from collection1 group by str_s "
+                    + "having sum(field_i) > 20 order by sum(field_i) asc limit 1"),
+            sqlUrl());
+    assertEquals(1, tuples.size());
+    assertEquals("a", tuples.get(0).get("str_s"));
+    assertEquals(27, tuples.get(0).getDouble("EXPR$2"), 0.0);
+
+    tuples =
+        getTuples(
+            facetSql(
+                "select str_s, count(*), sum(field_i) from collection1 group by str_s "
+                    + "having ((count(*) >= 2) AND (sum(field_i) < 100)) order by str_s desc"),
+            sqlUrl());
+    assertEquals(2, tuples.size());
+    assertEquals("b", tuples.get(0).get("str_s"));
+    assertEquals("a", tuples.get(1).get("str_s"));
+
+    // JSON facets can't sort on several columns, so the buckets are rolled up from /export
+    tuples =
+        getTuples(
+            facetSql(
+                "select str_s, count(*), sum(field_i) from collection1 group by str_s "
+                    + "order by count(*) desc, str_s desc limit 4"),
+            sqlUrl());
+    assertEquals(4, tuples.size());
+    assertEquals("c", tuples.get(0).get("str_s"));
+    assertEquals(4, tuples.get(0).getLong("EXPR$1").longValue());
+    assertEquals(180, tuples.get(0).getDouble("EXPR$2"), 0.0);
+    assertEquals("b", tuples.get(1).get("str_s"));
+    assertEquals("a", tuples.get(2).get("str_s"));
+    assertEquals("e", tuples.get(3).get("str_s"));
+
+    // or else all the buckets are sorted once they are returned
+    tuples =
+        getTuples(
+            facetSql(
+                "select str_s, count(*), count(distinct field_i) from collection1 group by str_s "
+                    + "order by count(*) desc, str_s desc limit 3"),
+            sqlUrl());
+    assertEquals(3, tuples.size());
+    assertEquals("c", tuples.get(0).get("str_s"));
+    assertEquals(4, tuples.get(0).getLong("EXPR$2").longValue());
+    assertEquals("b", tuples.get(1).get("str_s"));
+    assertEquals("a", tuples.get(2).get("str_s"));
+  }
+
+  private SolrParams facetSql(String sql) {
+    return params(CommonParams.QT, "/sql", "aggregationMode", "facet", "stmt", sql);
+  }
+
   @Test
   public void testAggregatesWithoutGrouping() throws Exception {
 
@@ -2661,6 +2744,57 @@ public class TestSQLHandler extends SolrCloudTestCase {
         "SELECT id, pdatex FROM $ALIAS WHERE pdatex BETWEEN '2021-06-03' AND '2021-06-05'", 4);
   }
 
+  @Test
+  public void testSelectColumnar() throws Exception {
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 50; i++) {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField("id", String.valueOf(i));
+      doc.addField("str_s", "s" + (i % 7));
+      doc.addField("field_i", i);
+      if (i % 5 != 0) {
+        doc.addField("field_l", i * 1000L);
+        doc.addField("field_d", i / 4d);
+      }
+      doc.addField("pdatex", Instant.ofEpochSecond(1_600_000_000L + i * 3600L).toString());
+      update.add(doc);
+    }
+    update.commit(cluster.getSolrClient(), COLLECTIONORALIAS);
+
+    // the export is read in columnar batches by default and as tuples with columnar=false
+    String sql =
+        "SELECT id, str_s, field_i, field_l, field_d, pdatex FROM "
+            + COLLECTIONORALIAS
+            + " WHERE field_i >= 0";
+    List<Tuple> columnar = getTuples(params(CommonParams.QT, "/sql", "stmt", sql), sqlUrl());
+    List<Tuple> rows =
+        getTuples(params(CommonParams.QT, "/sql", "columnar", "false", "stmt", sql), sqlUrl());
+
+    assertEquals(50, columnar.size());
+    assertEquals(50, rows.size());
+    columnar.sort(Comparator.comparing(t -> Integer.valueOf(t.getString("id"))));
+    rows.sort(Comparator.comparing(t -> Integer.valueOf(t.getString("id"))));
+    for (int i = 0; i < 50; i++) {
+      Tuple tuple = columnar.get(i);
+      assertEquals(rows.get(i).getFields(), tuple.getFields());
+      assertEquals(i, (long) tuple.getLong("field_i"));
+      assertEquals("s" + (i % 7), tuple.getString("str_s"));
+      if (i % 5 == 0) {
+        assertNull(tuple.get("field_l"));
+        assertNull(tuple.get("field_d"));
+      } else {
+        assertEquals(i * 1000L, (long) tuple.getLong("field_l"));
+        assertEquals(i / 4d, tuple.getDouble("field_d"), 0d);
+      }
+    }
+
+    // ordered selects are still merged from the shards in sort order
+    List<Tuple> sorted = expectResults("SELECT id, field_i FROM $ALIAS ORDER BY field_i desc", 50);
+    for (int i = 0; i < 50; i++) {
+      assertEquals(49 - i, (long) sorted.get(i).getLong("field_i"));
+    }
+  }
+
   @Test
   public void testISO8601TimestampFiltering() throws Exception {
     new UpdateRequest()
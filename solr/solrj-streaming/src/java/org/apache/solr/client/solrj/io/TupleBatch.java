@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * A batch of records sharing the same fields, with the values of each field held in a column of
+ * primitives. It lets streams that process many records pass them along without creating a {@link
+ * Tuple} and boxing every value for each of them.
+ *
+ * <p>Values read as objects are boxed as {@link
+ * org.apache.solr.client.solrj.io.stream.JavabinTupleStreamParser} boxes them when reading row by
+ * row: as {@link Integer}s, {@link Long}s, {@link Float}s, {@link Double}s and {@link Date}s, or,
+ * for a batch of only JSON types, as longs, doubles and ISO-8601 strings.
+ *
+ * @see org.apache.solr.client.solrj.io.stream.TupleStream#readBatch()
+ */
+public class TupleBatch {
+
+  /** The type of the values in a column. */
+  public enum Type {
+    INT,
+    LONG,
+    FLOAT,
+    DOUBLE,
+    BOOLEAN,
+    /** Milliseconds since the epoch. */
+    DATE,
+    STRING
+  }
+
+  /** The values of one field. Rows without a value are left out of its {@code present} set. */
+  public static final class Column {
+    private final Type type;
+    private final BitSet present;
+    private final int[] ints;
+    private final long[] longs;
+    private final float[] floats;
+    private final double[] doubles;
+    private final BitSet booleans;
+    private final byte[] utf8;
+    private final int[] offsets;
+
+    private Column(
+        Type type,
+        BitSet present,
+        int[] ints,
+        long[] longs,
+        float[] floats,
+        double[] doubles,
+        BitSet booleans,
+        byte[] utf8,
+        int[] offsets) {
+      this.type = type;
+      this.present = present;
+      this.ints = ints;
+      this.longs = longs;
+      this.floats = floats;
+      this.doubles = doubles;
+      this.booleans = booleans;
+      this.utf8 = utf8;
+      this.offsets = offsets;
+    }
+
+    /**
+     * @param present the rows that have a value, or null if all of them do
+     */
+    public static Column ofInts(int[] values, BitSet present) {
+      return new Column(Type.INT, present, values, null, null, null, null, null, null);
+    }
+
+    /**
+     * @param present the rows that have a value, or null if all of them do
+     */
+    public static Column ofLongs(long[] values, BitSet present) {
+      return new Column(Type.LONG, present, null, values, null, null, null, null, null);
+    }
+
+    /**
+     * @param present the rows that have a value, or null if all of them do
+     */
+    public static Column ofFloats(float[] values, BitSet present) {
+      return new Column(Type.FLOAT, present, null, null, values, null, null, null, null);
+    }
+
+    /**
+     * @param present the rows that have a value, or null if all of them do
+     */
+    public static Column ofDoubles(double[] values, BitSet present) {
+      return new Column(Type.DOUBLE, present, null, null, null, values, null, null, null);
+    }
+
+    /**
+     * @param values the rows that are true
+     * @param present the rows that have a value, or null if all of them do
+     */
+    public static Column ofBooleans(BitSet values, BitSet present) {
+      return new Column(Type.BOOLEAN, present, null, null, null, null, values, null, null);
+    }
+
+    /**
+     * @param epochMillis the dates as milliseconds since the epoch
+     * @param present the rows that have a value, or null if all of them do
+     */
+    public static Column ofDates(long[] epochMillis, BitSet present) {
+      return new Column(Type.DATE, present, null, epochMillis, null, null, null, null, null);
+    }
+
+    /**
+     * @param utf8 the UTF-8 bytes of all the values
+     * @param offsets row {@code i} spans {@code utf8} from {@code offsets[i]} to {@code offsets[i +
+     *     1]}
+     * @param present the rows that have a value, or null if all of them do
+     */
+    public static Column ofStrings(byte[] utf8, int[] offsets, BitSet present) {
+      return new Column(Type.STRING, present, null, null, null, null, null, utf8, offsets);
+    }
+  }
+
+  private final String[] fields;
+  private final Column[] columns;
+  private final int offset;
+  private final int size;
+  private final boolean onlyJsonTypes;
+
+  /**
+   * @param onlyJsonTypes whether values are boxed as only JSON types: whole numbers as longs,
+   *     decimals as doubles and dates as ISO-8601 strings
+   */
+  public TupleBatch(String[] fields, Column[] columns, int size, boolean onlyJsonTypes) {
+    this(fields, columns, 0, size, onlyJsonTypes);
+  }
+
+  private TupleBatch(
+      String[] fields, Column[] columns, int offset, int size, boolean onlyJsonTypes) {
+    if (fields.length != columns.length) {
+      throw new IllegalArgumentException("Expected one column per field");
+    }
+    this.fields = fields;
+    this.columns = columns;
+    this.offset = offset;
+    this.size = size;
+    this.onlyJsonTypes = onlyJsonTypes;
+  }
+
+  /** The number of rows. */
+  public int size() {
+    return size;
+  }
+
+  public int getColumnCount() {
+    return fields.length;
+  }
+
+  public String getField(int column) {
+    return fields[column];
+  }
+
+  /** Returns the column of a field, or -1 if no row of this batch has the field. */
+  public int getColumnIndex(String field) {
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i].equals(field)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public Type getType(int column) {
+    return columns[column].type;
+  }
+
+  public boolean isNull(int column, int row) {
+    BitSet present = columns[column].present;
+    return present != null && !present.get(offset + row);
+  }
+
+  /**
+   * Returns a {@link Type#INT} or {@link Type#LONG} value, or a {@link Type#DATE} as milliseconds
+   * since the epoch.
+   */
+  public long getLong(int column, int row) {
+    Column c = columns[column];
+    return c.type == Type.INT ? c.ints[offset + row] : c.longs[offset + row];
+  }
+
+  /** Returns the value of any numeric column, widened to a double. */
+  public double getDouble(int column, int row) {
+    Column c = columns[column];
+    switch (c.type) {
+      case INT:
+        return c.ints[offset + row];
+      case LONG:
+        return c.longs[offset + row];
+      case FLOAT:
+        return c.floats[offset + row];
+      default:
+        return c.doubles[offset + row];
+    }
+  }
+
+  public boolean getBool(int column, int row) {
+    return columns[column].booleans.get(offset + row);
+  }
+
+  /** Returns the value of any column as a string, or null if the row has no value. */
+  public String getString(int column, int row) {
+    if (isNull(column, row)) {
+      return null;
+    }
+    Column c = columns[column];
+    if (c.type == Type.STRING) {
+      int start = c.offsets[offset + row];
+      return new String(
+          c.utf8, start, c.offsets[offset + row + 1] - start, StandardCharsets.UTF_8);
+    }
+    return String.valueOf(get(column, row));
+  }
+
+  /** Returns a value boxed the way {@link Tuple} holds it, or null if the row has no value. */
+  public Object get(int column, int row) {
+    if (isNull(column, row)) {
+      return null;
+    }
+    Column c = columns[column];
+    switch (c.type) {
+      case INT:
+        return onlyJsonTypes ? (Object) getLong(column, row) : (Object) c.ints[offset + row];
+      case LONG:
+        return getLong(column, row);
+      case FLOAT:
+        return onlyJsonTypes ? (Object) getDouble(column, row) : (Object) c.floats[offset + row];
+      case DOUBLE:
+        return getDouble(column, row);
+      case BOOLEAN:
+        return getBool(column, row);
+      case DATE:
+        {
+          long epochMillis = getLong(column, row);
+          return onlyJsonTypes
+              ? Instant.ofEpochMilli(epochMillis).toString()
+              : new Date(epochMillis);
+        }
+      default:
+        return getString(column, row);
+    }
+  }
+
+  /** Returns true if two rows have the same value, or both have none, in a column. */
+  public boolean equalValues(int column, int row1, int row2) {
+    boolean null1 = isNull(column, row1);
+    if (null1 || isNull(column, row2)) {
+      return null1 == isNull(column, row2);
+    }
+    Column c = columns[column];
+    int i1 = offset + row1;
+    int i2 = offset + row2;
+    switch (c.type) {
+      case INT:
+        return c.ints[i1] == c.ints[i2];
+      case LONG:
+      case DATE:
+        return c.longs[i1] == c.longs[i2];
+      case FLOAT:
+        return Float.compare(c.floats[i1], c.floats[i2]) == 0;
+      case DOUBLE:
+        return Double.compare(c.doubles[i1], c.doubles[i2]) == 0;
+      case BOOLEAN:
+        return c.booleans.get(i1) == c.booleans.get(i2);
+      default:
+        return Arrays.equals(
+            c.utf8, c.offsets[i1], c.offsets[i1 + 1], c.utf8, c.offsets[i2], c.offsets[i2 + 1]);
+    }
+  }
+
+  /** Creates a tuple with the values of a row. */
+  public Tuple getTuple(int row) {
+    Tuple tuple = new Tuple();
+    for (int column = 0; column < fields.length; column++) {
+      Object value = get(column, row);
+      if (value != null) {
+        tuple.put(fields[column], value);
+      }
+    }
+    return tuple;
+  }
+
+  /** Returns the rows from {@code from} on, sharing the columns of this batch. */
+  public TupleBatch slice(int from) {
+    if (from < 0 || from > size) {
+      throw new IndexOutOfBoundsException(from);
+    }
+    return from == 0
+        ? this
+        : new TupleBatch(fields, columns, offset + from, size - from, onlyJsonTypes);
+  }
+
+  /** Returns the same rows with fields renamed as mapped, sharing the columns of this batch. */
+  public TupleBatch renameFields(Map<String, String> mappings) {
+    String[] renamed = fields.clone();
+    for (int i = 0; i < renamed.length; i++) {
+      renamed[i] = mappings.getOrDefault(renamed[i], renamed[i]);
+    }
+    return new TupleBatch(renamed, columns, offset, size, onlyJsonTypes);
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.common.params.StreamParams;
+
+/**
+ * Reads the response of the /export handler with {@code wt=javabin&columnar=true}, where documents
+ * come in batches of columns under {@code batches} instead of one map each under {@code docs}.
+ * Batches are decoded into {@link TupleBatch}es, that {@link #next()} also serves row by row, with
+ * the same values as the rows of {@link JavabinTupleStreamParser}.
+ */
+public class ColumnarTupleStreamParser extends JavabinTupleStreamParser {
+
+  public static final String BATCHES = "batches";
+
+  private final boolean onlyJsonTypes;
+  private String docsKey;
+  private TupleBatch batch;
+  private int row;
+  private Map<String, Object> pending;
+
+  public ColumnarTupleStreamParser(InputStream is, boolean onlyJsonTypes) throws IOException {
+    super(is, onlyJsonTypes);
+    this.onlyJsonTypes = onlyJsonTypes;
+  }
+
+  @Override
+  protected boolean isDocsKey(Object key) {
+    if (StreamParams.DOCS.equals(key) || BATCHES.equals(key)) {
+      docsKey = (String) key;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public Map<String, Object> next() throws IOException {
+    if (pending != null) {
+      Map<String, Object> m = pending;
+      pending = null;
+      return m;
+    }
+    while (batch == null || row == batch.size()) {
+      Map<String, Object> m = super.next();
+      if (m == null || !BATCHES.equals(docsKey)) {
+        // the end, or a plain document such as an exception
+        return m;
+      }
+      batch = decode(m, onlyJsonTypes);
+      row = 0;
+    }
+    return batch.getTuple(row++).getFields();
+  }
+
+  /**
+   * Returns the rows of the current batch not returned by {@link #next()} yet, or else the next
+   * batch. Returns null at the end of the stream, or if the response doesn't have batches, in which
+   * case the documents have to be read with {@link #next()}.
+   */
+  public TupleBatch nextBatch() throws IOException {
+    if (batch != null && row < batch.size()) {
+      TupleBatch rest = batch.slice(row);
+      batch = null;
+      return rest;
+    }
+    batch = null;
+    if (pending != null || (docsKey != null && !BATCHES.equals(docsKey))) {
+      return null;
+    }
+    Map<String, Object> m = super.next();
+    if (m != null && !BATCHES.equals(docsKey)) {
+      // a plain document such as an exception, leave it for next()
+      pending = m;
+      return null;
+    }
+    return m == null ? null : decode(m, onlyJsonTypes);
+  }
+
+  static TupleBatch decode(Map<String, Object> m, boolean onlyJsonTypes) {
+    int count = ((Number) m.get("count")).intValue();
+    List<String> fields = new ArrayList<>(m.size() - 1);
+    List<TupleBatch.Column> columns = new ArrayList<>(m.size() - 1);
+    for (Map.Entry<String, Object> e : m.entrySet()) {
+      if ("count".equals(e.getKey())) {
+        continue;
+      }
+      fields.add(e.getKey());
+      columns.add(decodeColumn(e.getKey(), (Map<?, ?>) e.getValue(), count));
+    }
+    return new TupleBatch(
+        fields.toArray(new String[0]),
+        columns.toArray(new TupleBatch.Column[0]),
+        count,
+        onlyJsonTypes);
+  }
+
+  private static TupleBatch.Column decodeColumn(String field, Map<?, ?> column, int count) {
+    String type = (String) column.get("type");
+    byte[] validity = (byte[]) column.get("validity");
+    BitSet present = validity == null ? null : BitSet.valueOf(validity);
+    ByteBuffer values =
+        ByteBuffer.wrap((byte[]) column.get("values")).order(ByteOrder.LITTLE_ENDIAN);
+    switch (type) {
+      case "int":
+        {
+          int[] ints = new int[count];
+          values.asIntBuffer().get(ints);
+          return TupleBatch.Column.ofInts(ints, present);
+        }
+      case "long":
+      case "date":
+        {
+          long[] longs = new long[count];
+          values.asLongBuffer().get(longs);
+          return "date".equals(type)
+              ? TupleBatch.Column.ofDates(longs, present)
+              : TupleBatch.Column.ofLongs(longs, present);
+        }
+      case "float":
+        {
+          float[] floats = new float[count];
+          values.asFloatBuffer().get(floats);
+          return TupleBatch.Column.ofFloats(floats, present);
+        }
+      case "double":
+        {
+          double[] doubles = new double[count];
+          values.asDoubleBuffer().get(doubles);
+          return TupleBatch.Column.ofDoubles(doubles, present);
+        }
+      case "boolean":
+        return TupleBatch.Column.ofBooleans(BitSet.valueOf(values), present);
+      case "string":
+        {
+          ByteBuffer offsetBytes =
+              ByteBuffer.wrap((byte[]) column.get("offsets")).order(ByteOrder.LITTLE_ENDIAN);
+          int[] offsets = new int[count + 1];
+          offsetBytes.asIntBuffer().get(offsets);
+          return TupleBatch.Column.ofStrings(values.array(), offsets, present);
+        }
+      default:
+        throw new IllegalArgumentException(
+            "Unknown type " + type + " of column " + field + " in export batch");
+    }
+  }
+}
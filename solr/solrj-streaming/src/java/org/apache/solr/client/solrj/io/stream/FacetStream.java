@@ -74,6 +74,7 @@ public class FacetStream extends TupleStream implements Expressible, ParallelMet
   private int offset;
   private int overfetch;
   private int bucketSizeLimit;
+  private int minCount = 1;
   private boolean refine;
   private String method;
   private FieldComparator[] bucketSorts;
@@ -143,6 +144,8 @@ public class FacetStream extends TupleStream implements Expressible, ParallelMet
         factory.getNamedOperand(expression, "overfetch");
     StreamExpressionNamedParameter refineExpression = factory.getNamedOperand(expression, "refine");
     StreamExpressionNamedParameter methodExpression = factory.getNamedOperand(expression, "method");
+    StreamExpressionNamedParameter minCountExpression =
+        factory.getNamedOperand(expression, "mincount");
 
     // Validate there are no unknown parameters
     if (expression.getParameters().size() != 1 + namedParams.size() + metricExpressions.size()) {
@@ -179,7 +182,8 @@ public class FacetStream extends TupleStream implements Expressible, ParallelMet
           && !namedParam.getName().equals("offset")
           && !namedParam.getName().equals("rows")
           && !namedParam.getName().equals("refine")
-          && !namedParam.getName().equals("overfetch")) {
+          && !namedParam.getName().equals("overfetch")
+          && !namedParam.getName().equals("mincount")) {
         params.add(namedParam.getName(), namedParam.getParameter().toString().trim());
       }
     }
@@ -392,6 +396,20 @@ public class FacetStream extends TupleStream implements Expressible, ParallelMet
         bucketLimitSet,
         overfetchInt,
         zkHost);
+
+    if (minCountExpression != null) {
+      String minCountStr = ((StreamExpressionValue) minCountExpression.getParameter()).getValue();
+      try {
+        setMinCount(Integer.parseInt(minCountStr));
+      } catch (NumberFormatException e) {
+        throw new IOException(
+            String.format(
+                Locale.ROOT,
+                "invalid expression %s - mincount '%s' is not a valid integer.",
+                expression,
+                minCountStr));
+      }
+    }
   }
 
   // see usage in parallelize method
@@ -413,6 +431,21 @@ public class FacetStream extends TupleStream implements Expressible, ParallelMet
     return this.overfetch;
   }
 
+  public int getMinCount() {
+    return this.minCount;
+  }
+
+  /**
+   * Sets the minimum count of the buckets to return, which the JSON facet request applies at every
+   * level before limiting the number of buckets.
+   */
+  public void setMinCount(int minCount) throws IOException {
+    if (minCount < 1) {
+      throw new IOException("mincount must be greater than 0, got " + minCount);
+    }
+    this.minCount = minCount;
+  }
+
   public Bucket[] getBuckets() {
     return this.buckets;
   }
@@ -605,6 +638,11 @@ public class FacetStream extends TupleStream implements Expressible, ParallelMet
       expression.addParameter(new StreamExpressionNamedParameter("method", this.method));
     }
 
+    if (minCount > 1) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter("mincount", Integer.toString(minCount)));
+    }
+
     // zkHost
     expression.addParameter(new StreamExpressionNamedParameter("zkHost", zkHost));
 
@@ -664,7 +702,8 @@ public class FacetStream extends TupleStream implements Expressible, ParallelMet
 
     // Parallelize the facet expression across multiple collections for an alias using plist if
     // possible
-    if (params.getBool(TIERED_PARAM, defaultTieredEnabled)) {
+    // buckets from each collection can't be screened by mincount before they are rolled up
+    if (params.getBool(TIERED_PARAM, defaultTieredEnabled) && minCount == 1) {
       ClusterStateProvider clusterStateProvider = cloudSolrClient.getClusterStateProvider();
       final List<String> resolved =
           clusterStateProvider != null ? clusterStateProvider.resolveAlias(collection) : null;
@@ -851,6 +890,10 @@ public class FacetStream extends TupleStream implements Expressible, ParallelMet
       buf.append(",\"method\":\"").append(method).append('"');
     }
 
+    if (minCount > 1) {
+      buf.append(",\"mincount\":").append(minCount);
+    }
+
     String fsort = getFacetSort(_sorts[level].getLeftFieldName(), _metrics);
 
     buf.append(",\"sort\":{\"")
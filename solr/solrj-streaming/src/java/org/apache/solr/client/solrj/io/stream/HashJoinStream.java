@@ -17,10 +17,14 @@
 package org.apache.solr.client.solrj.io.stream;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
@@ -31,6 +35,9 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionNamedParameter;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.common.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Takes two streams (fullStream and hashStream) and joins them similar to an InnerJoinStream. The
@@ -41,11 +48,21 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
  * being computed on then that tuple will not be considered a match to anything. Ie, all fields
  * which are part of the hash must have a non-null value.
  *
+ * <p>With {@code maxMemoryMB}, the hashed tuples that don't fit in that much heap are spilled to
+ * temporary files along with the tuples of the fullStream, split into partitions by hash, and each
+ * partition is then joined on its own like in a grace hash join. Joined tuples then no longer come
+ * in the order of the fullStream.
+ *
  * @since 6.0.0
  */
 public class HashJoinStream extends TupleStream implements Expressible {
 
   private static final long serialVersionUID = 1L;
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  // the inputs of the spill passes
+  private static final int HASHED = 0;
+  private static final int FULL = 1;
 
   protected TupleStream hashStream;
   protected TupleStream fullStream;
@@ -57,6 +74,14 @@ public class HashJoinStream extends TupleStream implements Expressible {
   protected String workingFullHash = null;
   protected int workingHashSetIdx = 0;
 
+  // the heap the hashed tuples may use before they're spilled to disk, or -1 for no limit
+  protected int maxMemoryMB = -1;
+  private transient Deque<SpillPartitions.Pass> spillPasses;
+  private transient SpillPartitions.Reader spilledFullTuples;
+  private transient Tuple fullEOF;
+  private long spilledTuples;
+  private long spilledBytes;
+
   public HashJoinStream(TupleStream fullStream, TupleStream hashStream, List<String> hashOn)
       throws IOException {
     init(fullStream, hashStream, hashOn);
@@ -70,9 +95,12 @@ public class HashJoinStream extends TupleStream implements Expressible {
     StreamExpressionNamedParameter hashStreamExpression =
         factory.getNamedOperand(expression, "hashed");
     StreamExpressionNamedParameter onExpression = factory.getNamedOperand(expression, "on");
+    StreamExpressionNamedParameter maxMemoryExpression =
+        factory.getNamedOperand(expression, SpillPartitions.MAX_MEMORY_MB_PARAM);
 
     // validate expression contains only what we want.
-    if (expression.getParameters().size() != streamExpressions.size() + 2) {
+    if (expression.getParameters().size()
+        != streamExpressions.size() + 2 + (null == maxMemoryExpression ? 0 : 1)) {
       throw new IOException(
           String.format(Locale.ROOT, "Invalid expression %s - unknown operands found", expression));
     }
@@ -114,6 +142,10 @@ public class HashJoinStream extends TupleStream implements Expressible {
         factory.constructStream(streamExpressions.get(0)),
         factory.constructStream((StreamExpression) hashStreamExpression.getParameter()),
         hashOn);
+
+    if (null != maxMemoryExpression) {
+      maxMemoryMB = SpillPartitions.parseMaxMemoryMB(expression, maxMemoryExpression);
+    }
   }
 
   private void init(TupleStream fullStream, TupleStream hashStream, List<String> hashOn)
@@ -190,9 +222,33 @@ public class HashJoinStream extends TupleStream implements Expressible {
     }
 
     expression.addParameter(new StreamExpressionNamedParameter("on", sb.toString()));
+    if (maxMemoryMB > 0) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter(
+              SpillPartitions.MAX_MEMORY_MB_PARAM, Integer.toString(maxMemoryMB)));
+    }
     return expression;
   }
 
+  /**
+   * Limits the heap the hashed tuples may use, beyond which they're spilled to disk.
+   *
+   * @param maxMemoryMB the limit in megabytes, or -1 for no limit
+   */
+  public void setMaxMemoryMB(int maxMemoryMB) {
+    this.maxMemoryMB = maxMemoryMB;
+  }
+
+  /** The number of tuples spilled to disk so far, from both streams. */
+  public long getSpilledTuples() {
+    return spilledTuples;
+  }
+
+  /** The number of bytes spilled to disk so far. */
+  public long getSpilledBytes() {
+    return spilledBytes;
+  }
+
   @Override
   public Explanation toExplanation(StreamFactory factory) throws IOException {
 
@@ -226,20 +282,180 @@ public class HashJoinStream extends TupleStream implements Expressible {
     hashStream.open();
     fullStream.open();
 
+    long memory = 0;
     Tuple tuple = hashStream.read();
     while (!tuple.EOF) {
       String hash = computeHash(tuple, rightHashOn);
       if (null != hash) {
-        if (hashedTuples.containsKey(hash)) {
-          hashedTuples.get(hash).add(tuple);
+        if (null != spillPasses) {
+          SpillPartitions hashed = spillPasses.peek().input(HASHED);
+          hashed.add(hashed.partition(hash), tuple);
         } else {
-          ArrayList<Tuple> set = new ArrayList<>();
-          set.add(tuple);
-          hashedTuples.put(hash, set);
+          if (hashedTuples.containsKey(hash)) {
+            hashedTuples.get(hash).add(tuple);
+          } else {
+            ArrayList<Tuple> set = new ArrayList<>();
+            set.add(tuple);
+            hashedTuples.put(hash, set);
+            memory += SpillPartitions.estimateBytes(hash) + 64;
+          }
+          memory += SpillPartitions.estimateBytes(tuple);
+          if (maxMemoryMB > 0 && memory > maxMemoryMB * 1024L * 1024L) {
+            startSpilling();
+          }
         }
       }
       tuple = hashStream.read();
     }
+
+    if (null != spillPasses) {
+      spillFullTuples();
+    }
+  }
+
+  /**
+   * Returns true if tuples from the fullStream are returned even without a match in the
+   * hashStream.
+   */
+  protected boolean returnsUnmatchedTuples() {
+    return false;
+  }
+
+  /**
+   * Reads the next tuple to join from the fullStream or, once the hashed tuples have been spilled,
+   * from the partition being joined. Between two calls the hashed tuples may change, so the
+   * previous tuple must have been joined by then.
+   */
+  protected Tuple readFullTuple() throws IOException {
+    if (null == spillPasses) {
+      return fullStream.read();
+    }
+    while (true) {
+      if (null != spilledFullTuples) {
+        Tuple tuple = spilledFullTuples.next();
+        if (null != tuple) {
+          return tuple;
+        }
+        spilledFullTuples.close();
+        spilledFullTuples = null;
+      }
+      if (!loadNextPartition()) {
+        return fullEOF;
+      }
+    }
+  }
+
+  private void startSpilling() throws IOException {
+    SpillPartitions.Pass pass = new SpillPartitions.Pass("hashJoin", 0, 2);
+    SpillPartitions hashed = pass.input(HASHED);
+    for (Map.Entry<String, List<Tuple>> entry : hashedTuples.entrySet()) {
+      int partition = hashed.partition(entry.getKey());
+      for (Tuple tuple : entry.getValue()) {
+        hashed.add(partition, tuple);
+      }
+    }
+    hashedTuples.clear();
+    spillPasses = new ArrayDeque<>();
+    spillPasses.push(pass);
+  }
+
+  private void spillFullTuples() throws IOException {
+    SpillPartitions.Pass pass = spillPasses.peek();
+    Tuple tuple = fullStream.read();
+    while (!tuple.EOF) {
+      addFullTuple(pass, tuple);
+      tuple = fullStream.read();
+    }
+    fullEOF = tuple;
+    finish(pass);
+  }
+
+  private void addFullTuple(SpillPartitions.Pass pass, Tuple tuple) throws IOException {
+    SpillPartitions full = pass.input(FULL);
+    String hash = computeHash(tuple, leftHashOn);
+    if (null != hash) {
+      full.add(full.partition(hash), tuple);
+    } else if (returnsUnmatchedTuples()) {
+      full.add(0, tuple);
+    }
+  }
+
+  private void finish(SpillPartitions.Pass pass) throws IOException {
+    pass.finish();
+    spilledTuples += pass.tuples();
+    spilledBytes += pass.bytes();
+  }
+
+  /**
+   * Loads the hashed tuples of the next partition with tuples to join, splitting partitions that
+   * don't fit in memory. Returns false once all partitions have been joined.
+   */
+  private boolean loadNextPartition() throws IOException {
+    hashedTuples.clear();
+    while (!spillPasses.isEmpty()) {
+      SpillPartitions.Pass pass = spillPasses.peek();
+      int partition = pass.nextPartition();
+      if (-1 == partition) {
+        spillPasses.pop().close();
+        continue;
+      }
+      SpillPartitions hashed = pass.input(HASHED);
+      SpillPartitions full = pass.input(FULL);
+      if (0 == full.count(partition)
+          || (0 == hashed.count(partition) && !returnsUnmatchedTuples())) {
+        continue;
+      }
+      if (!loadHashedTuples(hashed, partition)) {
+        hashedTuples.clear();
+        spillPasses.push(split(pass, partition));
+        continue;
+      }
+      hashed.delete(partition);
+      spilledFullTuples = full.open(partition);
+      return true;
+    }
+    return false;
+  }
+
+  /** Returns false if the partition doesn't fit in memory and can be split further. */
+  private boolean loadHashedTuples(SpillPartitions hashed, int partition) throws IOException {
+    long memory = 0;
+    try (SpillPartitions.Reader reader = hashed.open(partition)) {
+      for (Tuple tuple = reader.next(); null != tuple; tuple = reader.next()) {
+        String hash = computeHash(tuple, rightHashOn);
+        List<Tuple> set = hashedTuples.get(hash);
+        if (null == set) {
+          set = new ArrayList<>();
+          hashedTuples.put(hash, set);
+          memory += SpillPartitions.estimateBytes(hash) + 64;
+        }
+        set.add(tuple);
+        memory += SpillPartitions.estimateBytes(tuple);
+        if (memory > maxMemoryMB * 1024L * 1024L && hashed.canSplit()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private SpillPartitions.Pass split(SpillPartitions.Pass pass, int partition)
+      throws IOException {
+    SpillPartitions.Pass split = new SpillPartitions.Pass("hashJoin", pass.level() + 1, 2);
+    SpillPartitions splitHashed = split.input(HASHED);
+    try (SpillPartitions.Reader reader = pass.input(HASHED).open(partition)) {
+      for (Tuple tuple = reader.next(); null != tuple; tuple = reader.next()) {
+        splitHashed.add(splitHashed.partition(computeHash(tuple, rightHashOn)), tuple);
+      }
+    }
+    try (SpillPartitions.Reader reader = pass.input(FULL).open(partition)) {
+      for (Tuple tuple = reader.next(); null != tuple; tuple = reader.next()) {
+        addFullTuple(split, tuple);
+      }
+    }
+    finish(split);
+    pass.delete(partition);
+    return split;
   }
 
   protected String computeHash(Tuple tuple, List<String> hashOn) {
@@ -258,8 +474,25 @@ public class HashJoinStream extends TupleStream implements Expressible {
 
   @Override
   public void close() throws IOException {
-    hashStream.close();
-    fullStream.close();
+    try {
+      hashStream.close();
+      fullStream.close();
+    } finally {
+      if (null != spilledFullTuples) {
+        IOUtils.closeQuietly(spilledFullTuples);
+        spilledFullTuples = null;
+      }
+      if (null != spillPasses) {
+        spillPasses.forEach(IOUtils::closeQuietly);
+        spillPasses = null;
+        log.info(
+            "{} spilled {} tuples ({} bytes) to disk",
+            getClass().getSimpleName(),
+            spilledTuples,
+            spilledBytes);
+      }
+      hashedTuples.clear();
+    }
   }
 
   @Override
@@ -267,7 +500,7 @@ public class HashJoinStream extends TupleStream implements Expressible {
 
     findNextWorkingFullTuple:
     while (null == workingFullTuple) {
-      Tuple fullTuple = fullStream.read();
+      Tuple fullTuple = readFullTuple();
 
       // We're at the end of the line
       if (fullTuple.EOF) {
@@ -17,7 +17,10 @@
 package org.apache.solr.client.solrj.io.stream;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -39,10 +42,22 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
 import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
 import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.common.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Rolls up aggregates over bucket fields like {@link RollupStream}, but keeps the metrics of all
+ * buckets in a hash map so that the underlying stream doesn't need to be sorted.
+ *
+ * <p>With {@code maxMemoryMB}, once the buckets use that much heap, the tuples of any new bucket
+ * are spilled to temporary files, split into partitions by hash. The buckets that were kept in
+ * memory are returned first, and then each partition is rolled up on its own in the same way.
+ */
 public class HashRollupStream extends TupleStream implements Expressible {
 
   private static final long serialVersionUID = 1;
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private PushBackStream tupleStream;
   private Bucket[] buckets;
@@ -50,6 +65,13 @@ public class HashRollupStream extends TupleStream implements Expressible {
 
   private Iterator<Tuple> tupleIterator;
 
+  // the heap the buckets may use before new ones are spilled to disk, or -1 for no limit
+  private int maxMemoryMB = -1;
+  private transient Deque<SpillPartitions.Pass> spillPasses;
+  private transient Tuple eof;
+  private long spilledTuples;
+  private long spilledBytes;
+
   public HashRollupStream(TupleStream tupleStream, Bucket[] buckets, Metric[] metrics) {
     init(tupleStream, buckets, metrics);
   }
@@ -62,10 +84,15 @@ public class HashRollupStream extends TupleStream implements Expressible {
     List<StreamExpression> metricExpressions =
         factory.getExpressionOperandsRepresentingTypes(expression, Expressible.class, Metric.class);
     StreamExpressionNamedParameter overExpression = factory.getNamedOperand(expression, "over");
+    StreamExpressionNamedParameter maxMemoryExpression =
+        factory.getNamedOperand(expression, SpillPartitions.MAX_MEMORY_MB_PARAM);
 
     // validate expression contains only what we want.
     if (expression.getParameters().size()
-        != streamExpressions.size() + metricExpressions.size() + 1) {
+        != streamExpressions.size()
+            + metricExpressions.size()
+            + 1
+            + (null == maxMemoryExpression ? 0 : 1)) {
       throw new IOException(
           String.format(Locale.ROOT, "Invalid expression %s - unknown operands found", expression));
     }
@@ -110,6 +137,10 @@ public class HashRollupStream extends TupleStream implements Expressible {
     }
 
     init(factory.constructStream(streamExpressions.get(0)), buckets, metrics);
+
+    if (null != maxMemoryExpression) {
+      maxMemoryMB = SpillPartitions.parseMaxMemoryMB(expression, maxMemoryExpression);
+    }
   }
 
   private List<FieldEqualitor> flattenEqualitor(StreamEqualitor equalitor) {
@@ -164,9 +195,35 @@ public class HashRollupStream extends TupleStream implements Expressible {
       expression.addParameter(metric.toExpression(factory));
     }
 
+    if (maxMemoryMB > 0) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter(
+              SpillPartitions.MAX_MEMORY_MB_PARAM, Integer.toString(maxMemoryMB)));
+    }
+
     return expression;
   }
 
+  /**
+   * Limits the heap the buckets may use, beyond which the tuples of new buckets are spilled to
+   * disk.
+   *
+   * @param maxMemoryMB the limit in megabytes, or -1 for no limit
+   */
+  public void setMaxMemoryMB(int maxMemoryMB) {
+    this.maxMemoryMB = maxMemoryMB;
+  }
+
+  /** The number of tuples spilled to disk so far. */
+  public long getSpilledTuples() {
+    return spilledTuples;
+  }
+
+  /** The number of bytes spilled to disk so far. */
+  public long getSpilledBytes() {
+    return spilledBytes;
+  }
+
   @Override
   public Explanation toExplanation(StreamFactory factory) throws IOException {
 
@@ -204,62 +261,145 @@ public class HashRollupStream extends TupleStream implements Expressible {
 
   @Override
   public void close() throws IOException {
-    tupleStream.close();
-    tupleIterator = null;
+    try {
+      tupleStream.close();
+    } finally {
+      tupleIterator = null;
+      if (null != spillPasses) {
+        spillPasses.forEach(IOUtils::closeQuietly);
+        spillPasses = null;
+        if (spilledTuples > 0) {
+          log.info(
+              "HashRollupStream spilled {} tuples ({} bytes) to disk", spilledTuples, spilledBytes);
+        }
+      }
+    }
   }
 
   @Override
   public Tuple read() throws IOException {
     // On the first call to read build the tupleIterator.
     if (tupleIterator == null) {
-      Map<HashKey, Metric[]> metricMap = new HashMap<>();
-      while (true) {
-        Tuple tuple = tupleStream.read();
-        if (tuple.EOF) {
-          List<Tuple> tuples = new ArrayList<>();
-          for (Map.Entry<HashKey, Metric[]> entry : metricMap.entrySet()) {
-            Tuple t = new Tuple();
-            Metric[] finishedMetrics = entry.getValue();
-            for (Metric metric : finishedMetrics) {
-              t.put(metric.getIdentifier(), metric.getValue());
-            }
-
-            HashKey hashKey = entry.getKey();
-            for (int i = 0; i < buckets.length; i++) {
-              t.put(buckets[i].toString(), hashKey.getParts()[i]);
-            }
-            tuples.add(t);
-          }
-          tuples.add(tuple);
-          this.tupleIterator = tuples.iterator();
-          break;
-        }
+      spillPasses = new ArrayDeque<>();
+      tupleIterator =
+          rollup(
+              () -> {
+                Tuple tuple = tupleStream.read();
+                if (tuple.EOF) {
+                  eof = tuple;
+                  return null;
+                }
+                return tuple;
+              },
+              0);
+    }
 
-        Object[] bucketValues = new Object[buckets.length];
-        for (int i = 0; i < buckets.length; i++) {
-          bucketValues[i] = buckets[i].getBucketValue(tuple);
+    // then roll up the spilled partitions one at a time
+    while (!tupleIterator.hasNext()) {
+      Iterator<Tuple> next = rollupNextPartition();
+      if (next == null) {
+        return eof;
+      }
+      tupleIterator = next;
+    }
+    return tupleIterator.next();
+  }
+
+  @FunctionalInterface
+  private interface TupleSource {
+    /** Returns the next tuple, or null at the end. */
+    Tuple next() throws IOException;
+  }
+
+  /**
+   * Rolls up the tuples of a source, spilling the tuples of buckets that don't fit in memory to
+   * partitions at the given level.
+   */
+  private Iterator<Tuple> rollup(TupleSource source, int level) throws IOException {
+    Map<HashKey, Metric[]> metricMap = new HashMap<>();
+    SpillPartitions.Pass spill = null;
+    long memory = 0;
+    for (Tuple tuple = source.next(); tuple != null; tuple = source.next()) {
+      Object[] bucketValues = new Object[buckets.length];
+      for (int i = 0; i < buckets.length; i++) {
+        bucketValues[i] = buckets[i].getBucketValue(tuple);
+      }
+
+      HashKey hashKey = new HashKey(bucketValues);
+      Metric[] currentMetrics = metricMap.get(hashKey);
+
+      if (currentMetrics != null) {
+        for (Metric bucketMetric : currentMetrics) {
+          bucketMetric.update(tuple);
         }
+      } else if (spill != null) {
+        SpillPartitions partitions = spill.input(0);
+        partitions.add(partitions.partition(hashKey), tuple);
+      } else {
+        currentMetrics = new Metric[metrics.length];
+        for (int i = 0; i < metrics.length; i++) {
+          Metric bucketMetric = metrics[i].newInstance();
+          bucketMetric.update(tuple);
+          currentMetrics[i] = bucketMetric;
+        }
+        metricMap.put(hashKey, currentMetrics);
 
-        HashKey hashKey = new HashKey(bucketValues);
-        Metric[] currentMetrics = metricMap.get(hashKey);
-
-        if (currentMetrics != null) {
-          for (Metric bucketMetric : currentMetrics) {
-            bucketMetric.update(tuple);
-          }
-        } else {
-          currentMetrics = new Metric[metrics.length];
-          for (int i = 0; i < metrics.length; i++) {
-            Metric bucketMetric = metrics[i].newInstance();
-            bucketMetric.update(tuple);
-            currentMetrics[i] = bucketMetric;
-          }
-          metricMap.put(hashKey, currentMetrics);
+        memory += 64 + 64L * metrics.length;
+        for (Object bucketValue : bucketValues) {
+          memory += SpillPartitions.estimateBytes(bucketValue);
+        }
+        if (maxMemoryMB > 0
+            && memory > maxMemoryMB * 1024L * 1024L
+            && level <= SpillPartitions.MAX_LEVEL) {
+          spill = new SpillPartitions.Pass("hashRollup", level, 1);
         }
       }
     }
 
-    return tupleIterator.next();
+    if (spill != null) {
+      spill.finish();
+      spilledTuples += spill.tuples();
+      spilledBytes += spill.bytes();
+      spillPasses.push(spill);
+    }
+
+    List<Tuple> tuples = new ArrayList<>();
+    for (Map.Entry<HashKey, Metric[]> entry : metricMap.entrySet()) {
+      Tuple t = new Tuple();
+      Metric[] finishedMetrics = entry.getValue();
+      for (Metric metric : finishedMetrics) {
+        t.put(metric.getIdentifier(), metric.getValue());
+      }
+
+      HashKey hashKey = entry.getKey();
+      for (int i = 0; i < buckets.length; i++) {
+        t.put(buckets[i].toString(), hashKey.getParts()[i]);
+      }
+      tuples.add(t);
+    }
+    return tuples.iterator();
+  }
+
+  /** Rolls up the next spilled partition, or returns null if there are none left. */
+  private Iterator<Tuple> rollupNextPartition() throws IOException {
+    while (!spillPasses.isEmpty()) {
+      SpillPartitions.Pass pass = spillPasses.peek();
+      int partition = pass.nextPartition();
+      if (partition == -1) {
+        spillPasses.pop().close();
+        continue;
+      }
+      if (pass.input(0).count(partition) == 0) {
+        continue;
+      }
+      Iterator<Tuple> tuples;
+      try (SpillPartitions.Reader reader = pass.input(0).open(partition)) {
+        tuples = rollup(reader::next, pass.level() + 1);
+      }
+      pass.delete(partition);
+      return tuples;
+    }
+    return null;
   }
 
   @Override
@@ -54,7 +54,7 @@ public class JavabinTupleStreamParser extends JavaBinCodec implements TupleStrea
       for (int i = objectSize; i > 0; i--) {
         Object k = readVal(fis);
         if (k == END_OBJ) break;
-        if ("docs".equals(k)) {
+        if (isDocsKey(k)) {
           tagByte = fis.readByte();
           if (tagByte == ITERATOR) return true; // docs must be an iterator or
           if (tagByte >>> 5 == ARR >>> 5) { // an array
@@ -78,6 +78,11 @@ public class JavabinTupleStreamParser extends JavaBinCodec implements TupleStrea
     // here after it will be a stream of maps
   }
 
+  /** Returns true if {@code key} names the list of documents to stream. */
+  protected boolean isDocsKey(Object key) {
+    return "docs".equals(key);
+  }
+
   private boolean isObjectType(DataInputInputStream dis) throws IOException {
     tagByte = dis.readByte();
     if (tagByte >>> 5 == ORDERED_MAP >>> 5 || tagByte >>> 5 == NAMED_LST >>> 5) {
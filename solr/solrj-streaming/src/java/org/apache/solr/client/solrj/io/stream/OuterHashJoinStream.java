@@ -88,15 +88,25 @@ public class OuterHashJoinStream extends HashJoinStream implements Expressible {
       }
     }
     expression.addParameter(new StreamExpressionNamedParameter("on", sb.toString()));
+    if (maxMemoryMB > 0) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter(
+              SpillPartitions.MAX_MEMORY_MB_PARAM, Integer.toString(maxMemoryMB)));
+    }
 
     return expression;
   }
 
+  @Override
+  protected boolean returnsUnmatchedTuples() {
+    return true;
+  }
+
   @Override
   public Tuple read() throws IOException {
 
     if (null == workingFullTuple) {
-      Tuple fullTuple = fullStream.read();
+      Tuple fullTuple = readFullTuple();
 
       // We're at the end of the line
       if (fullTuple.EOF) {
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
 import org.apache.solr.client.solrj.io.stream.expr.Expressible;
@@ -96,6 +97,12 @@ public class PushBackStream extends TupleStream implements Expressible {
     }
   }
 
+  @Override
+  public TupleBatch readBatch() throws IOException {
+    // a pushed back tuple comes before anything else, so only read() can return it
+    return tuple != null ? null : stream.readBatch();
+  }
+
   /**
    * Return the stream sort - ie, the order in which records are returned This returns the
    * streamSort of the substream
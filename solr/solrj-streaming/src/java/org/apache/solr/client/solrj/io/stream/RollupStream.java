@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.comp.HashKey;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.eq.FieldEqualitor;
@@ -52,6 +53,12 @@ public class RollupStream extends TupleStream implements Expressible {
   private Metric[] currentMetrics;
   private boolean finished = false;
 
+  // rows read in batches, while the underlying stream provides them
+  private boolean batches = true;
+  private transient TupleBatch batch;
+  private int batchRow;
+  private int[] bucketColumns;
+
   public RollupStream(TupleStream tupleStream, Bucket[] buckets, Metric[] metrics) {
     init(tupleStream, buckets, metrics);
   }
@@ -210,11 +217,33 @@ public class RollupStream extends TupleStream implements Expressible {
     this.currentMetrics = null;
     this.currentKey = new HashKey("-");
     this.finished = false;
+    this.batches = true;
+    this.batch = null;
   }
 
   @Override
   public Tuple read() throws IOException {
 
+    while (batches) {
+      if (batch == null || batchRow == batch.size()) {
+        batch = tupleStream.readBatch();
+        batchRow = 0;
+        if (batch == null) {
+          batches = false;
+          break;
+        }
+        bucketColumns = new int[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+          bucketColumns[i] = batch.getColumnIndex(buckets[i].toString());
+        }
+        continue;
+      }
+      Tuple t = rollupBatch();
+      if (t != null) {
+        return t;
+      }
+    }
+
     while (true) {
       Tuple tuple = tupleStream.read();
       if (tuple.EOF) {
@@ -224,14 +253,7 @@ public class RollupStream extends TupleStream implements Expressible {
             return tuple;
           }
 
-          Tuple t = new Tuple();
-          for (Metric metric : currentMetrics) {
-            t.put(metric.getIdentifier(), metric.getValue());
-          }
-
-          for (int i = 0; i < buckets.length; i++) {
-            t.put(buckets[i].toString(), currentKey.getParts()[i]);
-          }
+          Tuple t = currentTuple();
           tupleStream.pushBack(tuple);
           finished = true;
           return t;
@@ -254,14 +276,7 @@ public class RollupStream extends TupleStream implements Expressible {
       } else {
         Tuple t = null;
         if (currentMetrics != null) {
-          t = new Tuple();
-          for (Metric metric : currentMetrics) {
-            t.put(metric.getIdentifier(), metric.getValue());
-          }
-
-          for (int i = 0; i < buckets.length; i++) {
-            t.put(buckets[i].toString(), currentKey.getParts()[i]);
-          }
+          t = currentTuple();
         }
 
         currentKey = hashKey;
@@ -281,6 +296,66 @@ public class RollupStream extends TupleStream implements Expressible {
     }
   }
 
+  /**
+   * Rolls up the run of rows with the same bucket values that starts at {@link #batchRow}, and
+   * returns the tuple of the previous bucket if the run starts a new one.
+   */
+  private Tuple rollupBatch() {
+    int from = batchRow;
+    int to = from + 1;
+    while (to < batch.size() && sameBuckets(from, to)) {
+      to++;
+    }
+    batchRow = to;
+
+    Object[] bucketValues = new Object[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      bucketValues[i] = buckets[i].getBucketValue(batch, bucketColumns[i], from);
+    }
+    HashKey hashKey = new HashKey(bucketValues);
+
+    Tuple t = null;
+    if (!hashKey.equals(currentKey)) {
+      if (currentMetrics != null) {
+        t = currentTuple();
+      }
+      currentKey = hashKey;
+      if (metrics != null) {
+        currentMetrics = new Metric[metrics.length];
+        for (int i = 0; i < metrics.length; i++) {
+          currentMetrics[i] = metrics[i].newInstance();
+        }
+      }
+    }
+    if (currentMetrics != null) {
+      for (Metric bucketMetric : currentMetrics) {
+        bucketMetric.update(batch, from, to);
+      }
+    }
+    return t;
+  }
+
+  private boolean sameBuckets(int row1, int row2) {
+    for (int column : bucketColumns) {
+      if (column != -1 && !batch.equalValues(column, row1, row2)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Tuple currentTuple() {
+    Tuple t = new Tuple();
+    for (Metric metric : currentMetrics) {
+      t.put(metric.getIdentifier(), metric.getValue());
+    }
+
+    for (int i = 0; i < buckets.length; i++) {
+      t.put(buckets[i].toString(), currentKey.getParts()[i]);
+    }
+    return t;
+  }
+
   @Override
   public int getCost() {
     return 0;
@@ -31,6 +31,7 @@ import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.InputStreamResponseParser;
 import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation.ExpressionType;
@@ -237,6 +238,32 @@ public class SolrStream extends TupleStream {
     }
   }
 
+  /**
+   * Returns batches of columns when the request is an export with {@code wt=javabin} and {@code
+   * columnar=true}, see {@link ColumnarTupleStreamParser}.
+   */
+  @Override
+  public TupleBatch readBatch() throws IOException {
+    if (trace || !(tupleStreamParser instanceof ColumnarTupleStreamParser)) {
+      return null;
+    }
+    try {
+      TupleBatch batch = ((ColumnarTupleStreamParser) tupleStreamParser).nextBatch();
+      if (batch != null && fieldMappings != null) {
+        batch = batch.renameFields(fieldMappings);
+      }
+      return batch;
+    } catch (HandledException e) {
+      throw new IOException("--> " + this.baseUrl + ":" + e.getMessage());
+    } catch (Exception e) {
+      throw new IOException(
+          "--> "
+              + this.baseUrl
+              + ": An exception has occurred on the server, refer to server log for details.",
+          e);
+    }
+  }
+
   public void setDistrib(boolean distrib) {
     this.distrib = distrib;
   }
@@ -334,6 +361,9 @@ public class SolrStream extends TupleStream {
 
     this.closeableHttpResponse = httpResponse;
     if (CommonParams.JAVABIN.equals(wt)) {
+      if (requestParams.getBool(StreamParams.COLUMNAR, false)) {
+        return new ColumnarTupleStreamParser(stream, true);
+      }
       return new JavabinTupleStreamParser(stream, true);
     } else {
       InputStreamReader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionNamedParameter;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
+import org.apache.solr.common.util.FastInputStream;
+import org.apache.solr.common.util.IOUtils;
+import org.apache.solr.common.util.JavaBinCodec;
+
+/**
+ * Temporary files for the tuples of a stream that hashes more tuples than fit in its memory budget.
+ * Tuples are split into partitions by the hash of their key so that each partition can be
+ * processed on its own, like in a grace hash join, and are written with javabin. Partitions that
+ * still don't fit can be split again into partitions one level down, which hash keys differently.
+ */
+final class SpillPartitions implements Closeable {
+
+  /** The parameter of the streams that spill, limiting the heap they may use for hashing. */
+  static final String MAX_MEMORY_MB_PARAM = "maxMemoryMB";
+
+  /** Number of partitions to split spilled tuples into. */
+  static final int NUM_PARTITIONS = 32;
+
+  /** Partitions at this level are never split again, since all their tuples may share one key. */
+  static final int MAX_LEVEL = 3;
+
+  private final String prefix;
+  private final int level;
+  private final Path[] files = new Path[NUM_PARTITIONS];
+  private final JavaBinCodec[] writers = new JavaBinCodec[NUM_PARTITIONS];
+  private final Closeable[] outputs = new Closeable[NUM_PARTITIONS];
+  private final int[] counts = new int[NUM_PARTITIONS];
+  private long bytes;
+
+  /**
+   * @param prefix prefix of the temporary file names
+   * @param level how many times the tuples have been partitioned before, starting at 0
+   */
+  SpillPartitions(String prefix, int level) {
+    this.prefix = prefix;
+    this.level = level;
+  }
+
+  int level() {
+    return level;
+  }
+
+  /** Returns true if the partitions may be split into partitions one level down. */
+  boolean canSplit() {
+    return level < MAX_LEVEL;
+  }
+
+  /** Returns the partition of a key, which differs from one level to the next. */
+  int partition(Object key) {
+    int h = key.hashCode() + level * 0x9E3779B9;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return Math.floorMod(h, NUM_PARTITIONS);
+  }
+
+  void add(int partition, Tuple tuple) throws IOException {
+    if (writers[partition] == null) {
+      files[partition] = Files.createTempFile(prefix + "-spill-", ".javabin");
+      var os = Files.newOutputStream(files[partition]);
+      outputs[partition] = os;
+      writers[partition] = new JavaBinCodec(os, null);
+    }
+    writers[partition].writeVal(tuple.getFields());
+    counts[partition]++;
+  }
+
+  /** Flushes the spilled tuples to disk. No tuples can be added after this. */
+  void finish() throws IOException {
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      if (writers[i] != null) {
+        writers[i].close();
+        outputs[i].close();
+        writers[i] = null;
+        outputs[i] = null;
+        bytes += Files.size(files[i]);
+      }
+    }
+  }
+
+  int count(int partition) {
+    return counts[partition];
+  }
+
+  /** The number of tuples spilled. */
+  long tuples() {
+    long tuples = 0;
+    for (int count : counts) {
+      tuples += count;
+    }
+    return tuples;
+  }
+
+  /** The number of bytes spilled, once {@link #finish()}ed. */
+  long bytes() {
+    return bytes;
+  }
+
+  /** Reads the tuples of a {@link #finish()}ed partition. */
+  Reader open(int partition) throws IOException {
+    return new Reader(files[partition], counts[partition]);
+  }
+
+  /** Deletes a partition that won't be read again. */
+  void delete(int partition) throws IOException {
+    if (files[partition] != null) {
+      Files.deleteIfExists(files[partition]);
+      files[partition] = null;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      IOUtils.closeQuietly(outputs[i]);
+      writers[i] = null;
+      delete(i);
+    }
+  }
+
+  /**
+   * The partitions that the inputs of a stream spilled at one level, one {@link SpillPartitions}
+   * per input, all split by the same keys, and the next partition to process. A partition that is
+   * too big to process is split into a pass one level down, which is processed before going on with
+   * the next partition of this one.
+   */
+  static final class Pass implements Closeable {
+    private final SpillPartitions[] inputs;
+    private int next;
+
+    /**
+     * @param prefix prefix of the temporary file names
+     * @param level how many times the tuples have been partitioned before, starting at 0
+     * @param numInputs the number of inputs spilling tuples
+     */
+    Pass(String prefix, int level, int numInputs) {
+      inputs = new SpillPartitions[numInputs];
+      for (int i = 0; i < numInputs; i++) {
+        inputs[i] = new SpillPartitions(prefix, level);
+      }
+    }
+
+    int level() {
+      return inputs[0].level();
+    }
+
+    /** The partitions of an input. */
+    SpillPartitions input(int input) {
+      return inputs[input];
+    }
+
+    /** Returns the next partition to process, or -1 once all of them have been. */
+    int nextPartition() {
+      return next < NUM_PARTITIONS ? next++ : -1;
+    }
+
+    /** {@link SpillPartitions#finish() Finishes} the partitions of all inputs. */
+    void finish() throws IOException {
+      for (SpillPartitions partitions : inputs) {
+        partitions.finish();
+      }
+    }
+
+    /** The number of tuples spilled by all inputs. */
+    long tuples() {
+      long tuples = 0;
+      for (SpillPartitions partitions : inputs) {
+        tuples += partitions.tuples();
+      }
+      return tuples;
+    }
+
+    /** The number of bytes spilled by all inputs, once {@link #finish()}ed. */
+    long bytes() {
+      long bytes = 0;
+      for (SpillPartitions partitions : inputs) {
+        bytes += partitions.bytes();
+      }
+      return bytes;
+    }
+
+    /** Deletes a partition of all inputs. */
+    void delete(int partition) throws IOException {
+      for (SpillPartitions partitions : inputs) {
+        partitions.delete(partition);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      IOException error = null;
+      for (SpillPartitions partitions : inputs) {
+        try {
+          partitions.close();
+        } catch (IOException e) {
+          if (error == null) {
+            error = e;
+          } else {
+            error.addSuppressed(e);
+          }
+        }
+      }
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+
+  static final class Reader implements Closeable {
+    private final ReadCodec codec = new ReadCodec();
+    private final InputStream is;
+    private final FastInputStream fis;
+    private int remaining;
+
+    private Reader(Path file, int count) throws IOException {
+      this.remaining = count;
+      if (count == 0) {
+        this.is = null;
+        this.fis = null;
+      } else {
+        this.is = Files.newInputStream(file);
+        this.fis = codec.start(is);
+      }
+    }
+
+    /** Returns the next tuple, or null once all of them have been read. */
+    @SuppressWarnings("unchecked")
+    Tuple next() throws IOException {
+      if (remaining == 0) {
+        return null;
+      }
+      remaining--;
+      return new Tuple((Map<String, ?>) codec.readVal(fis));
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (is != null) {
+        is.close();
+      }
+    }
+  }
+
+  private static final class ReadCodec extends JavaBinCodec {
+    FastInputStream start(InputStream is) throws IOException {
+      return initRead(is);
+    }
+  }
+
+  /** Parses the {@link #MAX_MEMORY_MB_PARAM} of an expression. */
+  static int parseMaxMemoryMB(
+      StreamExpression expression, StreamExpressionNamedParameter maxMemoryExpression)
+      throws IOException {
+    int maxMemoryMB = -1;
+    if (maxMemoryExpression.getParameter() instanceof StreamExpressionValue) {
+      try {
+        maxMemoryMB =
+            Integer.parseInt(
+                ((StreamExpressionValue) maxMemoryExpression.getParameter()).getValue());
+      } catch (NumberFormatException e) {
+        // reported below
+      }
+    }
+    if (maxMemoryMB <= 0) {
+      throw new IOException(
+          String.format(
+              Locale.ROOT,
+              "Invalid expression %s - expecting '%s' to be a positive number of megabytes",
+              expression,
+              MAX_MEMORY_MB_PARAM));
+    }
+    return maxMemoryMB;
+  }
+
+  /** Roughly estimates the heap used by a value of a tuple, including its reference. */
+  static long estimateBytes(Object value) {
+    if (value == null) {
+      return 8;
+    } else if (value instanceof CharSequence) {
+      return 56 + 2L * ((CharSequence) value).length();
+    } else if (value instanceof Number || value instanceof Boolean || value instanceof Date) {
+      return 32;
+    } else if (value instanceof Tuple) {
+      return estimateBytes(((Tuple) value).getFields());
+    } else if (value instanceof Map) {
+      long bytes = 64;
+      for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+        bytes += 32 + estimateBytes(e.getKey()) + estimateBytes(e.getValue());
+      }
+      return bytes;
+    } else if (value instanceof Collection) {
+      long bytes = 48;
+      for (Object o : (Collection<?>) value) {
+        bytes += estimateBytes(o);
+      }
+      return bytes;
+    } else {
+      return 64;
+    }
+  }
+}
@@ -30,6 +30,7 @@ import java.util.stream.Collectors;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
@@ -66,6 +67,19 @@ public abstract class TupleStream implements Closeable, Serializable, MapWriter
 
   public abstract Tuple read() throws IOException;
 
+  /**
+   * Reads the next records as a batch of columns, for streams that can produce them without
+   * creating a tuple per record. Once this returns null, either because the stream doesn't produce
+   * batches or because there are no more of them, the remaining records and the EOF tuple have to
+   * be read with {@link #read()}. Callers may switch from batches to tuples at any point, but not
+   * back.
+   *
+   * @return the next batch, or null to continue with {@link #read()}
+   */
+  public TupleBatch readBatch() throws IOException {
+    return null;
+  }
+
   public abstract StreamComparator getStreamSort();
 
   public abstract Explanation toExplanation(StreamFactory factory) throws IOException;
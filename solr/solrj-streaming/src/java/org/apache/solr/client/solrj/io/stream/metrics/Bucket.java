@@ -17,6 +17,7 @@
 package org.apache.solr.client.solrj.io.stream.metrics;
 
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 
 public class Bucket {
 
@@ -37,6 +38,21 @@ public class Bucket {
     }
   }
 
+  /**
+   * Returns the bucket value of a row of a batch, like {@link #getBucketValue(Tuple)} would for its
+   * tuple.
+   *
+   * @param column the column of this bucket in the batch, or -1 if the batch doesn't have it
+   */
+  public Object getBucketValue(TupleBatch batch, int column, int row) {
+    Object o = column == -1 ? null : batch.get(column, row);
+    if (o == null) {
+      return NULL_VALUE;
+    } else {
+      return o;
+    }
+  }
+
   @Override
   public String toString() {
     return bucketKey;
@@ -19,6 +19,7 @@ package org.apache.solr.client.solrj.io.stream.metrics;
 import java.io.IOException;
 import java.util.Locale;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionParameter;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
@@ -101,6 +102,28 @@ public class MinMetric extends Metric {
     }
   }
 
+  @Override
+  public void update(TupleBatch batch, int from, int to) {
+    int column = batch.getColumnIndex(columnName);
+    if (column == -1) {
+      return;
+    }
+    TupleBatch.Type type = batch.getType(column);
+    if (type == TupleBatch.Type.DOUBLE || type == TupleBatch.Type.FLOAT) {
+      for (int row = from; row < to; row++) {
+        if (!batch.isNull(column, row)) {
+          doubleMin = Math.min(doubleMin, batch.getDouble(column, row));
+        }
+      }
+    } else if (type == TupleBatch.Type.LONG || type == TupleBatch.Type.INT) {
+      for (int row = from; row < to; row++) {
+        if (!batch.isNull(column, row)) {
+          longMin = Math.min(longMin, batch.getLong(column, row));
+        }
+      }
+    }
+  }
+
   @Override
   public Metric newInstance() {
     return new MinMetric(columnName);
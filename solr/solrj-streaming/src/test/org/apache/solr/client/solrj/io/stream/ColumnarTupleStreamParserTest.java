@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.stream.expr.Explanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MaxMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MeanMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.MinMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.apache.solr.common.params.StreamParams;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.junit.Test;
+
+public class ColumnarTupleStreamParserTest extends SolrTestCase {
+
+  // two batches of three docs, "b" spanning both
+  private static final String[] CATS = {"a", "a", "b", "b", "b", "c"};
+  private static final int[] INTS = {1, 2, 3, 4, 5, -7};
+  private static final float[] FLOATS = {0.5f, 1.25f, -3f, 4f, 2.5f, 6f};
+  private static final Double[] DOUBLES = {1.5, null, 3.5, null, -2.25, 8d};
+  private static final long[] DATES = {1000, 2000, 3000, 4000, 5000, 6000};
+  private static final boolean[] FLAGS = {true, true, false, false, true, true};
+  private static final int BATCH_SIZE = 3;
+
+  @Test
+  public void testBatches() throws Exception {
+    ColumnarTupleStreamParser parser = columnarParser(true);
+
+    Map<String, Object> first = parser.next();
+    assertEquals("a", first.get("cat_s"));
+    assertEquals(1L, first.get("num_i"));
+    assertEquals(0.5d, first.get("num_f"));
+    assertEquals(1.5d, first.get("num_d"));
+    assertEquals(Instant.ofEpochMilli(1000).toString(), first.get("date_dt"));
+    assertEquals(true, first.get("flag_b"));
+
+    // the rest of the first batch
+    TupleBatch batch = parser.nextBatch();
+    assertEquals(2, batch.size());
+    int cat = batch.getColumnIndex("cat_s");
+    int num = batch.getColumnIndex("num_i");
+    int flt = batch.getColumnIndex("num_f");
+    int dbl = batch.getColumnIndex("num_d");
+    assertEquals(TupleBatch.Type.STRING, batch.getType(cat));
+    assertEquals(TupleBatch.Type.INT, batch.getType(num));
+    assertEquals(TupleBatch.Type.FLOAT, batch.getType(flt));
+    assertEquals(TupleBatch.Type.DOUBLE, batch.getType(dbl));
+    assertEquals("a", batch.getString(cat, 0));
+    assertEquals("b", batch.getString(cat, 1));
+    assertTrue(batch.equalValues(cat, 0, 0));
+    assertFalse(batch.equalValues(cat, 0, 1));
+    assertEquals(2L, batch.getLong(num, 0));
+    assertEquals(1.25d, batch.getDouble(flt, 0), 0d);
+    assertTrue(batch.isNull(dbl, 0));
+
+    batch = parser.nextBatch();
+    assertEquals(3, batch.size());
+    assertEquals("c", batch.get(batch.getColumnIndex("cat_s"), 2));
+    assertEquals(-7L, batch.get(batch.getColumnIndex("num_i"), 2));
+
+    assertNull(parser.nextBatch());
+    assertNull(parser.next());
+    parser.close();
+  }
+
+  @Test
+  public void testSameValuesAsRows() throws Exception {
+    for (boolean onlyJsonTypes : new boolean[] {true, false}) {
+      List<Map<String, Object>> expected = rowTuples(onlyJsonTypes);
+      assertEquals(CATS.length, expected.size());
+      Object firstInt = expected.get(0).get("num_i");
+      assertEquals(onlyJsonTypes ? Long.class : Integer.class, firstInt.getClass());
+
+      // row by row
+      ColumnarTupleStreamParser parser = columnarParser(onlyJsonTypes);
+      for (Map<String, Object> row : expected) {
+        assertEquals(row, parser.next());
+      }
+      assertNull(parser.next());
+      parser.close();
+
+      // batch by batch
+      parser = columnarParser(onlyJsonTypes);
+      int row = 0;
+      for (TupleBatch batch = parser.nextBatch(); batch != null; batch = parser.nextBatch()) {
+        for (int i = 0; i < batch.size(); i++) {
+          assertEquals(expected.get(row++), batch.getTuple(i).getFields());
+        }
+      }
+      assertEquals(expected.size(), row);
+      parser.close();
+    }
+  }
+
+  @Test
+  public void testException() throws Exception {
+    Map<String, Object> exception = new LinkedHashMap<>();
+    exception.put(StreamParams.EXCEPTION, "boom");
+    ColumnarTupleStreamParser parser =
+        new ColumnarTupleStreamParser(
+            new ByteArrayInputStream(response(StreamParams.DOCS, List.of(exception))), true);
+
+    assertNull(parser.nextBatch());
+    assertEquals("boom", parser.next().get(StreamParams.EXCEPTION));
+    assertNull(parser.nextBatch());
+    assertNull(parser.next());
+    parser.close();
+  }
+
+  @Test
+  public void testRollupOverBatches() throws Exception {
+    List<TupleBatch> batches = new ArrayList<>();
+    for (Map<String, Object> batch : batches()) {
+      batches.add(ColumnarTupleStreamParser.decode(batch, true));
+    }
+    List<Tuple> expected = rollup(new ListStream(List.of(), rowTuples(true)));
+    List<Tuple> actual = rollup(new ListStream(batches, List.of()));
+
+    assertEquals(3, expected.size());
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getFields(), actual.get(i).getFields());
+    }
+    // "b" spans both batches
+    assertEquals("b", actual.get(1).get("cat_s"));
+    assertEquals(3L, actual.get(1).get("count(*)"));
+  }
+
+  private static List<Tuple> rollup(TupleStream stream) throws IOException {
+    RollupStream rollup =
+        new RollupStream(
+            stream,
+            new Bucket[] {new Bucket("cat_s")},
+            new Metric[] {
+              new CountMetric(),
+              new CountMetric("num_d"),
+              new SumMetric("num_i"),
+              new SumMetric("num_d"),
+              new MinMetric("num_i"),
+              new MinMetric("num_f"),
+              new MaxMetric("num_d"),
+              new MeanMetric("num_i"),
+              new MeanMetric("num_f")
+            });
+    List<Tuple> tuples = new ArrayList<>();
+    rollup.open();
+    for (Tuple t = rollup.read(); !t.EOF; t = rollup.read()) {
+      tuples.add(t);
+    }
+    rollup.close();
+    return tuples;
+  }
+
+  /** The docs as the row by row javabin parser reads them from the /export response. */
+  private static List<Map<String, Object>> rowTuples(boolean onlyJsonTypes) throws IOException {
+    List<Map<String, Object>> docs = new ArrayList<>();
+    for (int i = 0; i < CATS.length; i++) {
+      Map<String, Object> doc = new LinkedHashMap<>();
+      doc.put("cat_s", CATS[i]);
+      doc.put("num_i", INTS[i]);
+      doc.put("num_f", FLOATS[i]);
+      if (DOUBLES[i] != null) {
+        doc.put("num_d", DOUBLES[i]);
+      }
+      doc.put("date_dt", new Date(DATES[i]));
+      doc.put("flag_b", FLAGS[i]);
+      docs.add(doc);
+    }
+    List<Map<String, Object>> tuples = new ArrayList<>();
+    try (JavabinTupleStreamParser parser =
+        new JavabinTupleStreamParser(
+            new ByteArrayInputStream(response(StreamParams.DOCS, docs)), onlyJsonTypes)) {
+      for (Map<String, Object> tuple = parser.next(); tuple != null; tuple = parser.next()) {
+        tuples.add(tuple);
+      }
+    }
+    return tuples;
+  }
+
+  private static ColumnarTupleStreamParser columnarParser(boolean onlyJsonTypes)
+      throws IOException {
+    return new ColumnarTupleStreamParser(
+        new ByteArrayInputStream(response(ColumnarTupleStreamParser.BATCHES, batches())),
+        onlyJsonTypes);
+  }
+
+  /** The docs in batches, as the /export handler writes them with columnar=true. */
+  private static List<Map<String, Object>> batches() {
+    List<Map<String, Object>> batches = new ArrayList<>();
+    for (int from = 0; from < CATS.length; from += BATCH_SIZE) {
+      batches.add(batch(from, Math.min(from + BATCH_SIZE, CATS.length)));
+    }
+    return batches;
+  }
+
+  private static Map<String, Object> batch(int from, int to) {
+    int count = to - from;
+    Map<String, Object> batch = new LinkedHashMap<>();
+    batch.put("count", count);
+
+    ByteBuffer offsets = le(Integer.BYTES * (count + 1));
+    ByteArrayOutputStream utf8 = new ByteArrayOutputStream();
+    for (int i = from; i < to; i++) {
+      offsets.putInt(utf8.size());
+      utf8.writeBytes(CATS[i].getBytes(StandardCharsets.UTF_8));
+    }
+    offsets.putInt(utf8.size());
+    batch.put("cat_s", column("string", null, utf8.toByteArray(), "offsets", offsets.array()));
+
+    ByteBuffer intValues = le(Integer.BYTES * count);
+    Arrays.stream(INTS, from, to).forEach(intValues::putInt);
+    batch.put("num_i", column("int", null, intValues.array(), null, null));
+
+    ByteBuffer floatValues = le(Float.BYTES * count);
+    for (int i = from; i < to; i++) {
+      floatValues.putFloat(FLOATS[i]);
+    }
+    batch.put("num_f", column("float", null, floatValues.array(), null, null));
+
+    ByteBuffer doubleValues = le(Double.BYTES * count);
+    byte[] validity = new byte[(count + 7) / 8];
+    for (int i = 0; i < count; i++) {
+      if (DOUBLES[from + i] != null) {
+        validity[i >> 3] |= (byte) (1 << (i & 7));
+        doubleValues.putDouble(i * Double.BYTES, DOUBLES[from + i]);
+      }
+    }
+    batch.put("num_d", column("double", validity, doubleValues.array(), null, null));
+
+    ByteBuffer dateValues = le(Long.BYTES * count);
+    Arrays.stream(DATES, from, to).forEach(dateValues::putLong);
+    batch.put("date_dt", column("date", null, dateValues.array(), null, null));
+
+    byte[] flagValues = new byte[(count + 7) / 8];
+    for (int i = 0; i < count; i++) {
+      if (FLAGS[from + i]) {
+        flagValues[i >> 3] |= (byte) (1 << (i & 7));
+      }
+    }
+    batch.put("flag_b", column("boolean", null, flagValues, null, null));
+    return batch;
+  }
+
+  private static Map<String, Object> column(
+      String type, byte[] validity, byte[] values, String extraKey, byte[] extra) {
+    Map<String, Object> column = new LinkedHashMap<>();
+    column.put("type", type);
+    if (validity != null) {
+      column.put("validity", validity);
+    }
+    column.put("values", values);
+    if (extraKey != null) {
+      column.put(extraKey, extra);
+    }
+    return column;
+  }
+
+  private static ByteBuffer le(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static byte[] response(String key, List<?> list) throws IOException {
+    Map<String, Object> header = new LinkedHashMap<>();
+    header.put("status", 0);
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("numFound", 6);
+    response.put(key, list);
+    Map<String, Object> root = new LinkedHashMap<>();
+    root.put("responseHeader", header);
+    root.put("response", response);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JavaBinCodec codec = new JavaBinCodec()) {
+      codec.marshal(root, out);
+    }
+    return out.toByteArray();
+  }
+
+  /** Serves batches, then tuples. */
+  private static class ListStream extends TupleStream {
+    private final List<TupleBatch> batches;
+    private final List<Map<String, Object>> tuples;
+    private int batch;
+    private int tuple;
+
+    ListStream(List<TupleBatch> batches, List<Map<String, Object>> tuples) {
+      this.batches = batches;
+      this.tuples = tuples;
+    }
+
+    @Override
+    public TupleBatch readBatch() {
+      return batch < batches.size() ? batches.get(batch++) : null;
+    }
+
+    @Override
+    public Tuple read() {
+      return tuple < tuples.size() ? new Tuple(tuples.get(tuple++)) : Tuple.EOF();
+    }
+
+    @Override
+    public void setStreamContext(StreamContext context) {}
+
+    @Override
+    public List<TupleStream> children() {
+      return List.of();
+    }
+
+    @Override
+    public void open() {}
+
+    @Override
+    public void close() {}
+
+    @Override
+    public StreamComparator getStreamSort() {
+      return null;
+    }
+
+    @Override
+    public Explanation toExplanation(StreamFactory factory) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.stream.expr.Explanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.junit.Test;
+
+/** Tests that hash based streams spilling to disk return the same tuples as when they don't. */
+public class HashSpillTest extends SolrTestCase {
+
+  @Test
+  public void testHashJoin() throws Exception {
+    List<Tuple> full = tuples(5_000, 2_000, "f");
+    List<Tuple> hashed = tuples(20_000, 4_000, "h");
+
+    HashJoinStream inMemory = new HashJoinStream(stream(full), stream(hashed), List.of("key=k"));
+    HashJoinStream spilling = new HashJoinStream(stream(full), stream(hashed), List.of("key=k"));
+    spilling.setMaxMemoryMB(1);
+
+    Map<Map<String, Object>, Integer> expected = counts(inMemory);
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, counts(spilling));
+    assertEquals(0, inMemory.getSpilledTuples());
+    assertTrue(spilling.getSpilledTuples() > hashed.size());
+    assertTrue(spilling.getSpilledBytes() > 0);
+  }
+
+  @Test
+  public void testOuterHashJoin() throws Exception {
+    List<Tuple> full = tuples(5_000, 8_000, "f");
+    List<Tuple> hashed = tuples(20_000, 4_000, "h");
+
+    OuterHashJoinStream inMemory =
+        new OuterHashJoinStream(stream(full), stream(hashed), List.of("key=k"));
+    OuterHashJoinStream spilling =
+        new OuterHashJoinStream(stream(full), stream(hashed), List.of("key=k"));
+    spilling.setMaxMemoryMB(1);
+
+    Map<Map<String, Object>, Integer> expected = counts(inMemory);
+    // every full tuple comes back, including those without a key or a match
+    assertTrue(expected.values().stream().mapToInt(Integer::intValue).sum() >= full.size());
+    assertEquals(expected, counts(spilling));
+    assertTrue(spilling.getSpilledTuples() > 0);
+  }
+
+  @Test
+  public void testHashRollup() throws Exception {
+    List<Tuple> tuples = tuples(100_000, 30_000, "r");
+    Bucket[] buckets = {new Bucket("key")};
+    Metric[] metrics = {new CountMetric(), new SumMetric("n")};
+
+    HashRollupStream inMemory = new HashRollupStream(stream(tuples), buckets, metrics);
+    HashRollupStream spilling = new HashRollupStream(stream(tuples), buckets, metrics);
+    spilling.setMaxMemoryMB(1);
+
+    Map<Map<String, Object>, Integer> expected = counts(inMemory);
+    assertEquals(expected, counts(spilling));
+    // each bucket is returned once
+    assertTrue(expected.values().stream().allMatch(c -> c == 1));
+    assertTrue(spilling.getSpilledTuples() > 0);
+  }
+
+  /** Creates tuples with keys from 0 to numKeys, some of them missing, and a few other fields. */
+  private static List<Tuple> tuples(int count, int numKeys, String prefix) {
+    Random random = random();
+    List<Tuple> tuples = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Tuple tuple = new Tuple();
+      if (random.nextInt(20) != 0) {
+        tuple.put(prefix.equals("h") ? "k" : "key", "key" + random.nextInt(numKeys));
+      }
+      tuple.put(prefix + "_id", prefix + i);
+      tuple.put("n", (long) random.nextInt(1000));
+      tuple.put(prefix + "_d", random.nextDouble());
+      tuple.put(prefix + "_s", List.of("a" + random.nextInt(10), "b"));
+      tuples.add(tuple);
+    }
+    return tuples;
+  }
+
+  private static Map<Map<String, Object>, Integer> counts(TupleStream stream) throws IOException {
+    Map<Map<String, Object>, Integer> counts = new HashMap<>();
+    stream.open();
+    try {
+      for (Tuple tuple = stream.read(); !tuple.EOF; tuple = stream.read()) {
+        counts.merge(new HashMap<>(tuple.getFields()), 1, Integer::sum);
+      }
+    } finally {
+      stream.close();
+    }
+    return counts;
+  }
+
+  private static TupleStream stream(List<Tuple> tuples) {
+    return new TupleStream() {
+      private int next;
+
+      @Override
+      public void setStreamContext(StreamContext context) {}
+
+      @Override
+      public List<TupleStream> children() {
+        return List.of();
+      }
+
+      @Override
+      public void open() {
+        next = 0;
+      }
+
+      @Override
+      public void close() {}
+
+      @Override
+      public Tuple read() {
+        return next < tuples.size() ? tuples.get(next++).clone() : Tuple.EOF();
+      }
+
+      @Override
+      public StreamComparator getStreamSort() {
+        return null;
+      }
+
+      @Override
+      public Explanation toExplanation(StreamFactory factory) {
+        return null;
+      }
+    };
+  }
+}
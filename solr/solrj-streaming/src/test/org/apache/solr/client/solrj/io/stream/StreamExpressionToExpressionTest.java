@@ -483,6 +483,23 @@ public class StreamExpressionToExpressionTest extends SolrTestCase {
       assertEquals(stream.getOffset(), 100);
       assertEquals(stream.getOverfetch(), -1);
     }
+
+    try (FacetStream stream =
+        new FacetStream(
+            StreamExpressionParser.parse(
+                "facet("
+                    + "collection1, "
+                    + "q=\"*:*\", "
+                    + "buckets=\"a_s\", "
+                    + "bucketSorts=\"count(*) desc\", "
+                    + "mincount=5, "
+                    + "count(*)"
+                    + ")"),
+            factory)) {
+      expressionString = stream.toExpression(factory).toString();
+      assertTrue(expressionString.contains("mincount=5"));
+      assertEquals(5, stream.getMinCount());
+    }
   }
 
   @Test
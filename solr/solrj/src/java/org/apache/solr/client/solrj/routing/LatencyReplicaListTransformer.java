@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import org.apache.solr.common.cloud.Replica;
+
+/**
+ * Orders replicas by the {@link NodeLatencyStats#getScore(String) score} of their nodes, so that
+ * requests go to the nodes that answer fastest and have the fewest requests outstanding. Replicas
+ * that score the same are in random order.
+ *
+ * <p>With power of two choices, only two random replicas are compared, and the better one goes
+ * first. This spreads the requests more than always picking the best node, which every client
+ * would otherwise pick at once.
+ */
+public class LatencyReplicaListTransformer implements ReplicaListTransformer {
+
+  private final NodeLatencyStats stats;
+  private final boolean powerOfTwoChoices;
+  private final Random r;
+
+  public LatencyReplicaListTransformer(
+      NodeLatencyStats stats, boolean powerOfTwoChoices, Random r) {
+    this.stats = stats;
+    this.powerOfTwoChoices = powerOfTwoChoices;
+    this.r = r;
+  }
+
+  @Override
+  public <T> void transform(List<T> choices) {
+    int size = choices.size();
+    if (size > 1) {
+      Collections.shuffle(choices, r);
+      if (powerOfTwoChoices) {
+        if (score(choices.get(1)) < score(choices.get(0))) {
+          Collections.swap(choices, 0, 1);
+        }
+        return;
+      }
+      // the scores change while sorting, so each replica is scored only once
+      ArrayList<ScoredChoice<T>> scoredChoices = new ArrayList<>(size);
+      for (T choice : choices) {
+        scoredChoices.add(new ScoredChoice<>(choice, score(choice)));
+      }
+      scoredChoices.sort(SCORED_CHOICE_COMPARATOR);
+      ListIterator<T> iter = choices.listIterator();
+      for (ScoredChoice<T> scoredChoice : scoredChoices) {
+        iter.next();
+        iter.set(scoredChoice.choice);
+      }
+    }
+  }
+
+  private double score(Object choice) {
+    if (choice instanceof Replica) {
+      return stats.getScore(((Replica) choice).getBaseUrl());
+    } else if (choice instanceof String) {
+      return stats.getScore((String) choice);
+    } else {
+      throw new IllegalArgumentException("can't handle type " + choice.getClass());
+    }
+  }
+
+  private static final class ScoredChoice<T> {
+
+    private final T choice;
+    private final double score;
+
+    private ScoredChoice(T choice, double score) {
+      this.choice = choice;
+      this.score = score;
+    }
+  }
+
+  private static final Comparator<ScoredChoice<?>> SCORED_CHOICE_COMPARATOR =
+      Comparator.comparingDouble(o -> o.score);
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.routing;
+
+import java.util.Random;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Factory for constructing a {@link LatencyReplicaListTransformer} that orders replicas by the
+ * latency and outstanding requests of their nodes, as recorded in a {@link NodeLatencyStats}.
+ *
+ * <p>The mode is either {@value #MODE_EWMA}, to sort all the replicas, or {@value #MODE_P2C}, to
+ * pick the better of two random replicas. The default mode may be configured at the time of
+ * construction, and may be overridden by the config spec passed to {@link #getInstance(String,
+ * SolrParams, ReplicaListTransformerFactory)}, e.g. {@code replica.base:latency:p2c}.
+ */
+public class LatencyReplicaListTransformerFactory implements ReplicaListTransformerFactory {
+
+  public static final String MODE_EWMA = "ewma";
+  public static final String MODE_P2C = "p2c";
+
+  private static final Random r = new Random();
+
+  private final NodeLatencyStats stats;
+  private final LatencyReplicaListTransformer ewma;
+  private final LatencyReplicaListTransformer p2c;
+  private final String defaultMode;
+
+  public LatencyReplicaListTransformerFactory(NodeLatencyStats stats) {
+    this(stats, MODE_EWMA);
+  }
+
+  public LatencyReplicaListTransformerFactory(NodeLatencyStats stats, String defaultMode) {
+    this.stats = stats;
+    this.ewma = new LatencyReplicaListTransformer(stats, false, r);
+    this.p2c = new LatencyReplicaListTransformer(stats, true, r);
+    this.defaultMode = defaultMode == null ? MODE_EWMA : defaultMode;
+    // fail on a bad configuration rather than on the first request
+    getInstance(this.defaultMode);
+  }
+
+  public LatencyReplicaListTransformerFactory(NodeLatencyStats stats, NamedList<?> c) {
+    this(stats, (String) c.get(ShardParams.ROUTING_MODE));
+  }
+
+  public NodeLatencyStats getStats() {
+    return stats;
+  }
+
+  @Override
+  public ReplicaListTransformer getInstance(
+      String configSpec, SolrParams requestParams, ReplicaListTransformerFactory fallback) {
+    return getInstance(configSpec == null ? defaultMode : configSpec);
+  }
+
+  private ReplicaListTransformer getInstance(String mode) {
+    switch (mode) {
+      case MODE_EWMA:
+        return ewma;
+      case MODE_P2C:
+        return p2c;
+      default:
+        throw new IllegalArgumentException("Invalid latency routing mode: \"" + mode + '"');
+    }
+  }
+}
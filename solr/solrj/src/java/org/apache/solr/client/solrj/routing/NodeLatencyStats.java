@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.routing;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.common.util.URLUtil;
+
+/**
+ * The latencies and outstanding requests of the nodes that requests are sent to, which {@link
+ * LatencyReplicaListTransformer} routes requests by.
+ *
+ * <p>The latency of a node is an exponentially weighted moving average of the time it took to
+ * answer. It decays toward zero while the node has no outstanding requests, so that a node that was
+ * slow is tried again eventually, but not while it is still answering a request, which may be slow
+ * too. Nodes without a latency yet are assumed to be as fast as the recent requests to all nodes.
+ * Nodes are identified by their base URL, without the scheme.
+ */
+public class NodeLatencyStats {
+
+  /** The weight of the latest latency in the moving average. */
+  static final double ALPHA = 0.3;
+
+  /** The time for the latency of a node that isn't answering any requests to decay by 1/e. */
+  static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+
+  /** The requests to all nodes, whose latency is the prior of the nodes without a latency yet. */
+  private final Node all = new Node();
+
+  /** Records that a request was sent to the node of a core or base URL. */
+  public void requestStarted(String url) {
+    long now = System.nanoTime();
+    nodes.computeIfAbsent(nodeKey(url), k -> new Node()).started(now);
+    all.started(now);
+  }
+
+  /** Records that the node of a core or base URL answered a request, in the given time. */
+  public void requestFinished(String url, long latencyNanos) {
+    long now = System.nanoTime();
+    nodes.computeIfAbsent(nodeKey(url), k -> new Node()).finished(latencyNanos, now);
+    all.finished(latencyNanos, now);
+  }
+
+  /** Records that a request to the node of a core or base URL was cancelled before it answered. */
+  public void requestCancelled(String url) {
+    long now = System.nanoTime();
+    nodes.computeIfAbsent(nodeKey(url), k -> new Node()).finished(-1, now);
+    all.finished(-1, now);
+  }
+
+  /**
+   * Returns the score of the node of a core or base URL, the lower the better: its latency times
+   * one more than the number of its outstanding requests. Nodes without any latency yet have the
+   * latency of the requests to all nodes, and score 0 only if no request answered yet.
+   */
+  public double getScore(String url) {
+    return getScore(url, System.nanoTime());
+  }
+
+  double getScore(String url, long now) {
+    Node node = nodes.get(nodeKey(url));
+    double prior = Math.max(0, all.latency(now));
+    return node == null ? prior : node.score(now, prior);
+  }
+
+  /** Returns the number of requests sent to the node of a core or base URL that didn't finish. */
+  public int getOutstanding(String url) {
+    Node node = nodes.get(nodeKey(url));
+    return node == null ? 0 : node.outstanding();
+  }
+
+  static String nodeKey(String url) {
+    String key = URLUtil.removeScheme(url);
+    return URLUtil.isBaseUrl(key) ? key : URLUtil.extractBaseUrl(key);
+  }
+
+  private static class Node {
+    private int outstanding;
+    private double latency = -1;
+    private long updated;
+
+    synchronized void started(long now) {
+      // the latency stops decaying until the node answers
+      latency = decayed(now);
+      updated = now;
+      outstanding++;
+    }
+
+    synchronized void finished(long latencyNanos, long now) {
+      latency = decayed(now);
+      if (latencyNanos >= 0) {
+        latency = latency < 0 ? latencyNanos : latency + ALPHA * (latencyNanos - latency);
+      }
+      updated = now;
+      if (outstanding > 0) {
+        outstanding--;
+      }
+    }
+
+    synchronized int outstanding() {
+      return outstanding;
+    }
+
+    /** Returns the latency, decayed if the node has no outstanding requests, or -1 if none. */
+    synchronized double latency(long now) {
+      return decayed(now);
+    }
+
+    synchronized double score(long now, double prior) {
+      double decayed = decayed(now);
+      return (decayed < 0 ? prior : decayed) * (outstanding + 1);
+    }
+
+    private double decayed(long now) {
+      if (latency < 0 || outstanding > 0) {
+        return latency;
+      }
+      return latency * Math.exp(-(double) (now - updated) / DECAY_NANOS);
+    }
+  }
+}
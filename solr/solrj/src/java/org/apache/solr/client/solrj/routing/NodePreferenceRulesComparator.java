@@ -36,7 +36,7 @@ import org.apache.solr.common.util.StrUtils;
  *
  * <p>Optional final preferenceRule is *not* used for pairwise sorting, but instead defines how
  * "equivalent" replicas will be ordered (the base ordering). Defaults to "random"; may specify
- * "stable".
+ * "stable" or "latency".
  */
 public class NodePreferenceRulesComparator implements Comparator<Object> {
 
@@ -63,6 +63,26 @@ public class NodePreferenceRulesComparator implements Comparator<Object> {
       final NodesSysProps sysProps,
       final ReplicaListTransformerFactory defaultRltFactory,
       final ReplicaListTransformerFactory stableRltFactory) {
+    this(
+        preferenceRules,
+        requestParams,
+        nodeName,
+        localHostAddress,
+        sysProps,
+        defaultRltFactory,
+        stableRltFactory,
+        null);
+  }
+
+  public NodePreferenceRulesComparator(
+      final List<PreferenceRule> preferenceRules,
+      final SolrParams requestParams,
+      final String nodeName,
+      final String localHostAddress,
+      final NodesSysProps sysProps,
+      final ReplicaListTransformerFactory defaultRltFactory,
+      final ReplicaListTransformerFactory stableRltFactory,
+      final ReplicaListTransformerFactory latencyRltFactory) {
     this.sysProps = sysProps;
     this.preferenceRules = preferenceRules;
     this.nodeName = nodeName;
@@ -94,6 +114,17 @@ public class NodePreferenceRulesComparator implements Comparator<Object> {
                   requestParams,
                   RequestReplicaListTransformerGenerator.RANDOM_RLTF);
           break;
+        case ShardParams.REPLICA_LATENCY:
+          // without latencies to route by, e.g. on a client, replicas are in random order
+          this.baseReplicaListTransformer =
+              (latencyRltFactory != null
+                      ? latencyRltFactory
+                      : RequestReplicaListTransformerGenerator.RANDOM_RLTF)
+                  .getInstance(
+                      parts.length == 1 ? null : parts[1],
+                      requestParams,
+                      RequestReplicaListTransformerGenerator.RANDOM_RLTF);
+          break;
         default:
           throw new IllegalArgumentException("Invalid base replica order spec");
       }
@@ -90,6 +90,12 @@ public interface ShardParams {
   /** Value denoting stable replica sort */
   String REPLICA_STABLE = "stable";
 
+  /** Value denoting replica sort by the latency and outstanding requests of their nodes */
+  String REPLICA_LATENCY = "latency";
+
+  /** configure the mode of latency replica sort: "ewma" or "p2c" */
+  String ROUTING_MODE = "mode";
+
   /** configure dividend param for stable replica sort */
   String ROUTING_DIVIDEND = "dividend";
 
@@ -21,6 +21,7 @@ public interface StreamParams {
 
   // parameters
   String EXPR = "expr";
+  String COLUMNAR = "columnar";
 
   // stream properties
   String TUPLE = "tuple";
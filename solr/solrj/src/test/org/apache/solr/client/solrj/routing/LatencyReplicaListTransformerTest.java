@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.Utils;
+import org.junit.Test;
+
+@SolrTestCaseJ4.SuppressSSL // not useful / needed for this test
+public class LatencyReplicaListTransformerTest extends SolrTestCase {
+
+  private static final String NODE1 = "http://node1:8983/solr";
+  private static final String NODE2 = "http://node2:8983/solr";
+  private static final String NODE3 = "http://node3:8983/solr";
+
+  private final NodeLatencyStats stats = new NodeLatencyStats();
+
+  @Test
+  public void testStats() {
+    assertEquals(0, stats.getScore(NODE1), 0);
+
+    // core URLs count for their node, with or without the scheme
+    stats.requestStarted(NODE1 + "/coll_shard1_replica_n1");
+    assertEquals(1, stats.getOutstanding("node1:8983/solr"));
+    stats.requestFinished("https://node1:8983/solr/coll_shard2_replica_n3", millis(100));
+    assertEquals(0, stats.getOutstanding(NODE1));
+    double score = stats.getScore(NODE1);
+    assertTrue(score > 0 && score <= millis(100));
+
+    // outstanding requests make a node score worse
+    stats.requestStarted(NODE1);
+    stats.requestStarted(NODE1);
+    assertTrue(stats.getScore(NODE1) > 2 * score);
+    stats.requestCancelled(NODE1);
+    stats.requestCancelled(NODE1);
+    assertEquals(0, stats.getOutstanding(NODE1));
+
+    // the latency is a moving average
+    stats.requestFinished(NODE1, millis(200));
+    double averaged = stats.getScore(NODE1);
+    assertTrue(averaged > score && averaged < millis(200));
+
+    // nodes without a latency yet get the latency of the requests to all nodes
+    double prior = stats.getScore(NODE2);
+    assertTrue(prior > 0 && prior < millis(200));
+    stats.requestStarted(NODE2);
+    assertEquals(2 * prior, stats.getScore(NODE2), prior / 100);
+    stats.requestCancelled(NODE2);
+  }
+
+  @Test
+  public void testDecay() {
+    stats.requestFinished(NODE1, millis(100));
+    long later = System.nanoTime() + 10 * NodeLatencyStats.DECAY_NANOS;
+    double score = stats.getScore(NODE1);
+    assertTrue(stats.getScore(NODE1, later) < score / 100);
+
+    // the latency doesn't decay while a request is outstanding, it may be slow too
+    stats.requestStarted(NODE1);
+    assertEquals(2 * score, stats.getScore(NODE1, later), score / 100);
+
+    // and decays again once it answered
+    stats.requestFinished(NODE1, millis(100));
+    assertTrue(stats.getScore(NODE1, later) < score / 100);
+  }
+
+  @Test
+  public void testSortsByScore() {
+    stats.requestFinished(NODE1, millis(300));
+    stats.requestFinished(NODE2, millis(10));
+    stats.requestFinished(NODE3, millis(100));
+
+    LatencyReplicaListTransformer transformer =
+        new LatencyReplicaListTransformer(stats, false, random());
+    for (int i = 0; i < 10; i++) {
+      List<String> urls = new ArrayList<>(List.of(NODE1, NODE2, NODE3));
+      transformer.transform(urls);
+      assertEquals(List.of(NODE2, NODE3, NODE1), urls);
+
+      List<Replica> replicas = getReplicaList();
+      transformer.transform(replicas);
+      assertEquals(NODE2, replicas.get(0).getBaseUrl());
+      assertEquals(NODE3, replicas.get(1).getBaseUrl());
+      assertEquals(NODE1, replicas.get(2).getBaseUrl());
+    }
+
+    // a node with many outstanding requests goes last
+    for (int i = 0; i < 100; i++) {
+      stats.requestStarted(NODE2);
+    }
+    List<String> urls = new ArrayList<>(List.of(NODE1, NODE2, NODE3));
+    transformer.transform(urls);
+    assertEquals(List.of(NODE3, NODE1, NODE2), urls);
+  }
+
+  @Test
+  public void testPowerOfTwoChoices() {
+    stats.requestFinished(NODE1, millis(300));
+    stats.requestFinished(NODE2, millis(10));
+    stats.requestFinished(NODE3, millis(100));
+
+    LatencyReplicaListTransformer transformer =
+        new LatencyReplicaListTransformer(stats, true, random());
+    int[] firsts = new int[3];
+    for (int i = 0; i < 300; i++) {
+      List<String> urls = new ArrayList<>(List.of(NODE1, NODE2, NODE3));
+      transformer.transform(urls);
+      assertTrue(stats.getScore(urls.get(0)) <= stats.getScore(urls.get(1)));
+      firsts[List.of(NODE1, NODE2, NODE3).indexOf(urls.get(0))]++;
+    }
+    // the slowest node never goes first, but the other two share the requests
+    assertEquals(0, firsts[0]);
+    assertTrue(firsts[1] > 0);
+    assertTrue(firsts[2] > 0);
+  }
+
+  @Test
+  public void testReplicaBase() {
+    stats.requestFinished(NODE1, millis(300));
+    stats.requestFinished(NODE2, millis(10));
+    stats.requestFinished(NODE3, millis(100));
+
+    RequestReplicaListTransformerGenerator generator =
+        new RequestReplicaListTransformerGenerator(
+            null, null, new LatencyReplicaListTransformerFactory(stats));
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add(
+        ShardParams.SHARDS_PREFERENCE,
+        ShardParams.SHARDS_PREFERENCE_REPLICA_BASE + ":" + ShardParams.REPLICA_LATENCY);
+    List<Replica> replicas = getReplicaList();
+    generator.getReplicaListTransformer(params).transform(replicas);
+    assertEquals(NODE2, replicas.get(0).getBaseUrl());
+    assertEquals(NODE3, replicas.get(1).getBaseUrl());
+    assertEquals(NODE1, replicas.get(2).getBaseUrl());
+
+    params.set(
+        ShardParams.SHARDS_PREFERENCE,
+        ShardParams.SHARDS_PREFERENCE_REPLICA_BASE + ":" + ShardParams.REPLICA_LATENCY + ":p2c");
+    replicas = getReplicaList();
+    generator.getReplicaListTransformer(params).transform(replicas);
+    assertNotEquals(NODE1, replicas.get(0).getBaseUrl());
+
+    params.set(
+        ShardParams.SHARDS_PREFERENCE,
+        ShardParams.SHARDS_PREFERENCE_REPLICA_BASE + ":" + ShardParams.REPLICA_LATENCY + ":foo");
+    expectThrows(
+        IllegalArgumentException.class, () -> generator.getReplicaListTransformer(params));
+  }
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  private static List<Replica> getReplicaList() {
+    List<Replica> replicas = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      String nodeName = "node" + i + ":8983_solr";
+      replicas.add(
+          new Replica(
+              "replica" + i,
+              Map.of(
+                  ZkStateReader.NODE_NAME_PROP,
+                  nodeName,
+                  ZkStateReader.BASE_URL_PROP,
+                  Utils.getBaseUrlForNodeName(nodeName, "http"),
+                  ZkStateReader.CORE_NAME_PROP,
+                  "collection1_shard1_replica_n" + i,
+                  ZkStateReader.REPLICA_TYPE,
+                  "NRT"),
+              "collection1",
+              "shard1"));
+    }
+    return replicas;
+  }
+}